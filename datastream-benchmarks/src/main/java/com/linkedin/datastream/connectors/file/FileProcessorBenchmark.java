@@ -0,0 +1,224 @@
+/**
+ *  Copyright 2021 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.connectors.file;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.linkedin.datastream.common.Datastream;
+import com.linkedin.datastream.common.DatastreamMetadataConstants;
+import com.linkedin.datastream.server.DatastreamEventProducer;
+import com.linkedin.datastream.server.DatastreamProducerRecord;
+import com.linkedin.datastream.server.DatastreamTaskImpl;
+import com.linkedin.datastream.server.api.transport.BatchSendCallback;
+import com.linkedin.datastream.server.api.transport.SendCallback;
+import com.linkedin.datastream.testutil.DatastreamTestUtils;
+
+
+/**
+ * Benchmarks the file connector over a generated multi-GB file of fixed-length lines:
+ * <ul>
+ *   <li>Lines/sec of {@link FileLineReader} against the {@link BufferedReader#readLine()} it replaced.</li>
+ *   <li>Time for a {@link FileProcessor} to resume and send the last line of the file, from a byte offset checkpoint
+ *   and from a line number checkpoint as saved before byte offsets were tracked, which skips the whole file.</li>
+ *   <li>Time for a {@link FileProcessor} to read and send the whole file in batches, i.e. numLines / time lines/sec.</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileProcessorBenchmark {
+  private static final int LINE_LENGTH = 100;
+
+  @Param({"2048"})
+  public int fileSizeMb;
+
+  @Param({"100"})
+  public int maxBatchSize;
+
+  private File _file;
+  private long _numLines;
+  private FileLineReader _lineReader;
+  private BufferedReader _bufferedReader;
+
+  /**
+   * Generate the file and open the line readers
+   */
+  @Setup
+  public void setup() throws IOException {
+    _file = File.createTempFile("FileProcessorBenchmark", ".txt");
+    _file.deleteOnExit();
+    _numLines = (long) fileSizeMb * 1024 * 1024 / LINE_LENGTH;
+    try (OutputStream output = new BufferedOutputStream(new FileOutputStream(_file), 1024 * 1024)) {
+      StringBuilder padding = new StringBuilder();
+      for (int i = 0; i < LINE_LENGTH; i++) {
+        padding.append('x');
+      }
+      for (long i = 1; i <= _numLines; i++) {
+        String prefix = "line " + i + " ";
+        String line = prefix + padding.substring(prefix.length() + 1) + "\n";
+        output.write(line.getBytes(StandardCharsets.UTF_8));
+      }
+    }
+
+    _lineReader = new FileLineReader(FileChannel.open(_file.toPath(), StandardOpenOption.READ));
+    _bufferedReader = openBufferedReader();
+  }
+
+  /**
+   * Close the line readers and delete the file
+   */
+  @TearDown
+  public void tearDown() throws IOException {
+    _lineReader.close();
+    _bufferedReader.close();
+    _file.delete();
+  }
+
+  private BufferedReader openBufferedReader() throws IOException {
+    return new BufferedReader(new InputStreamReader(new FileInputStream(_file), StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Read a line with {@link BufferedReader#readLine()}, starting over at the end of the file
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  public String readLineWithBufferedReader() throws IOException {
+    String line = _bufferedReader.readLine();
+    if (line == null) {
+      _bufferedReader.close();
+      _bufferedReader = openBufferedReader();
+      line = _bufferedReader.readLine();
+    }
+    return line;
+  }
+
+  /**
+   * Read a line with {@link FileLineReader#readLine()}, starting over at the end of the file
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  public String readLineWithFileLineReader() throws IOException {
+    String line = _lineReader.readLine();
+    if (line == null) {
+      _lineReader.seek(0);
+      line = _lineReader.readLine();
+    }
+    return line;
+  }
+
+  /**
+   * Resume from a line number checkpoint on the second to last line, as saved before byte offsets were tracked
+   */
+  @Benchmark
+  public long resumeFromLineNumber() throws IOException {
+    return process(String.valueOf(_numLines - 1), 1);
+  }
+
+  /**
+   * Resume from a byte offset checkpoint on the second to last line
+   */
+  @Benchmark
+  public long resumeFromByteOffset() throws IOException {
+    return process((_numLines - 1) * LINE_LENGTH + ":" + (_numLines - 1), 1);
+  }
+
+  /**
+   * Read and send the whole file
+   */
+  @Benchmark
+  public long processFile() throws IOException {
+    return process(null, _numLines);
+  }
+
+  // Run a FileProcessor on the benchmark thread from the checkpoint, until it has sent the given number of lines
+  private long process(String checkpoint, long numLinesToSend) throws IOException {
+    Datastream datastream = DatastreamTestUtils.createDatastream(FileConnector.CONNECTOR_NAME, "benchmark",
+        _file.getAbsolutePath());
+    datastream.getMetadata().put(DatastreamMetadataConstants.TASK_PREFIX, "benchmark");
+    DatastreamTaskImpl task = new DatastreamTaskImpl(Collections.singletonList(datastream)) {
+      @Override
+      public void acquire(Duration timeout) {
+      }
+
+      @Override
+      public void release() {
+      }
+    };
+    if (checkpoint != null) {
+      task.setCheckpoints(Collections.singletonMap(0, checkpoint));
+    }
+
+    CountingProducer producer = new CountingProducer(numLinesToSend);
+    FileProcessor processor = new FileProcessor(task, producer, maxBatchSize, null, 1, 100, 0);
+    producer._processor = processor;
+    processor.run();
+    if (!processor.isStopped()) {
+      throw new IllegalStateException("FileProcessor failed, see the logs");
+    }
+    return producer._numLinesSent;
+  }
+
+  // Producer which stops the processor once it has been sent the expected number of lines
+  private static class CountingProducer implements DatastreamEventProducer {
+    private final long _numLinesToSend;
+    private FileProcessor _processor;
+    private long _numLinesSent;
+
+    CountingProducer(long numLinesToSend) {
+      _numLinesToSend = numLinesToSend;
+    }
+
+    @Override
+    public void send(DatastreamProducerRecord event, SendCallback callback) {
+      sendBatch(Collections.singletonList(event), (recordIndex, metadata, exception) -> { });
+    }
+
+    @Override
+    public void sendBatch(List<DatastreamProducerRecord> events, BatchSendCallback callback) {
+      _numLinesSent += events.size();
+      if (_numLinesSent >= _numLinesToSend) {
+        _processor.stop();
+      }
+    }
+
+    @Override
+    public void flush() {
+    }
+  }
+}
@@ -0,0 +1,106 @@
+/**
+ *  Copyright 2019 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.connectors.kafka.mirrormaker;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.codahale.metrics.MetricRegistry;
+
+import com.linkedin.data.template.StringMap;
+import com.linkedin.datastream.common.Datastream;
+import com.linkedin.datastream.common.DatastreamDestination;
+import com.linkedin.datastream.common.DatastreamMetadataConstants;
+import com.linkedin.datastream.common.DatastreamSource;
+import com.linkedin.datastream.connectors.kafka.KafkaBasedConnectorConfig;
+import com.linkedin.datastream.metrics.DynamicMetricsManager;
+import com.linkedin.datastream.server.DatastreamProducerRecord;
+import com.linkedin.datastream.server.DatastreamTaskImpl;
+
+
+/**
+ * Measures {@link KafkaMirrorMakerConnectorTask#translate(ConsumerRecord, Instant)}, which turns every consumed
+ * Kafka record into a {@link DatastreamProducerRecord} on the mirroring hot path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KafkaMirrorMakerConnectorTaskBenchmark {
+  // Must be a power of two so the next record can be picked with a mask
+  private static final int NUM_RECORDS = 1024;
+
+  private KafkaMirrorMakerConnectorTask _connectorTask;
+  private List<ConsumerRecord<byte[], byte[]>> _records;
+  private Instant _readTime;
+  private int _nextRecord;
+
+  /**
+   * Create the connector task and the consumer records that are translated in turn
+   */
+  @Setup
+  public void setup() {
+    DynamicMetricsManager.createInstance(new MetricRegistry(), getClass().getSimpleName());
+
+    DatastreamSource source = new DatastreamSource();
+    source.setConnectionString("kafka://localhost:9092/benchmarkTopic.*");
+    DatastreamDestination destination = new DatastreamDestination();
+    destination.setConnectionString("kafka://localhost:9093/" + KafkaMirrorMakerConnector.MM_TOPIC_PLACEHOLDER);
+    StringMap metadata = new StringMap();
+    metadata.put(DatastreamMetadataConstants.TASK_PREFIX, "benchmark");
+    Datastream datastream = new Datastream();
+    datastream.setName("benchmark-ds");
+    datastream.setConnectorName("KafkaMirrorMaker");
+    datastream.setTransportProviderName("transportProvider");
+    datastream.setSource(source);
+    datastream.setDestination(destination);
+    datastream.setMetadata(metadata);
+
+    DatastreamTaskImpl task = new DatastreamTaskImpl(Collections.singletonList(datastream));
+    _connectorTask = new KafkaMirrorMakerConnectorTask(new KafkaBasedConnectorConfig(new Properties()), task, "", false,
+        new KafkaMirrorMakerGroupIdConstructor(false, "benchmarkCluster"));
+
+    _records = new ArrayList<>(NUM_RECORDS);
+    long timestamp = System.currentTimeMillis();
+    for (int i = 0; i < NUM_RECORDS; i++) {
+      // Spread the offsets so their string conversions are representative of a long running partition
+      long offset = 1_000_000_000L + i;
+      _records.add(new ConsumerRecord<>("benchmarkTopic", i % 8, offset, timestamp, TimestampType.LOG_APPEND_TIME,
+          null, 16, 256, new byte[16], new byte[256], new RecordHeaders()));
+    }
+    _readTime = Instant.now();
+  }
+
+  /**
+   * Translate a single consumer record
+   */
+  @Benchmark
+  public DatastreamProducerRecord translate() {
+    ConsumerRecord<byte[], byte[]> record = _records.get(_nextRecord);
+    _nextRecord = (_nextRecord + 1) & (NUM_RECORDS - 1);
+    return _connectorTask.translate(record, _readTime);
+  }
+}
@@ -0,0 +1,135 @@
+/**
+ *  Copyright 2019 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.kafka;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.codahale.metrics.MetricRegistry;
+
+import com.linkedin.datastream.common.BrooklinEnvelope;
+import com.linkedin.datastream.common.BrooklinEnvelopeMetadataConstants;
+import com.linkedin.datastream.common.Datastream;
+import com.linkedin.datastream.metrics.DynamicMetricsManager;
+import com.linkedin.datastream.server.DatastreamProducerRecord;
+import com.linkedin.datastream.server.DatastreamProducerRecordBuilder;
+import com.linkedin.datastream.server.DatastreamTaskImpl;
+import com.linkedin.datastream.server.api.transport.SendCallback;
+import com.linkedin.datastream.testutil.DatastreamTestUtils;
+
+
+/**
+ * Measures the per-record cost of {@link KafkaTransportProvider#send(String, DatastreamProducerRecord, SendCallback)}
+ * up to the Kafka producer, i.e. the conversion to {@link org.apache.kafka.clients.producer.ProducerRecord}, producer
+ * selection and metric updates. The Kafka producer is a {@link MockProducer} that completes every send immediately.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KafkaTransportProviderBenchmark {
+  private static final String DESTINATION_URI = "kafka://localhost:9092/benchmarkTopic";
+  private static final SendCallback NO_OP_CALLBACK = (metadata, exception) -> { };
+
+  @Param({"1", "10"})
+  public int eventsPerRecord;
+
+  @Param({"1", "4"})
+  public int numProducers;
+
+  private MockProducer<byte[], byte[]> _mockProducer;
+  private KafkaTransportProvider _transportProvider;
+  private DatastreamProducerRecord _record;
+
+  /**
+   * Create the transport provider, backed by mock Kafka producers, and the record that is sent on every invocation
+   */
+  @Setup
+  public void setup() {
+    DynamicMetricsManager.createInstance(new MetricRegistry(), getClass().getSimpleName());
+
+    Datastream datastream = DatastreamTestUtils.createDatastream("test", "benchmark-ds", "source", DESTINATION_URI, 1);
+    DatastreamTaskImpl task = new DatastreamTaskImpl(Collections.singletonList(datastream));
+
+    Properties props = new Properties();
+    props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092");
+    props.put(ProducerConfig.CLIENT_ID_CONFIG, "benchmark");
+
+    _mockProducer = new MockProducer<>(true, new ByteArraySerializer(), new ByteArraySerializer());
+    List<KafkaProducerWrapper<byte[], byte[]>> producers = new ArrayList<>();
+    for (int i = 0; i < numProducers; i++) {
+      KafkaProducerWrapper<byte[], byte[]> producer = new KafkaProducerWrapper<byte[], byte[]>("benchmark-" + i, props) {
+        @Override
+        Producer<byte[], byte[]> createKafkaProducer() {
+          return _mockProducer;
+        }
+      };
+      producer.assignTask(task);
+      producers.add(producer);
+    }
+    _transportProvider = new KafkaTransportProvider(task, producers, props, null);
+
+    DatastreamProducerRecordBuilder builder = new DatastreamProducerRecordBuilder();
+    builder.setPartition(0);
+    builder.setSourceCheckpoint("0");
+    builder.setEventsSourceTimestamp(System.currentTimeMillis());
+    for (int i = 0; i < eventsPerRecord; i++) {
+      Map<String, String> metadata = new HashMap<>();
+      metadata.put(BrooklinEnvelopeMetadataConstants.SOURCE_PARTITION, "0");
+      builder.addEvent(new BrooklinEnvelope(new byte[16], new byte[256], null, metadata));
+    }
+    _record = builder.build();
+  }
+
+  /**
+   * Drop the records remembered by the mock producer so memory does not grow across iterations
+   */
+  @TearDown(Level.Iteration)
+  public void clearMockProducer() {
+    _mockProducer.clear();
+  }
+
+  /**
+   * Close the transport provider
+   */
+  @TearDown
+  public void tearDown() {
+    _transportProvider.close();
+  }
+
+  /**
+   * Send a single record through the transport provider
+   */
+  @Benchmark
+  public void send() {
+    _transportProvider.send(DESTINATION_URI, _record, NO_OP_CALLBACK);
+  }
+}
@@ -0,0 +1,172 @@
+/**
+ *  Copyright 2019 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.server;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.apache.zookeeper.CreateMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.linkedin.datastream.common.Datastream;
+import com.linkedin.datastream.common.DatastreamMetadataConstants;
+import com.linkedin.datastream.common.DatastreamUtils;
+import com.linkedin.datastream.common.zk.ZkClient;
+import com.linkedin.datastream.connectors.DummyConnector;
+import com.linkedin.datastream.server.zk.KeyBuilder;
+import com.linkedin.datastream.testutil.DatastreamTestUtils;
+import com.linkedin.datastream.testutil.EmbeddedZookeeper;
+
+
+/**
+ * Compares the cost of getting the datastream groups of {@link CachedDatastreamReader}, and of looking up the group
+ * of a task, with regrouping all the cached datastreams on every call as was done before the groups were kept as an
+ * incrementally updated snapshot. The update benchmarks include reading the updated datastream from ZooKeeper, which
+ * is the same for both.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CachedDatastreamReaderBenchmark {
+  private static final String CLUSTER = "benchmarkCluster";
+
+  @Param({"20000"})
+  public int numDatastreams;
+
+  @Param({"1", "10"})
+  public int datastreamsPerGroup;
+
+  private EmbeddedZookeeper _embeddedZookeeper;
+  private ZkClient _zkClient;
+  private CachedDatastreamReader _reader;
+  private Datastream _updatedDatastream;
+  private int _numUpdates = 0;
+  private int _numLookups = 0;
+
+  /**
+   * Store the datastreams in an embedded ZooKeeper and read them all once
+   */
+  @Setup
+  public void setup() throws IOException {
+    _embeddedZookeeper = new EmbeddedZookeeper();
+    _embeddedZookeeper.startup();
+    _zkClient = new ZkClient(_embeddedZookeeper.getConnection());
+    _zkClient.ensurePath(KeyBuilder.datastreams(CLUSTER));
+
+    for (int i = 0; i < numDatastreams; i++) {
+      Datastream datastream = DatastreamTestUtils.createDatastreams(DummyConnector.CONNECTOR_TYPE, "ds" + i)[0];
+      datastream.getMetadata().put(DatastreamMetadataConstants.TASK_PREFIX, getTaskPrefix(i));
+      _zkClient.create(KeyBuilder.datastream(CLUSTER, datastream.getName()), DatastreamUtils.toJSON(datastream),
+          CreateMode.PERSISTENT);
+      _updatedDatastream = datastream;
+    }
+
+    _reader = new CachedDatastreamReader(_zkClient, CLUSTER);
+    _reader.getDatastreamGroups();
+  }
+
+  /**
+   * Shut down the embedded ZooKeeper
+   */
+  @TearDown
+  public void tearDown() {
+    _zkClient.close();
+    _embeddedZookeeper.shutdown();
+  }
+
+  private String getTaskPrefix(int datastreamIndex) {
+    return "group" + datastreamIndex / datastreamsPerGroup;
+  }
+
+  private String nextTaskPrefix() {
+    _numLookups = (_numLookups + 1) % numDatastreams;
+    return getTaskPrefix(_numLookups);
+  }
+
+  // What CachedDatastreamReader.getDatastreamGroups did on every call before the groups were cached
+  private List<DatastreamGroup> regroupDatastreams() {
+    Map<String, List<Datastream>> streamsByTaskPrefix = _reader.getAllDatastreams(false)
+        .stream()
+        .filter(DatastreamUtils::containsTaskPrefix)
+        .collect(Collectors.groupingBy(DatastreamUtils::getTaskPrefix, Collectors.toList()));
+    return streamsByTaskPrefix.values().stream().map(DatastreamGroup::new).collect(Collectors.toList());
+  }
+
+  private void updateDatastream() {
+    _updatedDatastream.getMetadata().put("benchmarkUpdate", String.valueOf(_numUpdates++));
+    _zkClient.writeData(KeyBuilder.datastream(CLUSTER, _updatedDatastream.getName()),
+        DatastreamUtils.toJSON(_updatedDatastream));
+    _reader.getDatastream(_updatedDatastream.getName(), true);
+  }
+
+  /**
+   * Regroup all the cached datastreams, as was done before
+   */
+  @Benchmark
+  public List<DatastreamGroup> regroupAll() {
+    return regroupDatastreams();
+  }
+
+  /**
+   * Get the datastream groups snapshot
+   */
+  @Benchmark
+  public List<DatastreamGroup> getDatastreamGroups() {
+    return _reader.getDatastreamGroups();
+  }
+
+  /**
+   * Look up the group of a task by scanning the regrouped datastreams, as was done before
+   */
+  @Benchmark
+  public DatastreamGroup lookupByRegroupAndScan() {
+    String taskPrefix = nextTaskPrefix();
+    return regroupDatastreams().stream().filter(dg -> dg.getTaskPrefix().equals(taskPrefix)).findFirst().get();
+  }
+
+  /**
+   * Look up the group of a task in the datastream groups snapshot
+   */
+  @Benchmark
+  public DatastreamGroup lookupByTaskPrefix() {
+    return _reader.getDatastreamGroupsByTaskPrefix().get(nextTaskPrefix());
+  }
+
+  /**
+   * Update a datastream and regroup all the cached datastreams, as was done before
+   */
+  @Benchmark
+  public List<DatastreamGroup> updateAndRegroupAll() {
+    updateDatastream();
+    return regroupDatastreams();
+  }
+
+  /**
+   * Update a datastream and get the datastream groups, which only regroups the datastreams of its group
+   */
+  @Benchmark
+  public List<DatastreamGroup> updateAndGetDatastreamGroups() {
+    updateDatastream();
+    return _reader.getDatastreamGroups();
+  }
+}
@@ -0,0 +1,106 @@
+/**
+ *  Copyright 2019 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.linkedin.datastream.common.BrooklinEnvelope;
+import com.linkedin.datastream.serde.SerDe;
+import com.linkedin.datastream.serde.SerDeSet;
+
+
+/**
+ * Measures {@link DatastreamProducerRecord#serializeEvents(SerDeSet)}. Serialization mutates the events of the
+ * record, so every invocation builds a fresh record; {@link #buildRecord()} measures the construction alone and
+ * should be subtracted from {@link #buildAndSerializeRecord()} to get the cost of the serialization.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DatastreamProducerRecordBenchmark {
+
+  @Param({"1", "10"})
+  public int eventsPerRecord;
+
+  @Param({"100", "1000"})
+  public int payloadSize;
+
+  private String _key;
+  private String _value;
+  private SerDeSet _serDeSet;
+
+  /**
+   * Create the payloads and the SerDes used by every invocation
+   */
+  @Setup
+  public void setup() {
+    _key = "key-" + payloadSize;
+    char[] value = new char[payloadSize];
+    Arrays.fill(value, 'v');
+    _value = new String(value);
+    SerDe stringSerDe = new StringSerDe();
+    _serDeSet = new SerDeSet(stringSerDe, stringSerDe, null);
+  }
+
+  /**
+   * Build a record without serializing it (baseline)
+   */
+  @Benchmark
+  public DatastreamProducerRecord buildRecord() {
+    return createRecord();
+  }
+
+  /**
+   * Build a record and serialize its events
+   */
+  @Benchmark
+  public DatastreamProducerRecord buildAndSerializeRecord() {
+    DatastreamProducerRecord record = createRecord();
+    record.serializeEvents(_serDeSet);
+    return record;
+  }
+
+  private DatastreamProducerRecord createRecord() {
+    DatastreamProducerRecordBuilder builder = new DatastreamProducerRecordBuilder();
+    builder.setPartition(0);
+    builder.setSourceCheckpoint("0");
+    builder.setEventsSourceTimestamp(System.currentTimeMillis());
+    for (int i = 0; i < eventsPerRecord; i++) {
+      builder.addEvent(new BrooklinEnvelope(_key, _value, null, new HashMap<>()));
+    }
+    return builder.build();
+  }
+
+  private static class StringSerDe implements SerDe {
+    @Override
+    public byte[] serialize(Object object) {
+      return object.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Object deserialize(byte[] data) {
+      return new String(data, StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -0,0 +1,112 @@
+/**
+ *  Copyright 2019 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.server;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.codahale.metrics.MetricRegistry;
+
+import com.linkedin.datastream.common.BrooklinEnvelope;
+import com.linkedin.datastream.common.Datastream;
+import com.linkedin.datastream.connectors.DummyConnector;
+import com.linkedin.datastream.metrics.DynamicMetricsManager;
+import com.linkedin.datastream.server.api.transport.DatastreamRecordMetadata;
+import com.linkedin.datastream.server.api.transport.SendCallback;
+import com.linkedin.datastream.server.api.transport.TransportProvider;
+import com.linkedin.datastream.server.providers.NoOpCheckpointProvider;
+import com.linkedin.datastream.testutil.DatastreamTestUtils;
+
+
+/**
+ * Measures the per-record cost of {@link EventProducer#send(DatastreamProducerRecord, SendCallback)}, i.e. the
+ * validation, metric reporting and checkpoint bookkeeping done around the transport provider, with a transport
+ * provider that acknowledges every record synchronously.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventProducerBenchmark {
+  private static final String DESTINATION_TOPIC = "benchmarkTopic";
+  private static final SendCallback NO_OP_CALLBACK = (metadata, exception) -> { };
+
+  @Param({"true", "false"})
+  public boolean enablePerTopicMetrics;
+
+  @Param({"1", "10"})
+  public int eventsPerRecord;
+
+  private EventProducer _eventProducer;
+  private DatastreamProducerRecord _record;
+
+  /**
+   * Create the event producer and the record that is sent on every invocation
+   */
+  @Setup
+  public void setup() {
+    DynamicMetricsManager.createInstance(new MetricRegistry(), getClass().getSimpleName());
+
+    Datastream datastream = DatastreamTestUtils.createDatastreams(DummyConnector.CONNECTOR_TYPE, "benchmark-ds")[0];
+    DatastreamTaskImpl task = new DatastreamTaskImpl(Collections.singletonList(datastream));
+
+    TransportProvider transport = new NoOpTransportProviderAdminFactory.NoOpTransportProvider() {
+      @Override
+      public void send(String destination, DatastreamProducerRecord record, SendCallback onComplete) {
+        onComplete.onCompletion(
+            new DatastreamRecordMetadata(record.getCheckpoint(), DESTINATION_TOPIC, record.getPartition().orElse(0)),
+            null);
+      }
+    };
+
+    Properties props = new Properties();
+    props.put(EventProducer.CONFIG_ENABLE_PER_TOPIC_METRICS, String.valueOf(enablePerTopicMetrics));
+    _eventProducer = new EventProducer(task, transport, new NoOpCheckpointProvider(), props, false);
+
+    // No SerDes are configured for the datastream, so the same record can safely be sent repeatedly
+    DatastreamProducerRecordBuilder builder = new DatastreamProducerRecordBuilder();
+    builder.setPartition(0);
+    builder.setSourceCheckpoint("0");
+    builder.setEventsSourceTimestamp(System.currentTimeMillis());
+    for (int i = 0; i < eventsPerRecord; i++) {
+      builder.addEvent(new BrooklinEnvelope(new byte[16], new byte[256], null, new HashMap<>()));
+    }
+    _record = builder.build();
+  }
+
+  /**
+   * Release the event producer
+   */
+  @TearDown
+  public void tearDown() {
+    _eventProducer.shutdown(true);
+  }
+
+  /**
+   * Send a single record through the event producer
+   */
+  @Benchmark
+  public void send() {
+    _eventProducer.send(_record, NO_OP_CALLBACK);
+  }
+}
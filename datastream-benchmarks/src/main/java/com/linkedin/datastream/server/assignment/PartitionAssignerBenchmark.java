@@ -0,0 +1,210 @@
+/**
+ *  Copyright 2021 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.server.assignment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.codahale.metrics.MetricRegistry;
+
+import com.linkedin.datastream.common.Datastream;
+import com.linkedin.datastream.common.DatastreamMetadataConstants;
+import com.linkedin.datastream.connectors.DummyConnector;
+import com.linkedin.datastream.metrics.DynamicMetricsManager;
+import com.linkedin.datastream.server.ClusterThroughputInfo;
+import com.linkedin.datastream.server.DatastreamGroup;
+import com.linkedin.datastream.server.DatastreamGroupPartitionsMetadata;
+import com.linkedin.datastream.server.DatastreamTask;
+import com.linkedin.datastream.server.DatastreamTaskImpl;
+import com.linkedin.datastream.server.PartitionThroughputInfo;
+import com.linkedin.datastream.testutil.DatastreamTestUtils;
+
+
+/**
+ * Simulates the assignment of a large datastream group by {@link LoadBasedPartitionAssigner} and
+ * {@link MultiDimensionalPartitionAssigner}, with topics whose byte and message rates diverge (either a few large
+ * messages or many small ones). The {@code initial} scenario assigns all the partitions to new tasks, and the
+ * {@code scaleOut} scenario adds tasks and a few partitions to an existing assignment made by
+ * {@link LoadBasedPartitionAssigner}.
+ *
+ * <p>Besides the time taken by each assigner, the setup prints the resulting imbalance, i.e. the byte and message
+ * rates of the most loaded task relative to the average, and the number of assigned partitions moved.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PartitionAssignerBenchmark {
+  private static final int PARTITIONS_PER_TOPIC = 100;
+  private static final int DEFAULT_PARTITION_BYTES_IN_KB_RATE = 5;
+  private static final int DEFAULT_PARTITION_MSGS_IN_RATE = 5;
+
+  @Param({"100000"})
+  public int numPartitions;
+
+  @Param({"200"})
+  public int numTasks;
+
+  @Param({"1000"})
+  public int maxPartitionMovesPerRebalance;
+
+  @Param({"initial", "scaleOut"})
+  public String scenario;
+
+  private ClusterThroughputInfo _throughputInfo;
+  private DatastreamGroupPartitionsMetadata _metadata;
+  private Map<String, Set<DatastreamTask>> _currentAssignment;
+  private Set<String> _unassignedPartitions;
+  private LoadBasedPartitionAssigner _loadBasedAssigner;
+  private MultiDimensionalPartitionAssigner _multiDimensionalAssigner;
+
+  /**
+   * Generate the partitions, their rates and the current assignment of the scenario
+   */
+  @Setup
+  public void setup() {
+    DynamicMetricsManager.createInstance(new MetricRegistry(), getClass().getSimpleName());
+    Datastream datastream = DatastreamTestUtils.createDatastreams(DummyConnector.CONNECTOR_TYPE, "benchmark-ds")[0];
+    datastream.getMetadata().put(DatastreamMetadataConstants.TASK_PREFIX, DatastreamTaskImpl.getTaskPrefix(datastream));
+
+    Random random = new Random(42);
+    Map<String, PartitionThroughputInfo> partitionInfoMap = new HashMap<>();
+    List<String> partitions = new ArrayList<>();
+    for (int i = 0; i < numPartitions; i++) {
+      String topic = "topic" + i / PARTITIONS_PER_TOPIC;
+      String partition = topic + "-" + i % PARTITIONS_PER_TOPIC;
+      // messages of a few KB on half of the topics, and of a few hundred bytes on the others
+      boolean largeMessages = (i / PARTITIONS_PER_TOPIC) % 2 == 0;
+      int msgsInRate = (int) Math.exp(random.nextDouble() * (largeMessages ? 5 : 9));
+      int bytesInKBRate = largeMessages ? msgsInRate * 4 : Math.max(1, msgsInRate / 8);
+      partitionInfoMap.put(partition, new PartitionThroughputInfo(bytesInKBRate, msgsInRate, partition));
+      partitions.add(partition);
+    }
+    _throughputInfo = new ClusterThroughputInfo("benchmark", partitionInfoMap);
+    _metadata = new DatastreamGroupPartitionsMetadata(new DatastreamGroup(Collections.singletonList(datastream)),
+        partitions);
+
+    _loadBasedAssigner = new LoadBasedPartitionAssigner(DEFAULT_PARTITION_BYTES_IN_KB_RATE,
+        DEFAULT_PARTITION_MSGS_IN_RATE);
+    _multiDimensionalAssigner = new MultiDimensionalPartitionAssigner(DEFAULT_PARTITION_BYTES_IN_KB_RATE,
+        DEFAULT_PARTITION_MSGS_IN_RATE, maxPartitionMovesPerRebalance);
+
+    _currentAssignment = new HashMap<>();
+    _unassignedPartitions = new HashSet<>(partitions);
+    if ("scaleOut".equals(scenario)) {
+      // assign all the partitions but the last topic to 90% of the tasks, and leave the others empty
+      List<String> assignedPartitions = partitions.subList(0, numPartitions - PARTITIONS_PER_TOPIC);
+      Map<String, Set<DatastreamTask>> initialAssignment = createAssignment(datastream, numTasks * 9 / 10);
+      initialAssignment = _loadBasedAssigner.assignPartitions(_throughputInfo, initialAssignment,
+          new HashSet<>(assignedPartitions), _metadata, Integer.MAX_VALUE);
+      initialAssignment.forEach((instance, tasks) -> _currentAssignment.put(instance,
+          Collections.singleton(createTask(datastream, tasks.iterator().next().getPartitionsV2()))));
+      _currentAssignment.putAll(createAssignment(datastream, numTasks - numTasks * 9 / 10));
+      _unassignedPartitions.removeAll(assignedPartitions);
+    } else {
+      _currentAssignment.putAll(createAssignment(datastream, numTasks));
+    }
+
+    printStats("LoadBasedPartitionAssigner", loadBasedAssigner());
+    printStats("MultiDimensionalPartitionAssigner", multiDimensionalAssigner());
+  }
+
+  private Map<String, Set<DatastreamTask>> createAssignment(Datastream datastream, int count) {
+    Map<String, Set<DatastreamTask>> assignment = new HashMap<>();
+    for (int i = 0; i < count; i++) {
+      assignment.put("instance" + (_currentAssignment.size() + i),
+          Collections.singleton(createTask(datastream, Collections.emptyList())));
+    }
+    return assignment;
+  }
+
+  private static DatastreamTask createTask(Datastream datastream, List<String> partitions) {
+    // tasks with partitions must have been locked by their previous owner to be reassigned
+    DatastreamTaskImpl task = new DatastreamTaskImpl(Collections.singletonList(datastream)) {
+      @Override
+      public boolean isLocked() {
+        return true;
+      }
+    };
+    task.setPartitionsV2(partitions);
+    return task;
+  }
+
+  private void printStats(String assignerName, Map<String, Set<DatastreamTask>> assignment) {
+    Map<String, PartitionThroughputInfo> partitionInfoMap = _throughputInfo.getPartitionInfoMap();
+    // each instance has a single task
+    Map<String, String> previousInstances = new HashMap<>();
+    _currentAssignment.forEach((instance, tasks) -> tasks.forEach(task ->
+        task.getPartitionsV2().forEach(partition -> previousInstances.put(partition, instance))));
+
+    long maxBytesInKBRate = 0;
+    long maxMsgsInRate = 0;
+    long totalBytesInKBRate = 0;
+    long totalMsgsInRate = 0;
+    int numMoves = 0;
+    for (Map.Entry<String, Set<DatastreamTask>> entry : assignment.entrySet()) {
+      for (DatastreamTask task : entry.getValue()) {
+        long bytesInKBRate = 0;
+        long msgsInRate = 0;
+        for (String partition : task.getPartitionsV2()) {
+          bytesInKBRate += partitionInfoMap.get(partition).getBytesInKBRate();
+          msgsInRate += partitionInfoMap.get(partition).getMessagesInRate();
+          String previousInstance = previousInstances.get(partition);
+          if (previousInstance != null && !previousInstance.equals(entry.getKey())) {
+            numMoves++;
+          }
+        }
+        maxBytesInKBRate = Math.max(maxBytesInKBRate, bytesInKBRate);
+        maxMsgsInRate = Math.max(maxMsgsInRate, msgsInRate);
+        totalBytesInKBRate += bytesInKBRate;
+        totalMsgsInRate += msgsInRate;
+      }
+    }
+    System.out.printf("%n%s (%s): max bytes in rate %.2f x average, max messages in rate %.2f x average, "
+            + "%d of %d assigned partitions moved%n", assignerName, scenario,
+        (double) maxBytesInKBRate * numTasks / totalBytesInKBRate, (double) maxMsgsInRate * numTasks / totalMsgsInRate,
+        numMoves, previousInstances.size());
+  }
+
+  /**
+   * Assign the partitions with {@link LoadBasedPartitionAssigner}
+   */
+  @Benchmark
+  public Map<String, Set<DatastreamTask>> loadBasedAssigner() {
+    return _loadBasedAssigner.assignPartitions(_throughputInfo, _currentAssignment, _unassignedPartitions, _metadata,
+        Integer.MAX_VALUE);
+  }
+
+  /**
+   * Assign the partitions with {@link MultiDimensionalPartitionAssigner}
+   */
+  @Benchmark
+  public Map<String, Set<DatastreamTask>> multiDimensionalAssigner() {
+    return _multiDimensionalAssigner.assignPartitions(_throughputInfo, _currentAssignment, _unassignedPartitions,
+        _metadata, Integer.MAX_VALUE);
+  }
+}
@@ -0,0 +1,210 @@
+/**
+ *  Copyright 2019 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.common;
+
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+import org.apache.commons.lang.Validate;
+
+
+/**
+ * The metadata of a {@link BrooklinEnvelope} consumed from Kafka, i.e. where the event originates from (cluster,
+ * topic, partition and offset) and its timestamps.
+ *
+ * The well-known attributes are kept in primitive fields, which can be read through the typed getters without any
+ * parsing. For compatibility with the consumers of {@link BrooklinEnvelope#getMetadata()}, this is also a modifiable
+ * {@link Map} with the same entries as the string map the Kafka connectors used to build. The entries are only
+ * materialized into a string map when they are iterated or changed, which is not the case on the send path of the
+ * Kafka transport provider. The typed getters always return the metadata the event was consumed with, even if the
+ * entries were changed since. Like the map it replaces, it is not thread-safe once changed.
+ */
+public final class KafkaOriginMetadata extends AbstractMap<String, String> {
+  // Kafka cluster the event was consumed from, used by Kafka mirror maker
+  public static final String KAFKA_ORIGIN_CLUSTER = "kafka-origin-cluster";
+  // Kafka connection string the event was consumed from, used by the Kafka connector
+  public static final String KAFKA_ORIGIN = "kafka-origin";
+  public static final String KAFKA_ORIGIN_TOPIC = "kafka-origin-topic";
+  public static final String KAFKA_ORIGIN_PARTITION = "kafka-origin-partition";
+  public static final String KAFKA_ORIGIN_OFFSET = "kafka-origin-offset";
+
+  // Value of the timestamps which are not set, in which case they are not part of the entries
+  public static final long NO_TIMESTAMP = -1;
+
+  private final String _originKey;
+  private final String _origin;
+  private final String _topic;
+  private final int _partition;
+  private final long _offset;
+  private final long _eventTimestamp;
+  private final long _sourceTimestamp;
+
+  // Materialized on first iteration or change, after which it holds the entries
+  private volatile Map<String, String> _entries;
+
+  /**
+   * Construct the metadata of an event consumed from Kafka
+   * @param originKey the key the origin is reported under, {@link #KAFKA_ORIGIN_CLUSTER} or {@link #KAFKA_ORIGIN}
+   * @param origin the Kafka cluster or connection string the event was consumed from
+   * @param topic the topic the event was consumed from, null if it is not to be reported
+   * @param partition the partition the event was consumed from, also reported as the source partition
+   * @param offset the offset of the event
+   * @param eventTimestamp the {@link BrooklinEnvelopeMetadataConstants#EVENT_TIMESTAMP} of the event, or
+   *                       {@link #NO_TIMESTAMP}
+   * @param sourceTimestamp the {@link BrooklinEnvelopeMetadataConstants#SOURCE_TIMESTAMP} of the event, or
+   *                        {@link #NO_TIMESTAMP}
+   */
+  public KafkaOriginMetadata(String originKey, String origin, @Nullable String topic, int partition, long offset,
+      long eventTimestamp, long sourceTimestamp) {
+    Validate.notNull(originKey, "null origin key");
+    Validate.notNull(origin, "null origin");
+    _originKey = originKey;
+    _origin = origin;
+    _topic = topic;
+    _partition = partition;
+    _offset = offset;
+    _eventTimestamp = eventTimestamp;
+    _sourceTimestamp = sourceTimestamp;
+  }
+
+  /**
+   * Get the Kafka cluster or connection string the event was consumed from
+   */
+  public String getOrigin() {
+    return _origin;
+  }
+
+  /**
+   * Get the topic the event was consumed from, null if it is not reported
+   */
+  @Nullable
+  public String getTopic() {
+    return _topic;
+  }
+
+  /**
+   * Get the partition the event was consumed from
+   */
+  public int getPartition() {
+    return _partition;
+  }
+
+  /**
+   * Get the offset of the event
+   */
+  public long getOffset() {
+    return _offset;
+  }
+
+  /**
+   * Get the event timestamp, or {@link #NO_TIMESTAMP} if it is not set
+   */
+  public long getEventTimestamp() {
+    return _eventTimestamp;
+  }
+
+  /**
+   * Get the source timestamp, or {@link #NO_TIMESTAMP} if it is not set
+   */
+  public long getSourceTimestamp() {
+    return _sourceTimestamp;
+  }
+
+  /**
+   * Whether the entries were materialized into a string map, once iterated or changed, in which case they may differ
+   * from the metadata returned by the typed getters
+   */
+  public boolean isMaterialized() {
+    return _entries != null;
+  }
+
+  @Override
+  public String get(Object key) {
+    Map<String, String> entries = _entries;
+    if (entries != null) {
+      return entries.get(key);
+    }
+    if (!(key instanceof String)) {
+      return null;
+    }
+    if (key.equals(_originKey)) {
+      return _origin;
+    }
+    switch ((String) key) {
+      case KAFKA_ORIGIN_TOPIC:
+        return _topic;
+      case KAFKA_ORIGIN_PARTITION:
+      case BrooklinEnvelopeMetadataConstants.SOURCE_PARTITION:
+        return String.valueOf(_partition);
+      case KAFKA_ORIGIN_OFFSET:
+        return String.valueOf(_offset);
+      case BrooklinEnvelopeMetadataConstants.EVENT_TIMESTAMP:
+        return _eventTimestamp == NO_TIMESTAMP ? null : String.valueOf(_eventTimestamp);
+      case BrooklinEnvelopeMetadataConstants.SOURCE_TIMESTAMP:
+        return _sourceTimestamp == NO_TIMESTAMP ? null : String.valueOf(_sourceTimestamp);
+      default:
+        return null;
+    }
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    Map<String, String> entries = _entries;
+    return entries != null ? entries.containsKey(key) : get(key) != null;
+  }
+
+  @Override
+  public String put(String key, String value) {
+    return getEntries().put(key, value);
+  }
+
+  @Override
+  public String remove(Object key) {
+    return getEntries().remove(key);
+  }
+
+  @Override
+  public void clear() {
+    getEntries().clear();
+  }
+
+  @Override
+  public Set<Entry<String, String>> entrySet() {
+    return getEntries().entrySet();
+  }
+
+  private Map<String, String> getEntries() {
+    Map<String, String> entries = _entries;
+    if (entries != null) {
+      return entries;
+    }
+    synchronized (this) {
+      if (_entries != null) {
+        return _entries;
+      }
+      entries = new HashMap<>();
+      entries.put(_originKey, _origin);
+      if (_topic != null) {
+        entries.put(KAFKA_ORIGIN_TOPIC, _topic);
+      }
+      String partition = String.valueOf(_partition);
+      entries.put(KAFKA_ORIGIN_PARTITION, partition);
+      entries.put(BrooklinEnvelopeMetadataConstants.SOURCE_PARTITION, partition);
+      entries.put(KAFKA_ORIGIN_OFFSET, String.valueOf(_offset));
+      if (_eventTimestamp != NO_TIMESTAMP) {
+        entries.put(BrooklinEnvelopeMetadataConstants.EVENT_TIMESTAMP, String.valueOf(_eventTimestamp));
+      }
+      if (_sourceTimestamp != NO_TIMESTAMP) {
+        entries.put(BrooklinEnvelopeMetadataConstants.SOURCE_TIMESTAMP, String.valueOf(_sourceTimestamp));
+      }
+      _entries = entries;
+      return entries;
+    }
+  }
+}
@@ -11,7 +11,10 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -27,6 +30,7 @@ import com.linkedin.datastream.avrogenerator.DatabaseSource;
 import com.linkedin.datastream.avrogenerator.SchemaGenerationException;
 import com.linkedin.datastream.common.DatastreamRuntimeException;
 import com.linkedin.datastream.common.ErrorLogger;
+import com.linkedin.datastream.common.databases.DatabaseColumnRecord;
 import com.linkedin.datastream.common.databases.DatabaseRow;
 import com.linkedin.datastream.metrics.BrooklinMetricInfo;
 
@@ -56,9 +60,17 @@ import com.linkedin.datastream.metrics.BrooklinMetricInfo;
  *  of the algorithm and the reader relies on the DatabaseSource to be able to supply that information accurately,
  *  along with the schema to read the records in. Query hints might also need to be provided in the inner query
  *  to ensure the indexes are being used for the queries and hence will be more performant.
+ *
+ *  Optionally, the chunks can be prefetched: a background thread then runs the chunked queries and reads their rows
+ *  into memory, so that the next query runs while the rows of the previous chunks are being polled. Since the keys of
+ *  the next query are those of the last row of the previous chunk, a chunk is queried once the previous one has been
+ *  read. The number of chunks prefetched ahead of the chunk being polled is bounded by the prefetch depth, and
+ *  prefetching pauses while the estimated size of the prefetched rows is above the configured limit. The background
+ *  thread then owns the connection of the reader, until the reader is closed.
  */
 public class DatabaseChunkedReader implements Closeable {
   private static final Logger LOG = LoggerFactory.getLogger(DatabaseChunkedReader.class);
+  private static final long PREFETCH_STOP_TIMEOUT_MS = 5000;
 
   private final DatabaseSource _databaseSource;
   private final Connection _connection;
@@ -79,6 +91,8 @@ public class DatabaseChunkedReader implements Closeable {
   private final String _table;
   private final ChunkedQueryManager _chunkedQueryManager;
   private final boolean _skipBadMessagesEnabled;
+  private final int _prefetchDepth;
+  private final long _prefetchMaxBytes;
 
   // Ordered list of keys and max values seen in previous query, needed for chunking.
   // The order is based on the index definition in the Database.
@@ -96,7 +110,13 @@ public class DatabaseChunkedReader implements Closeable {
   private DatabaseChunkedReaderMetrics _metrics;
 
   private long _statementExecutionDelayMs;
-  private long _lastStatementExecutionMs = 0;
+  // Updated by the prefetch thread when prefetching is enabled
+  private volatile long _lastStatementExecutionMs = 0;
+
+  private PrefetchQueue _prefetchQueue;
+  private Thread _prefetchThread;
+  private Iterator<DatabaseRow> _prefetchedRows;
+  private boolean _lastChunkPolled;
 
   /**
    * Create a DatabaseChunkedReader instance
@@ -127,6 +147,8 @@ public class DatabaseChunkedReader implements Closeable {
     _chunkedQueryManager = _databaseChunkedReaderConfig.getChunkedQueryManager();
     _skipBadMessagesEnabled = _databaseChunkedReaderConfig.getShouldSkipBadMessage();
     _statementExecutionDelayMs = _databaseChunkedReaderConfig.getStatementExecutionDelay();
+    _prefetchDepth = _databaseChunkedReaderConfig.getPrefetchDepth();
+    _prefetchMaxBytes = _databaseChunkedReaderConfig.getPrefetchMaxBytes();
 
     if (StringUtils.isBlank(db)) {
       _database = _connection.getMetaData().getUserName();
@@ -221,6 +243,8 @@ public class DatabaseChunkedReader implements Closeable {
   private void releaseResources(String msg) {
     LOG.info(msg);
     LOG.info("Releasing resources");
+    stopPrefetching();
+
     if (_queryResultSet != null) {
       try {
         _queryResultSet.close();
@@ -333,6 +357,10 @@ public class DatabaseChunkedReader implements Closeable {
       throw new DatastreamRuntimeException("Cannot poll on unsubscribed reader. Call subscribe() first");
     }
 
+    if (_prefetchDepth > 0) {
+      return pollPrefetched();
+    }
+
     if (_queryResultSet == null) {
       executeFirstChunkedQuery();
     }
@@ -358,6 +386,148 @@ public class DatabaseChunkedReader implements Closeable {
     return row;
   }
 
+  private DatabaseRow pollPrefetched() throws SQLException {
+    if (_prefetchThread == null) {
+      startPrefetching();
+    }
+
+    while (_prefetchedRows == null || !_prefetchedRows.hasNext()) {
+      if (_lastChunkPolled) {
+        return null;
+      }
+
+      long timeStart = System.currentTimeMillis();
+      PrefetchedChunk chunk;
+      try {
+        chunk = _prefetchQueue.take();
+      } catch (InterruptedException e) {
+        throw new DatastreamRuntimeException("Interrupted while waiting for the next prefetched chunk", e);
+      }
+      _metrics.updatePrefetchWaitDuration(System.currentTimeMillis() - timeStart);
+
+      _prefetchedRows = chunk._rows.iterator();
+      _lastChunkPolled = chunk._isLast;
+      if (chunk._error != null) {
+        rethrowPrefetchError(chunk._error);
+      }
+    }
+    return _prefetchedRows.next();
+  }
+
+  private void rethrowPrefetchError(Throwable error) throws SQLException {
+    if (error instanceof SQLException) {
+      throw (SQLException) error;
+    } else if (error instanceof RuntimeException) {
+      throw (RuntimeException) error;
+    } else if (error instanceof Error) {
+      throw (Error) error;
+    }
+    throw new DatastreamRuntimeException("Prefetching chunks failed for reader " + _readerId, error);
+  }
+
+  private void startPrefetching() {
+    LOG.info("Prefetching up to {} chunks or {} bytes for reader {}", _prefetchDepth, _prefetchMaxBytes, _readerId);
+    _prefetchQueue = new PrefetchQueue(_prefetchDepth, _prefetchMaxBytes);
+    _prefetchThread = new Thread(this::prefetchChunks, "DatabaseChunkedReader-prefetch-" + _readerId);
+    _prefetchThread.setDaemon(true);
+    _prefetchThread.start();
+  }
+
+  private void stopPrefetching() {
+    if (_prefetchThread == null) {
+      return;
+    }
+
+    _prefetchQueue.close();
+    _prefetchThread.interrupt();
+    try {
+      _prefetchThread.join(PREFETCH_STOP_TIMEOUT_MS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (_prefetchThread.isAlive()) {
+      LOG.warn("Prefetch thread of reader {} did not stop within {} ms", _readerId, PREFETCH_STOP_TIMEOUT_MS);
+    }
+    _prefetchThread = null;
+    _prefetchedRows = null;
+    _lastChunkPolled = false;
+  }
+
+  /**
+   * Run the chunked queries and queue their rows, until the end of the table, an error, or the reader is closed
+   */
+  private void prefetchChunks() {
+    boolean isLastChunkQueued = false;
+    Throwable error = null;
+    try {
+      executeFirstChunkedQuery();
+      while (true) {
+        PrefetchedChunk chunk = readChunk();
+        _metrics.updatePrefetchedChunkRate();
+        _prefetchQueue.add(chunk);
+        _metrics.updatePrefetchBufferedBytes(_prefetchQueue.getBufferedBytes());
+        if (chunk._isLast) {
+          isLastChunkQueued = true;
+          return;
+        }
+
+        long timeStart = System.currentTimeMillis();
+        if (!_prefetchQueue.awaitCapacity()) {
+          return;
+        }
+        _metrics.updatePrefetchPauseDuration(System.currentTimeMillis() - timeStart);
+
+        _numRowsInResult = 0;
+        executeNextChunkedQuery();
+      }
+    } catch (InterruptedException e) {
+      LOG.info("Prefetching interrupted for reader {}", _readerId);
+      error = e;
+    } catch (Throwable e) {
+      if (!_prefetchQueue.isClosed()) {
+        LOG.error("Prefetching chunks failed for reader " + _readerId, e);
+      }
+      error = e;
+    } finally {
+      // Always end the queue, so that the reader never waits for a chunk which is not coming
+      if (!isLastChunkQueued) {
+        _prefetchQueue.add(new PrefetchedChunk(Collections.emptyList(), 0, true, error != null ? error
+            : new DatastreamRuntimeException("Prefetching stopped for reader " + _readerId)));
+      }
+    }
+  }
+
+  private PrefetchedChunk readChunk() throws SQLException {
+    List<DatabaseRow> rows = new ArrayList<>();
+    long sizeBytes = 0;
+    while (_queryResultSet.next()) {
+      DatabaseRow row = getNextRow();
+      if (row != null) {
+        rows.add(row);
+        sizeBytes += estimateSizeBytes(row);
+      }
+    }
+    // If the query read less than requested chunks, we are at the end of the table.
+    return new PrefetchedChunk(rows, sizeBytes, _numRowsInResult < _rowCountLimit, null);
+  }
+
+  /**
+   * Rough estimate of the heap used by a row, only meant to bound the memory used by prefetching
+   */
+  private static long estimateSizeBytes(DatabaseRow row) {
+    long sizeBytes = 64;
+    for (DatabaseColumnRecord record : row.getRecords()) {
+      Object value = record.getValue();
+      sizeBytes += 64 + record.getColName().length() * 2;
+      if (value instanceof String) {
+        sizeBytes += ((String) value).length() * 2;
+      } else if (value instanceof byte[]) {
+        sizeBytes += ((byte[]) value).length;
+      }
+    }
+    return sizeBytes;
+  }
+
   public long getLastStatementExecutionMs() {
     return _lastStatementExecutionMs;
   }
@@ -372,4 +542,82 @@ public class DatabaseChunkedReader implements Closeable {
   public static List<BrooklinMetricInfo> getMetricInfos() {
     return DatabaseChunkedReaderMetrics.getMetricInfos();
   }
+
+  private static class PrefetchedChunk {
+    private final List<DatabaseRow> _rows;
+    private final long _sizeBytes;
+    private final boolean _isLast;
+    private final Throwable _error;
+
+    PrefetchedChunk(List<DatabaseRow> rows, long sizeBytes, boolean isLast, Throwable error) {
+      _rows = rows;
+      _sizeBytes = sizeBytes;
+      _isLast = isLast;
+      _error = error;
+    }
+  }
+
+  /**
+   * Chunks prefetched ahead of the chunk being polled, bounded by their number and by their estimated size
+   */
+  private static class PrefetchQueue {
+    private final int _maxChunks;
+    private final long _maxBytes;
+    private final ArrayDeque<PrefetchedChunk> _chunks = new ArrayDeque<>();
+    private long _bufferedBytes;
+    private boolean _closed;
+
+    PrefetchQueue(int maxChunks, long maxBytes) {
+      _maxChunks = maxChunks;
+      _maxBytes = maxBytes;
+    }
+
+    /**
+     * Wait until another chunk may be prefetched
+     * @return false if the queue was closed
+     */
+    synchronized boolean awaitCapacity() throws InterruptedException {
+      while (!_closed && (_chunks.size() >= _maxChunks || _bufferedBytes >= _maxBytes)) {
+        wait();
+      }
+      return !_closed;
+    }
+
+    synchronized void add(PrefetchedChunk chunk) {
+      if (_closed) {
+        return;
+      }
+      _chunks.add(chunk);
+      _bufferedBytes += chunk._sizeBytes;
+      notifyAll();
+    }
+
+    synchronized PrefetchedChunk take() throws InterruptedException {
+      while (_chunks.isEmpty()) {
+        if (_closed) {
+          throw new IllegalStateException("The prefetch queue is closed");
+        }
+        wait();
+      }
+      PrefetchedChunk chunk = _chunks.remove();
+      _bufferedBytes -= chunk._sizeBytes;
+      notifyAll();
+      return chunk;
+    }
+
+    synchronized long getBufferedBytes() {
+      return _bufferedBytes;
+    }
+
+    synchronized boolean isClosed() {
+      return _closed;
+    }
+
+    synchronized void close() {
+      _closed = true;
+      _chunks.clear();
+      _bufferedBytes = 0;
+      notifyAll();
+    }
+  }
 }
@@ -35,12 +35,19 @@ public class DatabaseChunkedReaderConfig {
   // only look for first 1000 matches that match the specified constraints and will do a full row fetch only for these.
   public static final String ROW_COUNT_LIMIT = "chunk.rowCountLimit";
   public static final String DATABASE_QUERY_MANAGER_CLASS_NAME = "database.queryManager";
+  // Max number of chunks to query ahead of the chunk being polled, on a background thread. 0 disables prefetching, in
+  // which case each chunk is queried by the poll which needs it.
+  public static final String PREFETCH_DEPTH = "prefetch.depth";
+  // Prefetching pauses while the estimated size of the prefetched rows is above this limit.
+  public static final String PREFETCH_MAX_BYTES = "prefetch.maxBytes";
   private static final Logger LOG = LoggerFactory.getLogger(DatabaseChunkedReaderConfig.class);
   private static final int DEFAULT_QUERY_TIMEOUT_SECS = 0;
   private static final int DEFAULT_FETCH_SIZE = 10000;
   private static final long DEFAULT_ROW_COUNT_LIMIT = 50000;
   private static final boolean DEFAULT_SKIP_BAD_MESSAGE = false;
   private static final long DEFAULT_STATEMENT_EXECUTION_DELAY = 0;
+  private static final int DEFAULT_PREFETCH_DEPTH = 0;
+  private static final long DEFAULT_PREFETCH_MAX_BYTES = 64 * 1024 * 1024;
 
   private final int _queryTimeout;
   private final int _fetchSize;
@@ -48,6 +55,8 @@ public class DatabaseChunkedReaderConfig {
   private ChunkedQueryManager _chunkedQueryManager;
   private final boolean _shouldSkipBadMessage;
   private final long _statementExecutionDelay;
+  private final int _prefetchDepth;
+  private final long _prefetchMaxBytes;
 
   /**
    * Constructor for DatabaseChunkedReaderConfig
@@ -66,6 +75,10 @@ public class DatabaseChunkedReaderConfig {
     Validate.inclusiveBetween(0, Long.MAX_VALUE, _fetchSize);
     _shouldSkipBadMessage = verifiableProperties.getBoolean(SKIP_BAD_MESSAGE, DEFAULT_SKIP_BAD_MESSAGE);
     _statementExecutionDelay = verifiableProperties.getLong(STATEMENT_EXECUTION_DELAY, DEFAULT_STATEMENT_EXECUTION_DELAY);
+    _prefetchDepth = verifiableProperties.getInt(PREFETCH_DEPTH, DEFAULT_PREFETCH_DEPTH);
+    Validate.inclusiveBetween(0, Integer.MAX_VALUE, _prefetchDepth);
+    _prefetchMaxBytes = verifiableProperties.getLong(PREFETCH_MAX_BYTES, DEFAULT_PREFETCH_MAX_BYTES);
+    Validate.inclusiveBetween(1, Long.MAX_VALUE, _prefetchMaxBytes);
 
     String queryManagerClass = verifiableProperties.getString(DATABASE_QUERY_MANAGER_CLASS_NAME);
     if (StringUtils.isBlank(queryManagerClass)) {
@@ -101,4 +114,12 @@ public class DatabaseChunkedReaderConfig {
   public long getStatementExecutionDelay() {
     return _statementExecutionDelay;
   }
+
+  public int getPrefetchDepth() {
+    return _prefetchDepth;
+  }
+
+  public long getPrefetchMaxBytes() {
+    return _prefetchMaxBytes;
+  }
 }
@@ -33,18 +33,32 @@ class DatabaseChunkedReaderMetrics extends BrooklinMetrics {
   private static final String QUERY_EXECUTION_DURATION = "queryExecutionDurationMs";
   private static final String QUERY_EXECUTION_RATE = "queryExecutionRate";
   private static final String ERROR_RATE = "errorRate";
+  private static final String PREFETCHED_CHUNK_RATE = "prefetchedChunkRate";
+  // Time polls spent waiting for the next chunk to be prefetched, which stays close to 0 while prefetching keeps ahead
+  private static final String PREFETCH_WAIT_DURATION = "prefetchWaitDurationMs";
+  // Time prefetching spent paused because the prefetch depth or memory limit was reached
+  private static final String PREFETCH_PAUSE_DURATION = "prefetchPauseDurationMs";
+  private static final String PREFETCH_BUFFERED_BYTES = "prefetchBufferedBytes";
 
   // Per reader metrics
   private final Histogram _readerQueryExecutionDurationMs;
   private final Meter _readerQueryExecutionRate;
   private final Meter _readerErrorRate;
   private final Meter _readerSkippedBadMessagesRate;
+  private final Meter _readerPrefetchedChunkRate;
+  private final Histogram _readerPrefetchWaitDurationMs;
+  private final Histogram _readerPrefetchPauseDurationMs;
+  private final Histogram _readerPrefetchBufferedBytes;
 
   // Per source aggregated metrics
   private final Histogram _sourceQueryExecutionDurationMs;
   private final Meter _sourceQueryExecutionRate;
   private final Meter _sourceErrorRate;
   private final Meter _sourceSkippedBadMessagesRate;
+  private final Meter _sourcePrefetchedChunkRate;
+  private final Histogram _sourcePrefetchWaitDurationMs;
+  private final Histogram _sourcePrefetchPauseDurationMs;
+  private final Histogram _sourcePrefetchBufferedBytes;
   private final String _source;
 
   /**
@@ -60,12 +74,23 @@ class DatabaseChunkedReaderMetrics extends BrooklinMetrics {
     _readerQueryExecutionRate = DYNAMIC_METRICS_MANAGER.registerMetric(CLASS_NAME, key, QUERY_EXECUTION_RATE, Meter.class);
     _readerErrorRate = DYNAMIC_METRICS_MANAGER.registerMetric(CLASS_NAME, key, ERROR_RATE, Meter.class);
     _readerSkippedBadMessagesRate = DYNAMIC_METRICS_MANAGER.registerMetric(CLASS_NAME, key, SKIPPED_BAD_MESSAGES_RATE, Meter.class);
+    _readerPrefetchedChunkRate = DYNAMIC_METRICS_MANAGER.registerMetric(CLASS_NAME, key, PREFETCHED_CHUNK_RATE, Meter.class);
+    _readerPrefetchWaitDurationMs = DYNAMIC_METRICS_MANAGER.registerMetric(CLASS_NAME, key, PREFETCH_WAIT_DURATION, Histogram.class);
+    _readerPrefetchPauseDurationMs = DYNAMIC_METRICS_MANAGER.registerMetric(CLASS_NAME, key, PREFETCH_PAUSE_DURATION, Histogram.class);
+    _readerPrefetchBufferedBytes = DYNAMIC_METRICS_MANAGER.registerMetric(CLASS_NAME, key, PREFETCH_BUFFERED_BYTES, Histogram.class);
 
     _sourceQueryExecutionDurationMs = DYNAMIC_METRICS_MANAGER.registerMetric(CLASS_NAME, source,
         QUERY_EXECUTION_DURATION, Histogram.class);
     _sourceQueryExecutionRate = DYNAMIC_METRICS_MANAGER.registerMetric(CLASS_NAME, source, QUERY_EXECUTION_RATE, Meter.class);
     _sourceErrorRate = DYNAMIC_METRICS_MANAGER.registerMetric(CLASS_NAME, source, ERROR_RATE, Meter.class);
     _sourceSkippedBadMessagesRate = DYNAMIC_METRICS_MANAGER.registerMetric(CLASS_NAME, source, SKIPPED_BAD_MESSAGES_RATE, Meter.class);
+    _sourcePrefetchedChunkRate = DYNAMIC_METRICS_MANAGER.registerMetric(CLASS_NAME, source, PREFETCHED_CHUNK_RATE, Meter.class);
+    _sourcePrefetchWaitDurationMs = DYNAMIC_METRICS_MANAGER.registerMetric(CLASS_NAME, source,
+        PREFETCH_WAIT_DURATION, Histogram.class);
+    _sourcePrefetchPauseDurationMs = DYNAMIC_METRICS_MANAGER.registerMetric(CLASS_NAME, source,
+        PREFETCH_PAUSE_DURATION, Histogram.class);
+    _sourcePrefetchBufferedBytes = DYNAMIC_METRICS_MANAGER.registerMetric(CLASS_NAME, source,
+        PREFETCH_BUFFERED_BYTES, Histogram.class);
   }
 
   @Override
@@ -75,6 +100,10 @@ class DatabaseChunkedReaderMetrics extends BrooklinMetrics {
     DYNAMIC_METRICS_MANAGER.unregisterMetric(_className, _key, QUERY_EXECUTION_RATE);
     DYNAMIC_METRICS_MANAGER.unregisterMetric(_className, _key, ERROR_RATE);
     DYNAMIC_METRICS_MANAGER.unregisterMetric(_className, _key, SKIPPED_BAD_MESSAGES_RATE);
+    DYNAMIC_METRICS_MANAGER.unregisterMetric(_className, _key, PREFETCHED_CHUNK_RATE);
+    DYNAMIC_METRICS_MANAGER.unregisterMetric(_className, _key, PREFETCH_WAIT_DURATION);
+    DYNAMIC_METRICS_MANAGER.unregisterMetric(_className, _key, PREFETCH_PAUSE_DURATION);
+    DYNAMIC_METRICS_MANAGER.unregisterMetric(_className, _key, PREFETCH_BUFFERED_BYTES);
   }
 
   @Override
@@ -83,6 +112,10 @@ class DatabaseChunkedReaderMetrics extends BrooklinMetrics {
     DYNAMIC_METRICS_MANAGER.unregisterMetric(_className, _source, QUERY_EXECUTION_RATE);
     DYNAMIC_METRICS_MANAGER.unregisterMetric(_className, _source, ERROR_RATE);
     DYNAMIC_METRICS_MANAGER.unregisterMetric(_className, _source, SKIPPED_BAD_MESSAGES_RATE);
+    DYNAMIC_METRICS_MANAGER.unregisterMetric(_className, _source, PREFETCHED_CHUNK_RATE);
+    DYNAMIC_METRICS_MANAGER.unregisterMetric(_className, _source, PREFETCH_WAIT_DURATION);
+    DYNAMIC_METRICS_MANAGER.unregisterMetric(_className, _source, PREFETCH_PAUSE_DURATION);
+    DYNAMIC_METRICS_MANAGER.unregisterMetric(_className, _source, PREFETCH_BUFFERED_BYTES);
   }
 
   static List<BrooklinMetricInfo> getMetricInfos() {
@@ -91,6 +124,10 @@ class DatabaseChunkedReaderMetrics extends BrooklinMetrics {
     metrics.add(new BrooklinMeterInfo(SOURCE_METRICS_PREFIX_REGEX + QUERY_EXECUTION_RATE));
     metrics.add(new BrooklinMeterInfo(SOURCE_METRICS_PREFIX_REGEX + ERROR_RATE));
     metrics.add(new BrooklinMeterInfo(SOURCE_METRICS_PREFIX_REGEX + SKIPPED_BAD_MESSAGES_RATE));
+    metrics.add(new BrooklinMeterInfo(SOURCE_METRICS_PREFIX_REGEX + PREFETCHED_CHUNK_RATE));
+    metrics.add(new BrooklinHistogramInfo(SOURCE_METRICS_PREFIX_REGEX + PREFETCH_WAIT_DURATION));
+    metrics.add(new BrooklinHistogramInfo(SOURCE_METRICS_PREFIX_REGEX + PREFETCH_PAUSE_DURATION));
+    metrics.add(new BrooklinHistogramInfo(SOURCE_METRICS_PREFIX_REGEX + PREFETCH_BUFFERED_BYTES));
 
     return Collections.unmodifiableList(metrics);
   }
@@ -122,4 +159,24 @@ class DatabaseChunkedReaderMetrics extends BrooklinMetrics {
   void updateSkipBadMessagesRate() {
     updateSkipBadMessagesRate(1);
   }
+
+  void updatePrefetchedChunkRate() {
+    _readerPrefetchedChunkRate.mark();
+    _sourcePrefetchedChunkRate.mark();
+  }
+
+  void updatePrefetchWaitDuration(long waitDurationMs) {
+    _readerPrefetchWaitDurationMs.update(waitDurationMs);
+    _sourcePrefetchWaitDurationMs.update(waitDurationMs);
+  }
+
+  void updatePrefetchPauseDuration(long pauseDurationMs) {
+    _readerPrefetchPauseDurationMs.update(pauseDurationMs);
+    _sourcePrefetchPauseDurationMs.update(pauseDurationMs);
+  }
+
+  void updatePrefetchBufferedBytes(long bufferedBytes) {
+    _readerPrefetchBufferedBytes.update(bufferedBytes);
+    _sourcePrefetchBufferedBytes.update(bufferedBytes);
+  }
 }
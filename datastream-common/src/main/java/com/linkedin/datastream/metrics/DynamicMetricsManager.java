@@ -5,9 +5,20 @@
  */
 package com.linkedin.datastream.metrics;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 import java.util.function.Supplier;
 import javax.annotation.Nullable;
 
@@ -21,6 +32,7 @@ import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.Metric;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Reservoir;
 import com.codahale.metrics.SlidingTimeWindowArrayReservoir;
 import com.codahale.metrics.Timer;
 
@@ -30,6 +42,8 @@ import com.codahale.metrics.Timer;
  */
 public class DynamicMetricsManager {
   static final String NO_KEY_PLACEHOLDER = "NO_KEY";
+  static final String EVICTED_METRIC_KEYS = "evictedMetricKeys";
+  private static final String CLASS_NAME = DynamicMetricsManager.class.getSimpleName();
   private static final Logger LOG = LoggerFactory.getLogger(DynamicMetricsManager.class);
   private static DynamicMetricsManager _instance = null;
   // Metrics indexed by simple class name, key (if exists), and metric name
@@ -41,19 +55,26 @@ public class DynamicMetricsManager {
   //   would be stored in the cache as: LiKafkaTransportProvider -> NO_KEY -> errorRate -> Meter object
   // The map helps reducing contention on the internal map of MetricRegistry. The multiple levels of indexing by each
   // part of the full metric name helps to avoid too many String concatenations, which impacts performance.
-  // This is created solely for the createOrUpdate APIs, not by registerMetric because the former can be called
-  // repeatedly to update the metric whereas the latter is typically only called once per metric during initialization.
+  // This is created solely for the createOrUpdate and handle APIs, not by registerMetric because the former can be
+  // called repeatedly to update the metric whereas the latter is typically only called once per metric during
+  // initialization.
   private final ConcurrentHashMap<String, ConcurrentHashMap<String, ConcurrentHashMap<String, Metric>>> _indexedMetrics;
 
   // Map to maintain the ref count for the registered metric. When the ref count becomes zero or if the key is not present,
   // the metric can be deregistered.
   private final ConcurrentHashMap<String, Integer> _registeredMetricRefCount;
+
+  // Tracked keys and key limits by simple class name (i.e. metric family)
+  private final ConcurrentHashMap<String, MetricKeyFamily> _keyFamilies;
+  // Evicts the idle keys of the families with a max idle time, created when the first such family is configured
+  private ScheduledExecutorService _idleKeySweeper;
   private MetricRegistry _metricRegistry;
 
   private DynamicMetricsManager(MetricRegistry metricRegistry) {
     _metricRegistry = metricRegistry;
     _indexedMetrics = new ConcurrentHashMap<>();
     _registeredMetricRefCount = new ConcurrentHashMap<>();
+    _keyFamilies = new ConcurrentHashMap<>();
   }
 
   /**
@@ -83,6 +104,8 @@ public class DynamicMetricsManager {
         // if we swap it out behind the scene.
         _instance._metricRegistry = metricRegistry;
         _instance._indexedMetrics.clear();
+        _instance._keyFamilies.values().forEach(family -> family.setLimit(Integer.MAX_VALUE, 0));
+        _instance._keyFamilies.clear();
 
         LOG.info("Returning the instance for unit test {}.", testName);
       }
@@ -102,17 +125,45 @@ public class DynamicMetricsManager {
   }
 
   Optional<Metric> checkCache(String simpleClassName, String key, String metric) {
-    String keyIndex = key == null ? NO_KEY_PLACEHOLDER : key;
-    return Optional.of(getClassMetrics(simpleClassName))
-        .map(classMetrics -> classMetrics.get(keyIndex))
-        .map(keyMetrics -> keyMetrics.get(metric));
+    return Optional.ofNullable(getCachedMetric(simpleClassName, key, metric));
+  }
+
+  private Metric getCachedMetric(String simpleClassName, String key, String metricName) {
+    ConcurrentHashMap<String, ConcurrentHashMap<String, Metric>> classMetrics = _indexedMetrics.get(simpleClassName);
+    if (classMetrics == null) {
+      return null;
+    }
+    ConcurrentHashMap<String, Metric> keyMetrics = classMetrics.get(key == null ? NO_KEY_PLACEHOLDER : key);
+    return keyMetrics == null ? null : keyMetrics.get(metricName);
+  }
+
+  /**
+   * Get the metric for the specified class/key/metricName from the cache, after validating the arguments
+   */
+  @SuppressWarnings("unchecked")
+  private <T extends Metric> T getValidatedCachedMetric(String classSimpleName, String key, String metricName) {
+    validateArguments(classSimpleName, metricName);
+    return (T) getCachedMetric(classSimpleName, key, metricName);
   }
 
-  private void updateCache(String simpleClassName, String key, String metricName, Metric metric) {
+  /**
+   * Create the metric for the specified class/key/metricName through the given factory, which is passed the
+   * fully-qualified metric name, and cache it. The handle APIs only build the factory on a cache miss, so that
+   * resolving a cached metric doesn't allocate. The metric is created and cached under the lock of its key in the
+   * index, so that the eviction of the key can't remove it from the registry once it has been cached.
+   */
+  @SuppressWarnings("unchecked")
+  private <T extends Metric> T createCachedMetric(String classSimpleName, String key, String metricName,
+      Function<String, T> factory) {
     String keyIndex = key == null ? NO_KEY_PLACEHOLDER : key;
-    ConcurrentHashMap<String, Metric> keyMetrics =
-        getClassMetrics(simpleClassName).computeIfAbsent(keyIndex, k -> new ConcurrentHashMap<>());
-    keyMetrics.put(metricName, metric);
+    Metric[] metric = new Metric[1];
+    getClassMetrics(classSimpleName).compute(keyIndex, (k, keyMetrics) -> {
+      ConcurrentHashMap<String, Metric> newKeyMetrics = keyMetrics != null ? keyMetrics : new ConcurrentHashMap<>();
+      metric[0] = factory.apply(MetricRegistry.name(classSimpleName, key, metricName));
+      newKeyMetrics.put(metricName, metric[0]);
+      return newKeyMetrics;
+    });
+    return (T) metric[0];
   }
 
   private ConcurrentHashMap<String, ConcurrentHashMap<String, Metric>> getClassMetrics(String simpleClassName) {
@@ -265,15 +316,7 @@ public class DynamicMetricsManager {
    * @param value amount to increment the counter by (use negative value to decrement)
    */
   public void createOrUpdateCounter(String classSimpleName, String key, String metricName, long value) {
-    validateArguments(classSimpleName, metricName);
-
-    // create and register the metric if it does not exist
-    Counter counter = (Counter) checkCache(classSimpleName, key, metricName).orElseGet(() -> {
-      Counter newCounter = _metricRegistry.counter(MetricRegistry.name(classSimpleName, key, metricName));
-      updateCache(classSimpleName, key, metricName, newCounter);
-      return newCounter;
-    });
-    counter.inc(value);
+    registerCounterHandle(classSimpleName, key, metricName).inc(value);
   }
 
   /**
@@ -295,15 +338,7 @@ public class DynamicMetricsManager {
    * @param value the value to mark on the meter
    */
   public void createOrUpdateMeter(String classSimpleName, String key, String metricName, long value) {
-    validateArguments(classSimpleName, metricName);
-
-    // create and register the metric if it does not exist
-    Meter meter = (Meter) checkCache(classSimpleName, key, metricName).orElseGet(() -> {
-      Meter newMeter = _metricRegistry.meter(MetricRegistry.name(classSimpleName, key, metricName));
-      updateCache(classSimpleName, key, metricName, newMeter);
-      return newMeter;
-    });
-    meter.mark(value);
+    registerMeterHandle(classSimpleName, key, metricName).mark(value);
   }
 
   /**
@@ -316,14 +351,14 @@ public class DynamicMetricsManager {
     createOrUpdateMeter(classSimpleName, null, metricName, value);
   }
 
-  // This function should only be called after "checkCache". So using "synchronized" shouldn't be a problem. The race
+  // This function should only be called after "getCachedMetric". So using "synchronized" shouldn't be a problem. The race
   // will only happen briefly after the process starts and before the cache is populated.
-  private synchronized Histogram registerAndGetSlidingWindowHistogram(String fullMetricName, long windowTimeMs) {
-    Histogram histogram = new Histogram(new SlidingTimeWindowArrayReservoir(windowTimeMs, TimeUnit.MILLISECONDS));
+  private synchronized Histogram registerAndGetHistogram(String fullMetricName, Supplier<Reservoir> reservoirSupplier) {
+    Histogram histogram = new Histogram(reservoirSupplier.get());
     try {
       return _metricRegistry.register(fullMetricName, histogram);
     } catch (IllegalArgumentException e) {
-      // This could happen when multiple threads call createOrUpdateSlidingWindowHistogram simultaneously
+      // This could happen when multiple threads call createOrUpdate*SlidingWindowHistogram simultaneously
       // In that case the line below will just return the one that got registered first.
       return _metricRegistry.histogram(fullMetricName);
     }
@@ -342,14 +377,24 @@ public class DynamicMetricsManager {
    */
   public void createOrUpdateSlidingWindowHistogram(String classSimpleName, String key, String metricName,
       long windowTimeMs, long value) {
-    validateArguments(classSimpleName, metricName);
-    Histogram histogram = (Histogram) checkCache(classSimpleName, key, metricName).orElseGet(() -> {
-      Histogram newHistogram =
-          registerAndGetSlidingWindowHistogram(MetricRegistry.name(classSimpleName, key, metricName), windowTimeMs);
-      updateCache(classSimpleName, key, metricName, newHistogram);
-      return newHistogram;
-    });
-    histogram.update(value);
+    registerSlidingWindowHistogramHandle(classSimpleName, key, metricName, windowTimeMs).update(value);
+  }
+
+  /**
+   * Update the histogram (or creates it if it does not exist) for the specified key/metricName pair by the given value.
+   * If the histogram does not exist, create one using {@link SlidingTimeWindowBucketReservoir} with the specified
+   * window time in ms. Unlike {@link #createOrUpdateSlidingWindowHistogram(String, String, String, long, long)}, the
+   * memory used by the histogram and the cost of taking a snapshot of it do not grow with the update rate, at the
+   * cost of ~3% relative error on the reported values, which makes it suitable for high-throughput latency metrics.
+   * @param classSimpleName the simple name of the underlying class
+   * @param key the key (i.e. topic or partition) for the metric
+   * @param metricName the metric name
+   * @param windowTimeMs the length of the window time in ms
+   * @param value the value to update on the histogram
+   */
+  public void createOrUpdateBucketedSlidingWindowHistogram(String classSimpleName, String key, String metricName,
+      long windowTimeMs, long value) {
+    registerBucketedSlidingWindowHistogramHandle(classSimpleName, key, metricName, windowTimeMs).update(value);
   }
 
   /**
@@ -360,14 +405,7 @@ public class DynamicMetricsManager {
    * @param value the value to update on the histogram
    */
   public void createOrUpdateHistogram(String classSimpleName, String key, String metricName, long value) {
-    validateArguments(classSimpleName, metricName);
-    // create and register the metric if it does not exist
-    Histogram histogram = (Histogram) checkCache(classSimpleName, key, metricName).orElseGet(() -> {
-      Histogram newHistogram = _metricRegistry.histogram(MetricRegistry.name(classSimpleName, key, metricName));
-      updateCache(classSimpleName, key, metricName, newHistogram);
-      return newHistogram;
-    });
-    histogram.update(value);
+    registerHistogramHandle(classSimpleName, key, metricName).update(value);
   }
 
   /**
@@ -380,6 +418,193 @@ public class DynamicMetricsManager {
     createOrUpdateHistogram(classSimpleName, null, metricName, value);
   }
 
+  /**
+   * Get a handle to the counter (or create it if it does not exist) for the specified key/metricName pair. This is
+   * the same counter updated by {@link #createOrUpdateCounter(String, String, String, long)}, so callers on hot paths
+   * can resolve it once and update it directly instead of looking it up on every update.
+   * @param classSimpleName the simple name of the underlying class
+   * @param key the key (i.e. topic or partition) for the metric
+   * @param metricName the metric name
+   * @return the counter bound to the specified key/metricName pair
+   */
+  public Counter registerCounterHandle(String classSimpleName, String key, String metricName) {
+    Counter counter = getValidatedCachedMetric(classSimpleName, key, metricName);
+    return counter != null ? counter : createCachedMetric(classSimpleName, key, metricName, _metricRegistry::counter);
+  }
+
+  /**
+   * Get a handle to the counter (or create it if it does not exist) for the specified metricName.
+   * @see #registerCounterHandle(String, String, String)
+   */
+  public Counter registerCounterHandle(String classSimpleName, String metricName) {
+    return registerCounterHandle(classSimpleName, null, metricName);
+  }
+
+  /**
+   * Get a handle to the meter (or create it if it does not exist) for the specified key/metricName pair. This is
+   * the same meter updated by {@link #createOrUpdateMeter(String, String, String, long)}, so callers on hot paths
+   * can resolve it once and update it directly instead of looking it up on every update.
+   * @param classSimpleName the simple name of the underlying class
+   * @param key the key (i.e. topic or partition) for the metric
+   * @param metricName the metric name
+   * @return the meter bound to the specified key/metricName pair
+   */
+  public Meter registerMeterHandle(String classSimpleName, String key, String metricName) {
+    Meter meter = getValidatedCachedMetric(classSimpleName, key, metricName);
+    return meter != null ? meter : createCachedMetric(classSimpleName, key, metricName, _metricRegistry::meter);
+  }
+
+  /**
+   * Get a handle to the meter (or create it if it does not exist) for the specified metricName.
+   * @see #registerMeterHandle(String, String, String)
+   */
+  public Meter registerMeterHandle(String classSimpleName, String metricName) {
+    return registerMeterHandle(classSimpleName, null, metricName);
+  }
+
+  /**
+   * Get a handle to the histogram (or create it if it does not exist) for the specified key/metricName pair. This is
+   * the same histogram updated by {@link #createOrUpdateHistogram(String, String, String, long)}, so callers on hot
+   * paths can resolve it once and update it directly instead of looking it up on every update.
+   * @param classSimpleName the simple name of the underlying class
+   * @param key the key (i.e. topic or partition) for the metric
+   * @param metricName the metric name
+   * @return the histogram bound to the specified key/metricName pair
+   */
+  public Histogram registerHistogramHandle(String classSimpleName, String key, String metricName) {
+    Histogram histogram = getValidatedCachedMetric(classSimpleName, key, metricName);
+    return histogram != null ? histogram
+        : createCachedMetric(classSimpleName, key, metricName, _metricRegistry::histogram);
+  }
+
+  /**
+   * Get a handle to the sliding window histogram (or create it if it does not exist) for the specified
+   * key/metricName pair. This is the same histogram updated by
+   * {@link #createOrUpdateSlidingWindowHistogram(String, String, String, long, long)}, so callers on hot paths can
+   * resolve it once and update it directly instead of looking it up on every update.
+   * @param classSimpleName the simple name of the underlying class
+   * @param key the key (i.e. topic or partition) for the metric
+   * @param metricName the metric name
+   * @param windowTimeMs the length of the window time in ms
+   * @return the histogram bound to the specified key/metricName pair
+   */
+  public Histogram registerSlidingWindowHistogramHandle(String classSimpleName, String key, String metricName,
+      long windowTimeMs) {
+    Histogram histogram = getValidatedCachedMetric(classSimpleName, key, metricName);
+    return histogram != null ? histogram : createCachedMetric(classSimpleName, key, metricName,
+        name -> registerAndGetHistogram(name,
+            () -> new SlidingTimeWindowArrayReservoir(windowTimeMs, TimeUnit.MILLISECONDS)));
+  }
+
+  /**
+   * Get a handle to the bucketed sliding window histogram (or create it if it does not exist) for the specified
+   * key/metricName pair. This is the same histogram updated by
+   * {@link #createOrUpdateBucketedSlidingWindowHistogram(String, String, String, long, long)}.
+   * @param classSimpleName the simple name of the underlying class
+   * @param key the key (i.e. topic or partition) for the metric
+   * @param metricName the metric name
+   * @param windowTimeMs the length of the window time in ms
+   * @return the histogram bound to the specified key/metricName pair
+   */
+  public Histogram registerBucketedSlidingWindowHistogramHandle(String classSimpleName, String key, String metricName,
+      long windowTimeMs) {
+    Histogram histogram = getValidatedCachedMetric(classSimpleName, key, metricName);
+    return histogram != null ? histogram : createCachedMetric(classSimpleName, key, metricName,
+        name -> registerAndGetHistogram(name,
+            () -> new SlidingTimeWindowBucketReservoir(windowTimeMs, TimeUnit.MILLISECONDS)));
+  }
+
+  /**
+   * Limit the number of keys of a metric family whose metrics are kept, to bound the memory used by families keyed by
+   * an unbounded set of values (e.g. topic names) and the number of metrics exposed to reporters. Only keys tracked
+   * through {@link #trackKey(String, String)} count against the limit and can be evicted. When a key is tracked and
+   * the family is over its limit, the least recently used keys are evicted. Keys that have not been used for longer
+   * than the max idle time are evicted as well, by a background sweep which runs once per max idle time, so a key is
+   * evicted after being idle for one to two max idle times. Evicting a key unregisters all the metrics created for it through the
+   * createOrUpdate and handle APIs (unless they are also registered through registerMetric) and increments the
+   * {@value #EVICTED_METRIC_KEYS} counter of the family.
+   * @param classSimpleName the simple name of the underlying class, which identifies the metric family
+   * @param maxKeys the max number of tracked keys
+   * @param maxIdleMs the time after which an unused key is evicted, or 0 to only evict keys when over the limit
+   */
+  public void setKeyLimit(String classSimpleName, int maxKeys, long maxIdleMs) {
+    Validate.notNull(classSimpleName, "classSimpleName argument is null.");
+    Validate.isTrue(maxKeys > 0, "maxKeys must be positive");
+    Validate.isTrue(maxIdleMs >= 0, "maxIdleMs must not be negative");
+    getKeyFamily(classSimpleName).setLimit(maxKeys, maxIdleMs);
+  }
+
+  /**
+   * Track a key of a metric family so that it counts against the key limit of the family, if any. This should be
+   * called before resolving the handles of the metrics of the key, and again (to resolve new handles) once the
+   * returned key has been evicted.
+   * @param classSimpleName the simple name of the underlying class, which identifies the metric family
+   * @param key the key (i.e. topic or partition) for the metrics
+   * @return the tracked key, which is shared by all the callers tracking the same key until it is evicted
+   */
+  public TrackedMetricKey trackKey(String classSimpleName, String key) {
+    Validate.notNull(classSimpleName, "classSimpleName argument is null.");
+    Validate.notNull(key, "key argument is null.");
+    return getKeyFamily(classSimpleName).track(key);
+  }
+
+  /**
+   * Get the number of keys of the metric family that have been evicted so far. Callers caching handles for many keys
+   * can use it to find out when to drop the handles of evicted keys.
+   * @param classSimpleName the simple name of the underlying class, which identifies the metric family
+   */
+  public long getNumEvictedKeys(String classSimpleName) {
+    MetricKeyFamily family = _keyFamilies.get(classSimpleName);
+    return family == null ? 0 : family._numEvictedKeys.get();
+  }
+
+  private synchronized ScheduledFuture<?> scheduleIdleKeySweep(MetricKeyFamily family, long periodMs) {
+    if (_idleKeySweeper == null) {
+      _idleKeySweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "DynamicMetricsManager-idleKeySweeper");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return _idleKeySweeper.scheduleWithFixedDelay(() -> {
+      try {
+        family.evictIdleKeys();
+      } catch (Exception e) {
+        LOG.warn("Failed to evict the idle metric keys of {}", family._classSimpleName, e);
+      }
+    }, periodMs, periodMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Get the metrics reported by DynamicMetricsManager itself, i.e. the number of evicted keys of each metric family
+   */
+  public static List<BrooklinMetricInfo> getMetricInfos() {
+    return Collections.singletonList(new BrooklinCounterInfo(CLASS_NAME + MetricsAware.KEY_REGEX + EVICTED_METRIC_KEYS));
+  }
+
+  private MetricKeyFamily getKeyFamily(String classSimpleName) {
+    MetricKeyFamily family = _keyFamilies.get(classSimpleName);
+    return family != null ? family : _keyFamilies.computeIfAbsent(classSimpleName, MetricKeyFamily::new);
+  }
+
+  // Remove all the metrics of the key from the index and the registry, except the ones still referenced through
+  // registerMetric. This is done under the lock of the key in the index, like the creation of the metrics of the key,
+  // so that a metric created concurrently is either removed with the others or created again after the eviction.
+  private void removeKeyMetrics(String classSimpleName, String key) {
+    ConcurrentHashMap<String, ConcurrentHashMap<String, Metric>> classMetrics = _indexedMetrics.get(classSimpleName);
+    if (classMetrics != null) {
+      classMetrics.computeIfPresent(key, (k, keyMetrics) -> {
+        for (String metricName : keyMetrics.keySet()) {
+          String fullMetricName = MetricRegistry.name(classSimpleName, key, metricName);
+          if (!_registeredMetricRefCount.containsKey(fullMetricName)) {
+            _metricRegistry.remove(fullMetricName);
+          }
+        }
+        return null;
+      });
+    }
+  }
+
   /**
    * Get the metric object by name of the specified type based on return value.
    * Currently only used by test cases.
@@ -400,4 +625,115 @@ public class DynamicMetricsManager {
   public MetricRegistry getMetricRegistry() {
     return _metricRegistry;
   }
+
+  /**
+   * The tracked keys of a metric family and its key limit
+   */
+  private final class MetricKeyFamily {
+    private final String _classSimpleName;
+    // Guarded by this
+    private final Map<String, TrackedMetricKey> _trackedKeys = new HashMap<>();
+    // Number of the tracked keys whose eviction is in progress
+    private int _numEvictingKeys = 0;
+    private int _maxKeys = Integer.MAX_VALUE;
+    private long _maxIdleMs = 0;
+    private ScheduledFuture<?> _idleKeySweep;
+    private final AtomicLong _numEvictedKeys = new AtomicLong(0);
+    private final AtomicLong _epoch = new AtomicLong(0);
+    private long _epochAtLastIdleCheck = 0;
+
+    MetricKeyFamily(String classSimpleName) {
+      _classSimpleName = classSimpleName;
+    }
+
+    synchronized void setLimit(int maxKeys, long maxIdleMs) {
+      _maxKeys = maxKeys;
+      if (maxIdleMs != _maxIdleMs) {
+        _maxIdleMs = maxIdleMs;
+        if (_idleKeySweep != null) {
+          _idleKeySweep.cancel(false);
+          _idleKeySweep = null;
+        }
+        if (maxIdleMs > 0) {
+          _epochAtLastIdleCheck = _epoch.incrementAndGet();
+          _idleKeySweep = scheduleIdleKeySweep(this, maxIdleMs);
+        }
+      }
+    }
+
+    TrackedMetricKey track(String key) {
+      TrackedMetricKey trackedKey;
+      List<TrackedMetricKey> evictedKeys = new ArrayList<>();
+      synchronized (this) {
+        trackedKey = _trackedKeys.get(key);
+        if (trackedKey == null) {
+          // Start a new epoch so that keys accessed from now on are more recent than the keys accessed so far
+          _epoch.incrementAndGet();
+          trackedKey = new TrackedMetricKey(key, _epoch);
+          _trackedKeys.put(key, trackedKey);
+        }
+        trackedKey.touch();
+
+        if (_trackedKeys.size() - _numEvictingKeys > _maxKeys) {
+          // Evict down to 90% of the limit so that the least recently used keys are not looked up on every new key
+          int numKeysToEvict = _trackedKeys.size() - _numEvictingKeys - (_maxKeys - _maxKeys / 10);
+          List<TrackedMetricKey> candidates = new ArrayList<>(_trackedKeys.values());
+          candidates.remove(trackedKey);
+          candidates.removeIf(TrackedMetricKey::isEvicting);
+          candidates.sort(Comparator.comparingLong(TrackedMetricKey::getLastAccessEpoch));
+          evictedKeys.addAll(candidates.subList(0, Math.min(numKeysToEvict, candidates.size())));
+          evictedKeys.forEach(TrackedMetricKey::startEviction);
+          _numEvictingKeys += evictedKeys.size();
+        }
+      }
+
+      evict(evictedKeys);
+      return trackedKey;
+    }
+
+    /**
+     * Evict the keys which were not accessed since the previous check, i.e. which have been idle for at least the
+     * max idle time
+     */
+    void evictIdleKeys() {
+      List<TrackedMetricKey> evictedKeys = new ArrayList<>();
+      synchronized (this) {
+        for (TrackedMetricKey candidate : _trackedKeys.values()) {
+          if (candidate.getLastAccessEpoch() < _epochAtLastIdleCheck && !candidate.isEvicting()) {
+            candidate.startEviction();
+            evictedKeys.add(candidate);
+          }
+        }
+        _numEvictingKeys += evictedKeys.size();
+        _epochAtLastIdleCheck = _epoch.incrementAndGet();
+      }
+
+      evict(evictedKeys);
+    }
+
+    /**
+     * Remove the metrics of the keys, then stop tracking them. The keys are still tracked while their metrics are
+     * removed, so the family lock isn't held while unregistering metrics, and a caller tracking one of them meanwhile
+     * gets the key being evicted, whose metrics it resolves again once the eviction completes.
+     */
+    private void evict(List<TrackedMetricKey> evictedKeys) {
+      if (evictedKeys.isEmpty()) {
+        return;
+      }
+
+      evictedKeys.forEach(evictedKey -> removeKeyMetrics(_classSimpleName, evictedKey.getKey()));
+      synchronized (this) {
+        for (TrackedMetricKey evictedKey : evictedKeys) {
+          _trackedKeys.remove(evictedKey.getKey(), evictedKey);
+          evictedKey.evict();
+        }
+        _numEvictingKeys -= evictedKeys.size();
+      }
+
+      _numEvictedKeys.addAndGet(evictedKeys.size());
+      createOrUpdateCounter(CLASS_NAME, _classSimpleName, EVICTED_METRIC_KEYS, evictedKeys.size());
+      LOG.info("Evicted {} metric keys of {}: {}", evictedKeys.size(), _classSimpleName,
+          evictedKeys.size() > 10 ? evictedKeys.subList(0, 10) + "..." : evictedKeys);
+    }
+  }
 }
@@ -0,0 +1,325 @@
+/**
+ *  Copyright 2019 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.metrics;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.commons.lang.Validate;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+
+
+/**
+ * A {@link Reservoir} that keeps the values recorded within a sliding time window in bounded memory.
+ *
+ * Unlike {@link com.codahale.metrics.SlidingTimeWindowArrayReservoir}, which stores every sample and sorts them on
+ * every snapshot, values are counted in log-linear buckets (in the style of HdrHistogram): values below
+ * {@value #SUB_BUCKET_COUNT} are counted exactly and larger values are counted in buckets whose width is at most
+ * 1/{@value #SUB_BUCKET_COUNT} of their magnitude, so every statistic of a snapshot is within ~3% of the exact one.
+ * Recording a value is a constant-time counter increment regardless of the throughput.
+ *
+ * The window is split into a fixed number of slices that are recycled as time passes, so the window advances in
+ * steps of one slice: a snapshot covers the values recorded in the current slice and the slices before it that are
+ * still within the window. Memory is only allocated for slices that have values recorded in them and, within a slice,
+ * for the groups of {@value #SUB_BUCKET_COUNT} buckets covering the powers of two that have values recorded in them
+ * (~150 bytes each). Latencies spanning a few orders of magnitude thus take a few KB per reservoir, rather than the
+ * ~28 KB all the buckets of all the slices would take.
+ *
+ * Negative values are recorded as zero and values larger than {@link #MAX_TRACKABLE_VALUE} are recorded as
+ * {@link #MAX_TRACKABLE_VALUE}.
+ */
+public class SlidingTimeWindowBucketReservoir implements Reservoir {
+  static final int DEFAULT_NUM_SLICES = 6;
+
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  // Values are tracked up to 2^41 - 1, which is more than 69 years when recording latencies in milliseconds
+  private static final int MAX_EXPONENT = 40;
+  private static final int NUM_BUCKET_GROUPS = MAX_EXPONENT - SUB_BUCKET_BITS + 2;
+  private static final int NUM_BUCKETS = NUM_BUCKET_GROUPS * SUB_BUCKET_COUNT;
+
+  static final long MAX_TRACKABLE_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+  private final Clock _clock;
+  private final long _sliceDurationMs;
+  private final int _numSlices;
+  private final AtomicReferenceArray<Slice> _slices;
+
+  /**
+   * Construct a reservoir that keeps the values recorded within the given window
+   * @param window the length of the window
+   * @param windowUnit the unit of the window length
+   */
+  public SlidingTimeWindowBucketReservoir(long window, TimeUnit windowUnit) {
+    this(window, windowUnit, DEFAULT_NUM_SLICES, Clock.defaultClock());
+  }
+
+  /**
+   * Construct a reservoir that keeps the values recorded within the given window
+   * @param window the length of the window
+   * @param windowUnit the unit of the window length
+   * @param numSlices the number of slices the window is split into
+   * @param clock the clock used to determine the slice values are recorded in
+   */
+  public SlidingTimeWindowBucketReservoir(long window, TimeUnit windowUnit, int numSlices, Clock clock) {
+    Validate.isTrue(numSlices > 0, "numSlices must be positive");
+    Validate.notNull(clock, "null clock");
+    long windowMs = windowUnit.toMillis(window);
+    Validate.isTrue(windowMs > 0, "window must be at least 1 ms");
+
+    _clock = clock;
+    _numSlices = numSlices;
+    _sliceDurationMs = Math.max(1, (windowMs + numSlices - 1) / numSlices);
+    _slices = new AtomicReferenceArray<>(numSlices);
+  }
+
+  @Override
+  public int size() {
+    return getSnapshot().size();
+  }
+
+  @Override
+  public void update(long value) {
+    long epoch = _clock.getTime() / _sliceDurationMs;
+    int slot = (int) (epoch % _numSlices);
+    Slice slice = _slices.get(slot);
+    while (slice == null || slice._epoch < epoch) {
+      // The slot still holds an expired slice (or none at all); replace it with a fresh one. If another thread beat
+      // us to it, use the slice it installed.
+      Slice newSlice = new Slice(epoch);
+      if (_slices.compareAndSet(slot, slice, newSlice)) {
+        slice = newSlice;
+      } else {
+        slice = _slices.get(slot);
+      }
+    }
+    // A slice for a newer epoch can only be found here if this thread was delayed past the end of its slice. The value
+    // is then counted in the newer slice, which keeps it within the window.
+    slice.increment(getBucketIndex(value));
+  }
+
+  @Override
+  public Snapshot getSnapshot() {
+    long oldestEpoch = _clock.getTime() / _sliceDurationMs - _numSlices + 1;
+    long[] counts = new long[NUM_BUCKETS];
+    for (int i = 0; i < _numSlices; i++) {
+      Slice slice = _slices.get(i);
+      if (slice != null && slice._epoch >= oldestEpoch) {
+        slice.addCounts(counts);
+      }
+    }
+    return new BucketSnapshot(counts);
+  }
+
+  // The number of bucket groups allocated by the slices, whether or not they are still within the window
+  int getNumAllocatedBucketGroups() {
+    int numGroups = 0;
+    for (int i = 0; i < _numSlices; i++) {
+      Slice slice = _slices.get(i);
+      if (slice != null) {
+        numGroups += slice.getNumAllocatedGroups();
+      }
+    }
+    return numGroups;
+  }
+
+  static int getBucketIndex(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return value < 0 ? 0 : (int) value;
+    }
+    long clampedValue = Math.min(value, MAX_TRACKABLE_VALUE);
+    int shift = (63 - Long.numberOfLeadingZeros(clampedValue)) - SUB_BUCKET_BITS;
+    return (shift + 1) * SUB_BUCKET_COUNT + (int) ((clampedValue >>> shift) - SUB_BUCKET_COUNT);
+  }
+
+  static long getLowestValue(int bucketIndex) {
+    int shift = bucketIndex / SUB_BUCKET_COUNT - 1;
+    if (shift < 0) {
+      return bucketIndex;
+    }
+    return (long) (bucketIndex % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT) << shift;
+  }
+
+  static long getHighestValue(int bucketIndex) {
+    int shift = bucketIndex / SUB_BUCKET_COUNT - 1;
+    if (shift < 0) {
+      return bucketIndex;
+    }
+    return getLowestValue(bucketIndex) + (1L << shift) - 1;
+  }
+
+  // The value reported for all values counted in a bucket: the middle of the bucket, which bounds the error
+  // to half of the bucket width
+  static long getRepresentativeValue(int bucketIndex) {
+    long lowest = getLowestValue(bucketIndex);
+    return lowest + (getHighestValue(bucketIndex) - lowest) / 2;
+  }
+
+  private static final class Slice {
+    private final long _epoch;
+    // The bucket counts, by group of buckets of the same width, allocated when a value is first counted in the group
+    private final AtomicReferenceArray<AtomicIntegerArray> _groupCounts = new AtomicReferenceArray<>(NUM_BUCKET_GROUPS);
+
+    Slice(long epoch) {
+      _epoch = epoch;
+    }
+
+    void increment(int bucketIndex) {
+      int group = bucketIndex >>> SUB_BUCKET_BITS;
+      AtomicIntegerArray counts = _groupCounts.get(group);
+      if (counts == null) {
+        // If another thread allocated the group in the meantime, use the one it installed
+        _groupCounts.compareAndSet(group, null, new AtomicIntegerArray(SUB_BUCKET_COUNT));
+        counts = _groupCounts.get(group);
+      }
+      counts.incrementAndGet(bucketIndex & (SUB_BUCKET_COUNT - 1));
+    }
+
+    void addCounts(long[] bucketCounts) {
+      for (int group = 0; group < NUM_BUCKET_GROUPS; group++) {
+        AtomicIntegerArray counts = _groupCounts.get(group);
+        if (counts != null) {
+          for (int i = 0; i < SUB_BUCKET_COUNT; i++) {
+            bucketCounts[group * SUB_BUCKET_COUNT + i] += counts.get(i);
+          }
+        }
+      }
+    }
+
+    int getNumAllocatedGroups() {
+      int numGroups = 0;
+      for (int group = 0; group < NUM_BUCKET_GROUPS; group++) {
+        if (_groupCounts.get(group) != null) {
+          numGroups++;
+        }
+      }
+      return numGroups;
+    }
+  }
+
+  /**
+   * A snapshot of the bucket counts of the window
+   */
+  private static final class BucketSnapshot extends Snapshot {
+    private final long[] _counts;
+    private final long _size;
+
+    BucketSnapshot(long[] counts) {
+      _counts = counts;
+      long size = 0;
+      for (long count : counts) {
+        size += count;
+      }
+      _size = size;
+    }
+
+    @Override
+    public double getValue(double quantile) {
+      if (quantile < 0.0 || quantile > 1.0 || Double.isNaN(quantile)) {
+        throw new IllegalArgumentException(quantile + " is not in [0..1]");
+      }
+      if (_size == 0) {
+        return 0.0;
+      }
+      long rank = Math.max(1, (long) Math.ceil(quantile * _size));
+      long seen = 0;
+      for (int bucket = 0; bucket < _counts.length; bucket++) {
+        seen += _counts[bucket];
+        if (seen >= rank) {
+          return getRepresentativeValue(bucket);
+        }
+      }
+      return getMax();
+    }
+
+    /**
+     * Get all the values of the snapshot. Note that this materializes every value recorded within the window.
+     */
+    @Override
+    public long[] getValues() {
+      long[] values = new long[size()];
+      int index = 0;
+      for (int bucket = 0; bucket < _counts.length && index < values.length; bucket++) {
+        long value = getRepresentativeValue(bucket);
+        for (long i = 0; i < _counts[bucket] && index < values.length; i++) {
+          values[index++] = value;
+        }
+      }
+      return values;
+    }
+
+    @Override
+    public int size() {
+      return (int) Math.min(_size, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public long getMax() {
+      for (int bucket = _counts.length - 1; bucket >= 0; bucket--) {
+        if (_counts[bucket] > 0) {
+          return getRepresentativeValue(bucket);
+        }
+      }
+      return 0;
+    }
+
+    @Override
+    public double getMean() {
+      if (_size == 0) {
+        return 0.0;
+      }
+      double sum = 0;
+      for (int bucket = 0; bucket < _counts.length; bucket++) {
+        sum += (double) _counts[bucket] * getRepresentativeValue(bucket);
+      }
+      return sum / _size;
+    }
+
+    @Override
+    public long getMin() {
+      for (int bucket = 0; bucket < _counts.length; bucket++) {
+        if (_counts[bucket] > 0) {
+          return getRepresentativeValue(bucket);
+        }
+      }
+      return 0;
+    }
+
+    @Override
+    public double getStdDev() {
+      if (_size <= 1) {
+        return 0.0;
+      }
+      double mean = getMean();
+      double variance = 0;
+      for (int bucket = 0; bucket < _counts.length; bucket++) {
+        double diff = getRepresentativeValue(bucket) - mean;
+        variance += _counts[bucket] * diff * diff;
+      }
+      return Math.sqrt(variance / (_size - 1));
+    }
+
+    @Override
+    public void dump(OutputStream output) {
+      try (PrintWriter out = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
+        for (int bucket = 0; bucket < _counts.length; bucket++) {
+          long value = getRepresentativeValue(bucket);
+          for (long i = 0; i < _counts[bucket]; i++) {
+            out.printf("%d%n", value);
+          }
+        }
+      }
+    }
+  }
+}
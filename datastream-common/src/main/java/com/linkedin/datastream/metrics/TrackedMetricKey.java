@@ -0,0 +1,75 @@
+/**
+ *  Copyright 2019 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * A key (i.e. topic or partition) whose metrics count against the key limit of their metric family in
+ * {@link DynamicMetricsManager}. Callers which hold on to the metrics of a tracked key should {@link #touch()} it
+ * whenever they update them so that it is not considered idle, and must resolve the metrics again (by tracking the
+ * key again) once it has been {@link #isEvicted() evicted}, as the metrics they hold are no longer registered.
+ */
+public final class TrackedMetricKey {
+  private final String _key;
+  // Advanced by the metric family whenever a key is tracked or idle keys are checked, so that the recency of
+  // accesses can be compared without reading the clock on every access
+  private final AtomicLong _familyEpoch;
+  private volatile long _lastAccessEpoch;
+  private volatile boolean _evicted = false;
+  // Guarded by the metric family
+  private boolean _evicting = false;
+
+  TrackedMetricKey(String key, AtomicLong familyEpoch) {
+    _key = key;
+    _familyEpoch = familyEpoch;
+    _lastAccessEpoch = familyEpoch.get();
+  }
+
+  /**
+   * Mark the key as used. This is cheap enough to be called on every update of its metrics.
+   */
+  public void touch() {
+    long epoch = _familyEpoch.get();
+    // Avoid writing to the volatile field (and invalidating the cache line) when it is already up to date
+    if (_lastAccessEpoch != epoch) {
+      _lastAccessEpoch = epoch;
+    }
+  }
+
+  /**
+   * Check whether the key has been evicted, in which case its metrics are no longer registered
+   */
+  public boolean isEvicted() {
+    return _evicted;
+  }
+
+  String getKey() {
+    return _key;
+  }
+
+  long getLastAccessEpoch() {
+    return _lastAccessEpoch;
+  }
+
+  boolean isEvicting() {
+    return _evicting;
+  }
+
+  void startEviction() {
+    _evicting = true;
+  }
+
+  void evict() {
+    _evicted = true;
+  }
+
+  @Override
+  public String toString() {
+    return _key;
+  }
+}
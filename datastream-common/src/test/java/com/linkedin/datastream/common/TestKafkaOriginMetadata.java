@@ -0,0 +1,94 @@
+/**
+ *  Copyright 2019 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.common;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+/**
+ * Tests for {@link KafkaOriginMetadata}.
+ */
+public class TestKafkaOriginMetadata {
+
+  @Test
+  public void testMapView() {
+    KafkaOriginMetadata metadata = new KafkaOriginMetadata(KafkaOriginMetadata.KAFKA_ORIGIN_CLUSTER,
+        "localhost:9092", "topic", 3, 1000L, 12345L, KafkaOriginMetadata.NO_TIMESTAMP);
+
+    Map<String, String> expected = new HashMap<>();
+    expected.put(KafkaOriginMetadata.KAFKA_ORIGIN_CLUSTER, "localhost:9092");
+    expected.put(KafkaOriginMetadata.KAFKA_ORIGIN_TOPIC, "topic");
+    expected.put(KafkaOriginMetadata.KAFKA_ORIGIN_PARTITION, "3");
+    expected.put(KafkaOriginMetadata.KAFKA_ORIGIN_OFFSET, "1000");
+    expected.put(BrooklinEnvelopeMetadataConstants.EVENT_TIMESTAMP, "12345");
+    expected.put(BrooklinEnvelopeMetadataConstants.SOURCE_PARTITION, "3");
+
+    // Lookups of individual keys do not materialize the entries, so check them before iterating
+    for (Map.Entry<String, String> entry : expected.entrySet()) {
+      Assert.assertEquals(metadata.get(entry.getKey()), entry.getValue());
+      Assert.assertTrue(metadata.containsKey(entry.getKey()));
+    }
+    Assert.assertNull(metadata.get(BrooklinEnvelopeMetadataConstants.SOURCE_TIMESTAMP));
+    Assert.assertFalse(metadata.containsKey(KafkaOriginMetadata.KAFKA_ORIGIN));
+    Assert.assertEquals(metadata.getOrDefault(BrooklinEnvelopeMetadataConstants.SCN, "none"), "none");
+
+    Assert.assertEquals(metadata, expected);
+    Assert.assertEquals(expected, metadata);
+    Assert.assertEquals(metadata.hashCode(), expected.hashCode());
+    Assert.assertEquals(metadata.size(), expected.size());
+  }
+
+  @Test
+  public void testTypedGetters() {
+    KafkaOriginMetadata metadata = new KafkaOriginMetadata(KafkaOriginMetadata.KAFKA_ORIGIN,
+        "kafka://localhost:9092/topic", null, 7, 42L, 100L, 200L);
+
+    Assert.assertEquals(metadata.getOrigin(), "kafka://localhost:9092/topic");
+    Assert.assertNull(metadata.getTopic());
+    Assert.assertEquals(metadata.getPartition(), 7);
+    Assert.assertEquals(metadata.getOffset(), 42L);
+    Assert.assertEquals(metadata.getEventTimestamp(), 100L);
+    Assert.assertEquals(metadata.getSourceTimestamp(), 200L);
+
+    Assert.assertEquals(metadata.get(KafkaOriginMetadata.KAFKA_ORIGIN), "kafka://localhost:9092/topic");
+    Assert.assertFalse(metadata.containsKey(KafkaOriginMetadata.KAFKA_ORIGIN_TOPIC));
+    Assert.assertEquals(metadata.get(BrooklinEnvelopeMetadataConstants.SOURCE_TIMESTAMP), "200");
+    Assert.assertEquals(metadata.size(), 6);
+  }
+
+  @Test
+  public void testModifiable() {
+    KafkaOriginMetadata metadata = new KafkaOriginMetadata(KafkaOriginMetadata.KAFKA_ORIGIN,
+        "kafka://localhost:9092/topic", null, 0, 0L, KafkaOriginMetadata.NO_TIMESTAMP, KafkaOriginMetadata.NO_TIMESTAMP);
+    Assert.assertFalse(metadata.isMaterialized());
+
+    // Plugins can change the entries, as they could with the string map the Kafka connectors used to build
+    Assert.assertNull(metadata.put(BrooklinEnvelopeMetadataConstants.SCN, "1"));
+    Assert.assertEquals(metadata.put(BrooklinEnvelopeMetadataConstants.SOURCE_PARTITION, "5"), "0");
+    Assert.assertEquals(metadata.remove(KafkaOriginMetadata.KAFKA_ORIGIN_OFFSET), "0");
+    Assert.assertTrue(metadata.isMaterialized());
+
+    Map<String, String> expected = new HashMap<>();
+    expected.put(KafkaOriginMetadata.KAFKA_ORIGIN, "kafka://localhost:9092/topic");
+    expected.put(KafkaOriginMetadata.KAFKA_ORIGIN_PARTITION, "0");
+    expected.put(BrooklinEnvelopeMetadataConstants.SOURCE_PARTITION, "5");
+    expected.put(BrooklinEnvelopeMetadataConstants.SCN, "1");
+    Assert.assertEquals(metadata, expected);
+    Assert.assertEquals(metadata.get(BrooklinEnvelopeMetadataConstants.SOURCE_PARTITION), "5");
+    Assert.assertFalse(metadata.containsKey(KafkaOriginMetadata.KAFKA_ORIGIN_OFFSET));
+
+    // The typed getters keep returning the metadata the event was consumed with
+    Assert.assertEquals(metadata.getPartition(), 0);
+    Assert.assertEquals(metadata.getOffset(), 0L);
+
+    metadata.clear();
+    Assert.assertTrue(metadata.isEmpty());
+  }
+}
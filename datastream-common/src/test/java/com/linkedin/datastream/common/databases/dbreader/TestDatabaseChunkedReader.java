@@ -16,9 +16,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.sql.DataSource;
 
 import org.apache.avro.Schema;
@@ -27,19 +29,24 @@ import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 
 import com.linkedin.datastream.avrogenerator.DatabaseSource;
 import com.linkedin.datastream.avrogenerator.SchemaGenerationException;
+import com.linkedin.datastream.common.DatastreamRuntimeException;
 import com.linkedin.datastream.common.databases.DatabaseColumnRecord;
 import com.linkedin.datastream.common.databases.DatabaseRow;
 import com.linkedin.datastream.common.databases.MockJDBCConnection;
+import com.linkedin.datastream.common.databases.MockResultSet;
 import com.linkedin.datastream.metrics.DynamicMetricsManager;
 
 import static com.linkedin.datastream.common.databases.dbreader.DatabaseChunkedReaderConfig.DATABASE_QUERY_MANAGER_CLASS_NAME;
 import static com.linkedin.datastream.common.databases.dbreader.DatabaseChunkedReaderConfig.DB_READER_DOMAIN_CONFIG;
 import static com.linkedin.datastream.common.databases.dbreader.DatabaseChunkedReaderConfig.FETCH_SIZE;
+import static com.linkedin.datastream.common.databases.dbreader.DatabaseChunkedReaderConfig.PREFETCH_DEPTH;
+import static com.linkedin.datastream.common.databases.dbreader.DatabaseChunkedReaderConfig.PREFETCH_MAX_BYTES;
 import static com.linkedin.datastream.common.databases.dbreader.DatabaseChunkedReaderConfig.QUERY_TIMEOUT_SECS;
 import static com.linkedin.datastream.common.databases.dbreader.DatabaseChunkedReaderConfig.ROW_COUNT_LIMIT;
 import static com.linkedin.datastream.common.databases.dbreader.DatabaseChunkedReaderConfig.SKIP_BAD_MESSAGE;
@@ -109,6 +116,20 @@ public class TestDatabaseChunkedReader {
    */
   @Test
   public void testRowCount() throws Exception {
+    verifyRowCount(createTestDBReaderProperties(3));
+  }
+
+  /**
+   * Same as {@link #testRowCount()}, with the chunks queried ahead by the prefetch thread
+   */
+  @Test
+  public void testRowCountWithPrefetch() throws Exception {
+    Properties props = createTestDBReaderProperties(3);
+    props.setProperty(DB_READER_DOMAIN_CONFIG + "." + PREFETCH_DEPTH, "2");
+    verifyRowCount(props);
+  }
+
+  private void verifyRowCount(Properties props) throws Exception {
     int numPartitions = 4;
     int chunkSize = 3;
 
@@ -219,7 +240,6 @@ public class TestDatabaseChunkedReader {
     Mockito.when(mockDBSource.getPrimaryKeyFields(TEST_COMPOSITE_KEY_TABLE)).thenReturn(TEST_COMPOSITE_PKEYS);
     Mockito.when(mockDBSource.getTableSchema(TEST_COMPOSITE_KEY_TABLE)).thenReturn(TEST_COMPOSITE_KEY_TABLE_SCHEMA);
     Mockito.when(mockDBSource.getPartitionCount()).thenReturn(1);
-    Properties props = createTestDBReaderProperties(chunkSize);
     List<DataSource> mockSources = new ArrayList<>();
 
     Map<Integer, List<DatabaseRow>> data = new HashMap<>();
@@ -333,4 +353,170 @@ public class TestDatabaseChunkedReader {
     // Verify that a call to setObject was done with supplied key value
     Mockito.verify(mockStmt, Mockito.times(1)).setObject(1, 99);
   }
+
+  private static List<List<DatabaseRow>> createSimpleKeyChunks(int numChunks, int chunkSize) {
+    List<List<DatabaseRow>> chunks = new ArrayList<>();
+    for (int i = 0, key = 0; i < numChunks; i++) {
+      List<DatabaseRow> chunk = new ArrayList<>();
+      for (int j = 0; j < chunkSize; j++) {
+        chunk.add(new DatabaseRow().addField("key1", key++, Types.NUMERIC));
+      }
+      chunks.add(chunk);
+    }
+    return chunks;
+  }
+
+  private static DatabaseSource createSimpleKeyDatabaseSource() throws SQLException, SchemaGenerationException {
+    DatabaseSource mockDBSource = Mockito.mock(DatabaseSource.class);
+    Mockito.when(mockDBSource.getPrimaryKeyFields(anyString())).thenReturn(TEST_SIMPLE_KEYS);
+    Mockito.when(mockDBSource.getTableSchema(anyString())).thenReturn(TEST_SIMPLE_SCHEMA);
+    Mockito.when(mockDBSource.getPartitionCount()).thenReturn(1);
+    return mockDBSource;
+  }
+
+  private static PreparedStatement createChunkedStatement(List<List<DatabaseRow>> chunks, AtomicInteger queryCount)
+      throws SQLException {
+    PreparedStatement mockStmt = Mockito.mock(PreparedStatement.class);
+    Iterator<List<DatabaseRow>> chunkIterator = chunks.iterator();
+    Mockito.when(mockStmt.executeQuery()).thenAnswer(invocation -> {
+      queryCount.incrementAndGet();
+      return new MockResultSet(chunkIterator.next());
+    });
+    return mockStmt;
+  }
+
+  private static Thread getPrefetchThread(String readerId) {
+    String threadName = "DatabaseChunkedReader-prefetch-" + readerId;
+    return Thread.getAllStackTraces().keySet().stream()
+        .filter(thread -> thread.getName().equals(threadName))
+        .findFirst()
+        .orElseThrow(() -> new AssertionError("No prefetch thread for reader " + readerId));
+  }
+
+  /**
+   * Verify the number of queries run once the prefetch thread is paused, waiting for room in the prefetch queue
+   */
+  private static void verifyQueryCount(String readerId, AtomicInteger queryCount, int expected)
+      throws InterruptedException {
+    Thread prefetchThread = getPrefetchThread(readerId);
+    long deadline = System.currentTimeMillis() + 5000;
+    while (prefetchThread.getState() != Thread.State.WAITING) {
+      Assert.assertTrue(System.currentTimeMillis() < deadline, "The prefetch thread did not pause");
+      Thread.sleep(10);
+    }
+    Assert.assertEquals(queryCount.get(), expected);
+  }
+
+  private static Connection createConnection(PreparedStatement stmt) throws SQLException {
+    Connection mockConnection = Mockito.mock(Connection.class);
+    Mockito.when(mockConnection.prepareStatement(anyString())).thenReturn(stmt);
+    return mockConnection;
+  }
+
+  @Test
+  public void testPrefetchDepthIsBounded() throws Exception {
+    String readerId = "testPrefetchDepthIsBounded";
+    List<List<DatabaseRow>> chunks = createSimpleKeyChunks(5, 3);
+    chunks.get(4).remove(2);
+    AtomicInteger queryCount = new AtomicInteger();
+    PreparedStatement mockStmt = createChunkedStatement(chunks, queryCount);
+
+    Properties props = createTestDBReaderProperties(3);
+    props.setProperty(DB_READER_DOMAIN_CONFIG + "." + PREFETCH_DEPTH, "1");
+    List<DatabaseRow> data = new ArrayList<>();
+    try (DatabaseChunkedReader reader = new DatabaseChunkedReader(props, createConnection(mockStmt), TEST_SIMPLE_QUERY,
+        "TEST_DB", TEST_SIMPLE_KEY_TABLE, createSimpleKeyDatabaseSource(), readerId)) {
+      reader.subscribe(Collections.singletonList(0), null);
+      data.add(reader.poll());
+
+      // The first chunk is being polled, and the second one is prefetched, which fills the prefetch queue
+      verifyQueryCount(readerId, queryCount, 2);
+
+      for (DatabaseRow row = reader.poll(); row != null; row = reader.poll()) {
+        data.add(row);
+      }
+
+      String metricName = MetricRegistry.name(DatabaseChunkedReader.class.getSimpleName(), readerId, "prefetchedChunkRate");
+      Assert.assertEquals(((Meter) _dynamicMetricsManager.getMetric(metricName)).getCount(), 5);
+      metricName = MetricRegistry.name(DatabaseChunkedReader.class.getSimpleName(), readerId, "prefetchWaitDurationMs");
+      Assert.assertEquals(((Histogram) _dynamicMetricsManager.getMetric(metricName)).getCount(), 5);
+    }
+
+    Assert.assertEquals(queryCount.get(), 5);
+    // Each chunk is queried with the key of the last row of the previous one
+    for (int i = 0; i < 4; i++) {
+      Mockito.verify(mockStmt).setObject(1, i * 3 + 2);
+    }
+    List<DatabaseRow> expected = new ArrayList<>();
+    chunks.forEach(expected::addAll);
+    verifyData(data, expected);
+  }
+
+  @Test
+  public void testPrefetchMemoryLimit() throws Exception {
+    String readerId = "testPrefetchMemoryLimit";
+    AtomicInteger queryCount = new AtomicInteger();
+    PreparedStatement mockStmt = createChunkedStatement(createSimpleKeyChunks(4, 3), queryCount);
+
+    Properties props = createTestDBReaderProperties(3);
+    props.setProperty(DB_READER_DOMAIN_CONFIG + "." + PREFETCH_DEPTH, "3");
+    props.setProperty(DB_READER_DOMAIN_CONFIG + "." + PREFETCH_MAX_BYTES, "1");
+    try (DatabaseChunkedReader reader = new DatabaseChunkedReader(props, createConnection(mockStmt), TEST_SIMPLE_QUERY,
+        "TEST_DB", TEST_SIMPLE_KEY_TABLE, createSimpleKeyDatabaseSource(), readerId)) {
+      reader.subscribe(Collections.singletonList(0), null);
+      reader.poll();
+
+      // Prefetching pauses once a single chunk is buffered, even though the prefetch depth allows more
+      verifyQueryCount(readerId, queryCount, 2);
+    }
+  }
+
+  @Test
+  public void testPrefetchError() throws Exception {
+    List<List<DatabaseRow>> chunks = createSimpleKeyChunks(1, 3);
+    PreparedStatement mockStmt = Mockito.mock(PreparedStatement.class);
+    Mockito.when(mockStmt.executeQuery())
+        .thenReturn(new MockResultSet(chunks.get(0)))
+        .thenThrow(new SQLException("Query failed - test prefetch error"));
+
+    Properties props = createTestDBReaderProperties(3);
+    props.setProperty(DB_READER_DOMAIN_CONFIG + "." + PREFETCH_DEPTH, "1");
+    try (DatabaseChunkedReader reader = new DatabaseChunkedReader(props, createConnection(mockStmt), TEST_SIMPLE_QUERY,
+        "TEST_DB", TEST_SIMPLE_KEY_TABLE, createSimpleKeyDatabaseSource(), "testPrefetchError")) {
+      reader.subscribe(Collections.singletonList(0), null);
+      // The rows of the first chunk are still returned
+      for (int i = 0; i < 3; i++) {
+        Assert.assertEquals(reader.poll(), chunks.get(0).get(i));
+      }
+      Assert.expectThrows(SQLException.class, reader::poll);
+    }
+  }
+
+  @Test
+  public void testPrefetchInterrupted() throws Exception {
+    String readerId = "testPrefetchInterrupted";
+    List<List<DatabaseRow>> chunks = createSimpleKeyChunks(3, 3);
+    AtomicInteger queryCount = new AtomicInteger();
+    PreparedStatement mockStmt = createChunkedStatement(chunks, queryCount);
+
+    Properties props = createTestDBReaderProperties(3);
+    props.setProperty(DB_READER_DOMAIN_CONFIG + "." + PREFETCH_DEPTH, "1");
+    try (DatabaseChunkedReader reader = new DatabaseChunkedReader(props, createConnection(mockStmt), TEST_SIMPLE_QUERY,
+        "TEST_DB", TEST_SIMPLE_KEY_TABLE, createSimpleKeyDatabaseSource(), readerId)) {
+      reader.subscribe(Collections.singletonList(0), null);
+      Assert.assertEquals(reader.poll(), chunks.get(0).get(0));
+      verifyQueryCount(readerId, queryCount, 2);
+      Thread prefetchThread = getPrefetchThread(readerId);
+      prefetchThread.interrupt();
+      prefetchThread.join(5000);
+      Assert.assertFalse(prefetchThread.isAlive());
+
+      // The chunks prefetched before the interruption are still returned, then the reader fails instead of waiting
+      // forever for the next chunk
+      for (int i = 1; i < 6; i++) {
+        Assert.assertEquals(reader.poll(), chunks.get(i / 3).get(i % 3));
+      }
+      Assert.expectThrows(DatastreamRuntimeException.class, reader::poll);
+    }
+  }
 }
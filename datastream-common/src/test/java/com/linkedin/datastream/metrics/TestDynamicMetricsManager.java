@@ -6,6 +6,11 @@
 package com.linkedin.datastream.metrics;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
@@ -16,6 +21,7 @@ import org.testng.annotations.Test;
 import com.codahale.metrics.Counter;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
 import com.codahale.metrics.MetricFilter;
 import com.codahale.metrics.MetricRegistry;
 
@@ -48,6 +54,22 @@ public class TestDynamicMetricsManager {
     Assert.assertNotEquals(histogram.getSnapshot().getMax(), highLatency);
   }
 
+  @Test
+  public void testCreateOrUpdateBucketedSlidingWindowHistogram() {
+    String latency = "bucketedLatency";
+    Histogram handle = _metricsManager.registerBucketedSlidingWindowHistogramHandle(CLASS_NAME, "test", latency, 60000);
+    for (int i = 1; i <= 100; i++) {
+      _metricsManager.createOrUpdateBucketedSlidingWindowHistogram(CLASS_NAME, "test", latency, 60000, i);
+    }
+    Histogram histogram = _metricsManager.getMetric(MetricRegistry.name(CLASS_NAME, "test", latency));
+    Assert.assertSame(histogram, handle);
+    Assert.assertEquals(histogram.getCount(), 100);
+    Assert.assertEquals(histogram.getSnapshot().size(), 100);
+    Assert.assertEquals(histogram.getSnapshot().getMin(), 1);
+    Assert.assertEquals(histogram.getSnapshot().getMedian(), 50, 50 * 0.03);
+    Assert.assertEquals(histogram.getSnapshot().getMax(), 100, 100 * 0.03);
+  }
+
   @Test
   public void testCreateOrUpdateCounter() {
     String numEvents = "numEvents";
@@ -229,6 +251,155 @@ public class TestDynamicMetricsManager {
     Assert.assertTrue(_metricsManager.checkCache(CLASS_NAME, someKey, eventLatency).isPresent());
   }
 
+  @Test
+  public void testMetricHandles() {
+    String someKey = "someKey";
+    String numEvents = "numEvents";
+    String eventRate = "eventRate";
+    String latency = "latency";
+    String windowedLatency = "windowedLatency";
+
+    // handles are bound to the same metrics updated by the createOrUpdate APIs
+    Counter counter = _metricsManager.registerCounterHandle(CLASS_NAME, someKey, numEvents);
+    counter.inc(2);
+    _metricsManager.createOrUpdateCounter(CLASS_NAME, someKey, numEvents, 3);
+    Assert.assertEquals(counter.getCount(), 5);
+    Assert.assertSame(_metricsManager.getMetric(MetricRegistry.name(CLASS_NAME, someKey, numEvents)), counter);
+    Assert.assertSame(_metricsManager.registerCounterHandle(CLASS_NAME, someKey, numEvents), counter);
+
+    _metricsManager.createOrUpdateMeter(CLASS_NAME, eventRate, 1);
+    Meter meter = _metricsManager.registerMeterHandle(CLASS_NAME, eventRate);
+    meter.mark(2);
+    Assert.assertEquals(meter.getCount(), 3);
+    Assert.assertSame(_metricsManager.getMetric(MetricRegistry.name(CLASS_NAME, eventRate)), meter);
+
+    Histogram histogram = _metricsManager.registerHistogramHandle(CLASS_NAME, someKey, latency);
+    histogram.update(10);
+    _metricsManager.createOrUpdateHistogram(CLASS_NAME, someKey, latency, 20);
+    Assert.assertEquals(histogram.getCount(), 2);
+
+    Histogram windowedHistogram =
+        _metricsManager.registerSlidingWindowHistogramHandle(CLASS_NAME, someKey, windowedLatency, 60000);
+    windowedHistogram.update(10);
+    _metricsManager.createOrUpdateSlidingWindowHistogram(CLASS_NAME, someKey, windowedLatency, 60000, 20);
+    Assert.assertEquals(windowedHistogram.getSnapshot().size(), 2);
+    Assert.assertSame(_metricsManager.getMetric(MetricRegistry.name(CLASS_NAME, someKey, windowedLatency)),
+        windowedHistogram);
+
+    Assert.assertTrue(_metricsManager.checkCache(CLASS_NAME, someKey, numEvents).isPresent());
+    Assert.assertTrue(_metricsManager.checkCache(CLASS_NAME, null, eventRate).isPresent());
+  }
+
+  @Test
+  public void testKeyLimit() {
+    String eventRate = "eventRate";
+    String numEvents = "numEvents";
+    _metricsManager.setKeyLimit(CLASS_NAME, 10, 0);
+
+    List<TrackedMetricKey> trackedKeys = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      trackedKeys.add(_metricsManager.trackKey(CLASS_NAME, "key" + i));
+      _metricsManager.registerMeterHandle(CLASS_NAME, "key" + i, eventRate).mark();
+    }
+    // Metrics also registered through registerMetric are not removed on eviction
+    _metricsManager.registerMetric(CLASS_NAME, "key1", numEvents, Counter.class);
+    _metricsManager.createOrUpdateCounter(CLASS_NAME, "key1", numEvents, 1);
+    // Untracked keys do not count against the limit
+    _metricsManager.createOrUpdateMeter(CLASS_NAME, "aggregate", eventRate, 1);
+    Assert.assertEquals(_metricsManager.getNumEvictedKeys(CLASS_NAME), 0);
+
+    // Tracking an existing key returns the same tracked key and keeps it from being evicted
+    Assert.assertSame(_metricsManager.trackKey(CLASS_NAME, "key0"), trackedKeys.get(0));
+
+    // Going over the limit evicts the least recently used keys down to 90% of the limit
+    TrackedMetricKey newKey = _metricsManager.trackKey(CLASS_NAME, "newKey");
+    Assert.assertFalse(newKey.isEvicted());
+    Assert.assertEquals(_metricsManager.getNumEvictedKeys(CLASS_NAME), 2);
+    Assert.assertFalse(trackedKeys.get(0).isEvicted());
+    Assert.assertTrue(trackedKeys.get(1).isEvicted());
+    Assert.assertTrue(trackedKeys.get(2).isEvicted());
+    Assert.assertNull(_metricsManager.getMetric(MetricRegistry.name(CLASS_NAME, "key2", eventRate)));
+    Assert.assertFalse(_metricsManager.checkCache(CLASS_NAME, "key2", eventRate).isPresent());
+    Assert.assertNull(_metricsManager.getMetric(MetricRegistry.name(CLASS_NAME, "key1", eventRate)));
+    Assert.assertNotNull(_metricsManager.getMetric(MetricRegistry.name(CLASS_NAME, "key1", numEvents)));
+    Assert.assertNotNull(_metricsManager.getMetric(MetricRegistry.name(CLASS_NAME, "key0", eventRate)));
+    Assert.assertNotNull(_metricsManager.getMetric(MetricRegistry.name(CLASS_NAME, "aggregate", eventRate)));
+
+    Counter evictedKeys = _metricsManager.getMetric(
+        MetricRegistry.name(DynamicMetricsManager.class.getSimpleName(), CLASS_NAME,
+            DynamicMetricsManager.EVICTED_METRIC_KEYS));
+    Assert.assertEquals(evictedKeys.getCount(), 2);
+
+    // An evicted key can be tracked again, and its metrics start from scratch
+    TrackedMetricKey retrackedKey = _metricsManager.trackKey(CLASS_NAME, "key2");
+    Assert.assertNotSame(retrackedKey, trackedKeys.get(2));
+    Assert.assertFalse(retrackedKey.isEvicted());
+    Assert.assertEquals(_metricsManager.registerMeterHandle(CLASS_NAME, "key2", eventRate).getCount(), 0);
+  }
+
+  @Test
+  public void testKeyEvictionWithConcurrentUpdates() throws Exception {
+    String numEvents = "numEvents";
+    String fullMetricName = MetricRegistry.name(CLASS_NAME, "key", numEvents);
+    // Slow down the removal of the counter from the registry, to update it while the key is being evicted
+    CountDownLatch removing = new CountDownLatch(1);
+    MetricRegistry metricRegistry = new MetricRegistry() {
+      @Override
+      public boolean remove(String name) {
+        if (name.equals(fullMetricName)) {
+          removing.countDown();
+          try {
+            Thread.sleep(200);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+        return super.remove(name);
+      }
+    };
+    _metricsManager = DynamicMetricsManager.createInstance(metricRegistry, "testKeyEvictionWithConcurrentUpdates");
+    _metricsManager.setKeyLimit(CLASS_NAME, 1, 0);
+    TrackedMetricKey trackedKey = _metricsManager.trackKey(CLASS_NAME, "key");
+    _metricsManager.createOrUpdateCounter(CLASS_NAME, "key", numEvents, 1);
+
+    // Tracking any other key evicts the key
+    Thread evictingThread = new Thread(() -> _metricsManager.trackKey(CLASS_NAME, "otherKey"));
+    evictingThread.start();
+    Assert.assertTrue(removing.await(5, TimeUnit.SECONDS));
+    _metricsManager.createOrUpdateCounter(CLASS_NAME, "key", numEvents, 1);
+    evictingThread.join();
+    Assert.assertTrue(trackedKey.isEvicted());
+
+    // The counter updated during the eviction is created again once the eviction is over, instead of staying cached
+    // after its removal from the registry, where its updates would never be reported
+    _metricsManager.createOrUpdateCounter(CLASS_NAME, "key", numEvents, 1);
+    Optional<Metric> cachedCounter = _metricsManager.checkCache(CLASS_NAME, "key", numEvents);
+    Assert.assertTrue(cachedCounter.isPresent());
+    Assert.assertSame(_metricsManager.getMetric(fullMetricName), cachedCounter.get());
+  }
+
+  @Test
+  public void testIdleKeyEviction() throws Exception {
+    _metricsManager.setKeyLimit(CLASS_NAME, 100, 200);
+    TrackedMetricKey idleKey = _metricsManager.trackKey(CLASS_NAME, "idleKey");
+    TrackedMetricKey activeKey = _metricsManager.trackKey(CLASS_NAME, "activeKey");
+    _metricsManager.createOrUpdateCounter(CLASS_NAME, "idleKey", "numEvents", 1);
+
+    // Idle keys are evicted in the background, even though no new key is tracked
+    long deadlineMs = System.currentTimeMillis() + 5000;
+    while (!idleKey.isEvicted() && System.currentTimeMillis() < deadlineMs) {
+      activeKey.touch();
+      Thread.sleep(10);
+    }
+    Assert.assertTrue(idleKey.isEvicted());
+    Assert.assertFalse(activeKey.isEvicted());
+    Assert.assertNull(_metricsManager.getMetric(MetricRegistry.name(CLASS_NAME, "idleKey", "numEvents")));
+    Assert.assertEquals(_metricsManager.getNumEvictedKeys(CLASS_NAME), 1);
+
+    // The evicted key can be tracked again
+    Assert.assertNotSame(_metricsManager.trackKey(CLASS_NAME, "idleKey"), idleKey);
+  }
+
   @Test
   public void testMetricsRegisterDeregister() {
     AtomicInteger numOutput = new AtomicInteger();
@@ -0,0 +1,148 @@
+/**
+ *  Copyright 2019 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.metrics;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Snapshot;
+
+
+/**
+ * Tests for {@link SlidingTimeWindowBucketReservoir}.
+ */
+@Test
+public class TestSlidingTimeWindowBucketReservoir {
+  private static final double MAX_RELATIVE_ERROR = 1.0 / 32;
+
+  @Test
+  public void testBucketBoundaries() {
+    long previousHighest = -1;
+    int maxIndex = SlidingTimeWindowBucketReservoir.getBucketIndex(SlidingTimeWindowBucketReservoir.MAX_TRACKABLE_VALUE);
+    for (int index = 0; index <= maxIndex; index++) {
+      long lowest = SlidingTimeWindowBucketReservoir.getLowestValue(index);
+      long highest = SlidingTimeWindowBucketReservoir.getHighestValue(index);
+      // Buckets are contiguous and every value maps back to the bucket it falls in
+      Assert.assertEquals(lowest, previousHighest + 1);
+      Assert.assertEquals(SlidingTimeWindowBucketReservoir.getBucketIndex(lowest), index);
+      Assert.assertEquals(SlidingTimeWindowBucketReservoir.getBucketIndex(highest), index);
+      Assert.assertTrue(highest - lowest <= lowest * MAX_RELATIVE_ERROR);
+      previousHighest = highest;
+    }
+    Assert.assertEquals(previousHighest, SlidingTimeWindowBucketReservoir.MAX_TRACKABLE_VALUE);
+  }
+
+  @Test
+  public void testOutOfRangeValuesAreClamped() {
+    SlidingTimeWindowBucketReservoir reservoir = new SlidingTimeWindowBucketReservoir(1, TimeUnit.MINUTES);
+    reservoir.update(-5);
+    reservoir.update(Long.MAX_VALUE);
+    Snapshot snapshot = reservoir.getSnapshot();
+    Assert.assertEquals(snapshot.size(), 2);
+    Assert.assertEquals(snapshot.getMin(), 0);
+    Assert.assertEquals(snapshot.getMax(), SlidingTimeWindowBucketReservoir.MAX_TRACKABLE_VALUE,
+        SlidingTimeWindowBucketReservoir.MAX_TRACKABLE_VALUE * MAX_RELATIVE_ERROR);
+  }
+
+  @Test
+  public void testBucketGroupsAllocatedOnFirstUse() {
+    SlidingTimeWindowBucketReservoir reservoir = new SlidingTimeWindowBucketReservoir(1, TimeUnit.MINUTES);
+    Assert.assertEquals(reservoir.getNumAllocatedBucketGroups(), 0);
+    // Values below 32 and in [32, 64) fall in two groups of buckets, values in [1024, 2048) in a third one
+    for (long value = 0; value < 64; value++) {
+      reservoir.update(value);
+    }
+    Assert.assertEquals(reservoir.getNumAllocatedBucketGroups(), 2);
+    reservoir.update(1024);
+    reservoir.update(2047);
+    Assert.assertEquals(reservoir.getNumAllocatedBucketGroups(), 3);
+
+    Snapshot snapshot = reservoir.getSnapshot();
+    Assert.assertEquals(snapshot.size(), 66);
+    Assert.assertEquals(snapshot.getMin(), 0);
+    Assert.assertEquals(snapshot.getMax(), 2047, 2047 * MAX_RELATIVE_ERROR);
+  }
+
+  @Test
+  public void testSnapshotStatistics() {
+    SlidingTimeWindowBucketReservoir reservoir = new SlidingTimeWindowBucketReservoir(1, TimeUnit.MINUTES);
+    Snapshot emptySnapshot = reservoir.getSnapshot();
+    Assert.assertEquals(emptySnapshot.size(), 0);
+    Assert.assertEquals(emptySnapshot.getMax(), 0);
+    Assert.assertEquals(emptySnapshot.getMean(), 0.0);
+    Assert.assertEquals(emptySnapshot.get99thPercentile(), 0.0);
+
+    for (long value = 1; value <= 10000; value++) {
+      reservoir.update(value);
+    }
+    Snapshot snapshot = reservoir.getSnapshot();
+    Assert.assertEquals(reservoir.size(), 10000);
+    Assert.assertEquals(snapshot.size(), 10000);
+    Assert.assertEquals(snapshot.getMin(), 1);
+    assertWithinError(snapshot.getMax(), 10000);
+    assertWithinError(snapshot.getMedian(), 5000);
+    assertWithinError(snapshot.get99thPercentile(), 9900);
+    assertWithinError(snapshot.getMean(), 5000.5);
+    assertWithinError(snapshot.getStdDev(), 2886.9);
+    Assert.assertEquals(snapshot.getValues().length, 10000);
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    snapshot.dump(output);
+    Assert.assertEquals(new String(output.toByteArray(), StandardCharsets.UTF_8).split("\\R").length, 10000);
+  }
+
+  @Test
+  public void testOldValuesExpire() {
+    ManualClock clock = new ManualClock();
+    SlidingTimeWindowBucketReservoir reservoir =
+        new SlidingTimeWindowBucketReservoir(60, TimeUnit.SECONDS, 6, clock);
+
+    reservoir.update(10000);
+    clock._timeMs += 30_000;
+    reservoir.update(10);
+    Assert.assertEquals(reservoir.getSnapshot().size(), 2);
+    assertWithinError(reservoir.getSnapshot().getMax(), 10000);
+
+    // The slice holding the high value is now outside of the window
+    clock._timeMs += 35_000;
+    Snapshot snapshot = reservoir.getSnapshot();
+    Assert.assertEquals(snapshot.size(), 1);
+    Assert.assertEquals(snapshot.getMax(), 10);
+
+    // Recycling the slot of an expired slice drops its values
+    clock._timeMs += 25_000;
+    reservoir.update(20);
+    snapshot = reservoir.getSnapshot();
+    Assert.assertEquals(snapshot.size(), 1);
+    Assert.assertEquals(snapshot.getMax(), 20);
+
+    clock._timeMs += 120_000;
+    Assert.assertEquals(reservoir.getSnapshot().size(), 0);
+  }
+
+  private static void assertWithinError(double actual, double expected) {
+    Assert.assertEquals(actual, expected, expected * MAX_RELATIVE_ERROR);
+  }
+
+  private static class ManualClock extends Clock {
+    private long _timeMs = 0;
+
+    @Override
+    public long getTick() {
+      return TimeUnit.MILLISECONDS.toNanos(_timeMs);
+    }
+
+    @Override
+    public long getTime() {
+      return _timeMs;
+    }
+  }
+}
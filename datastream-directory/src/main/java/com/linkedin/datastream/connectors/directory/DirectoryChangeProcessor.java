@@ -8,14 +8,22 @@ package com.linkedin.datastream.connectors.directory;
 import java.io.IOException;
 import java.nio.file.ClosedWatchServiceException;
 import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.Validate;
@@ -25,7 +33,9 @@ import org.slf4j.LoggerFactory;
 import com.sun.nio.file.SensitivityWatchEventModifier;
 
 import com.linkedin.datastream.common.BrooklinEnvelope;
+import com.linkedin.datastream.common.DatastreamDestination;
 import com.linkedin.datastream.server.DatastreamEventProducer;
+import com.linkedin.datastream.server.DatastreamProducerRecord;
 import com.linkedin.datastream.server.DatastreamProducerRecordBuilder;
 import com.linkedin.datastream.server.DatastreamTask;
 
@@ -38,16 +48,32 @@ import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
 /**
  * Encapsulates the logic for watching for change events in a source directory
  * in the file system, and propagating them to a {@link DatastreamEventProducer}.
+ *
+ * The whole directory tree is watched, with the directories created in it registered as they appear. The raw change
+ * events are collapsed per path over a coalescing window by a {@link DirectoryEventCoalescer}, and the collapsed
+ * changes are sent in batches of up to maxBatchSize records. Each record has the absolute path as its key, the path
+ * relative to the source directory in its {@link #RELATIVE_PATH_METADATA} metadata, and goes to the destination
+ * partition the hash of the relative path maps to, so the changes of a path stay in order.
  */
 public class DirectoryChangeProcessor implements Runnable, AutoCloseable {
+  public static final String RELATIVE_PATH_METADATA = "relativePath";
+  public static final long DEFAULT_COALESCE_WINDOW_MS = 500;
+  public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
   private static final Logger LOG = LoggerFactory.getLogger(DirectoryChangeProcessor.class);
   private static final Duration ACQUIRE_TIMEOUT = Duration.ofMinutes(5);
+  private static final long IDLE_POLL_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(1);
 
   private final DatastreamTask _task;
   private final DatastreamEventProducer _producer;
   private final Path _dirPath;
   private final WatchService _watchService;
   private final WatchKey _watchKey;
+  private final Map<WatchKey, Path> _watchedDirs = new HashMap<>();
+  private final long _coalesceWindowMs;
+  private final int _maxBatchSize;
+  private final int _numPartitions;
+  private final DirectoryEventCoalescer _coalescer;
 
   /**
    * Directory change event types
@@ -70,25 +96,44 @@ public class DirectoryChangeProcessor implements Runnable, AutoCloseable {
   }
 
   /**
-   * Constructor for DirectoryChangeProcessor
+   * Constructor for DirectoryChangeProcessor, with the default coalescing window and batch size
    * @param datastreamTask The datastream task this processor is responsible for
    * @param producer The event producer this connector uses to send change events
    *                 to the underlying {@link com.linkedin.datastream.server.api.transport.TransportProvider}.
    * @throws IOException if an I/O error occurs
    */
   public DirectoryChangeProcessor(DatastreamTask datastreamTask, DatastreamEventProducer producer) throws IOException {
+    this(datastreamTask, producer, DEFAULT_COALESCE_WINDOW_MS, DEFAULT_MAX_BATCH_SIZE);
+  }
+
+  /**
+   * Constructor for DirectoryChangeProcessor
+   * @param datastreamTask The datastream task this processor is responsible for
+   * @param producer The event producer this connector uses to send change events
+   *                 to the underlying {@link com.linkedin.datastream.server.api.transport.TransportProvider}.
+   * @param coalesceWindowMs How long a path must have been quiet for its changes to be sent
+   * @param maxBatchSize Maximum number of changes sent in a batch
+   * @throws IOException if an I/O error occurs
+   */
+  public DirectoryChangeProcessor(DatastreamTask datastreamTask, DatastreamEventProducer producer,
+      long coalesceWindowMs, int maxBatchSize) throws IOException {
     Validate.notNull(datastreamTask);
     Validate.notNull(producer);
+    Validate.isTrue(maxBatchSize > 0, "Max batch size must be greater than zero");
 
     final String path = datastreamTask.getDatastreamSource().getConnectionString();
     Validate.isTrue(isDirectory(path), "path does not refer to a valid directory");
 
     _task = datastreamTask;
     _producer = producer;
-    _dirPath = Paths.get(path);
+    _dirPath = Paths.get(path).toAbsolutePath();
+    _coalesceWindowMs = coalesceWindowMs;
+    _maxBatchSize = maxBatchSize;
+    _coalescer = new DirectoryEventCoalescer(coalesceWindowMs);
+    DatastreamDestination destination = datastreamTask.getDatastreams().get(0).getDestination();
+    _numPartitions = destination.hasPartitions() ? Math.max(destination.getPartitions(), 1) : 1;
     _watchService = FileSystems.getDefault().newWatchService();
-    _watchKey = _dirPath.register(_watchService, new WatchEvent.Kind<?>[] {ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE},
-        SensitivityWatchEventModifier.HIGH);
+    _watchKey = registerTree(_dirPath);
   }
 
   /**
@@ -108,41 +153,23 @@ public class DirectoryChangeProcessor implements Runnable, AutoCloseable {
     try {
       _task.acquire(ACQUIRE_TIMEOUT);
 
-      LOG.info("Started watching directory {}", _dirPath);
+      LOG.info("Started watching directory tree {}", _dirPath);
 
-      boolean isWatchKeyValid = true;
-      for (WatchKey key = pollWatchService(); isWatchKeyValid; key = pollWatchService()) {
+      long nextDrainMs = System.currentTimeMillis() + _coalesceWindowMs;
+      while (_watchKey.isValid()) {
+        long timeoutMs = _coalescer.hasPendingChanges() ?
+            Math.max(nextDrainMs - System.currentTimeMillis(), 0) : IDLE_POLL_TIMEOUT_MS;
+        WatchKey key = _watchService.poll(timeoutMs, TimeUnit.MILLISECONDS);
         if (key != null) {
-          for (WatchEvent<?> event : key.pollEvents()) {
-            WatchEvent.Kind<?> kind = event.kind();
-
-            /*
-             * We may get an OVERFLOW event even though we have not registered for it.
-             * https://docs.oracle.com/javase/tutorial/essential/io/notification.html#register
-             */
-            if (kind != OVERFLOW) {
-              @SuppressWarnings("unchecked")
-              Path filename = ((WatchEvent<Path>) event).context();
-              Path absolutePath = _dirPath.resolve(filename).toAbsolutePath();
-
-              BrooklinEnvelope envelope = new BrooklinEnvelope(absolutePath, getCorrespondingDirectoryEvent(kind), null,
-                  Collections.emptyMap());
-
-              DatastreamProducerRecordBuilder builder = new DatastreamProducerRecordBuilder();
-              builder.addEvent(envelope);
-              builder.setEventsSourceTimestamp(System.currentTimeMillis());
-              builder.setPartition(0);
-
-              _producer.send(builder.build(), ((metadata, exception) -> {
-                if (exception == null) {
-                  LOG.info("Sending event succeeded");
-                } else {
-                  LOG.error("Sending event failed", exception);
-                }
-              }));
-            }
-          }
-          isWatchKeyValid = key.reset();
+          processEvents(key);
+        }
+
+        long now = System.currentTimeMillis();
+        if (now >= nextDrainMs) {
+          sendChanges(_coalescer.drainDueChanges(now));
+          nextDrainMs = now + _coalesceWindowMs;
+        } else if (!_coalescer.hasPendingChanges()) {
+          nextDrainMs = now + _coalesceWindowMs;
         }
       }
 
@@ -158,9 +185,128 @@ public class DirectoryChangeProcessor implements Runnable, AutoCloseable {
     }
   }
 
+  private void processEvents(WatchKey key) {
+    Path dir = _watchedDirs.get(key);
+    if (dir == null) {
+      key.cancel();
+      return;
+    }
+
+    long now = System.currentTimeMillis();
+    for (WatchEvent<?> event : key.pollEvents()) {
+      WatchEvent.Kind<?> kind = event.kind();
+
+      /*
+       * We may get an OVERFLOW event even though we have not registered for it.
+       * https://docs.oracle.com/javase/tutorial/essential/io/notification.html#register
+       * Some changes of the directory were lost, so the whole directory is resynced.
+       */
+      if (kind == OVERFLOW) {
+        resyncDirectory(dir, now);
+        continue;
+      }
+
+      @SuppressWarnings("unchecked")
+      Path absolutePath = dir.resolve(((WatchEvent<Path>) event).context());
+      boolean isDirectory = Files.isDirectory(absolutePath, LinkOption.NOFOLLOW_LINKS);
+      if (kind == ENTRY_MODIFY && isDirectory) {
+        // The changes of the contents of directories are watched on their own
+        continue;
+      }
+      if (kind == ENTRY_CREATE && isDirectory) {
+        try {
+          registerTree(absolutePath);
+        } catch (IOException e) {
+          LOG.error("Failed to watch directory {}", absolutePath, e);
+        }
+      }
+      _coalescer.add(_dirPath.relativize(absolutePath).toString(), getCorrespondingDirectoryEvent(kind), now);
+    }
+
+    if (!key.reset()) {
+      _watchedDirs.remove(key);
+    }
+  }
+
+  /**
+   * Resync a directory whose change events were lost: watch the directories which may have been created in its tree
+   * meanwhile, and send a modification of the directory (whose relative path is empty for the root directory) so that
+   * consumers rescan it
+   */
+  private void resyncDirectory(Path dir, long now) {
+    LOG.warn("Lost change events of directory {}, resyncing it", dir);
+    try {
+      registerTree(dir);
+    } catch (IOException e) {
+      LOG.error("Failed to watch directory tree {}", dir, e);
+    }
+    _coalescer.add(_dirPath.relativize(dir).toString(), DirectoryEvent.ENTRY_MODIFIED, now);
+  }
+
+  private void sendChanges(Map<String, DirectoryEvent> changes) {
+    List<DatastreamProducerRecord> batch = new ArrayList<>(_maxBatchSize);
+    for (Map.Entry<String, DirectoryEvent> change : changes.entrySet()) {
+      String relativePath = change.getKey();
+      BrooklinEnvelope envelope = new BrooklinEnvelope(_dirPath.resolve(relativePath), change.getValue(), null,
+          Collections.singletonMap(RELATIVE_PATH_METADATA, relativePath));
+
+      DatastreamProducerRecordBuilder builder = new DatastreamProducerRecordBuilder();
+      builder.addEvent(envelope);
+      builder.setEventsSourceTimestamp(System.currentTimeMillis());
+      builder.setPartition(Math.floorMod(relativePath.hashCode(), _numPartitions));
+      batch.add(builder.build());
+
+      if (batch.size() >= _maxBatchSize) {
+        sendBatch(batch);
+        batch = new ArrayList<>(_maxBatchSize);
+      }
+    }
+    if (!batch.isEmpty()) {
+      sendBatch(batch);
+    }
+  }
+
+  private void sendBatch(List<DatastreamProducerRecord> batch) {
+    _producer.sendBatch(batch, (recordIndex, metadata, exception) -> {
+      if (exception == null) {
+        LOG.debug("Sending event succeeded");
+      } else {
+        LOG.error("Sending event failed", exception);
+      }
+    });
+    LOG.debug("Sent {} coalesced change events of directory tree {}", batch.size(), _dirPath);
+  }
+
+  /**
+   * Watch a directory and all the directories under it
+   * @return the watch key of the directory
+   */
+  private WatchKey registerTree(Path root) throws IOException {
+    Map<Path, WatchKey> keys = new HashMap<>();
+    Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+        WatchKey key = dir.register(_watchService,
+            new WatchEvent.Kind<?>[] {ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE}, SensitivityWatchEventModifier.HIGH);
+        _watchedDirs.put(key, dir);
+        keys.put(dir, key);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFileFailed(Path file, IOException exc) {
+        // The file may have been deleted in the meantime
+        LOG.warn("Failed to visit {}", file, exc);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    return keys.get(root);
+  }
+
   @Override
   public void close() {
     _watchKey.cancel();
+    // Closing the watch service also cancels the keys of the subdirectories
     try {
       _watchService.close();
     } catch (IOException e) {
@@ -168,10 +314,6 @@ public class DirectoryChangeProcessor implements Runnable, AutoCloseable {
     }
   }
 
-  private WatchKey pollWatchService() throws InterruptedException {
-    return _watchService.poll(1, TimeUnit.MINUTES);
-  }
-
   private static DirectoryEvent getCorrespondingDirectoryEvent(WatchEvent.Kind<?> kind) {
     if (kind == ENTRY_CREATE) {
       return DirectoryEvent.ENTRY_CREATED;
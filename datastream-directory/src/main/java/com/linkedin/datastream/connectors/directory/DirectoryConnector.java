@@ -42,6 +42,8 @@ public class DirectoryConnector implements Connector {
 
   private final ConcurrentMap<DatastreamTask, DirectoryChangeProcessor> _directoryProcessors;
   private final ExecutorService _executorService;
+  private final long _coalesceWindowMs;
+  private final int _maxBatchSize;
 
   /**
    * Constructor for DirectoryConnector
@@ -49,10 +51,24 @@ public class DirectoryConnector implements Connector {
    *                       for watching and processing directory changes.
    */
   public DirectoryConnector(int threadPoolSize) {
+    this(threadPoolSize, DirectoryChangeProcessor.DEFAULT_COALESCE_WINDOW_MS,
+        DirectoryChangeProcessor.DEFAULT_MAX_BATCH_SIZE);
+  }
+
+  /**
+   * Constructor for DirectoryConnector
+   * @param threadPoolSize Number of threads in the thread pool used
+   *                       for watching and processing directory changes.
+   * @param coalesceWindowMs How long a path must have been quiet for its changes to be sent
+   * @param maxBatchSize Maximum number of changes sent in a batch
+   */
+  public DirectoryConnector(int threadPoolSize, long coalesceWindowMs, int maxBatchSize) {
     Validate.isTrue(threadPoolSize > 0, "Thread pool size must be greater than zero");
 
     _directoryProcessors = new ConcurrentHashMap<>();
     _executorService = Executors.newFixedThreadPool(threadPoolSize);
+    _coalesceWindowMs = coalesceWindowMs;
+    _maxBatchSize = maxBatchSize;
   }
 
   @Override
@@ -109,7 +125,8 @@ public class DirectoryConnector implements Connector {
   private void startTaskProcessors(Iterable<DatastreamTask> datastreamTasks) {
     for (DatastreamTask datastreamTask : datastreamTasks) {
       try {
-        DirectoryChangeProcessor processor = new DirectoryChangeProcessor(datastreamTask, datastreamTask.getEventProducer());
+        DirectoryChangeProcessor processor = new DirectoryChangeProcessor(datastreamTask,
+            datastreamTask.getEventProducer(), _coalesceWindowMs, _maxBatchSize);
         _directoryProcessors.put(datastreamTask, processor);
         _executorService.submit(processor);
       } catch (IOException ex) {
@@ -18,6 +18,8 @@ import com.linkedin.datastream.server.api.connector.ConnectorFactory;
 public class DirectoryConnectorFactory implements ConnectorFactory<DirectoryConnector> {
   private static final String CFG_DEFAULT_MAX_POOL_SIZE = "5";
   private static final String CFG_THREAD_POOL_SIZE = "maxExecProcessors";
+  private static final String CFG_COALESCE_WINDOW_MS = "coalesceWindowMs";
+  private static final String CFG_MAX_BATCH_SIZE = "maxBatchSize";
 
   @Override
   public DirectoryConnector createConnector(String connectorName, Properties config, String clusterName) {
@@ -25,7 +27,11 @@ public class DirectoryConnectorFactory implements ConnectorFactory<DirectoryConn
     Validate.notNull(config);
     Validate.notEmpty(clusterName);
 
-    return new DirectoryConnector(Integer.parseInt(config.getProperty(CFG_THREAD_POOL_SIZE,
-        CFG_DEFAULT_MAX_POOL_SIZE)));
+    return new DirectoryConnector(
+        Integer.parseInt(config.getProperty(CFG_THREAD_POOL_SIZE, CFG_DEFAULT_MAX_POOL_SIZE)),
+        Long.parseLong(config.getProperty(CFG_COALESCE_WINDOW_MS,
+            String.valueOf(DirectoryChangeProcessor.DEFAULT_COALESCE_WINDOW_MS))),
+        Integer.parseInt(config.getProperty(CFG_MAX_BATCH_SIZE,
+            String.valueOf(DirectoryChangeProcessor.DEFAULT_MAX_BATCH_SIZE))));
   }
 }
@@ -0,0 +1,140 @@
+/**
+ *  Copyright 2021 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.connectors.directory;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.lang3.Validate;
+
+import static com.linkedin.datastream.connectors.directory.DirectoryChangeProcessor.DirectoryEvent;
+
+
+/**
+ * Collapses the raw change events of the paths of a directory tree, so that a path which changes many times in a row,
+ * e.g. while a file is being written or a tarball is being extracted, is only emitted once it has been quiet for the
+ * coalescing window, or once it has been pending for {@value #MAX_DELAY_WINDOWS} windows.
+ *
+ * The sequence of events of a path collapses to the change between its state before the first event and after the last
+ * one: created then deleted cancels out, created then modified is a creation, deleted then created is a modification,
+ * and any sequence ending with a deletion of a path which existed is a deletion. Since the whole of a directory is
+ * copied when it is created and deleted when it is deleted, the events of the paths under a directory with a pending
+ * change are folded into that change.
+ *
+ * Paths are relative to the root of the watched tree. This class is not thread-safe.
+ */
+class DirectoryEventCoalescer {
+  static final int MAX_DELAY_WINDOWS = 10;
+
+  private final long _windowMs;
+  private final String _separator;
+  // Keyed by path, so that the pending changes under a directory are contiguous and parents come before children
+  private final TreeMap<String, PendingChange> _pendingChanges = new TreeMap<>();
+
+  DirectoryEventCoalescer(long windowMs) {
+    this(windowMs, File.separator);
+  }
+
+  DirectoryEventCoalescer(long windowMs, String separator) {
+    Validate.isTrue(windowMs >= 0, "Coalescing window must not be negative");
+    Validate.isTrue(separator.length() == 1, "Separator must be a single character");
+    _windowMs = windowMs;
+    _separator = separator;
+  }
+
+  /**
+   * Add a raw change event of a path
+   * @param path the path, relative to the root of the watched tree
+   * @param event the change
+   * @param nowMs the time at which the change was observed
+   */
+  void add(String path, DirectoryEvent event, long nowMs) {
+    PendingChange ancestorChange = getPendingAncestorChange(path);
+    if (ancestorChange != null) {
+      ancestorChange._lastEventMs = nowMs;
+      return;
+    }
+
+    PendingChange change = _pendingChanges.get(path);
+    if (change == null) {
+      _pendingChanges.put(path, new PendingChange(event, nowMs));
+    } else {
+      change._lastEvent = event;
+      change._lastEventMs = nowMs;
+    }
+
+    if (event == DirectoryEvent.ENTRY_DELETED) {
+      // The deletion of a directory, which comes after the deletion of its contents, covers their changes
+      char nextChar = (char) (_separator.charAt(0) + 1);
+      _pendingChanges.subMap(path + _separator, path + nextChar).clear();
+    }
+  }
+
+  /**
+   * Remove the changes which have been quiet for the coalescing window, or pending for too long
+   * @param nowMs the current time
+   * @return the collapsed changes by path, in path order, without the changes which cancelled out
+   */
+  Map<String, DirectoryEvent> drainDueChanges(long nowMs) {
+    Map<String, DirectoryEvent> dueChanges = new LinkedHashMap<>();
+    Iterator<Map.Entry<String, PendingChange>> iterator = _pendingChanges.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, PendingChange> entry = iterator.next();
+      PendingChange change = entry.getValue();
+      if (nowMs - change._lastEventMs >= _windowMs || nowMs - change._firstEventMs >= _windowMs * MAX_DELAY_WINDOWS) {
+        iterator.remove();
+        DirectoryEvent collapsed = change.collapse();
+        if (collapsed != null) {
+          dueChanges.put(entry.getKey(), collapsed);
+        }
+      }
+    }
+    return dueChanges;
+  }
+
+  /**
+   * Whether any change is pending
+   */
+  boolean hasPendingChanges() {
+    return !_pendingChanges.isEmpty();
+  }
+
+  private PendingChange getPendingAncestorChange(String path) {
+    for (int i = path.lastIndexOf(_separator); i > 0; i = path.lastIndexOf(_separator, i - 1)) {
+      PendingChange change = _pendingChanges.get(path.substring(0, i));
+      if (change != null) {
+        return change;
+      }
+    }
+    return null;
+  }
+
+  private static class PendingChange {
+    private final DirectoryEvent _firstEvent;
+    private final long _firstEventMs;
+    private DirectoryEvent _lastEvent;
+    private long _lastEventMs;
+
+    PendingChange(DirectoryEvent event, long nowMs) {
+      _firstEvent = event;
+      _firstEventMs = nowMs;
+      _lastEvent = event;
+      _lastEventMs = nowMs;
+    }
+
+    DirectoryEvent collapse() {
+      boolean existedBefore = _firstEvent != DirectoryEvent.ENTRY_CREATED;
+      boolean existsAfter = _lastEvent != DirectoryEvent.ENTRY_DELETED;
+      if (!existedBefore) {
+        return existsAfter ? DirectoryEvent.ENTRY_CREATED : null;
+      }
+      return existsAfter ? DirectoryEvent.ENTRY_MODIFIED : DirectoryEvent.ENTRY_DELETED;
+    }
+  }
+}
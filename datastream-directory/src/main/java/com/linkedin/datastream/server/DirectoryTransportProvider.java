@@ -17,6 +17,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.linkedin.datastream.common.BrooklinEnvelope;
+import com.linkedin.datastream.connectors.directory.DirectoryChangeProcessor;
 import com.linkedin.datastream.server.api.transport.SendCallback;
 import com.linkedin.datastream.server.api.transport.TransportProvider;
 
@@ -28,6 +29,9 @@ import static com.linkedin.datastream.connectors.directory.DirectoryChangeProces
  * from a source directory in the file system by reflecting them to a destination
  * directory to keep it in sync.
  *
+ * Changes are applied to the path of the destination directory which corresponds to the path relative to the source
+ * directory reported by the change event, so the changes of a whole source directory tree are reflected.
+ *
  * However, this does not cover copying the initial contents of the source directory
  * or wiping the initial contents of the destination directory.
  * <br/>
@@ -49,16 +53,21 @@ public class DirectoryTransportProvider implements TransportProvider {
       DirectoryEvent changeEvent = (DirectoryEvent) envelope.value().get();
       LOG.info("Received change event {} in path {}", changeEvent, sourcePath);
 
+      // Change events without a relative path are for the files directly under the source directory
+      String relativePath = envelope.getMetadata().get(DirectoryChangeProcessor.RELATIVE_PATH_METADATA);
+      Path subPath = relativePath != null ? Paths.get(relativePath) : sourcePath.getFileName();
+      Path destinationDir = destinationPath.resolve(subPath).getParent();
+
       switch (changeEvent) {
         case ENTRY_CREATED:
-          copyPathToDir(sourcePath, destinationPath);
+          copyPathToDir(sourcePath, destinationDir);
           break;
         case ENTRY_MODIFIED:
-          deleteSubPath(destinationPath, sourcePath.getFileName());
-          copyPathToDir(sourcePath, destinationPath);
+          deleteSubPath(destinationPath, subPath);
+          copyPathToDir(sourcePath, destinationDir);
           break;
         case ENTRY_DELETED:
-          deleteSubPath(destinationPath, sourcePath.getFileName());
+          deleteSubPath(destinationPath, subPath);
           break;
         default:
           throw new IllegalArgumentException(String.format("Unrecognized DirectoryEvent: %s", changeEvent));
@@ -74,6 +83,7 @@ public class DirectoryTransportProvider implements TransportProvider {
         FileUtils::copyFileToDirectory;
 
     try {
+      Files.createDirectories(destinationDir);
       copyFn.apply(sourcePath.toFile(), destinationDir.toFile());
       LOG.info("Successfully copied {} to {}", sourcePath, destinationDir);
     } catch (IOException e) {
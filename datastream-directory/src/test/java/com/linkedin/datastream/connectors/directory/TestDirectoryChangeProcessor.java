@@ -0,0 +1,146 @@
+/**
+ *  Copyright 2021 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.connectors.directory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.linkedin.datastream.common.BrooklinEnvelope;
+import com.linkedin.datastream.common.Datastream;
+import com.linkedin.datastream.common.DatastreamDestination;
+import com.linkedin.datastream.common.DatastreamSource;
+import com.linkedin.datastream.server.DatastreamEventProducer;
+import com.linkedin.datastream.server.DatastreamProducerRecord;
+import com.linkedin.datastream.server.DatastreamTask;
+
+
+/**
+ * Tests for {@link DirectoryChangeProcessor}
+ */
+public class TestDirectoryChangeProcessor {
+  private static final long TIMEOUT_MS = 5000;
+  private static final long COALESCE_WINDOW_MS = 50;
+
+  private Path _directory;
+  private List<DatastreamProducerRecord> _sentRecords;
+  private DirectoryChangeProcessor _processor;
+  private Thread _thread;
+
+  @BeforeMethod
+  public void setup() throws IOException {
+    _directory = Files.createTempDirectory("testDirectoryChangeProcessor");
+    _sentRecords = Collections.synchronizedList(new ArrayList<>());
+
+    Datastream datastream = new Datastream();
+    datastream.setName("testDirectoryChangeProcessor");
+    datastream.setSource(new DatastreamSource().setConnectionString(_directory.toString()));
+    datastream.setDestination(new DatastreamDestination().setPartitions(4));
+    DatastreamTask task = Mockito.mock(DatastreamTask.class);
+    Mockito.when(task.getDatastreamSource()).thenReturn(datastream.getSource());
+    Mockito.when(task.getDatastreams()).thenReturn(Collections.singletonList(datastream));
+
+    DatastreamEventProducer producer = Mockito.mock(DatastreamEventProducer.class);
+    Mockito.doAnswer(invocation -> {
+      @SuppressWarnings("unchecked")
+      List<DatastreamProducerRecord> batch = (List<DatastreamProducerRecord>) invocation.getArguments()[0];
+      _sentRecords.addAll(batch);
+      return null;
+    }).when(producer).sendBatch(Mockito.any(), Mockito.any());
+
+    _processor = new DirectoryChangeProcessor(task, producer, COALESCE_WINDOW_MS, 100);
+    _thread = new Thread(_processor);
+  }
+
+  @AfterMethod
+  public void teardown() throws Exception {
+    _processor.close();
+    if (_thread.isAlive()) {
+      _thread.join(TIMEOUT_MS);
+    }
+    try (Stream<Path> paths = Files.walk(_directory)) {
+      for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  private static boolean waitFor(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+    while (!condition.getAsBoolean()) {
+      if (System.currentTimeMillis() > deadline) {
+        return false;
+      }
+      Thread.sleep(10);
+    }
+    return true;
+  }
+
+  private boolean waitForChange(String relativePath, DirectoryChangeProcessor.DirectoryEvent event)
+      throws InterruptedException {
+    return waitFor(() -> {
+      synchronized (_sentRecords) {
+        return _sentRecords.stream().anyMatch(record -> {
+          BrooklinEnvelope envelope = record.getEvents().get(0);
+          return relativePath.equals(envelope.getMetadata().get(DirectoryChangeProcessor.RELATIVE_PATH_METADATA))
+              && event.equals(envelope.value().orElse(null));
+        });
+      }
+    });
+  }
+
+  @Test
+  public void testRelativePathInNestedDirectories() throws Exception {
+    _thread.start();
+    Path nested = Files.createDirectories(_directory.resolve("dir").resolve("nested"));
+    // The creation of the tree is a single change, which is sent once the tree is watched
+    Assert.assertTrue(waitForChange("dir", DirectoryChangeProcessor.DirectoryEvent.ENTRY_CREATED));
+
+    Path file = Files.createFile(nested.resolve("file"));
+    String relativePath = Paths.get("dir", "nested", "file").toString();
+    Assert.assertTrue(waitForChange(relativePath, DirectoryChangeProcessor.DirectoryEvent.ENTRY_CREATED));
+
+    // The key is the absolute path, and the changes of a path always go to the same partition
+    synchronized (_sentRecords) {
+      DatastreamProducerRecord record = _sentRecords.get(_sentRecords.size() - 1);
+      Assert.assertEquals(record.getEvents().get(0).key().get(), file.toAbsolutePath());
+      Assert.assertEquals(record.getPartition().get().intValue(), Math.floorMod(relativePath.hashCode(), 4));
+    }
+
+    Files.delete(file);
+    Assert.assertTrue(waitForChange(relativePath, DirectoryChangeProcessor.DirectoryEvent.ENTRY_DELETED));
+  }
+
+  @Test
+  public void testRootDirectoryResyncedOnOverflow() throws Exception {
+    // More changes than the watch key holds before the processor polls it overflow it, which loses the creation of the
+    // directory among others
+    for (int i = 0; i < 600; i++) {
+      Files.createFile(_directory.resolve("file" + i));
+    }
+    Path dir = Files.createDirectory(_directory.resolve("dir"));
+    _thread.start();
+    Assert.assertTrue(waitForChange("", DirectoryChangeProcessor.DirectoryEvent.ENTRY_MODIFIED));
+
+    // The directory created meanwhile is watched as well
+    Files.createFile(dir.resolve("file"));
+    Assert.assertTrue(waitForChange(Paths.get("dir", "file").toString(),
+        DirectoryChangeProcessor.DirectoryEvent.ENTRY_CREATED));
+  }
+}
@@ -0,0 +1,125 @@
+/**
+ *  Copyright 2021 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.connectors.directory;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import static com.linkedin.datastream.connectors.directory.DirectoryChangeProcessor.DirectoryEvent.ENTRY_CREATED;
+import static com.linkedin.datastream.connectors.directory.DirectoryChangeProcessor.DirectoryEvent.ENTRY_DELETED;
+import static com.linkedin.datastream.connectors.directory.DirectoryChangeProcessor.DirectoryEvent.ENTRY_MODIFIED;
+
+
+/**
+ * Tests for {@link DirectoryEventCoalescer}
+ */
+public class TestDirectoryEventCoalescer {
+  private static final long WINDOW_MS = 100;
+
+  private static DirectoryEventCoalescer createCoalescer() {
+    return new DirectoryEventCoalescer(WINDOW_MS, "/");
+  }
+
+  private static Map<String, DirectoryChangeProcessor.DirectoryEvent> collapse(
+      DirectoryChangeProcessor.DirectoryEvent... events) {
+    DirectoryEventCoalescer coalescer = createCoalescer();
+    Arrays.stream(events).forEach(event -> coalescer.add("file", event, 0));
+    Map<String, DirectoryChangeProcessor.DirectoryEvent> changes = coalescer.drainDueChanges(WINDOW_MS);
+    Assert.assertFalse(coalescer.hasPendingChanges());
+    return changes;
+  }
+
+  @Test
+  public void testEventsCollapse() {
+    Assert.assertEquals(collapse(ENTRY_CREATED, ENTRY_MODIFIED, ENTRY_MODIFIED),
+        Collections.singletonMap("file", ENTRY_CREATED));
+    Assert.assertEquals(collapse(ENTRY_CREATED, ENTRY_MODIFIED, ENTRY_DELETED), Collections.emptyMap());
+    Assert.assertEquals(collapse(ENTRY_DELETED, ENTRY_CREATED), Collections.singletonMap("file", ENTRY_MODIFIED));
+    Assert.assertEquals(collapse(ENTRY_MODIFIED, ENTRY_MODIFIED), Collections.singletonMap("file", ENTRY_MODIFIED));
+    Assert.assertEquals(collapse(ENTRY_MODIFIED, ENTRY_DELETED), Collections.singletonMap("file", ENTRY_DELETED));
+    Assert.assertEquals(collapse(ENTRY_DELETED, ENTRY_CREATED, ENTRY_DELETED),
+        Collections.singletonMap("file", ENTRY_DELETED));
+  }
+
+  @Test
+  public void testChangesDueOnceQuiet() {
+    DirectoryEventCoalescer coalescer = createCoalescer();
+    coalescer.add("file", ENTRY_CREATED, 0);
+    coalescer.add("file", ENTRY_MODIFIED, 50);
+    coalescer.add("other", ENTRY_MODIFIED, 0);
+
+    // Only the path which has been quiet for the window is due
+    Assert.assertEquals(coalescer.drainDueChanges(120), Collections.singletonMap("other", ENTRY_MODIFIED));
+    Assert.assertTrue(coalescer.hasPendingChanges());
+    Assert.assertEquals(coalescer.drainDueChanges(150), Collections.singletonMap("file", ENTRY_CREATED));
+    Assert.assertFalse(coalescer.hasPendingChanges());
+  }
+
+  @Test
+  public void testChangesDueAfterMaxDelay() {
+    DirectoryEventCoalescer coalescer = createCoalescer();
+    long maxDelayMs = WINDOW_MS * DirectoryEventCoalescer.MAX_DELAY_WINDOWS;
+    // A path which keeps changing is still emitted once it has been pending for the max delay
+    for (long now = 0; now < maxDelayMs; now += WINDOW_MS / 2) {
+      coalescer.add("file", ENTRY_MODIFIED, now);
+      Assert.assertEquals(coalescer.drainDueChanges(now), Collections.emptyMap());
+    }
+    coalescer.add("file", ENTRY_MODIFIED, maxDelayMs);
+    Assert.assertEquals(coalescer.drainDueChanges(maxDelayMs), Collections.singletonMap("file", ENTRY_MODIFIED));
+  }
+
+  @Test
+  public void testChangesUnderCreatedDirectoryFolded() {
+    DirectoryEventCoalescer coalescer = createCoalescer();
+    coalescer.add("dir", ENTRY_CREATED, 0);
+    coalescer.add("dir/nested", ENTRY_CREATED, 10);
+    coalescer.add("dir/nested/file", ENTRY_CREATED, 20);
+    coalescer.add("dir/nested/file", ENTRY_MODIFIED, 30);
+
+    // The events of the contents keep the directory pending
+    Assert.assertEquals(coalescer.drainDueChanges(110), Collections.emptyMap());
+    Assert.assertEquals(coalescer.drainDueChanges(130), Collections.singletonMap("dir", ENTRY_CREATED));
+  }
+
+  @Test
+  public void testDirectoryDeletionCoversContents() {
+    DirectoryEventCoalescer coalescer = createCoalescer();
+    coalescer.add("dir/a", ENTRY_MODIFIED, 0);
+    coalescer.add("dir/nested/b", ENTRY_CREATED, 0);
+    coalescer.add("dir0", ENTRY_MODIFIED, 0);
+    coalescer.add("dir-x/c", ENTRY_MODIFIED, 0);
+    coalescer.add("dir", ENTRY_DELETED, 0);
+
+    // The paths which only share a prefix with the directory are kept, and the changes are in path order
+    Map<String, DirectoryChangeProcessor.DirectoryEvent> expected = new LinkedHashMap<>();
+    expected.put("dir", ENTRY_DELETED);
+    expected.put("dir-x/c", ENTRY_MODIFIED);
+    expected.put("dir0", ENTRY_MODIFIED);
+    Map<String, DirectoryChangeProcessor.DirectoryEvent> changes = coalescer.drainDueChanges(WINDOW_MS);
+    Assert.assertEquals(changes, expected);
+    Assert.assertEquals(changes.keySet().toArray(), expected.keySet().toArray());
+  }
+
+  @Test
+  public void testNestedPathsTrackedSeparately() {
+    DirectoryEventCoalescer coalescer = createCoalescer();
+    // Without a pending change of their directory, the paths of its contents collapse on their own
+    coalescer.add("dir/nested/file", ENTRY_MODIFIED, 0);
+    coalescer.add("dir/nested/other", ENTRY_CREATED, 0);
+    coalescer.add("dir/nested/other", ENTRY_DELETED, 0);
+    coalescer.add("dir/file", ENTRY_MODIFIED, 0);
+
+    Map<String, DirectoryChangeProcessor.DirectoryEvent> expected = new LinkedHashMap<>();
+    expected.put("dir/file", ENTRY_MODIFIED);
+    expected.put("dir/nested/file", ENTRY_MODIFIED);
+    Assert.assertEquals(coalescer.drainDueChanges(WINDOW_MS), expected);
+  }
+}
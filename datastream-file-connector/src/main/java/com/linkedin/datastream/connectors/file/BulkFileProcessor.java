@@ -0,0 +1,336 @@
+/**
+ *  Copyright 2021 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.connectors.file;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.linkedin.datastream.common.BrooklinEnvelope;
+import com.linkedin.datastream.common.BrooklinEnvelopeMetadataConstants;
+import com.linkedin.datastream.common.DatastreamDestination;
+import com.linkedin.datastream.common.DatastreamRuntimeException;
+import com.linkedin.datastream.connectors.file.diag.FilePositionKey;
+import com.linkedin.datastream.connectors.file.diag.FilePositionValue;
+import com.linkedin.datastream.server.DatastreamEventProducer;
+import com.linkedin.datastream.server.DatastreamProducerRecord;
+import com.linkedin.datastream.server.DatastreamProducerRecordBuilder;
+import com.linkedin.datastream.server.DatastreamTask;
+import com.linkedin.datastream.server.DatastreamTaskStatus;
+
+
+/**
+ * Loads a whole file in bulk, for datastreams which don't need the lines to be ordered across the file. The file is
+ * split into as many byte ranges as the destination has partitions, with the boundaries aligned to the start of lines,
+ * and the ranges are read concurrently by the workers of the given pool. The lines of range i are produced to
+ * destination partition i, with the byte offset of the line as the key, and each range checkpoints
+ * "{offset}:{linesRead}" on its own partition, so it resumes independently of the others.
+ *
+ * The file is expected not to change once the datastream is created, since the ranges are computed from its size when
+ * the task starts. Once all the ranges are loaded, the processor idles until it is stopped. A range which fails to be
+ * read, or to be sent, stops loading and sets the status of the task to error, while the other ranges keep loading.
+ *
+ * Stopping the processor waits for at most {@link #STOP_TIMEOUT} for the ranges being loaded to stop, and cancels
+ * the others, so that it stops within the shutdown timeout of the connector.
+ */
+class BulkFileProcessor implements FileTaskProcessor {
+  private static final Logger LOG = LoggerFactory.getLogger(BulkFileProcessor.class);
+
+  private static final Duration ACQUIRE_TIMEOUT = Duration.ofMinutes(5);
+  private static final Duration STOP_TIMEOUT = Duration.ofSeconds(3);
+  private static final long RANGE_CHECK_INTERVAL_MS = 100;
+  private static final String CHECKPOINT_SEPARATOR = ":";
+  private static final int SPLIT_BUFFER_SIZE = 4 * 1024;
+
+  private final DatastreamTask _task;
+  private final String _fileName;
+  private final DatastreamEventProducer _producer;
+  private final int _maxBatchSize;
+  private final ExecutorService _workerPool;
+  private final FileChannel _channel;
+  private final FilePositionKey _positionKey;
+  private final FilePositionValue _positionValue;
+  private final CountDownLatch _stopLatch = new CountDownLatch(1);
+  private volatile boolean _cancelRequested;
+  private volatile boolean _isStopped;
+  private volatile List<RangeReader> _ranges = Collections.emptyList();
+
+  public BulkFileProcessor(DatastreamTask datastreamTask, DatastreamEventProducer producer, int maxBatchSize,
+      ExecutorService workerPool) throws IOException {
+    _task = datastreamTask;
+    _fileName = datastreamTask.getDatastreamSource().getConnectionString();
+    _producer = producer;
+    _maxBatchSize = maxBatchSize;
+    _workerPool = workerPool;
+    _positionKey = new FilePositionKey(_task.getTaskPrefix(), _task.getDatastreamTaskName(), Instant.now(), _fileName);
+    _positionValue = new FilePositionValue();
+
+    // The channel is shared by the range readers, which only do positional reads
+    _channel = FileChannel.open(Paths.get(_fileName), StandardOpenOption.READ);
+    _positionValue.setFileLengthBytes(_channel.size());
+    LOG.info("Created BulkFileProcessor for " + datastreamTask);
+  }
+
+  @Override
+  public void run() {
+    try {
+      _task.acquire(ACQUIRE_TIMEOUT);
+
+      List<Long> rangeStarts = splitIntoRanges(_channel, getNumRanges());
+      Map<Integer, String> checkpoints = _task.getCheckpoints();
+      List<RangeReader> ranges = new ArrayList<>();
+      for (int i = 0; i < rangeStarts.size() - 1; i++) {
+        ranges.add(new RangeReader(i, rangeStarts.get(i), rangeStarts.get(i + 1), checkpoints.get(i)));
+      }
+      _ranges = ranges;
+      LOG.info("Loading file {} in {} ranges starting at byte offsets {}", _fileName, _ranges.size(), rangeStarts);
+
+      CompletionService<RangeReader> completionService = new ExecutorCompletionService<>(_workerPool);
+      List<Future<RangeReader>> rangeFutures = new ArrayList<>();
+      _ranges.forEach(range -> rangeFutures.add(completionService.submit(range, range)));
+      int numPendingRanges = rangeFutures.size();
+      while (numPendingRanges > 0 && !_cancelRequested) {
+        if (completionService.poll(RANGE_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS) != null) {
+          numPendingRanges--;
+        }
+      }
+      if (_cancelRequested) {
+        stopRanges(rangeFutures);
+      } else {
+        long numFailedRanges = _ranges.stream().filter(RangeReader::hasFailed).count();
+        if (numFailedRanges > 0) {
+          LOG.error("Loading {} of the {} ranges of file {} failed, task={}", numFailedRanges, _ranges.size(), _fileName,
+              _task);
+        } else {
+          LOG.info("Loaded file {}, task={}", _fileName, _task);
+        }
+      }
+
+      // Keep the task until it is unassigned
+      _stopLatch.await();
+      _channel.close();
+      _task.release();
+      _isStopped = true;
+      LOG.info("Stopped bulk loading file " + _fileName + " task=" + _task);
+    } catch (Throwable e) {
+      LOG.error("Bulk file processor is quitting with exception, task=" + _task, e);
+    }
+  }
+
+  /**
+   * Wait for the ranges being loaded to stop, for at most {@link #STOP_TIMEOUT}, and cancel the others
+   */
+  private void stopRanges(List<Future<RangeReader>> rangeFutures) throws InterruptedException {
+    long deadline = System.nanoTime() + STOP_TIMEOUT.toNanos();
+    for (Future<RangeReader> future : rangeFutures) {
+      try {
+        future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+      } catch (ExecutionException | CancellationException e) {
+        // Failures are handled by the ranges
+      } catch (TimeoutException e) {
+        // Cancel the ranges which are still waiting for a worker, and interrupt those blocked on reading or sending
+        future.cancel(true);
+      }
+    }
+  }
+
+  private void onRangeFailed(RangeReader range, Throwable cause) {
+    String message = String.format("Loading range [%d, %d) of file %s failed", range._start, range._end, _fileName);
+    LOG.error(message + ", task=" + _task, cause);
+    _task.setStatus(DatastreamTaskStatus.error(message + ": " + cause));
+  }
+
+  private int getNumRanges() {
+    DatastreamDestination destination = _task.getDatastreams().get(0).getDestination();
+    return destination.hasPartitions() ? Math.max(destination.getPartitions(), 1) : 1;
+  }
+
+  /**
+   * Split the file into byte ranges of about the same size, which start at the beginning of lines. A range is empty
+   * when a line spans the whole range.
+   * @return the start offsets of the ranges, followed by the length of the file
+   */
+  static List<Long> splitIntoRanges(FileChannel channel, int numRanges) throws IOException {
+    long length = channel.size();
+    FileLineReader reader = new FileLineReader(channel, SPLIT_BUFFER_SIZE);
+    List<Long> rangeStarts = new ArrayList<>();
+    rangeStarts.add(0L);
+    for (int i = 1; i < numRanges; i++) {
+      long start = Math.max(length * i / numRanges, rangeStarts.get(i - 1));
+      if (start > 0 && start < length) {
+        // Move to the start of the next line, unless the range already starts at the beginning of a line
+        reader.seek(start - 1);
+        start = reader.readLine() == null ? length : reader.getPosition();
+      }
+      rangeStarts.add(start);
+    }
+    rangeStarts.add(length);
+    return rangeStarts;
+  }
+
+  @Override
+  public void stop() {
+    _cancelRequested = true;
+    _stopLatch.countDown();
+  }
+
+  @Override
+  public boolean isStopped() {
+    return _isStopped;
+  }
+
+  @Override
+  public FilePositionKey getPositionKey() {
+    return _positionKey;
+  }
+
+  @Override
+  public FilePositionValue getPositionValue() {
+    long bytesRead = 0;
+    long linesRead = 0;
+    for (RangeReader range : _ranges) {
+      bytesRead += range._position - range._start;
+      linesRead += range._linesRead;
+    }
+    _positionValue.setBytesRead(bytesRead);
+    _positionValue.setLinesRead(linesRead);
+    return _positionValue;
+  }
+
+  /**
+   * Reads the lines starting within [start, end) and produces them to the partition of the range
+   */
+  private class RangeReader implements Runnable {
+    private final int _partition;
+    private final long _start;
+    private final long _end;
+    private final FileLineReader _lineReader;
+    private volatile long _position;
+    private volatile long _linesRead;
+    // The first failure of a batch sent by the range
+    private final AtomicReference<Exception> _sendFailure = new AtomicReference<>();
+    private volatile boolean _failed;
+
+    RangeReader(int partition, long start, long end, String checkpoint) {
+      _partition = partition;
+      _start = start;
+      _end = end;
+      _lineReader = new FileLineReader(_channel);
+      _position = start;
+      if (checkpoint != null && !checkpoint.isEmpty()) {
+        int separator = checkpoint.indexOf(CHECKPOINT_SEPARATOR);
+        long position = separator > 0 ? Long.parseLong(checkpoint.substring(0, separator)) : -1;
+        if (position >= start && position <= end) {
+          _position = position;
+          _linesRead = Long.parseLong(checkpoint.substring(separator + 1));
+        } else {
+          LOG.warn("Ignoring checkpoint {} outside of range [{}, {}) of file {}", checkpoint, start, end, _fileName);
+        }
+      }
+      _lineReader.seek(_position);
+    }
+
+    @Override
+    public void run() {
+      LOG.info("Loading range [{}, {}) of file {} from byte offset {}", _start, _end, _fileName, _position);
+      try {
+        List<DatastreamProducerRecord> batch = new ArrayList<>(_maxBatchSize);
+        while (!_cancelRequested && _lineReader.getPosition() < _end) {
+          checkSendFailure();
+          long lineStart = _lineReader.getPosition();
+          String text = _lineReader.readLine(true);
+          if (text == null) {
+            LOG.warn("File {} is shorter than when it was split, at {} bytes", _fileName, lineStart);
+            break;
+          }
+          batch.add(buildRecord(lineStart, text, ++_linesRead));
+          if (batch.size() >= _maxBatchSize) {
+            sendBatch(batch);
+            batch = new ArrayList<>(_maxBatchSize);
+          }
+        }
+        if (!batch.isEmpty()) {
+          sendBatch(batch);
+        }
+        if (!_cancelRequested) {
+          // Make sure the last events of the range were sent
+          _producer.flush();
+          checkSendFailure();
+        }
+      } catch (Exception e) {
+        if (_cancelRequested) {
+          // e.g. interrupted while reading or sending, as the processor is stopping
+          LOG.warn("Range [{}, {}) of file {} stopped with exception", _start, _end, _fileName, e);
+          return;
+        }
+        _failed = true;
+        onRangeFailed(this, e);
+        return;
+      }
+      LOG.info("Stopped loading range [{}, {}) of file {} at byte offset {}", _start, _end, _fileName, _position);
+    }
+
+    boolean hasFailed() {
+      return _failed;
+    }
+
+    private void checkSendFailure() {
+      Exception sendFailure = _sendFailure.get();
+      if (sendFailure != null) {
+        throw new DatastreamRuntimeException("Sending an event of the range failed", sendFailure);
+      }
+    }
+
+    private DatastreamProducerRecord buildRecord(long lineStart, String text, long linesRead) {
+      // Using the byte offset of the line as the key, since line numbers aren't known within a range
+      HashMap<String, String> eventMetadata = new HashMap<>();
+      long currentTimeMillis = System.currentTimeMillis();
+      eventMetadata.put(BrooklinEnvelopeMetadataConstants.EVENT_TIMESTAMP, String.valueOf(currentTimeMillis));
+      BrooklinEnvelope event = new BrooklinEnvelope(String.valueOf(lineStart).getBytes(StandardCharsets.UTF_8),
+          text.getBytes(StandardCharsets.UTF_8), null, eventMetadata);
+
+      DatastreamProducerRecordBuilder builder = new DatastreamProducerRecordBuilder();
+      builder.addEvent(event);
+      builder.setEventsSourceTimestamp(currentTimeMillis);
+      builder.setPartition(_partition);
+      builder.setSourceCheckpoint(_lineReader.getPosition() + CHECKPOINT_SEPARATOR + linesRead);
+      return builder.build();
+    }
+
+    private void sendBatch(List<DatastreamProducerRecord> batch) {
+      _producer.sendBatch(batch, (recordIndex, metadata, exception) -> {
+        if (exception != null) {
+          LOG.error(String.format("Sending event with checkpoint %s to partition %d failed, metadata:{%s}",
+              batch.get(recordIndex).getCheckpoint(), _partition, metadata), exception);
+          _sendFailure.compareAndSet(null, exception);
+        }
+      });
+      _position = _lineReader.getPosition();
+    }
+  }
+}
@@ -0,0 +1,166 @@
+/**
+ *  Copyright 2021 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.connectors.file;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Watches the files tailed by the {@link FileProcessor}s through a single {@link WatchService}, so that a processor
+ * which reached the end of its file can block until the file changes instead of polling it. The parent directories of
+ * the files are registered with the watch service, and a single daemon thread signals the processors of the files
+ * which were created or modified. An overflow signals all the files of the directory.
+ */
+class FileChangeWatcher implements Closeable {
+  private static final Logger LOG = LoggerFactory.getLogger(FileChangeWatcher.class);
+
+  private final WatchService _watchService;
+  private final Thread _watchThread;
+
+  // Guarded by this
+  private final Map<Path, WatchKey> _directoryKeys = new HashMap<>();
+  private final Map<WatchKey, Path> _keyDirectories = new HashMap<>();
+  private final Map<Path, List<ChangeSignal>> _fileSignals = new HashMap<>();
+
+  FileChangeWatcher() throws IOException {
+    _watchService = FileSystems.getDefault().newWatchService();
+    _watchThread = new Thread(this::watch, "FileChangeWatcher");
+    _watchThread.setDaemon(true);
+    _watchThread.start();
+  }
+
+  /**
+   * Start watching a file
+   * @param file the file to watch
+   * @return the signal raised whenever the file changes
+   * @throws IOException if the parent directory of the file can't be watched
+   */
+  synchronized ChangeSignal register(Path file) throws IOException {
+    Path path = file.toAbsolutePath().normalize();
+    Path directory = path.getParent();
+    if (!_directoryKeys.containsKey(directory)) {
+      WatchKey key = directory.register(_watchService, StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_MODIFY);
+      _directoryKeys.put(directory, key);
+      _keyDirectories.put(key, directory);
+      LOG.info("Watching directory {}", directory);
+    }
+
+    ChangeSignal signal = new ChangeSignal(path);
+    _fileSignals.computeIfAbsent(path, k -> new ArrayList<>()).add(signal);
+    return signal;
+  }
+
+  /**
+   * Stop watching a file, and its parent directory if none of its other files are watched
+   * @param signal the signal returned when the file was registered
+   */
+  synchronized void unregister(ChangeSignal signal) {
+    List<ChangeSignal> signals = _fileSignals.get(signal._file);
+    if (signals == null || !signals.remove(signal)) {
+      return;
+    }
+    if (signals.isEmpty()) {
+      _fileSignals.remove(signal._file);
+    }
+
+    Path directory = signal._file.getParent();
+    if (_fileSignals.keySet().stream().noneMatch(file -> file.getParent().equals(directory))) {
+      WatchKey key = _directoryKeys.remove(directory);
+      _keyDirectories.remove(key);
+      key.cancel();
+      LOG.info("Stopped watching directory {}", directory);
+    }
+  }
+
+  private void watch() {
+    while (true) {
+      WatchKey key;
+      try {
+        key = _watchService.take();
+      } catch (InterruptedException | ClosedWatchServiceException e) {
+        LOG.info("File change watcher stopped");
+        return;
+      }
+
+      List<ChangeSignal> changed = new ArrayList<>();
+      synchronized (this) {
+        Path directory = _keyDirectories.get(key);
+        if (directory != null) {
+          for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+              _fileSignals.forEach((file, signals) -> {
+                if (file.getParent().equals(directory)) {
+                  changed.addAll(signals);
+                }
+              });
+            } else {
+              changed.addAll(_fileSignals.getOrDefault(directory.resolve((Path) event.context()), new ArrayList<>()));
+            }
+          }
+        }
+      }
+      key.reset();
+      changed.forEach(ChangeSignal::signal);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    _watchService.close();
+  }
+
+  /**
+   * Signal raised when a watched file changes, which remains raised until it is awaited
+   */
+  static class ChangeSignal {
+    private final Path _file;
+    private boolean _changed;
+
+    private ChangeSignal(Path file) {
+      _file = file;
+    }
+
+    /**
+     * Raise the signal, waking up its waiter
+     */
+    synchronized void signal() {
+      _changed = true;
+      notifyAll();
+    }
+
+    /**
+     * Wait for the file to change, or for the timeout to elapse
+     * @return true if the file changed since the signal was last awaited, false if the timeout elapsed
+     */
+    synchronized boolean await(long timeoutMs) throws InterruptedException {
+      long deadline = System.currentTimeMillis() + timeoutMs;
+      long remainingMs = timeoutMs;
+      while (!_changed && remainingMs > 0) {
+        wait(remainingMs);
+        remainingMs = deadline - System.currentTimeMillis();
+      }
+      boolean changed = _changed;
+      _changed = false;
+      return changed;
+    }
+  }
+}
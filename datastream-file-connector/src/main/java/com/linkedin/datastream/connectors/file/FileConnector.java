@@ -6,7 +6,7 @@
 package com.linkedin.datastream.connectors.file;
 
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.time.Duration;
 import java.util.HashSet;
 import java.util.List;
@@ -39,25 +39,60 @@ import com.linkedin.datastream.server.providers.CheckpointProvider;
  * Connector reads the text file line by line and produces events.
  * Connector uses the simple strategy, so the datastream can go to any instance. In a distributed environment,
  *   source should be  network files. local files can be used only in a standalone environment.
- * Uses a single thread per file
+ * Uses a single thread per file, which sends the lines in batches of up to maxBatchSize events. Once at the end of the
+ *   file, the thread waits for a change notification or, in the POLL tail mode, polls it with a backoff.
+ * In bulk mode, meant for loading files which don't change and don't need ordering across the file, each file is
+ *   instead split into one line-aligned byte range per destination partition, and the ranges are read concurrently
+ *   by a pool of up to bulkMaxWorkers threads. See {@link BulkFileProcessor}.
  */
 public class FileConnector implements Connector, DiagnosticsAware {
   public static final String CONNECTOR_NAME = "file";
   public static final String CFG_MAX_EXEC_PROCS = "maxExecProcessors";
   public static final String CFG_NUM_PARTITIONS = "numPartitions";
+  public static final String CFG_MAX_BATCH_SIZE = "maxBatchSize";
+  public static final String CFG_TAIL_MODE = "tailMode";
+  public static final String CFG_POLL_MIN_WAIT_MS = "pollMinWaitMs";
+  public static final String CFG_POLL_MAX_WAIT_MS = "pollMaxWaitMs";
+  public static final String CFG_WATCH_TIMEOUT_MS = "watchTimeoutMs";
+  public static final String CFG_BULK_MODE = "bulkMode";
+  public static final String CFG_BULK_MAX_WORKERS = "bulkMaxWorkers";
 
   private static final Logger LOG = LoggerFactory.getLogger(FileConnector.class);
   private static final String DEFAULT_MAX_EXEC_PROCS = "5";
+  private static final String DEFAULT_MAX_BATCH_SIZE = "100";
+  private static final String DEFAULT_POLL_MIN_WAIT_MS = "1";
+  private static final String DEFAULT_POLL_MAX_WAIT_MS = "100";
+  private static final String DEFAULT_WATCH_TIMEOUT_MS = "60000";
+  private static final String DEFAULT_BULK_MAX_WORKERS = "4";
   private static final Duration SHUTDOWN_TIMEOUT = Duration.ofMillis(5000);
 
   private final ExecutorService _executorService;
+  private final ExecutorService _bulkWorkerPool;
   private final int _numPartitions;
-  private final Map<DatastreamTask, FileProcessor> _fileProcessors;
+  private final int _maxBatchSize;
+  private final long _pollMinWaitMs;
+  private final long _pollMaxWaitMs;
+  private final long _watchTimeoutMs;
+  private final FileChangeWatcher _fileChangeWatcher;
+  private final Map<DatastreamTask, FileTaskProcessor> _fileProcessors;
 
   private enum DiagnosticsRequestType {
     POSITION
   }
 
+  /**
+   * How the file processors wait for new data once they reached the end of their file
+   */
+  public enum TailMode {
+    /**
+     * Poll the file, with a wait which backs off while the file is idle. Meant for network file systems, which may not
+     * notify the changes made by other hosts.
+     */
+    POLL,
+    /** Block until a {@link java.nio.file.WatchService} notifies that the file changed (the default) */
+    WATCH
+  }
+
   /**
    * Constructor for FileConnector
    * @param config Connector configuration properties
@@ -67,9 +102,30 @@ public class FileConnector implements Connector, DiagnosticsAware {
         Executors.newFixedThreadPool(Integer.parseInt(config.getProperty(CFG_MAX_EXEC_PROCS, DEFAULT_MAX_EXEC_PROCS)));
 
     _numPartitions = Integer.parseInt(config.getProperty(CFG_NUM_PARTITIONS, "1"));
+    _maxBatchSize = Integer.parseInt(config.getProperty(CFG_MAX_BATCH_SIZE, DEFAULT_MAX_BATCH_SIZE));
+    _pollMinWaitMs = Long.parseLong(config.getProperty(CFG_POLL_MIN_WAIT_MS, DEFAULT_POLL_MIN_WAIT_MS));
+    _pollMaxWaitMs = Long.parseLong(config.getProperty(CFG_POLL_MAX_WAIT_MS, DEFAULT_POLL_MAX_WAIT_MS));
+    _watchTimeoutMs = Long.parseLong(config.getProperty(CFG_WATCH_TIMEOUT_MS, DEFAULT_WATCH_TIMEOUT_MS));
+    TailMode tailMode = TailMode.valueOf(config.getProperty(CFG_TAIL_MODE, TailMode.WATCH.name()).toUpperCase());
+    _fileChangeWatcher = tailMode == TailMode.WATCH ? createFileChangeWatcher() : null;
+    if (Boolean.parseBoolean(config.getProperty(CFG_BULK_MODE, "false"))) {
+      _bulkWorkerPool = Executors.newFixedThreadPool(
+          Integer.parseInt(config.getProperty(CFG_BULK_MAX_WORKERS, DEFAULT_BULK_MAX_WORKERS)));
+    } else {
+      _bulkWorkerPool = null;
+    }
     _fileProcessors = new ConcurrentHashMap<>();
   }
 
+  private static FileChangeWatcher createFileChangeWatcher() {
+    try {
+      return new FileChangeWatcher();
+    } catch (IOException | UnsupportedOperationException e) {
+      LOG.warn("Failed to create the file change watcher, falling back to polling the files", e);
+      return null;
+    }
+  }
+
   @Override
   public void start(CheckpointProvider checkpointProvider) {
     LOG.info("FileConnector started");
@@ -82,13 +138,23 @@ public class FileConnector implements Connector, DiagnosticsAware {
     if (!ThreadUtils.shutdownExecutor(_executorService, SHUTDOWN_TIMEOUT, LOG)) {
       LOG.warn("Failed shut down cleanly.");
     }
+    if (_bulkWorkerPool != null && !ThreadUtils.shutdownExecutor(_bulkWorkerPool, SHUTDOWN_TIMEOUT, LOG)) {
+      LOG.warn("Failed to shut down the bulk worker pool cleanly.");
+    }
+    if (_fileChangeWatcher != null) {
+      try {
+        _fileChangeWatcher.close();
+      } catch (IOException e) {
+        LOG.warn("Failed to close the file change watcher", e);
+      }
+    }
     LOG.info("FileConnector is stopped.");
   }
 
   private void stopProcessorForTasks(Set<DatastreamTask> unassigned) {
     // Initiate stops for all unassigned tasks
     for (DatastreamTask task : unassigned) {
-      FileProcessor processor = _fileProcessors.get(task);
+      FileTaskProcessor processor = _fileProcessors.get(task);
       if (!processor.isStopped()) {
         processor.stop();
       }
@@ -96,7 +162,7 @@ public class FileConnector implements Connector, DiagnosticsAware {
 
     // Ensure the processors have actually stopped
     for (DatastreamTask task : unassigned) {
-      FileProcessor processor = _fileProcessors.get(task);
+      FileTaskProcessor processor = _fileProcessors.get(task);
       if (!PollUtils.poll(processor::isStopped, 200, SHUTDOWN_TIMEOUT.toMillis())) {
         throw new RuntimeException("Failed to stop processor for " + task);
       }
@@ -118,10 +184,16 @@ public class FileConnector implements Connector, DiagnosticsAware {
       if (!_fileProcessors.containsKey(task)) {
         try {
           LOG.info("Creating file processor for " + task);
-          FileProcessor processor = new FileProcessor(task, task.getEventProducer());
+          FileTaskProcessor processor;
+          if (_bulkWorkerPool != null) {
+            processor = new BulkFileProcessor(task, task.getEventProducer(), _maxBatchSize, _bulkWorkerPool);
+          } else {
+            processor = new FileProcessor(task, task.getEventProducer(), _maxBatchSize, _fileChangeWatcher,
+                _pollMinWaitMs, _pollMaxWaitMs, _watchTimeoutMs);
+          }
           _fileProcessors.put(task, processor);
           _executorService.submit(processor);
-        } catch (FileNotFoundException e) {
+        } catch (IOException e) {
           throw new RuntimeException("FileProcessor threw an exception", e);
         }
       }
@@ -0,0 +1,123 @@
+/**
+ *  Copyright 2021 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.connectors.file;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+/**
+ * Reads the UTF-8 lines of a file through a {@link FileChannel}, keeping track of the byte offset right after the last
+ * line returned, so that a reader can later be positioned back there with a single seek.
+ *
+ * Lines are terminated by '\n', optionally preceded by '\r'. Since the file may still be appended to, a trailing line
+ * without a terminator is not returned until its terminator has been written, unless the caller knows the file is
+ * complete.
+ */
+class FileLineReader implements Closeable {
+  private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+  private final FileChannel _channel;
+  private byte[] _buffer;
+  // The unconsumed bytes of the buffer are [_start, _end)
+  private int _start;
+  private int _end;
+  // File offset of the byte at _start
+  private long _position;
+
+  FileLineReader(FileChannel channel) {
+    this(channel, DEFAULT_BUFFER_SIZE);
+  }
+
+  FileLineReader(FileChannel channel, int bufferSize) {
+    _channel = channel;
+    _buffer = new byte[bufferSize];
+  }
+
+  /**
+   * Position the reader at the given byte offset of the file, which must be the start of a line
+   */
+  void seek(long position) {
+    _position = position;
+    _start = 0;
+    _end = 0;
+  }
+
+  /**
+   * Read the next complete line of the file
+   * @return the line, without its terminator, or null if no complete line is available yet
+   */
+  String readLine() throws IOException {
+    return readLine(false);
+  }
+
+  /**
+   * Read the next line of the file
+   * @param includeUnterminated whether a trailing line without a terminator is returned at the end of the file
+   * @return the line, without its terminator, or null if no line is available yet
+   */
+  String readLine(boolean includeUnterminated) throws IOException {
+    int scanFrom = _start;
+    while (true) {
+      for (int i = scanFrom; i < _end; i++) {
+        if (_buffer[i] == '\n') {
+          int lineEnd = i > _start && _buffer[i - 1] == '\r' ? i - 1 : i;
+          String line = new String(_buffer, _start, lineEnd - _start, StandardCharsets.UTF_8);
+          _position += i + 1 - _start;
+          _start = i + 1;
+          return line;
+        }
+      }
+
+      int scanned = _end - _start;
+      if (!fill()) {
+        if (includeUnterminated && _end > _start) {
+          String line = new String(_buffer, _start, _end - _start, StandardCharsets.UTF_8);
+          _position += _end - _start;
+          _start = _end;
+          return line;
+        }
+        return null;
+      }
+      scanFrom = _start + scanned;
+    }
+  }
+
+  /**
+   * Get the byte offset of the file right after the last line read, i.e. where the next line starts
+   */
+  long getPosition() {
+    return _position;
+  }
+
+  private boolean fill() throws IOException {
+    if (_start > 0) {
+      System.arraycopy(_buffer, _start, _buffer, 0, _end - _start);
+      _end -= _start;
+      _start = 0;
+    }
+    if (_end == _buffer.length) {
+      // The line doesn't fit in the buffer
+      _buffer = Arrays.copyOf(_buffer, _buffer.length * 2);
+    }
+
+    int read = _channel.read(ByteBuffer.wrap(_buffer, _end, _buffer.length - _end), _position + _end);
+    if (read <= 0) {
+      return false;
+    }
+    _end += read;
+    return true;
+  }
+
+  @Override
+  public void close() throws IOException {
+    _channel.close();
+  }
+}
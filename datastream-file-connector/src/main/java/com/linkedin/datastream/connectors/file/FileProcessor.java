@@ -5,62 +5,98 @@
  */
 package com.linkedin.datastream.connectors.file;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.io.CountingInputStream;
-
 import com.linkedin.datastream.common.BrooklinEnvelope;
 import com.linkedin.datastream.common.BrooklinEnvelopeMetadataConstants;
 import com.linkedin.datastream.connectors.file.diag.FilePositionKey;
 import com.linkedin.datastream.connectors.file.diag.FilePositionValue;
 import com.linkedin.datastream.server.DatastreamEventProducer;
+import com.linkedin.datastream.server.DatastreamProducerRecord;
 import com.linkedin.datastream.server.DatastreamProducerRecordBuilder;
 import com.linkedin.datastream.server.DatastreamTask;
+import com.linkedin.datastream.server.DatastreamTaskStatus;
 
 
-class FileProcessor implements Runnable {
+/**
+ * Tails a file and produces an event per line. Lines are sent in batches of up to maxBatchSize records, and each record
+ * checkpoints the byte offset right after its line along with its line number, as "{offset}:{lineNo}", so that the
+ * processor resumes with a single seek.
+ *
+ * Once it reaches the end of the file, the processor waits for new data. With a {@link FileChangeWatcher}, it blocks
+ * until the file changes, or the watch timeout elapses in case a change notification was missed. Otherwise, or if the
+ * file can't be watched, it polls the file with a wait which doubles from the min to the max poll wait while the file
+ * is idle, and starts over from the min one as soon as new data is read.
+ *
+ * If sending an event fails, the processor stops reading and puts the task in error, rather than moving on past the
+ * lost event. The task then resumes from its last acknowledged checkpoint once it is restarted.
+ */
+class FileProcessor implements FileTaskProcessor {
   private static final Logger LOG = LoggerFactory.getLogger(FileProcessor.class);
 
   private static final int PARTITION = 0;
-  private static final int POLL_WAIT_MS = 100;
   private static final Duration ACQUIRE_TIMEOUT = Duration.ofMinutes(5);
+  private static final String CHECKPOINT_SEPARATOR = ":";
 
   private final DatastreamTask _task;
   private final String _fileName;
   private final DatastreamEventProducer _producer;
-  private final BufferedReader _fileReader;
-  private final CountingInputStream _inputStream;
+  private final Path _filePath;
+  private final FileLineReader _lineReader;
+  private final int _maxBatchSize;
+  private final FileChangeWatcher _fileChangeWatcher;
+  private final long _pollMinWaitMs;
+  private final long _pollMaxWaitMs;
+  private final long _watchTimeoutMs;
   private final AtomicInteger _lineNo;
   private final FilePositionKey _positionKey;
   private final FilePositionValue _positionValue;
-  private boolean _cancelRequested;
+  // The first failure of a batch sent by the processor
+  private final AtomicReference<Exception> _sendFailure = new AtomicReference<>();
+  private volatile boolean _cancelRequested;
   private boolean _isStopped;
+  private volatile FileChangeWatcher.ChangeSignal _changeSignal;
+  private volatile long _pollWaitMs;
+  private long _idleCount;
+  private long _wakeCount;
 
-  public FileProcessor(DatastreamTask datastreamTask, DatastreamEventProducer producer) throws FileNotFoundException {
+  public FileProcessor(DatastreamTask datastreamTask, DatastreamEventProducer producer, int maxBatchSize,
+      FileChangeWatcher fileChangeWatcher, long pollMinWaitMs, long pollMaxWaitMs, long watchTimeoutMs)
+      throws IOException {
     _task = datastreamTask;
     _fileName = datastreamTask.getDatastreamSource().getConnectionString();
     _positionKey = new FilePositionKey(_task.getTaskPrefix(), _task.getDatastreamTaskName(), Instant.now(), _fileName);
     _positionValue = new FilePositionValue();
+    _positionValue.setIdleCount(0L);
+    _positionValue.setWakeCount(0L);
 
-    // Set up input streams/readers
-    final File file = new File(_fileName);
-    _positionValue.setFileLengthBytes(file.length());
-    _inputStream = new CountingInputStream(new FileInputStream(file));
-    _fileReader = new BufferedReader(new InputStreamReader(_inputStream, StandardCharsets.UTF_8));
+    // Set up the file channel/reader
+    _filePath = Paths.get(_fileName);
+    FileChannel channel = FileChannel.open(_filePath, StandardOpenOption.READ);
+    _positionValue.setFileLengthBytes(channel.size());
+    _lineReader = new FileLineReader(channel);
+    _maxBatchSize = maxBatchSize;
+    _fileChangeWatcher = fileChangeWatcher;
+    _pollMinWaitMs = pollMinWaitMs;
+    _pollMaxWaitMs = pollMaxWaitMs;
+    _watchTimeoutMs = watchTimeoutMs;
+    _pollWaitMs = pollMinWaitMs;
     _lineNo = new AtomicInteger();
 
     _producer = producer;
@@ -74,16 +110,24 @@ class FileProcessor implements Runnable {
     Map<Integer, String> savedCheckpoints = _task.getCheckpoints();
     String cpString = savedCheckpoints.getOrDefault(PARTITION, null);
     if (cpString != null && !cpString.isEmpty()) {
-      // Resume from last saved line number
-      lineNo = Integer.parseInt(cpString);
-
-      // Must skip line by line as we can't get the actual file position of the
-      // last newline character due to the buffering done by BufferedReader.
-      for (int i = 0; i < lineNo; i++) {
-        _fileReader.readLine();
+      int separator = cpString.indexOf(CHECKPOINT_SEPARATOR);
+      if (separator >= 0) {
+        // Resume from the byte offset after the last saved line
+        long position = Long.parseLong(cpString.substring(0, separator));
+        lineNo = Integer.parseInt(cpString.substring(separator + 1));
+        _lineReader.seek(position);
+        LOG.info("Resumed from line {} at byte offset {}", lineNo, position);
+      } else {
+        // Checkpoints saved before byte offsets were tracked only have the line number, so skip line by line
+        lineNo = Integer.parseInt(cpString);
+        for (int i = 0; i < lineNo; i++) {
+          if (_lineReader.readLine() == null) {
+            LOG.warn("File {} only has {} complete lines, fewer than checkpointed", _fileName, i);
+            break;
+          }
+        }
+        LOG.info("Resumed from line {} using a line number checkpoint", lineNo);
       }
-
-      LOG.info("Resumed from line " + lineNo);
     } else {
       LOG.info("Resumed from beginning");
     }
@@ -96,57 +140,51 @@ class FileProcessor implements Runnable {
     try {
       _task.acquire(ACQUIRE_TIMEOUT);
 
+      // Watch the file before reading it, so that no change is missed
+      _changeSignal = watchFile();
       _lineNo.set(loadCheckpoint());
       _positionValue.setLinesRead((long) _lineNo.intValue());
-      while (!_cancelRequested) {
+      _positionValue.setBytesRead(_lineReader.getPosition());
+      List<DatastreamProducerRecord> batch = new ArrayList<>(_maxBatchSize);
+      while (!_cancelRequested && _sendFailure.get() == null) {
         String text;
         try {
-          text = _fileReader.readLine();
-          _positionValue.setBytesRead(_inputStream.getCount());
+          text = _lineReader.readLine();
         } catch (IOException e) {
           throw new RuntimeException("Reading file failed.", e);
         }
         if (text != null) {
-          // Using the line# as the key
-
-          HashMap<String, String> eventMetadata = new HashMap<>();
-          long currentTimeMillis = System.currentTimeMillis();
-          eventMetadata.put(BrooklinEnvelopeMetadataConstants.EVENT_TIMESTAMP, String.valueOf(currentTimeMillis));
-          BrooklinEnvelope event =
-              new BrooklinEnvelope(_lineNo.toString().getBytes(StandardCharsets.UTF_8),
-                  text.getBytes(StandardCharsets.UTF_8), null, eventMetadata);
-
-          LOG.info("sending event " + text);
-          DatastreamProducerRecordBuilder builder = new DatastreamProducerRecordBuilder();
-          builder.addEvent(event);
-          builder.setEventsSourceTimestamp(currentTimeMillis);
-          // If the destination is user managed, we will use the key to decide the partition.
-          if (!_task.isUserManagedDestination()) {
-            builder.setPartition(0);
-          } else {
-            builder.setPartitionKey(_lineNo.toString());
-          }
-
-          builder.setSourceCheckpoint(_lineNo.toString());
-          _producer.send(builder.build(), (metadata, exception) -> {
-            if (exception == null) {
-              LOG.info("Sending event:{} succeeded, metadata:{}", text, metadata);
-            } else {
-              LOG.error(String.format("Sending event:{%s} failed, metadata:{%s}", text, metadata), exception);
-            }
-          });
+          batch.add(buildRecord(text));
           _positionValue.setLinesRead((long) _lineNo.incrementAndGet());
+          _pollWaitMs = _pollMinWaitMs;
+          if (batch.size() >= _maxBatchSize) {
+            sendBatch(batch);
+            batch = new ArrayList<>(_maxBatchSize);
+          }
+        } else if (!batch.isEmpty()) {
+          // Don't hold on to a partial batch while waiting for new data
+          sendBatch(batch);
+          batch = new ArrayList<>(_maxBatchSize);
         } else {
           try {
-            // Wait for new data
-            Thread.sleep(POLL_WAIT_MS);
+            waitForData();
           } catch (InterruptedException e) {
             LOG.info("Interrupted");
             break;
           }
         }
       }
+      Exception sendFailure = _sendFailure.get();
+      if (sendFailure != null) {
+        onSendFailed(sendFailure);
+      } else if (!batch.isEmpty()) {
+        sendBatch(batch);
+      }
 
+      if (_changeSignal != null) {
+        _fileChangeWatcher.unregister(_changeSignal);
+      }
+      _lineReader.close();
       _task.release();
       _isStopped = true;
       LOG.info("Stopped at line " + _lineNo + " task=" + _task);
@@ -155,12 +193,95 @@ class FileProcessor implements Runnable {
     }
   }
 
+  private FileChangeWatcher.ChangeSignal watchFile() {
+    if (_fileChangeWatcher == null) {
+      return null;
+    }
+    try {
+      return _fileChangeWatcher.register(_filePath);
+    } catch (IOException | UnsupportedOperationException e) {
+      LOG.warn("Failed to watch file {}, falling back to polling it", _fileName, e);
+      return null;
+    }
+  }
+
+  private void waitForData() throws InterruptedException {
+    _positionValue.setIdleCount(++_idleCount);
+    if (_changeSignal != null) {
+      if (_changeSignal.await(_watchTimeoutMs)) {
+        _positionValue.setWakeCount(++_wakeCount);
+      }
+    } else {
+      Thread.sleep(_pollWaitMs);
+      _pollWaitMs = Math.min(_pollWaitMs * 2, _pollMaxWaitMs);
+    }
+  }
+
+  private DatastreamProducerRecord buildRecord(String text) {
+    // Using the line# as the key
+    String lineNo = _lineNo.toString();
+    HashMap<String, String> eventMetadata = new HashMap<>();
+    long currentTimeMillis = System.currentTimeMillis();
+    eventMetadata.put(BrooklinEnvelopeMetadataConstants.EVENT_TIMESTAMP, String.valueOf(currentTimeMillis));
+    BrooklinEnvelope event = new BrooklinEnvelope(lineNo.getBytes(StandardCharsets.UTF_8),
+        text.getBytes(StandardCharsets.UTF_8), null, eventMetadata);
+
+    DatastreamProducerRecordBuilder builder = new DatastreamProducerRecordBuilder();
+    builder.addEvent(event);
+    builder.setEventsSourceTimestamp(currentTimeMillis);
+    // If the destination is user managed, we will use the key to decide the partition.
+    if (!_task.isUserManagedDestination()) {
+      builder.setPartition(0);
+    } else {
+      builder.setPartitionKey(lineNo);
+    }
+
+    builder.setSourceCheckpoint(_lineReader.getPosition() + CHECKPOINT_SEPARATOR + lineNo);
+    return builder.build();
+  }
+
+  private void sendBatch(List<DatastreamProducerRecord> batch) {
+    LOG.debug("Sending {} events up to line {}", batch.size(), _lineNo.get() - 1);
+    _producer.sendBatch(batch, (recordIndex, metadata, exception) -> {
+      if (exception != null) {
+        LOG.error(String.format("Sending event with checkpoint %s failed, metadata:{%s}",
+            batch.get(recordIndex).getCheckpoint(), metadata), exception);
+        if (_sendFailure.compareAndSet(null, exception)) {
+          wakeUp();
+        }
+      }
+    });
+    _positionValue.setBytesRead(_lineReader.getPosition());
+  }
+
+  private void onSendFailed(Exception cause) {
+    String message = String.format("Sending an event of file %s failed", _fileName);
+    LOG.error(message + ", task=" + _task, cause);
+    _task.setStatus(DatastreamTaskStatus.error(message + ": " + cause));
+  }
+
+  // Wake the processor up if it is waiting for the file to change
+  private void wakeUp() {
+    FileChangeWatcher.ChangeSignal changeSignal = _changeSignal;
+    if (changeSignal != null) {
+      changeSignal.signal();
+    }
+  }
+
+  @Override
   public boolean isStopped() {
     return _isStopped;
   }
 
+  @Override
   public void stop() {
     _cancelRequested = true;
+    wakeUp();
+  }
+
+  // The wait before the file is polled again once the processor reached its end, without a file change watcher
+  long getPollWaitMs() {
+    return _pollWaitMs;
   }
 
   public Integer getLineNumber() {
@@ -171,10 +292,12 @@ class FileProcessor implements Runnable {
     return _fileName;
   }
 
+  @Override
   public FilePositionKey getPositionKey() {
     return _positionKey;
   }
 
+  @Override
   public FilePositionValue getPositionValue() {
     return _positionValue;
   }
@@ -0,0 +1,36 @@
+/**
+ *  Copyright 2021 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.connectors.file;
+
+import com.linkedin.datastream.connectors.file.diag.FilePositionKey;
+import com.linkedin.datastream.connectors.file.diag.FilePositionValue;
+
+
+/**
+ * Processes the file of a datastream task assigned to the {@link FileConnector}, on a thread of the connector.
+ */
+interface FileTaskProcessor extends Runnable {
+
+  /**
+   * Request the processor to stop, which it does asynchronously
+   */
+  void stop();
+
+  /**
+   * Whether the processor has stopped
+   */
+  boolean isStopped();
+
+  /**
+   * Get the key of the position of the processor in the file, for the position diag
+   */
+  FilePositionKey getPositionKey();
+
+  /**
+   * Get the position of the processor in the file, for the position diag
+   */
+  FilePositionValue getPositionValue();
+}
@@ -31,6 +31,16 @@ public class FilePositionValue implements PositionValue {
    */
   private Long fileLengthBytes;
 
+  /**
+   * The number of times the reader found no new data in the file and waited for some.
+   */
+  private Long idleCount;
+
+  /**
+   * The number of waits for new data which were ended by a notification that the file changed, rather than a timeout.
+   */
+  private Long wakeCount;
+
   /**
    * Constructor for FilePositionValue.
    */
@@ -87,4 +97,38 @@ public class FilePositionValue implements PositionValue {
   public void setFileLengthBytes(final Long bytes) {
     this.fileLengthBytes = bytes;
   }
-}
\ No newline at end of file
+
+  /**
+   * Gets the number of times the reader found no new data in the file and waited for some.
+   * @return the number of waits for new data
+   */
+  @Nullable
+  public Long getIdleCount() {
+    return idleCount;
+  }
+
+  /**
+   * Sets the number of times the reader found no new data in the file and waited for some.
+   * @param count the number of waits for new data
+   */
+  public void setIdleCount(final Long count) {
+    this.idleCount = count;
+  }
+
+  /**
+   * Gets the number of waits for new data which were ended by a notification that the file changed.
+   * @return the number of waits ended by a change notification
+   */
+  @Nullable
+  public Long getWakeCount() {
+    return wakeCount;
+  }
+
+  /**
+   * Sets the number of waits for new data which were ended by a notification that the file changed.
+   * @param count the number of waits ended by a change notification
+   */
+  public void setWakeCount(final Long count) {
+    this.wakeCount = count;
+  }
+}
@@ -0,0 +1,178 @@
+/**
+ *  Copyright 2021 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.connectors.file;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.linkedin.datastream.common.Datastream;
+import com.linkedin.datastream.common.DatastreamDestination;
+import com.linkedin.datastream.common.DatastreamSource;
+import com.linkedin.datastream.server.DatastreamEventProducer;
+import com.linkedin.datastream.server.DatastreamTask;
+import com.linkedin.datastream.server.DatastreamTaskStatus;
+import com.linkedin.datastream.server.api.transport.BatchSendCallback;
+
+
+/**
+ * Tests for {@link BulkFileProcessor}
+ */
+public class TestBulkFileProcessor {
+  private static final long TIMEOUT_MS = 5000;
+
+  private Path _file;
+  private ExecutorService _executor;
+
+  @BeforeMethod
+  public void setup() throws IOException {
+    _file = Files.createTempFile("testBulkFileProcessor", "");
+    _executor = Executors.newFixedThreadPool(2);
+  }
+
+  @AfterMethod
+  public void teardown() throws IOException {
+    _executor.shutdownNow();
+    Files.deleteIfExists(_file);
+  }
+
+  private List<Long> split(String content, int numRanges) throws IOException {
+    Files.write(_file, content.getBytes(StandardCharsets.UTF_8));
+    try (FileChannel channel = FileChannel.open(_file, StandardOpenOption.READ)) {
+      return BulkFileProcessor.splitIntoRanges(channel, numRanges);
+    }
+  }
+
+  private static String repeatLine(String line, int count) {
+    return String.join("", Collections.nCopies(count, line + "\n"));
+  }
+
+  @Test
+  public void testSplitIntoRanges() throws IOException {
+    // 10 lines of 5 bytes: the ranges start at the line following the even split
+    String content = repeatLine("aaaa", 10);
+    Assert.assertEquals(split(content, 1), Arrays.asList(0L, 50L));
+    Assert.assertEquals(split(content, 3), Arrays.asList(0L, 20L, 35L, 50L));
+    // The even split already falls at the start of lines
+    Assert.assertEquals(split(content, 5), Arrays.asList(0L, 10L, 20L, 30L, 40L, 50L));
+  }
+
+  @Test
+  public void testSplitIntoRangesWithLongLines() throws IOException {
+    // A line spanning several ranges leaves the following ones empty
+    String content = repeatLine(String.join("", Collections.nCopies(100, "x")), 1) + "y\n";
+    Assert.assertEquals(split(content, 3), Arrays.asList(0L, 101L, 101L, 103L));
+
+    // An unterminated last line is not split
+    Assert.assertEquals(split("a\nbbbbbbbb", 2), Arrays.asList(0L, 10L, 10L));
+
+    Assert.assertEquals(split("", 2), Arrays.asList(0L, 0L, 0L));
+  }
+
+  private DatastreamTask createTask(int numPartitions, AtomicReference<DatastreamTaskStatus> status) {
+    Datastream datastream = new Datastream();
+    datastream.setName("testBulkFileProcessor");
+    datastream.setSource(new DatastreamSource().setConnectionString(_file.toString()));
+    datastream.setDestination(new DatastreamDestination().setPartitions(numPartitions));
+
+    DatastreamTask task = Mockito.mock(DatastreamTask.class);
+    Mockito.when(task.getDatastreamSource()).thenReturn(datastream.getSource());
+    Mockito.when(task.getDatastreams()).thenReturn(Collections.singletonList(datastream));
+    Mockito.when(task.getTaskPrefix()).thenReturn("testBulkFileProcessor");
+    Mockito.when(task.getDatastreamTaskName()).thenReturn("testBulkFileProcessor_0");
+    Mockito.when(task.getCheckpoints()).thenReturn(Collections.emptyMap());
+    Mockito.doAnswer(invocation -> {
+      status.set((DatastreamTaskStatus) invocation.getArguments()[0]);
+      return null;
+    }).when(task).setStatus(Mockito.any());
+    return task;
+  }
+
+  private static boolean waitFor(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+    while (!condition.getAsBoolean()) {
+      if (System.currentTimeMillis() > deadline) {
+        return false;
+      }
+      Thread.sleep(10);
+    }
+    return true;
+  }
+
+  @Test
+  public void testSendFailureSetsTaskError() throws Exception {
+    Files.write(_file, repeatLine("line", 100).getBytes(StandardCharsets.UTF_8));
+    AtomicReference<DatastreamTaskStatus> status = new AtomicReference<>();
+    DatastreamTask task = createTask(2, status);
+    DatastreamEventProducer producer = Mockito.mock(DatastreamEventProducer.class);
+    Mockito.doAnswer(invocation -> {
+      BatchSendCallback callback = (BatchSendCallback) invocation.getArguments()[1];
+      callback.onCompletion(0, null, new IOException("send failed"));
+      return null;
+    }).when(producer).sendBatch(Mockito.any(), Mockito.any());
+
+    BulkFileProcessor processor = new BulkFileProcessor(task, producer, 10, _executor);
+    Thread thread = new Thread(processor);
+    thread.start();
+    Assert.assertTrue(waitFor(() -> status.get() != null));
+    Assert.assertEquals(status.get().getCode(), DatastreamTaskStatus.Code.ERROR);
+
+    processor.stop();
+    Assert.assertTrue(waitFor(processor::isStopped));
+    thread.join(TIMEOUT_MS);
+    // Each range stops loading after its first failed batch
+    Mockito.verify(producer, Mockito.atMost(2)).sendBatch(Mockito.any(), Mockito.any());
+  }
+
+  @Test
+  public void testStopCancelsBlockedRanges() throws Exception {
+    Files.write(_file, repeatLine("line", 100).getBytes(StandardCharsets.UTF_8));
+    AtomicReference<DatastreamTaskStatus> status = new AtomicReference<>();
+    // More ranges than workers, each worker blocked on sending its first batch
+    DatastreamTask task = createTask(4, status);
+    DatastreamEventProducer producer = Mockito.mock(DatastreamEventProducer.class);
+    CountDownLatch sendStarted = new CountDownLatch(2);
+    CountDownLatch neverReleased = new CountDownLatch(1);
+    Mockito.doAnswer(invocation -> {
+      sendStarted.countDown();
+      neverReleased.await();
+      return null;
+    }).when(producer).sendBatch(Mockito.any(), Mockito.any());
+
+    BulkFileProcessor processor = new BulkFileProcessor(task, producer, 10, _executor);
+    Thread thread = new Thread(processor);
+    thread.start();
+    Assert.assertTrue(sendStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+    long stopStart = System.currentTimeMillis();
+    processor.stop();
+    Assert.assertTrue(waitFor(processor::isStopped));
+    Assert.assertTrue(System.currentTimeMillis() - stopStart < TIMEOUT_MS);
+    thread.join(TIMEOUT_MS);
+
+    // Stopping isn't a failure, and the queued ranges never started
+    Assert.assertNull(status.get());
+    Mockito.verify(producer, Mockito.times(2)).sendBatch(Mockito.any(), Mockito.any());
+  }
+}
@@ -0,0 +1,100 @@
+/**
+ *  Copyright 2021 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.connectors.file;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+
+/**
+ * Tests for {@link FileChangeWatcher}
+ */
+public class TestFileChangeWatcher {
+  private static final long TIMEOUT_MS = 5000;
+
+  private Path _directory;
+  private FileChangeWatcher _watcher;
+
+  @BeforeMethod
+  public void setup() throws IOException {
+    _directory = Files.createTempDirectory("testFileChangeWatcher");
+    _watcher = new FileChangeWatcher();
+  }
+
+  @AfterMethod
+  public void teardown() throws IOException {
+    _watcher.close();
+    try (Stream<Path> files = Files.list(_directory)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        Files.delete(file);
+      }
+    }
+    Files.delete(_directory);
+  }
+
+  private static void append(Path file, String content) throws IOException {
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+  }
+
+  @Test
+  public void testAppendWakesWaitingReader() throws Exception {
+    Path file = Files.createFile(_directory.resolve("file"));
+    FileChangeWatcher.ChangeSignal signal = _watcher.register(file);
+
+    CompletableFuture<Boolean> changed = CompletableFuture.supplyAsync(() -> {
+      try {
+        // Much longer than the test timeout, so that only the change can wake the reader up in time
+        return signal.await(TimeUnit.MINUTES.toMillis(1));
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    append(file, "line\n");
+    Assert.assertTrue(changed.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void testSignalStaysRaisedUntilAwaited() throws Exception {
+    Path file = Files.createFile(_directory.resolve("file"));
+    Path otherFile = Files.createFile(_directory.resolve("otherFile"));
+    FileChangeWatcher.ChangeSignal signal = _watcher.register(file);
+    FileChangeWatcher.ChangeSignal otherSignal = _watcher.register(otherFile);
+
+    // A change made while nobody waits isn't missed, and only signals the file which changed
+    append(file, "line\n");
+    Assert.assertTrue(signal.await(TIMEOUT_MS));
+    Assert.assertFalse(otherSignal.await(100));
+
+    // Once awaited, the signal is cleared
+    Assert.assertFalse(signal.await(100));
+  }
+
+  @Test
+  public void testUnregister() throws Exception {
+    Path file = Files.createFile(_directory.resolve("file"));
+    FileChangeWatcher.ChangeSignal signal = _watcher.register(file);
+    _watcher.unregister(signal);
+
+    append(file, "line\n");
+    Assert.assertFalse(signal.await(500));
+
+    // The directory is watched again when a file is registered again
+    FileChangeWatcher.ChangeSignal newSignal = _watcher.register(file);
+    append(file, "line\n");
+    Assert.assertTrue(newSignal.await(TIMEOUT_MS));
+  }
+}
@@ -0,0 +1,125 @@
+/**
+ *  Copyright 2021 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.connectors.file;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+
+/**
+ * Tests for {@link FileLineReader}
+ */
+public class TestFileLineReader {
+  private Path _file;
+
+  @BeforeMethod
+  public void setup() throws IOException {
+    _file = Files.createTempFile("testFileLineReader", "");
+  }
+
+  @AfterMethod
+  public void teardown() throws IOException {
+    Files.deleteIfExists(_file);
+  }
+
+  private void append(String content) throws IOException {
+    Files.write(_file, content.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+  }
+
+  private FileLineReader createReader(int bufferSize) throws IOException {
+    return new FileLineReader(FileChannel.open(_file, StandardOpenOption.READ), bufferSize);
+  }
+
+  @Test
+  public void testCrlfLineEndings() throws IOException {
+    append("a\r\nb\nc\r\n\r\nd\re\n");
+    try (FileLineReader reader = createReader(64)) {
+      Assert.assertEquals(reader.readLine(), "a");
+      Assert.assertEquals(reader.getPosition(), 3);
+      Assert.assertEquals(reader.readLine(), "b");
+      Assert.assertEquals(reader.getPosition(), 5);
+      Assert.assertEquals(reader.readLine(), "c");
+      Assert.assertEquals(reader.readLine(), "");
+      Assert.assertEquals(reader.getPosition(), 10);
+      // A '\r' which doesn't precede '\n' is part of the line
+      Assert.assertEquals(reader.readLine(), "d\re");
+      Assert.assertNull(reader.readLine());
+      Assert.assertEquals(reader.getPosition(), 14);
+    }
+  }
+
+  @Test
+  public void testUnterminatedLastLine() throws IOException {
+    append("a\nb");
+    try (FileLineReader reader = createReader(64)) {
+      Assert.assertEquals(reader.readLine(), "a");
+      // The last line may still be being written
+      Assert.assertNull(reader.readLine());
+      Assert.assertEquals(reader.getPosition(), 2);
+
+      // It is returned once terminated, as a whole
+      append("c\r");
+      Assert.assertNull(reader.readLine());
+      append("\nd");
+      Assert.assertEquals(reader.readLine(), "bc");
+      Assert.assertEquals(reader.getPosition(), 6);
+
+      // Unless the file is known to be complete
+      Assert.assertEquals(reader.readLine(true), "d");
+      Assert.assertEquals(reader.getPosition(), 7);
+      Assert.assertNull(reader.readLine(true));
+    }
+  }
+
+  @Test
+  public void testLinesLongerThanBuffer() throws IOException {
+    String longLine = "0123456789abcdefghij";
+    // Multi-byte characters which straddle the end of the buffer
+    String multiByteLine = "héllö wörld €";
+    append(longLine + "\n" + multiByteLine + "\r\nshort\n");
+    try (FileLineReader reader = createReader(4)) {
+      Assert.assertEquals(reader.readLine(), longLine);
+      Assert.assertEquals(reader.getPosition(), longLine.length() + 1);
+      Assert.assertEquals(reader.readLine(), multiByteLine);
+      long multiByteLineEnd = longLine.length() + 1 + multiByteLine.getBytes(StandardCharsets.UTF_8).length + 2;
+      Assert.assertEquals(reader.getPosition(), multiByteLineEnd);
+      Assert.assertEquals(reader.readLine(), "short");
+      Assert.assertNull(reader.readLine());
+    }
+  }
+
+  @Test
+  public void testSeekToByteOffset() throws IOException {
+    append("first\nsecond\nthird\n");
+    long position;
+    try (FileLineReader reader = createReader(64)) {
+      Assert.assertEquals(reader.readLine(), "first");
+      Assert.assertEquals(reader.readLine(), "second");
+      position = reader.getPosition();
+    }
+
+    // A new reader resumes right after the last line read, without reading the lines before it
+    try (FileLineReader reader = createReader(64)) {
+      reader.seek(position);
+      Assert.assertEquals(reader.getPosition(), position);
+      Assert.assertEquals(reader.readLine(), "third");
+      Assert.assertNull(reader.readLine());
+
+      // Seeking drops what was buffered
+      reader.seek(0);
+      Assert.assertEquals(reader.readLine(), "first");
+    }
+  }
+}
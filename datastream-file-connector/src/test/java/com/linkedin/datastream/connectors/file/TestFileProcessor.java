@@ -0,0 +1,218 @@
+/**
+ *  Copyright 2021 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.connectors.file;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.linkedin.datastream.common.DatastreamSource;
+import com.linkedin.datastream.server.DatastreamEventProducer;
+import com.linkedin.datastream.server.DatastreamProducerRecord;
+import com.linkedin.datastream.server.DatastreamTask;
+import com.linkedin.datastream.server.DatastreamTaskStatus;
+import com.linkedin.datastream.server.api.transport.BatchSendCallback;
+
+
+/**
+ * Tests for {@link FileProcessor}
+ */
+public class TestFileProcessor {
+  private static final long TIMEOUT_MS = 5000;
+  private static final String CONTENT = "line1\r\nline2\nline3\r\nline4\n";
+
+  private Path _file;
+  private List<DatastreamProducerRecord> _sentRecords;
+  private DatastreamEventProducer _producer;
+
+  @BeforeMethod
+  public void setup() throws IOException {
+    _file = Files.createTempFile("testFileProcessor", "");
+    _sentRecords = Collections.synchronizedList(new ArrayList<>());
+    _producer = Mockito.mock(DatastreamEventProducer.class);
+    Mockito.doAnswer(invocation -> {
+      @SuppressWarnings("unchecked")
+      List<DatastreamProducerRecord> batch = (List<DatastreamProducerRecord>) invocation.getArguments()[0];
+      _sentRecords.addAll(batch);
+      return null;
+    }).when(_producer).sendBatch(Mockito.any(), Mockito.any());
+  }
+
+  @AfterMethod
+  public void teardown() throws IOException {
+    Files.deleteIfExists(_file);
+  }
+
+  private DatastreamTask createTask(Map<Integer, String> checkpoints) {
+    DatastreamTask task = Mockito.mock(DatastreamTask.class);
+    Mockito.when(task.getDatastreamSource()).thenReturn(new DatastreamSource().setConnectionString(_file.toString()));
+    Mockito.when(task.getTaskPrefix()).thenReturn("testFileProcessor");
+    Mockito.when(task.getDatastreamTaskName()).thenReturn("testFileProcessor_0");
+    Mockito.when(task.getCheckpoints()).thenReturn(checkpoints);
+    return task;
+  }
+
+  static boolean waitFor(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+    while (!condition.getAsBoolean()) {
+      if (System.currentTimeMillis() > deadline) {
+        return false;
+      }
+      Thread.sleep(10);
+    }
+    return true;
+  }
+
+  /**
+   * Run a processor resuming from the checkpoint until it sent the expected number of records
+   */
+  private void runProcessor(String checkpoint, int expectedRecords) throws Exception {
+    Files.write(_file, CONTENT.getBytes(StandardCharsets.UTF_8));
+    Map<Integer, String> checkpoints =
+        checkpoint == null ? Collections.emptyMap() : Collections.singletonMap(0, checkpoint);
+    FileProcessor processor = new FileProcessor(createTask(checkpoints), _producer, 10, null, 10, 10, 10);
+    Thread thread = new Thread(processor);
+    thread.start();
+    try {
+      Assert.assertTrue(waitFor(() -> _sentRecords.size() >= expectedRecords));
+    } finally {
+      processor.stop();
+      thread.join(TIMEOUT_MS);
+    }
+    Assert.assertTrue(processor.isStopped());
+    Assert.assertEquals(_sentRecords.size(), expectedRecords);
+  }
+
+  private List<String> getSentLines() {
+    return _sentRecords.stream()
+        .map(record -> new String((byte[]) record.getEvents().get(0).value().get(), StandardCharsets.UTF_8))
+        .collect(Collectors.toList());
+  }
+
+  private List<String> getSentCheckpoints() {
+    return _sentRecords.stream().map(DatastreamProducerRecord::getCheckpoint).collect(Collectors.toList());
+  }
+
+  @Test
+  public void testCheckpointsByteOffsetAndLineNumber() throws Exception {
+    runProcessor(null, 4);
+    Assert.assertEquals(getSentLines(), Arrays.asList("line1", "line2", "line3", "line4"));
+    Assert.assertEquals(getSentCheckpoints(), Arrays.asList("7:1", "13:2", "20:3", "26:4"));
+  }
+
+  @Test
+  public void testResumeFromByteOffsetCheckpoint() throws Exception {
+    runProcessor("13:2", 2);
+    Assert.assertEquals(getSentLines(), Arrays.asList("line3", "line4"));
+    Assert.assertEquals(getSentCheckpoints(), Arrays.asList("20:3", "26:4"));
+  }
+
+  @Test
+  public void testResumeFromLegacyLineNumberCheckpoint() throws Exception {
+    // Checkpoints saved before byte offsets were tracked only have the line number
+    runProcessor("2", 2);
+    Assert.assertEquals(getSentLines(), Arrays.asList("line3", "line4"));
+    Assert.assertEquals(getSentCheckpoints(), Arrays.asList("20:3", "26:4"));
+  }
+
+  @Test
+  public void testPollWaitBacksOffAndResets() throws Exception {
+    // The wait is reset before the batch read after it is sent
+    List<Long> pollWaitsOnSend = Collections.synchronizedList(new ArrayList<>());
+    FileProcessor[] processorHolder = new FileProcessor[1];
+    Mockito.doAnswer(invocation -> {
+      pollWaitsOnSend.add(processorHolder[0].getPollWaitMs());
+      return null;
+    }).when(_producer).sendBatch(Mockito.any(), Mockito.any());
+
+    FileProcessor processor = new FileProcessor(createTask(Collections.emptyMap()), _producer, 10, null, 10, 80, 0);
+    processorHolder[0] = processor;
+    Thread thread = new Thread(processor);
+    thread.start();
+    try {
+      // The wait doubles while the file is idle, up to the max wait
+      Assert.assertTrue(waitFor(() -> processor.getPollWaitMs() == 80));
+      Files.write(_file, CONTENT.getBytes(StandardCharsets.UTF_8));
+      Assert.assertTrue(waitFor(() -> !pollWaitsOnSend.isEmpty()));
+      Assert.assertEquals(pollWaitsOnSend.get(0).longValue(), 10);
+      Assert.assertTrue(waitFor(() -> processor.getPollWaitMs() == 80));
+    } finally {
+      processor.stop();
+      thread.join(TIMEOUT_MS);
+    }
+    Assert.assertTrue(processor.isStopped());
+  }
+
+  @Test
+  public void testFileChangeWakesProcessor() throws Exception {
+    try (FileChangeWatcher watcher = new FileChangeWatcher()) {
+      // The watch timeout is much longer than the test timeout, so that only the change can wake the processor up
+      FileProcessor processor =
+          new FileProcessor(createTask(Collections.emptyMap()), _producer, 10, watcher, 10, 10, 60000);
+      Thread thread = new Thread(processor);
+      thread.start();
+      try {
+        Assert.assertTrue(waitFor(() -> processor.getPositionValue().getIdleCount() > 0));
+        Files.write(_file, CONTENT.getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(waitFor(() -> _sentRecords.size() == 4));
+        Assert.assertTrue(processor.getPositionValue().getWakeCount() > 0);
+      } finally {
+        // Stopping wakes the processor up as well
+        processor.stop();
+        thread.join(TIMEOUT_MS);
+      }
+      Assert.assertTrue(processor.isStopped());
+    }
+  }
+
+  @Test
+  public void testSendFailureStopsProcessor() throws Exception {
+    Files.write(_file, CONTENT.getBytes(StandardCharsets.UTF_8));
+    Mockito.doAnswer(invocation -> {
+      @SuppressWarnings("unchecked")
+      List<DatastreamProducerRecord> batch = (List<DatastreamProducerRecord>) invocation.getArguments()[0];
+      _sentRecords.addAll(batch);
+      BatchSendCallback callback = (BatchSendCallback) invocation.getArguments()[1];
+      callback.onCompletion(0, null, new IOException("send failed"));
+      return null;
+    }).when(_producer).sendBatch(Mockito.any(), Mockito.any());
+    AtomicReference<DatastreamTaskStatus> status = new AtomicReference<>();
+    DatastreamTask task = createTask(Collections.emptyMap());
+    Mockito.doAnswer(invocation -> {
+      status.set((DatastreamTaskStatus) invocation.getArguments()[0]);
+      return null;
+    }).when(task).setStatus(Mockito.any());
+
+    // The file has two batches of lines, but the processor stops after the first one failed
+    FileProcessor processor = new FileProcessor(task, _producer, 2, null, 10, 10, 10);
+    Thread thread = new Thread(processor);
+    thread.start();
+    try {
+      Assert.assertTrue(waitFor(processor::isStopped));
+    } finally {
+      processor.stop();
+      thread.join(TIMEOUT_MS);
+    }
+    Assert.assertEquals(getSentLines(), Arrays.asList("line1", "line2"));
+    Assert.assertEquals(status.get().getCode(), DatastreamTaskStatus.Code.ERROR);
+    Mockito.verify(task).release();
+  }
+}
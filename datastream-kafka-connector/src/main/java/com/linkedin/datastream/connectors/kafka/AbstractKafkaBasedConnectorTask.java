@@ -60,6 +60,7 @@ import com.linkedin.datastream.server.DatastreamEventProducer;
 import com.linkedin.datastream.server.DatastreamProducerRecord;
 import com.linkedin.datastream.server.DatastreamTask;
 import com.linkedin.datastream.server.DatastreamTaskStatus;
+import com.linkedin.datastream.server.api.transport.BatchSendFailedException;
 import com.linkedin.datastream.server.api.transport.SendCallback;
 
 
@@ -111,6 +112,8 @@ abstract public class AbstractKafkaBasedConnectorTask implements Runnable, Consu
   protected final long _processingDelayLogThresholdMillis;
   protected final boolean _enableAdditionalMetrics;
   protected final Map<Integer, Long> _startOffsets;
+  protected final boolean _enablePipelinedProcessing;
+  private final int _pipelinedProcessingQueueSize;
 
   protected volatile String _taskName;
   protected final DatastreamEventProducer _producer;
@@ -122,6 +125,15 @@ abstract public class AbstractKafkaBasedConnectorTask implements Runnable, Consu
   // atomic block
   private final Map<TopicPartition, Exception> _sendFailureTopicPartitionExceptionMap = new HashMap<>();
 
+  // Pipelined processing: the records are translated and sent by the pipeline thread, while the task thread polls the
+  // next batch. As the consumer is not thread-safe, the partitions are only rewound by the task thread.
+  private volatile ConsumerRecordsPipeline _pipeline;
+  // Partitions the pipeline thread needs to be rewound by the task thread, whose records are dropped until then
+  private final Set<TopicPartition> _pipelineRewindRequests = ConcurrentHashMap.newKeySet();
+  // Partitions rewound by the task thread, mapped to the sequence number of the first batch polled after the rewind.
+  // Their records from the batches polled before the rewind are dropped by the pipeline thread.
+  private final Map<TopicPartition, Long> _pipelineRewoundPartitions = new ConcurrentHashMap<>();
+
   // Datastream task updates that need to be processed
   protected final Set<DatastreamConstants.UpdateType> _taskUpdates = Sets.newConcurrentHashSet();
   @VisibleForTesting
@@ -167,6 +179,8 @@ abstract public class AbstractKafkaBasedConnectorTask implements Runnable, Consu
     _pausePartitionOnError = config.getPausePartitionOnError();
     _pauseErrorPartitionDuration = config.getPauseErrorPartitionDuration();
     _enableAdditionalMetrics = config.getEnableAdditionalMetrics();
+    _enablePipelinedProcessing = config.getEnablePipelinedProcessing();
+    _pipelinedProcessingQueueSize = config.getPipelinedProcessingQueueSize();
 
     _startOffsets = new HashMap<>();
     String json = _datastream.getMetadata().get(DatastreamMetadataConstants.START_POSITION);
@@ -267,6 +281,15 @@ abstract public class AbstractKafkaBasedConnectorTask implements Runnable, Consu
     return _skipOnPartitionsRevoked;
   }
 
+  /**
+   * Check whether the records are translated and sent by a dedicated thread, while the task thread polls the next
+   * batch. Classes overriding this must only return true if the translation and the send of the records do not use
+   * the consumer.
+   */
+  protected boolean isPipelinedProcessingEnabled() {
+    return _enablePipelinedProcessing;
+  }
+
   /**
    * Translate the Kafka consumer records if necessary and send the batch of records to destination.
    * @param records the Kafka consumer records
@@ -275,38 +298,97 @@ abstract public class AbstractKafkaBasedConnectorTask implements Runnable, Consu
   protected void translateAndSendBatch(ConsumerRecords<?, ?> records, Instant readTime) throws Exception {
     // iterate through each topic partition one at a time, for better isolation
     for (TopicPartition topicPartition : records.partitions()) {
-      for (ConsumerRecord<?, ?> record : records.records(topicPartition)) {
+      // Translate the records of the partition and send them as a single batch. If a record cannot be translated,
+      // the records before it are still sent and the partition is then rewound like on a send failure. If a send
+      // of the partition fails while translating, nothing is sent since the partition is rewound anyway.
+      List<? extends ConsumerRecord<?, ?>> partitionRecords = records.records(topicPartition);
+      List<DatastreamProducerRecord> datastreamProducerRecords = new ArrayList<>(partitionRecords.size());
+      int[] numBytes = new int[partitionRecords.size()];
+      ConsumerRecord<?, ?> failedRecord = null;
+      Exception failure = null;
+      boolean aborted = false;
+      for (ConsumerRecord<?, ?> record : partitionRecords) {
+        if (abortSendingOnFailure(topicPartition)) {
+          aborted = true;
+          break;
+        }
         try {
-          boolean partitionPaused;
-          boolean sendFailure;
-          synchronized (_sendFailureTopicPartitionExceptionMap) {
-            partitionPaused = _autoPausedSourcePartitions.containsKey(topicPartition);
-            sendFailure = _sendFailureTopicPartitionExceptionMap.containsKey(topicPartition);
-          }
-          if (partitionPaused || sendFailure) {
-            _logger.warn("Abort sending for {}, auto-paused: {}, send failure: {}, rewind offset", topicPartition,
-                partitionPaused, sendFailure);
-            seekToLastCheckpoint(Collections.singleton(topicPartition));
-            break;
-          } else {
-            DatastreamProducerRecord datastreamProducerRecord = translate(record, readTime);
-            int numBytes = record.serializedKeySize() + record.serializedValueSize();
-            sendDatastreamProducerRecord(datastreamProducerRecord, topicPartition, numBytes, null);
-          }
+          numBytes[datastreamProducerRecords.size()] = record.serializedKeySize() + record.serializedValueSize();
+          datastreamProducerRecords.add(translate(record, readTime));
         } catch (Exception e) {
-          _logger.warn(String.format("Got exception while sending record %s, exception: ", record), e);
-          if (_shutdown && !(e instanceof WakeupException)) {
-            throw e;
-          }
-          rewindAndPausePartitionOnException(topicPartition, e);
-          // skip other messages for this partition, but can continue processing other partitions
+          failedRecord = record;
+          failure = e;
           break;
         }
       }
+      if (aborted) {
+        continue;
+      }
+
+      try {
+        if (!datastreamProducerRecords.isEmpty()) {
+          sendDatastreamProducerRecords(datastreamProducerRecords, topicPartition, numBytes);
+        }
+      } catch (BatchSendFailedException e) {
+        // Keep the translation failure, which happened first. The records of the batch are indexed like the source
+        // records.
+        if (failure == null) {
+          failedRecord = partitionRecords.get(e.getRecordIndex());
+          failure = e.getCause() instanceof WakeupException ? (WakeupException) e.getCause() : e;
+        }
+      } catch (Exception e) {
+        if (failure == null) {
+          failure = e;
+        }
+      }
+
+      if (failure != null) {
+        if (failedRecord != null) {
+          _logger.warn(String.format("Got exception while sending record %s, exception: ", failedRecord), failure);
+        } else {
+          _logger.warn(String.format("Got exception while sending the batch of %d records of %s, exception: ",
+              datastreamProducerRecords.size(), topicPartition), failure);
+        }
+        if (_shutdown && !(failure instanceof WakeupException)) {
+          throw failure;
+        }
+        rewindAndPausePartitionOnException(topicPartition, failure);
+        // skip other messages for this partition, but can continue processing other partitions
+      }
+    }
+  }
+
+  /**
+   * Check whether the partition is auto-paused or had a send failure, and if so rewind it so that its records are
+   * consumed again once it can be sent to.
+   * @return true if the records of the partition must not be sent
+   */
+  private boolean abortSendingOnFailure(TopicPartition topicPartition) {
+    boolean partitionPaused;
+    boolean sendFailure;
+    synchronized (_sendFailureTopicPartitionExceptionMap) {
+      partitionPaused = _autoPausedSourcePartitions.containsKey(topicPartition);
+      sendFailure = _sendFailureTopicPartitionExceptionMap.containsKey(topicPartition);
     }
+    if (!partitionPaused && !sendFailure) {
+      return false;
+    }
+    _logger.warn("Abort sending for {}, auto-paused: {}, send failure: {}, rewind offset", topicPartition,
+        partitionPaused, sendFailure);
+    if (isPipelineThread()) {
+      _pipelineRewindRequests.add(topicPartition);
+    } else {
+      seekToLastCheckpoint(Collections.singleton(topicPartition));
+    }
+    return true;
   }
 
   protected void rewindAndPausePartitionOnException(TopicPartition srcTopicPartition, Exception ex) {
+    if (isPipelineThread()) {
+      // The task thread rewinds and pauses the partitions with send failures before its next poll
+      updateSendFailureTopicPartitionExceptionMap(srcTopicPartition, ex);
+      return;
+    }
     _consumerMetrics.updateErrorRate(1);
     Instant start = Instant.now();
     // Seek to previous checkpoints for this topic partition
@@ -362,10 +444,31 @@ abstract public class AbstractKafkaBasedConnectorTask implements Runnable, Consu
 
   protected void updateSendFailureTopicPartitionExceptionMap(TopicPartition topicPartition, Exception exception) {
     synchronized (_sendFailureTopicPartitionExceptionMap) {
-      _sendFailureTopicPartitionExceptionMap.put(topicPartition, exception);
+      // Keep the first failure of the partition until it is rewound, the sends after it usually fail because of it
+      _sendFailureTopicPartitionExceptionMap.putIfAbsent(topicPartition, exception);
     }
   }
 
+  /**
+   * Send a batch of records translated from the same source partition, in order.
+   * @param datastreamProducerRecords the records to send
+   * @param srcTopicPartition the source partition of the records
+   * @param numBytes the size of the source record of each record, indexed like the records
+   */
+  protected void sendDatastreamProducerRecords(List<DatastreamProducerRecord> datastreamProducerRecords,
+      TopicPartition srcTopicPartition, int[] numBytes) {
+    _producer.sendBatch(datastreamProducerRecords, (recordIndex, metadata, exception) -> {
+      if (exception != null) {
+        String msg = String.format("Detected exception being thrown from send callback for source topic-partition: %s "
+            + "with metadata: %s, exception: ", srcTopicPartition, metadata);
+        _logger.warn(msg, exception);
+        updateSendFailureTopicPartitionExceptionMap(srcTopicPartition, exception);
+      } else {
+        _consumerMetrics.updateBytesProcessedRate(numBytes[recordIndex]);
+      }
+    });
+  }
+
   protected void sendDatastreamProducerRecord(DatastreamProducerRecord datastreamProducerRecord,
       TopicPartition srcTopicPartition, int numBytes, SendCallback sendCallback) {
     _producer.send(datastreamProducerRecord, ((metadata, exception) -> {
@@ -397,6 +500,12 @@ abstract public class AbstractKafkaBasedConnectorTask implements Runnable, Consu
       _consumer = createKafkaConsumer(_consumerProps);
       _consumerMetrics.registerKafkaConsumerMetrics(_consumer,
           _consumerProps.getProperty(ConsumerConfig.CLIENT_ID_CONFIG));
+      if (isPipelinedProcessingEnabled()) {
+        _logger.info("Starting pipelined processing for task {} with queue size {}", _taskName,
+            _pipelinedProcessingQueueSize);
+        _pipeline = new ConsumerRecordsPipeline(_taskName, _pipelinedProcessingQueueSize, this::processPipelinedRecords);
+        _pipeline.start();
+      }
       consumerSubscribe();
 
       ConsumerRecords<?, ?> records;
@@ -419,7 +528,11 @@ abstract public class AbstractKafkaBasedConnectorTask implements Runnable, Consu
           _kafkaTopicPartitionTracker.onPartitionsPolled(records);
 
           Instant readTime = Instant.now();
-          processRecords(records, readTime, System.nanoTime());
+          if (_pipeline != null) {
+            _pipeline.submit(records, readTime, System.nanoTime());
+          } else {
+            processRecords(records, readTime, System.nanoTime());
+          }
           recordsPolled = records.count();
         }
         maybeCommitOffsets(_consumer, false);
@@ -442,6 +555,9 @@ abstract public class AbstractKafkaBasedConnectorTask implements Runnable, Consu
       _datastreamTask.setStatus(DatastreamTaskStatus.error(e.toString() + ExceptionUtils.getFullStackTrace(e)));
       throw new DatastreamRuntimeException(e);
     } finally {
+      if (_pipeline != null) {
+        _pipeline.shutdown();
+      }
       if (null != _consumer) {
         try {
           _skipOnPartitionsRevoked = true;
@@ -589,6 +705,64 @@ abstract public class AbstractKafkaBasedConnectorTask implements Runnable, Consu
     }
   }
 
+  /**
+   * Processes a batch of records handed over to the pipeline thread, leaving out the records of the partitions which
+   * were rewound (or are to be rewound) after the batch was polled, as they will be polled again.
+   */
+  private void processPipelinedRecords(ConsumerRecords<?, ?> records, Instant readTime, long readTimeInNanos,
+      long sequence) throws Exception {
+    processRecords(dropRecordsPolledBeforeRewind(records, sequence), readTime, readTimeInNanos);
+  }
+
+  private <K, V> ConsumerRecords<K, V> dropRecordsPolledBeforeRewind(ConsumerRecords<K, V> records, long sequence) {
+    if (_pipelineRewindRequests.isEmpty() && _pipelineRewoundPartitions.isEmpty()) {
+      return records;
+    }
+    Map<TopicPartition, List<ConsumerRecord<K, V>>> retainedRecords = new HashMap<>();
+    for (TopicPartition topicPartition : records.partitions()) {
+      // Check the pending rewind first, the task thread only clears it once the partition is rewound
+      boolean drop = _pipelineRewindRequests.contains(topicPartition);
+      Long firstSequence = _pipelineRewoundPartitions.get(topicPartition);
+      if (firstSequence != null) {
+        if (sequence < firstSequence) {
+          drop = true;
+        } else {
+          _pipelineRewoundPartitions.remove(topicPartition, firstSequence);
+        }
+      }
+      if (drop) {
+        _logger.info("Dropping the records of {} polled before it was rewound", topicPartition);
+      } else {
+        retainedRecords.put(topicPartition, records.records(topicPartition));
+      }
+    }
+    return retainedRecords.size() == records.partitions().size() ? records : new ConsumerRecords<>(retainedRecords);
+  }
+
+  private boolean isPipelineThread() {
+    ConsumerRecordsPipeline pipeline = _pipeline;
+    return pipeline != null && pipeline.isProcessingThread();
+  }
+
+  /**
+   * Rewind the partitions the pipeline thread could not rewind itself. Must be called from the task thread.
+   */
+  private void rewindPartitionsForPipeline() {
+    if (_pipelineRewindRequests.isEmpty()) {
+      return;
+    }
+    Set<TopicPartition> requests = new HashSet<>(_pipelineRewindRequests);
+    Set<TopicPartition> partitionsToRewind = new HashSet<>(requests);
+    partitionsToRewind.retainAll(_consumer.assignment());
+    // Skip the partitions which have just been rewound because of a send failure
+    Long nextSequence = _pipeline.getNextSequence();
+    partitionsToRewind.removeIf(tp -> nextSequence.equals(_pipelineRewoundPartitions.get(tp)));
+    if (!partitionsToRewind.isEmpty()) {
+      seekToLastCheckpoint(partitionsToRewind);
+    }
+    _pipelineRewindRequests.removeAll(requests);
+  }
+
   /**
    * Handle when Kafka consumer throws OffsetOutOfRangeException. The base behavior is no-op.
    * @param e the Exception
@@ -657,6 +831,10 @@ abstract public class AbstractKafkaBasedConnectorTask implements Runnable, Consu
     long now = System.currentTimeMillis();
     long timeSinceLastCommit = now - _lastCommittedTime;
     if (force || timeSinceLastCommit > _offsetCommitInterval) {
+      if (_pipeline != null && !_pipeline.isProcessingThread()) {
+        // The consumer positions cover the records handed over to the pipeline, which must be sent before committing
+        _pipeline.awaitProcessed();
+      }
       _logger.info("Trying to flush the producer and commit offsets.");
       _producer.flush();
       // Flush may succeed even though some of the records received send failures. Flush only guarantees that all
@@ -752,6 +930,11 @@ abstract public class AbstractKafkaBasedConnectorTask implements Runnable, Consu
       seekToStartPosition(_consumer, tpWithNoCommits,
           _consumerProps.getProperty(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, CONSUMER_AUTO_OFFSET_RESET_CONFIG_EARLIEST));
     }
+    if (_pipeline != null) {
+      // The records of the batches still queued in the pipeline must not be sent after the rewind
+      long nextSequence = _pipeline.getNextSequence();
+      topicPartitions.forEach(tp -> _pipelineRewoundPartitions.put(tp, nextSequence));
+    }
   }
 
   protected void getLastCheckpointToSeekTo(Map<TopicPartition, OffsetAndMetadata> lastCheckpoint,
@@ -823,6 +1006,11 @@ abstract public class AbstractKafkaBasedConnectorTask implements Runnable, Consu
                 topicPartitions), e);
       }
     }
+    if (_pipeline != null) {
+      // The records of the revoked partitions which are still queued in the pipeline must not be sent anymore
+      long nextSequence = _pipeline.getNextSequence();
+      topicPartitions.forEach(tp -> _pipelineRewoundPartitions.put(tp, nextSequence));
+    }
 
     updateConsumerAssignment(_consumer.assignment());
 
@@ -855,6 +1043,9 @@ abstract public class AbstractKafkaBasedConnectorTask implements Runnable, Consu
     // check if any send failures were seen on the last poll and rewind them before the next poll
     rewindAndPausePartitionsOnSendException();
 
+    // rewind the partitions whose records were dropped by the pipeline thread
+    rewindPartitionsForPipeline();
+
     // check if any auto-paused partitions need to be resumed
     checkForPartitionsToAutoResume();
 
@@ -972,6 +1163,7 @@ abstract public class AbstractKafkaBasedConnectorTask implements Runnable, Consu
           numAutoPausedPartitionsOnError++;
           break;
         case EXCEEDED_MAX_IN_FLIGHT_MSG_THRESHOLD:
+        case EXCEEDED_MAX_IN_FLIGHT_BYTES_THRESHOLD:
           numAutoPausedPartitionsOnInFlightMessages++;
           break;
         case TOPIC_NOT_AUTHORIZED:
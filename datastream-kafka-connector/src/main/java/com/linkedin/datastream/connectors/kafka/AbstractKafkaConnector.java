@@ -60,6 +60,7 @@ import com.linkedin.datastream.metrics.BrooklinGaugeInfo;
 import com.linkedin.datastream.metrics.BrooklinMetricInfo;
 import com.linkedin.datastream.metrics.DynamicMetricsManager;
 import com.linkedin.datastream.server.DatastreamTask;
+import com.linkedin.datastream.server.PartitionThroughputInfo;
 import com.linkedin.datastream.server.api.connector.Connector;
 import com.linkedin.datastream.server.api.connector.DatastreamValidationException;
 import com.linkedin.datastream.server.providers.CheckpointProvider;
@@ -786,6 +787,25 @@ public abstract class AbstractKafkaConnector implements Connector, DiagnosticsAw
     }
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Map<String, Map<String, PartitionThroughputInfo>> getPartitionThroughputInfo() {
+    Map<String, Map<String, PartitionThroughputInfo>> throughputInfo = new HashMap<>();
+
+    synchronized (_runningTasks) {
+      _runningTasks.forEach((datastreamTask, connectorTaskEntry) -> {
+        if (!connectorTaskEntry.isPendingStop()) {
+          KafkaTopicPartitionTracker tracker = connectorTaskEntry.getConnectorTask().getKafkaTopicPartitionTracker();
+          throughputInfo.computeIfAbsent(datastreamTask.getTaskPrefix(), k -> new HashMap<>())
+              .putAll(tracker.getPartitionThroughputInfo());
+        }
+      });
+    }
+    return throughputInfo;
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -0,0 +1,217 @@
+/**
+ *  Copyright 2019 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.connectors.kafka;
+
+import java.time.Instant;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.Validate;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.linkedin.datastream.common.DatastreamRuntimeException;
+
+
+/**
+ * Hands the batches of records polled by a connector task over to a dedicated thread which processes (i.e. translates
+ * and sends) them, so that the task can poll the next batch while the previous one is being processed.
+ *
+ * The batches are processed one at a time, in the order they were submitted, which preserves the order of the records
+ * of each partition. Each batch is assigned a sequence number, which lets the task tell apart the batches polled
+ * before and after it rewound a partition. The number of batches waiting to be processed is bounded, so that polling
+ * is throttled to the rate at which the records are processed.
+ *
+ * A failure to process a batch stops the pipeline: the batches still queued are dropped and the failure is rethrown
+ * to the task on its next call to {@link #submit} or {@link #awaitProcessed}.
+ */
+final class ConsumerRecordsPipeline {
+  private static final Logger LOG = LoggerFactory.getLogger(ConsumerRecordsPipeline.class);
+
+  private static final long QUEUE_TIMEOUT_MS = 100;
+  private static final long SHUTDOWN_TIMEOUT_MS = 5000;
+
+  /**
+   * Processes the batches of records handed over to the pipeline
+   */
+  @FunctionalInterface
+  interface BatchProcessor {
+    /**
+     * Process a batch of records
+     * @param records the records polled from Kafka
+     * @param readTime the instant the records were polled from Kafka
+     * @param readTimeInNanos the time at which the records were polled from Kafka in nanoseconds
+     * @param sequence the sequence number of the batch
+     */
+    void process(ConsumerRecords<?, ?> records, Instant readTime, long readTimeInNanos, long sequence)
+        throws Exception;
+  }
+
+  private final String _name;
+  private final BatchProcessor _processor;
+  private final BlockingQueue<Batch> _queue;
+  private final Thread _thread;
+
+  // Number of batches submitted and not processed yet, guarded by _queue
+  private int _numPendingBatches = 0;
+  // Only accessed by the thread submitting the batches
+  private long _nextSequence = 0;
+  private volatile Exception _failure;
+  private volatile boolean _shutdown = false;
+
+  /**
+   * Constructor for ConsumerRecordsPipeline
+   * @param name the name of the pipeline, used to name its thread
+   * @param capacity the maximum number of batches waiting to be processed
+   * @param processor the processor of the batches
+   */
+  ConsumerRecordsPipeline(String name, int capacity, BatchProcessor processor) {
+    Validate.isTrue(capacity > 0, "capacity must be positive");
+    _name = name;
+    _processor = processor;
+    _queue = new ArrayBlockingQueue<>(capacity);
+    _thread = new Thread(this::processBatches, name + " pipeline thread");
+    _thread.setDaemon(true);
+  }
+
+  /**
+   * Start the thread processing the batches
+   */
+  void start() {
+    _thread.start();
+  }
+
+  /**
+   * Get the sequence number of the next batch to be submitted
+   */
+  long getNextSequence() {
+    return _nextSequence;
+  }
+
+  /**
+   * Check whether the calling thread is the one processing the batches
+   */
+  boolean isProcessingThread() {
+    return Thread.currentThread() == _thread;
+  }
+
+  /**
+   * Hand a batch of records over to be processed, waiting if too many batches are already waiting to be processed.
+   * @param records the records polled from Kafka
+   * @param readTime the instant the records were polled from Kafka
+   * @param readTimeInNanos the time at which the records were polled from Kafka in nanoseconds
+   * @throws DatastreamRuntimeException if the processing of a previous batch failed, or if interrupted
+   */
+  void submit(ConsumerRecords<?, ?> records, Instant readTime, long readTimeInNanos) {
+    Batch batch = new Batch(records, readTime, readTimeInNanos, _nextSequence);
+    synchronized (_queue) {
+      checkFailure();
+      _numPendingBatches++;
+    }
+    try {
+      while (!_queue.offer(batch, QUEUE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+        checkFailure();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DatastreamRuntimeException(String.format("Interrupted while submitting records to %s", _name), e);
+    }
+    _nextSequence++;
+  }
+
+  /**
+   * Wait for all the submitted batches to be processed.
+   * @throws DatastreamRuntimeException if the processing of a batch failed, or if interrupted
+   */
+  void awaitProcessed() {
+    synchronized (_queue) {
+      while (_numPendingBatches > 0) {
+        checkFailure();
+        try {
+          _queue.wait(QUEUE_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new DatastreamRuntimeException(
+              String.format("Interrupted while waiting for the records submitted to %s to be processed", _name), e);
+        }
+      }
+      checkFailure();
+    }
+  }
+
+  /**
+   * Stop processing the batches, dropping the ones which are not processed yet.
+   */
+  void shutdown() {
+    _shutdown = true;
+    _thread.interrupt();
+    try {
+      _thread.join(SHUTDOWN_TIMEOUT_MS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (_thread.isAlive()) {
+      LOG.warn("{} did not stop within {} ms", _thread.getName(), SHUTDOWN_TIMEOUT_MS);
+    }
+  }
+
+  private void checkFailure() {
+    if (_failure != null) {
+      throw new DatastreamRuntimeException(String.format("Processing of the records submitted to %s failed", _name),
+          _failure);
+    }
+  }
+
+  private void processBatches() {
+    try {
+      while (!_shutdown) {
+        Batch batch = _queue.poll(QUEUE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        if (batch == null) {
+          continue;
+        }
+        try {
+          _processor.process(batch._records, batch._readTime, batch._readTimeInNanos, batch._sequence);
+        } catch (Exception e) {
+          LOG.error(String.format("Processing of the records submitted to %s failed", _name), e);
+          _failure = e;
+          return;
+        } finally {
+          synchronized (_queue) {
+            _numPendingBatches--;
+            _queue.notifyAll();
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      if (!_shutdown) {
+        LOG.warn("{} interrupted", Thread.currentThread().getName());
+        _failure = e;
+      }
+    } finally {
+      synchronized (_queue) {
+        _queue.clear();
+        _numPendingBatches = 0;
+        _queue.notifyAll();
+      }
+    }
+  }
+
+  private static final class Batch {
+    private final ConsumerRecords<?, ?> _records;
+    private final Instant _readTime;
+    private final long _readTimeInNanos;
+    private final long _sequence;
+
+    Batch(ConsumerRecords<?, ?> records, Instant readTime, long readTimeInNanos, long sequence) {
+      _records = records;
+      _readTime = readTime;
+      _readTimeInNanos = readTimeInNanos;
+      _sequence = sequence;
+    }
+  }
+}
@@ -13,6 +13,7 @@ import com.linkedin.datastream.common.ReflectionUtils;
 import com.linkedin.datastream.common.VerifiableProperties;
 import com.linkedin.datastream.kafka.factory.KafkaConsumerFactory;
 import com.linkedin.datastream.kafka.factory.KafkaConsumerFactoryImpl;
+import com.linkedin.datastream.kafka.factory.MultiplexedKafkaConsumerFactory;
 import com.linkedin.datastream.server.callbackstatus.CallbackStatusFactory;
 import com.linkedin.datastream.server.callbackstatus.CallbackStatusWithComparableOffsetsFactory;
 
@@ -36,7 +37,23 @@ public class KafkaBasedConnectorConfig {
   public static final String DAEMON_THREAD_INTERVAL_SECONDS = "daemonThreadIntervalInSeconds";
   public static final String NON_GOOD_STATE_THRESHOLD_MILLIS = "nonGoodStateThresholdMs";
   public static final String PROCESSING_DELAY_LOG_THRESHOLD_MILLIS = "processingDelayLogThreshold";
-  private static final String CONFIG_CALLBACK_STATUS_STRATEGY_FACTORY_CLASS = "callbackStatusStrategyFactoryClass";
+
+  // The callback status strategy that tracks the offsets in flight in flushless mode. Defaults to
+  // CallbackStatusWithComparableOffsetsFactory. Kafka mirror maker can opt in to the allocation-free
+  // CallbackStatusWithLongOffsetsFactory by setting it here.
+  public static final String CONFIG_CALLBACK_STATUS_STRATEGY_FACTORY_CLASS = "callbackStatusStrategyFactoryClass";
+
+  // config values to poll the next batch of records while the previous batches are translated and sent
+  public static final String CONFIG_ENABLE_PIPELINED_PROCESSING = "enablePipelinedProcessing";
+  public static final String CONFIG_PIPELINED_PROCESSING_QUEUE_SIZE = "pipelinedProcessingQueueSize";
+
+  // config values to share a small pool of Kafka consumers among the tasks consuming with the same consumer configs
+  // other than the client.id, i.e. the tasks in the same consumer group, which are usually the tasks of the same
+  // datastream. Only supported with partition assignment (i.e. enablePartitionAssignment)
+  public static final String CONFIG_ENABLE_CONSUMER_MULTIPLEXING = "enableConsumerMultiplexing";
+  public static final String CONFIG_CONSUMER_MULTIPLEXING_POOL_SIZE = "consumerMultiplexingPoolSize";
+  // number of records polled for a task but not yet consumed by it above which its partitions are paused
+  public static final String CONFIG_CONSUMER_MULTIPLEXING_MAX_BUFFERED_RECORDS = "consumerMultiplexingMaxBufferedRecords";
 
   // how long will the connector wait for a task to shut down before interrupting the task thread
   private static final String CONFIG_TASK_INTERRUPT_TIMEOUT_MS = "taskKillTimeoutMs";
@@ -57,6 +74,9 @@ public class KafkaBasedConnectorConfig {
   private static final boolean DEFAULT_INCLUDE_DATASTREAM_NAME_IN_CONSUMER_CLIENT_ID = Boolean.FALSE;
   private static final long DEFAULT_TASK_INTERRUPT_TIMEOUT_MS = Duration.ofSeconds(75).toMillis();
   private static final long POST_TASK_INTERRUPT_TIMEOUT_MS = Duration.ofSeconds(15).toMillis();
+  private static final int DEFAULT_PIPELINED_PROCESSING_QUEUE_SIZE = 2;
+  private static final int DEFAULT_CONSUMER_MULTIPLEXING_POOL_SIZE = 2;
+  private static final int DEFAULT_CONSUMER_MULTIPLEXING_MAX_BUFFERED_RECORDS = 10000;
 
   private final Properties _consumerProps;
   private final VerifiableProperties _connectorProps;
@@ -79,6 +99,13 @@ public class KafkaBasedConnectorConfig {
   private final long _nonGoodStateThresholdMillis;
   private final boolean _enablePartitionAssignment;
   private final long _taskInterruptTimeoutMs;
+  private final boolean _enablePipelinedProcessing;
+  private final int _pipelinedProcessingQueueSize;
+  private final boolean _enableConsumerMultiplexing;
+  private final int _consumerMultiplexingPoolSize;
+  private final int _consumerMultiplexingMaxBufferedRecords;
+  // Created on first use, so that it wraps the consumer factory returned by getConsumerFactory()
+  private KafkaConsumerFactory<?, ?> _multiplexedConsumerFactory;
 
   // Kafka based pub sub framework uses Long as their offset type, hence instantiating a Long parameterized factory
   private final CallbackStatusFactory<Long> _callbackStatusStrategyFactory;
@@ -121,6 +148,15 @@ public class KafkaBasedConnectorConfig {
         INCLUDE_DATASTREAM_NAME_IN_CONSUMER_CLIENT_ID, DEFAULT_INCLUDE_DATASTREAM_NAME_IN_CONSUMER_CLIENT_ID);
     _enablePartitionAssignment = verifiableProperties.getBoolean(ENABLE_PARTITION_ASSIGNMENT, Boolean.FALSE);
     _taskInterruptTimeoutMs = verifiableProperties.getLong(CONFIG_TASK_INTERRUPT_TIMEOUT_MS, DEFAULT_TASK_INTERRUPT_TIMEOUT_MS);
+    _enablePipelinedProcessing = verifiableProperties.getBoolean(CONFIG_ENABLE_PIPELINED_PROCESSING, Boolean.FALSE);
+    _pipelinedProcessingQueueSize = verifiableProperties.getIntInRange(CONFIG_PIPELINED_PROCESSING_QUEUE_SIZE,
+        DEFAULT_PIPELINED_PROCESSING_QUEUE_SIZE, 1, Integer.MAX_VALUE);
+    _enableConsumerMultiplexing = verifiableProperties.getBoolean(CONFIG_ENABLE_CONSUMER_MULTIPLEXING, Boolean.FALSE);
+    _consumerMultiplexingPoolSize = verifiableProperties.getIntInRange(CONFIG_CONSUMER_MULTIPLEXING_POOL_SIZE,
+        DEFAULT_CONSUMER_MULTIPLEXING_POOL_SIZE, 1, Integer.MAX_VALUE);
+    _consumerMultiplexingMaxBufferedRecords = verifiableProperties.getIntInRange(
+        CONFIG_CONSUMER_MULTIPLEXING_MAX_BUFFERED_RECORDS, DEFAULT_CONSUMER_MULTIPLEXING_MAX_BUFFERED_RECORDS, 1,
+        Integer.MAX_VALUE);
 
     String callbackStatusStrategyFactoryClass = verifiableProperties.getString(CONFIG_CALLBACK_STATUS_STRATEGY_FACTORY_CLASS,
         CallbackStatusWithComparableOffsetsFactory.class.getName());
@@ -197,6 +233,27 @@ public class KafkaBasedConnectorConfig {
     return _consumerFactory;
   }
 
+  public boolean getEnableConsumerMultiplexing() {
+    return _enableConsumerMultiplexing;
+  }
+
+  /**
+   * Get the factory of the Kafka consumers multiplexed over a pool of Kafka consumers created by the consumer factory.
+   * The same factory, and thus the same pools, are returned for the lifetime of this config.
+   */
+  public synchronized KafkaConsumerFactory<?, ?> getMultiplexedConsumerFactory() {
+    if (_multiplexedConsumerFactory == null) {
+      _multiplexedConsumerFactory = createMultiplexedConsumerFactory(getConsumerFactory(), _consumerMultiplexingPoolSize,
+          _consumerMultiplexingMaxBufferedRecords);
+    }
+    return _multiplexedConsumerFactory;
+  }
+
+  private static <K, V> KafkaConsumerFactory<K, V> createMultiplexedConsumerFactory(
+      KafkaConsumerFactory<K, V> consumerFactory, int poolSize, int maxBufferedRecords) {
+    return new MultiplexedKafkaConsumerFactory<>(consumerFactory, poolSize, maxBufferedRecords);
+  }
+
   public VerifiableProperties getConnectorProps() {
     return _connectorProps;
   }
@@ -229,6 +286,14 @@ public class KafkaBasedConnectorConfig {
     return _taskInterruptTimeoutMs + POST_TASK_INTERRUPT_TIMEOUT_MS;
   }
 
+  public boolean getEnablePipelinedProcessing() {
+    return _enablePipelinedProcessing;
+  }
+
+  public int getPipelinedProcessingQueueSize() {
+    return _pipelinedProcessingQueueSize;
+  }
+
   public CallbackStatusFactory<Long> getCallbackStatusStrategyFactory() {
     return _callbackStatusStrategyFactory;
   }
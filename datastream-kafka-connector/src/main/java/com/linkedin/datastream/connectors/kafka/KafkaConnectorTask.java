@@ -7,7 +7,6 @@ package com.linkedin.datastream.connectors.kafka;
 
 import java.time.Instant;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Properties;
 import java.util.StringJoiner;
@@ -23,7 +22,7 @@ import org.slf4j.LoggerFactory;
 import com.google.common.annotations.VisibleForTesting;
 
 import com.linkedin.datastream.common.BrooklinEnvelope;
-import com.linkedin.datastream.common.BrooklinEnvelopeMetadataConstants;
+import com.linkedin.datastream.common.KafkaOriginMetadata;
 import com.linkedin.datastream.kafka.factory.KafkaConsumerFactory;
 import com.linkedin.datastream.metrics.BrooklinMetricInfo;
 import com.linkedin.datastream.metrics.MetricsAware;
@@ -122,26 +121,24 @@ public class KafkaConnectorTask extends AbstractKafkaBasedConnectorTask {
 
   @Override
   protected DatastreamProducerRecord translate(ConsumerRecord<?, ?> fromKafka, Instant readTime) {
-    HashMap<String, String> metadata = new HashMap<>();
-    metadata.put("kafka-origin", _srcConnString.toString());
     int partition = fromKafka.partition();
-    String partitionStr = String.valueOf(partition);
-    metadata.put("kafka-origin-partition", partitionStr);
-    String offsetStr = String.valueOf(fromKafka.offset());
-    metadata.put("kafka-origin-offset", offsetStr);
+    long offset = fromKafka.offset();
 
     long eventsSourceTimestamp = readTime.toEpochMilli();
+    long eventTimestamp = KafkaOriginMetadata.NO_TIMESTAMP;
+    long sourceTimestamp = KafkaOriginMetadata.NO_TIMESTAMP;
     if (fromKafka.timestampType() == TimestampType.CREATE_TIME) {
       // If the Kafka header contains the create time. We store the event creation time as event timestamp
-      metadata.put(BrooklinEnvelopeMetadataConstants.EVENT_TIMESTAMP, String.valueOf(fromKafka.timestamp()));
+      eventTimestamp = fromKafka.timestamp();
     } else if (fromKafka.timestampType() == TimestampType.LOG_APPEND_TIME) {
       // If the Kafka header contains the log append time, We use that as event source Timestamp
       // which will be used to calculate the SLA.
-      metadata.put(BrooklinEnvelopeMetadataConstants.SOURCE_TIMESTAMP, String.valueOf(fromKafka.timestamp()));
-      metadata.put(BrooklinEnvelopeMetadataConstants.EVENT_TIMESTAMP, String.valueOf(readTime.toEpochMilli()));
+      sourceTimestamp = fromKafka.timestamp();
+      eventTimestamp = readTime.toEpochMilli();
       eventsSourceTimestamp = fromKafka.timestamp();
     }
-    metadata.put(BrooklinEnvelopeMetadataConstants.SOURCE_PARTITION, partitionStr);
+    KafkaOriginMetadata metadata = new KafkaOriginMetadata(KafkaOriginMetadata.KAFKA_ORIGIN, _srcConnString.toString(),
+        null, partition, offset, eventTimestamp, sourceTimestamp);
 
     BrooklinEnvelope envelope = new BrooklinEnvelope(fromKafka.key(), fromKafka.value(), null,
         fromKafka.headers(), metadata);
@@ -149,7 +146,7 @@ public class KafkaConnectorTask extends AbstractKafkaBasedConnectorTask {
     builder.addEvent(envelope);
     builder.setEventsSourceTimestamp(eventsSourceTimestamp);
     builder.setPartition(partition); // assume source partition count is same as dest
-    builder.setSourceCheckpoint(partitionStr + "-" + offsetStr);
+    builder.setSourceCheckpoint(partition + "-" + offset);
 
     return builder.build();
   }
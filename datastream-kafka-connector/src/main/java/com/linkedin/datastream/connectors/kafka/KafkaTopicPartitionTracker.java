@@ -9,6 +9,7 @@ package com.linkedin.datastream.connectors.kafka;
 import java.time.Instant;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -22,12 +23,19 @@ import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.record.TimestampType;
 import org.jetbrains.annotations.NotNull;
 
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Meter;
+import com.google.common.annotations.VisibleForTesting;
+
+import com.linkedin.datastream.server.PartitionThroughputInfo;
+
 
 /**
  * KafkaTopicPartitionTracker contains information about consumer groups, topic partitions and
  * their consumer offsets.
  *
- * The information stored can then be queried via the /diag endpoint for diagnostic and analytic purposes.
+ * The information stored can then be queried via the /diag endpoint for diagnostic and analytic purposes. The byte
+ * and message rates of the partitions are also published by the Coordinator for load-based partition assignment.
  */
 
 public class KafkaTopicPartitionTracker {
@@ -39,6 +47,8 @@ public class KafkaTopicPartitionTracker {
   private final Map<String, Map<Integer, Long>> _consumedOffsets = new ConcurrentHashMap<>();
   private final Map<String, Map<Integer, Long>> _committedOffsets = new ConcurrentHashMap<>();
   private final Map<String, Map<Integer, Long>> _consumptionLag = new ConcurrentHashMap<>();
+  private final Map<String, Map<Integer, PartitionThroughput>> _throughput = new ConcurrentHashMap<>();
+  private final Clock _clock;
 
   /**
    *  Constructor for KafkaTopicPartitionTracker
@@ -47,8 +57,14 @@ public class KafkaTopicPartitionTracker {
    * @param datastreamName Name of the datastream
    */
   public KafkaTopicPartitionTracker(String consumerGroupId, String datastreamName) {
+    this(consumerGroupId, datastreamName, Clock.defaultClock());
+  }
+
+  @VisibleForTesting
+  KafkaTopicPartitionTracker(String consumerGroupId, String datastreamName, Clock clock) {
     _consumerGroupId = consumerGroupId;
     _datastreamName = datastreamName;
+    _clock = clock;
   }
 
   /**
@@ -92,12 +108,15 @@ public class KafkaTopicPartitionTracker {
 
     // Remove consumption lag data for partitions that have been revoked.
     cleanupTopicPartitionsFromMap(topicPartitions, _consumptionLag);
+
+    // Remove the throughput of partitions that have been revoked, since they are now reported by their new owner.
+    cleanupTopicPartitionsFromMap(topicPartitions, _throughput);
   }
 
-  private void cleanupTopicPartitionsFromMap(@NotNull Collection<TopicPartition> topicPartitions,
-      Map<String, Map<Integer, Long>> map) {
+  private <T> void cleanupTopicPartitionsFromMap(@NotNull Collection<TopicPartition> topicPartitions,
+      Map<String, Map<Integer, T>> map) {
     topicPartitions.forEach(topicPartition -> {
-      Map<Integer, Long> partitions = map.get(topicPartition.topic());
+      Map<Integer, T> partitions = map.get(topicPartition.topic());
       if (partitions != null) {
         partitions.remove(topicPartition.partition());
         if (partitions.isEmpty()) {
@@ -125,6 +144,15 @@ public class KafkaTopicPartitionTracker {
       Map<Integer, Long> partitionConsumptionLagMap = _consumptionLag.computeIfAbsent(topicPartition.topic(),
           k -> new ConcurrentHashMap<>());
       partitionConsumptionLagMap.put(topicPartition.partition(), calculateLag(lastRecord));
+
+      long bytes = 0;
+      for (ConsumerRecord<?, ?> record : partitionRecords) {
+        bytes += Math.max(record.serializedKeySize(), 0) + Math.max(record.serializedValueSize(), 0);
+      }
+      PartitionThroughput throughput = _throughput.computeIfAbsent(topicPartition.topic(),
+          k -> new ConcurrentHashMap<>()).computeIfAbsent(topicPartition.partition(), k -> new PartitionThroughput(_clock));
+      throughput._bytesIn.mark(bytes);
+      throughput._messagesIn.mark(partitionRecords.size());
     });
   }
 
@@ -175,6 +203,21 @@ public class KafkaTopicPartitionTracker {
     return Collections.unmodifiableMap(_consumptionLag);
   }
 
+  /**
+   * Returns the byte and message rates of the topic partitions polled since they were assigned, averaged over the
+   * last five minutes, keyed by partition name (i.e. topic-partition)
+   */
+  public Map<String, PartitionThroughputInfo> getPartitionThroughputInfo() {
+    Map<String, PartitionThroughputInfo> throughputInfo = new HashMap<>();
+    _throughput.forEach((topic, partitions) -> partitions.forEach((partition, throughput) -> {
+      String partitionName = topic + "-" + partition;
+      throughputInfo.put(partitionName, new PartitionThroughputInfo(
+          (int) Math.round(throughput._bytesIn.getFiveMinuteRate() / 1024),
+          (int) Math.round(throughput._messagesIn.getFiveMinuteRate()), partitionName));
+    }));
+    return throughputInfo;
+  }
+
   /**
    * Gets the identifier for consumer group
    */
@@ -188,4 +231,14 @@ public class KafkaTopicPartitionTracker {
   public final String getDatastreamName() {
     return _datastreamName;
   }
-}
\ No newline at end of file
+
+  private static class PartitionThroughput {
+    private final Meter _bytesIn;
+    private final Meter _messagesIn;
+
+    PartitionThroughput(Clock clock) {
+      _bytesIn = new Meter(clock);
+      _messagesIn = new Meter(clock);
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/**
+ *  Copyright 2019 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.connectors.kafka.mirrormaker;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.linkedin.datastream.metrics.DynamicMetricsManager;
+
+
+/**
+ * Keeps track of the number of bytes sent to the producer and not acknowledged yet by all the tasks sharing the budget.
+ *
+ * The budget is exhausted once the in-flight bytes exceed the high watermark, and stays exhausted until they drop to
+ * the low watermark, so that the tasks throttled on it do not pause and resume their partitions on every send.
+ * Unlike the in-flight message thresholds, which apply to each partition separately, the budget accounts for the size
+ * of the messages and is shared by all the tasks of the JVM (see {@link #getSharedInstance(long, long)}), which keeps
+ * the producer buffers from filling up regardless of how many tasks are assigned to the host.
+ *
+ * The budget is updated on every send and send callback of all the tasks, so it is lock-free: the in-flight bytes
+ * are counted atomically, and only the transitions between available and exhausted are decided with a CAS.
+ */
+final class InFlightBytesBudget {
+  private static final Logger LOG = LoggerFactory.getLogger(InFlightBytesBudget.class);
+  private static final String CLASS_NAME = InFlightBytesBudget.class.getSimpleName();
+  private static final String IN_FLIGHT_BYTES = "inFlightBytes";
+  private static final String NUM_TIMES_EXHAUSTED = "numTimesExhausted";
+
+  private static InFlightBytesBudget _sharedInstance = null;
+
+  private final long _highWatermark;
+  private final long _lowWatermark;
+  private final AtomicLong _inFlightBytes = new AtomicLong();
+  private final AtomicBoolean _exhausted = new AtomicBoolean();
+  private final AtomicLong _numTimesExhausted = new AtomicLong();
+
+  /**
+   * Constructor for InFlightBytesBudget
+   * @param highWatermark the number of in-flight bytes above which the budget is exhausted
+   * @param lowWatermark the number of in-flight bytes at or below which the budget is available again
+   */
+  InFlightBytesBudget(long highWatermark, long lowWatermark) {
+    Validate.isTrue(highWatermark > 0, "high watermark must be positive");
+    Validate.isTrue(lowWatermark >= 0 && lowWatermark <= highWatermark,
+        "low watermark must be between 0 and the high watermark");
+    _highWatermark = highWatermark;
+    _lowWatermark = lowWatermark;
+  }
+
+  /**
+   * Get the budget shared by all the tasks of the JVM, creating it with the given watermarks on first use. The
+   * watermarks of later calls are ignored.
+   */
+  static synchronized InFlightBytesBudget getSharedInstance(long highWatermark, long lowWatermark) {
+    if (_sharedInstance == null) {
+      InFlightBytesBudget budget = new InFlightBytesBudget(highWatermark, lowWatermark);
+      DynamicMetricsManager metricsManager = DynamicMetricsManager.getInstance();
+      metricsManager.registerGauge(CLASS_NAME, IN_FLIGHT_BYTES, budget::getInFlightBytes);
+      metricsManager.registerGauge(CLASS_NAME, NUM_TIMES_EXHAUSTED, budget::getNumTimesExhausted);
+      LOG.info("Created in-flight bytes budget with highWatermark={}, lowWatermark={}", highWatermark, lowWatermark);
+      _sharedInstance = budget;
+    } else if (_sharedInstance._highWatermark != highWatermark || _sharedInstance._lowWatermark != lowWatermark) {
+      LOG.warn("Ignoring in-flight bytes watermarks {}/{}, the shared budget was already created with {}/{}",
+          highWatermark, lowWatermark, _sharedInstance._highWatermark, _sharedInstance._lowWatermark);
+    }
+    return _sharedInstance;
+  }
+
+  /**
+   * Account for bytes sent to the producer
+   * @return true if the budget is exhausted
+   */
+  boolean acquire(long numBytes) {
+    long inFlightBytes = _inFlightBytes.addAndGet(numBytes);
+    if (inFlightBytes > _highWatermark && !_exhausted.get() && _exhausted.compareAndSet(false, true)) {
+      _numTimesExhausted.incrementAndGet();
+      LOG.warn("In-flight bytes {} exceeded the high watermark of {}, partitions will be paused until they drop to {}",
+          inFlightBytes, _highWatermark, _lowWatermark);
+      // The bytes may have been released down to the low watermark before the budget was marked exhausted, in which
+      // case no later release would make it available again
+      if (_inFlightBytes.get() <= _lowWatermark) {
+        makeAvailable();
+      }
+    }
+    return _exhausted.get();
+  }
+
+  /**
+   * Account for bytes which were acknowledged, or failed to be sent, by the producer
+   */
+  void release(long numBytes) {
+    long inFlightBytes = _inFlightBytes.addAndGet(-numBytes);
+    if (inFlightBytes <= _lowWatermark && _exhausted.get()) {
+      makeAvailable();
+    }
+  }
+
+  private void makeAvailable() {
+    if (_exhausted.compareAndSet(true, false)) {
+      LOG.info("In-flight bytes {} dropped to the low watermark of {}, paused partitions will be resumed",
+          _inFlightBytes.get(), _lowWatermark);
+    }
+  }
+
+  boolean isExhausted() {
+    return _exhausted.get();
+  }
+
+  long getInFlightBytes() {
+    return _inFlightBytes.get();
+  }
+
+  long getNumTimesExhausted() {
+    return _numTimesExhausted.get();
+  }
+}
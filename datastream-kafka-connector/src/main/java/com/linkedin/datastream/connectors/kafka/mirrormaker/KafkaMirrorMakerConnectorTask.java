@@ -16,6 +16,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -34,10 +35,10 @@ import org.slf4j.LoggerFactory;
 import com.google.common.annotations.VisibleForTesting;
 
 import com.linkedin.datastream.common.BrooklinEnvelope;
-import com.linkedin.datastream.common.BrooklinEnvelopeMetadataConstants;
 import com.linkedin.datastream.common.DatastreamConstants;
 import com.linkedin.datastream.common.DatastreamMetadataConstants;
 import com.linkedin.datastream.common.DatastreamRuntimeException;
+import com.linkedin.datastream.common.KafkaOriginMetadata;
 import com.linkedin.datastream.common.ReflectionUtils;
 import com.linkedin.datastream.common.TopicPartitionUtil;
 import com.linkedin.datastream.common.VerifiableProperties;
@@ -81,10 +82,6 @@ public class KafkaMirrorMakerConnectorTask extends AbstractKafkaBasedConnectorTa
   private static final Logger LOG = LoggerFactory.getLogger(KafkaMirrorMakerConnectorTask.class.getName());
   private static final String CLASS_NAME = KafkaMirrorMakerConnectorTask.class.getSimpleName();
 
-  private static final String KAFKA_ORIGIN_CLUSTER = "kafka-origin-cluster";
-  private static final String KAFKA_ORIGIN_TOPIC = "kafka-origin-topic";
-  private static final String KAFKA_ORIGIN_PARTITION = "kafka-origin-partition";
-  private static final String KAFKA_ORIGIN_OFFSET = "kafka-origin-offset";
   private static final Duration LOCK_ACQUIRE_TIMEOUT = Duration.ofMinutes(3);
   private static final String TASK_LOCK_ACQUIRE_ERROR_RATE = "taskLockAcquireErrorRate";
   private static final String DATASTREAM_NAME_BASED_CLIENT_ID_FORMAT = "%s-%s";
@@ -93,6 +90,9 @@ public class KafkaMirrorMakerConnectorTask extends AbstractKafkaBasedConnectorTa
   protected static final String CONFIG_MAX_IN_FLIGHT_MSGS_THRESHOLD = "maxInFlightMessagesThreshold";
   protected static final String CONFIG_MIN_IN_FLIGHT_MSGS_THRESHOLD = "minInFlightMessagesThreshold";
   protected static final String CONFIG_FLOW_CONTROL_ENABLED = "flowControlEnabled";
+  // host-wide in-flight bytes thresholds, shared by all the tasks of the JVM, disabled unless the max is positive
+  protected static final String CONFIG_MAX_IN_FLIGHT_BYTES_THRESHOLD = "maxInFlightBytesThreshold";
+  protected static final String CONFIG_MIN_IN_FLIGHT_BYTES_THRESHOLD = "minInFlightBytesThreshold";
   private static final long DEFAULT_MAX_IN_FLIGHT_MSGS_THRESHOLD = 5000;
   private static final long DEFAULT_MIN_IN_FLIGHT_MSGS_THRESHOLD = 1000;
   private static final String DEFAULT_DESTINATION_TOPIC_PREFIX = "";
@@ -109,6 +109,8 @@ public class KafkaMirrorMakerConnectorTask extends AbstractKafkaBasedConnectorTa
   protected final String _connectorName;
 
   private final KafkaConsumerFactory<?, ?> _consumerFactory;
+  // Factory of the consumer of the task, which may be shared with other tasks
+  private final KafkaConsumerFactory<?, ?> _taskConsumerFactory;
   private final KafkaConnectionString _mirrorMakerSource;
 
   // Topic manager can be used to handle topic related tasks that mirror maker connector needs to do.
@@ -129,6 +131,8 @@ public class KafkaMirrorMakerConnectorTask extends AbstractKafkaBasedConnectorTa
   private long _maxInFlightMessagesThreshold;
   private long _minInFlightMessagesThreshold;
   private int _flowControlTriggerCount = 0;
+  private InFlightBytesBudget _inFlightBytesBudget = null;
+  private int _inFlightBytesTriggerCount = 0;
   private int _errorOnSendCallbackDuringShutdownCount = 0;
 
   /**
@@ -144,19 +148,26 @@ public class KafkaMirrorMakerConnectorTask extends AbstractKafkaBasedConnectorTa
       boolean isFlushlessModeEnabled, GroupIdConstructor groupIdConstructor) {
     super(config, task, LOG, generateMetricsPrefix(connectorName, CLASS_NAME), groupIdConstructor);
     _consumerFactory = config.getConsumerFactory();
+    _enablePartitionAssignment = config.getEnablePartitionAssignment();
+    if (_enablePartitionAssignment && config.getEnableConsumerMultiplexing()) {
+      // The shared Kafka consumers only support manual partition assignment
+      _taskConsumerFactory = config.getMultiplexedConsumerFactory();
+    } else {
+      _taskConsumerFactory = _consumerFactory;
+    }
     _mirrorMakerSource = KafkaConnectionString.valueOf(_datastreamTask.getDatastreamSource().getConnectionString());
 
     _isFlushlessModeEnabled = isFlushlessModeEnabled;
     _connectorName = connectorName;
     _isIdentityMirroringEnabled = KafkaMirrorMakerDatastreamMetadata.isIdentityPartitioningEnabled(_datastream);
-    _enablePartitionAssignment = config.getEnablePartitionAssignment();
     _includeDatastreamNameInConsumerClientId = config.getIncludeDatastreamNameInConsumerClientId();
     _destinationTopicPrefix = task.getDatastreams().get(0).getMetadata()
         .getOrDefault(DatastreamMetadataConstants.DESTINATION_TOPIC_PREFIX, DEFAULT_DESTINATION_TOPIC_PREFIX);
     _dynamicMetricsManager = DynamicMetricsManager.getInstance();
 
     if (_enablePartitionAssignment) {
-      LOG.info("Enable Brooklin partition assignment");
+      LOG.info("Enable Brooklin partition assignment, consumer multiplexing: {}",
+          _taskConsumerFactory != _consumerFactory);
     }
 
     LOG.info("Destination topic prefix has been set to {}", _destinationTopicPrefix);
@@ -172,6 +183,14 @@ public class KafkaMirrorMakerConnectorTask extends AbstractKafkaBasedConnectorTa
       LOG.info("Flushless mode is enabled for task: {}, with flowControlEnabled={}, minInFlightMessagesThreshold={}, "
               + "maxInFlightMessagesThreshold={}", task.getDatastreamTaskName(), _flowControlEnabled,
           _minInFlightMessagesThreshold, _maxInFlightMessagesThreshold);
+
+      long maxInFlightBytesThreshold = config.getConnectorProps().getLong(CONFIG_MAX_IN_FLIGHT_BYTES_THRESHOLD, 0);
+      if (maxInFlightBytesThreshold > 0) {
+        long minInFlightBytesThreshold =
+            config.getConnectorProps().getLong(CONFIG_MIN_IN_FLIGHT_BYTES_THRESHOLD, maxInFlightBytesThreshold / 2);
+        _inFlightBytesBudget =
+            InFlightBytesBudget.getSharedInstance(maxInFlightBytesThreshold, minInFlightBytesThreshold);
+      }
     }
 
     // create topic manager
@@ -214,7 +233,7 @@ public class KafkaMirrorMakerConnectorTask extends AbstractKafkaBasedConnectorTa
     }
     LOG.info("Creating Kafka consumer for task {} with properties {}, include datastream name in client.id: {}",
         _datastreamTask, properties, _includeDatastreamNameInConsumerClientId);
-    return _consumerFactory.createConsumer(properties);
+    return _taskConsumerFactory.createConsumer(properties);
   }
 
   @Override
@@ -243,18 +262,12 @@ public class KafkaMirrorMakerConnectorTask extends AbstractKafkaBasedConnectorTa
   protected DatastreamProducerRecord translate(ConsumerRecord<?, ?> fromKafka, Instant readTime) {
     long eventsSourceTimestamp =
         fromKafka.timestampType() == TimestampType.LOG_APPEND_TIME ? fromKafka.timestamp() : readTime.toEpochMilli();
-    HashMap<String, String> metadata = new HashMap<>();
-    metadata.put(KAFKA_ORIGIN_CLUSTER, _mirrorMakerSource.getBrokerListString());
     String topic = fromKafka.topic();
-    metadata.put(KAFKA_ORIGIN_TOPIC, topic);
     int partition = fromKafka.partition();
-    String partitionStr = String.valueOf(partition);
-    metadata.put(KAFKA_ORIGIN_PARTITION, partitionStr);
     long offset = fromKafka.offset();
-    String offsetStr = String.valueOf(offset);
-    metadata.put(KAFKA_ORIGIN_OFFSET, offsetStr);
-    metadata.put(BrooklinEnvelopeMetadataConstants.EVENT_TIMESTAMP, String.valueOf(eventsSourceTimestamp));
-    metadata.put(BrooklinEnvelopeMetadataConstants.SOURCE_PARTITION, partitionStr);
+    KafkaOriginMetadata metadata = new KafkaOriginMetadata(KafkaOriginMetadata.KAFKA_ORIGIN_CLUSTER,
+        _mirrorMakerSource.getBrokerListString(), topic, partition, offset, eventsSourceTimestamp,
+        KafkaOriginMetadata.NO_TIMESTAMP);
     BrooklinEnvelope envelope = new BrooklinEnvelope(fromKafka.key(), fromKafka.value(), null,
         fromKafka.headers(), metadata);
     DatastreamProducerRecordBuilder builder = new DatastreamProducerRecordBuilder();
@@ -275,6 +288,25 @@ public class KafkaMirrorMakerConnectorTask extends AbstractKafkaBasedConnectorTa
     return builder.build();
   }
 
+  @Override
+  protected boolean isPipelinedProcessingEnabled() {
+    // In flushless mode, sending the records may commit offsets and pause partitions on the consumer
+    return super.isPipelinedProcessingEnabled() && !_isFlushlessModeEnabled;
+  }
+
+  @Override
+  protected void sendDatastreamProducerRecords(List<DatastreamProducerRecord> datastreamProducerRecords,
+      TopicPartition srcTopicPartition, int[] numBytes) {
+    if (_isFlushlessModeEnabled) {
+      // The flushless producer tracks the in-flight offsets record by record
+      for (int i = 0; i < datastreamProducerRecords.size(); i++) {
+        sendDatastreamProducerRecord(datastreamProducerRecords.get(i), srcTopicPartition, numBytes[i], null);
+      }
+    } else {
+      super.sendDatastreamProducerRecords(datastreamProducerRecords, srcTopicPartition, numBytes);
+    }
+  }
+
   @Override
   protected void sendDatastreamProducerRecord(DatastreamProducerRecord datastreamProducerRecord,
       TopicPartition srcTopicPartition, int numBytes, SendCallback sendCallback) {
@@ -284,8 +316,14 @@ public class KafkaMirrorMakerConnectorTask extends AbstractKafkaBasedConnectorTa
           new KafkaMirrorMakerCheckpoint(datastreamProducerRecord.getCheckpoint());
       String topic = sourceCheckpoint.getTopic();
       int partition = sourceCheckpoint.getPartition();
+      // The bytes are released by the callback, unless the send fails before the record is handed over to the producer
+      AtomicBoolean inFlightBytesReleased = new AtomicBoolean(false);
+      boolean inFlightBytesExhausted = _inFlightBytesBudget != null && _inFlightBytesBudget.acquire(numBytes);
       try {
         _flushlessProducer.send(datastreamProducerRecord, topic, partition, sourceCheckpoint.getOffset(), ((metadata, exception) -> {
+          if (_inFlightBytesBudget != null && inFlightBytesReleased.compareAndSet(false, true)) {
+            _inFlightBytesBudget.release(numBytes);
+          }
           if (exception != null) {
             String msg = String.format("Detected exception being thrown from flushless send callback for source "
                 + "topic-partition: %s with metadata: %s, exception: %s", srcTopicPartition, metadata, exception);
@@ -308,6 +346,9 @@ public class KafkaMirrorMakerConnectorTask extends AbstractKafkaBasedConnectorTa
           }
         }));
       } catch (Exception e) {
+        if (_inFlightBytesBudget != null && inFlightBytesReleased.compareAndSet(false, true)) {
+          _inFlightBytesBudget.release(numBytes);
+        }
         LOG.warn("Hit Exception while sending records for {}-{}, total inFlightMessageCount: {}, ackMessagesPastCheckpoint: {}",
             topic, partition, _flushlessProducer.getInFlightMessagesCounts(), _flushlessProducer.getAckMessagesPastCheckpointCounts());
         maybeCommitOffsets(_consumer, true);
@@ -328,6 +369,16 @@ public class KafkaMirrorMakerConnectorTask extends AbstractKafkaBasedConnectorTa
           _flowControlTriggerCount++;
         }
       }
+      if (inFlightBytesExhausted) {
+        TopicPartition tp = new TopicPartition(topic, partition);
+        if (!_autoPausedSourcePartitions.containsKey(tp)) {
+          LOG.debug("In-flight bytes for host exceeded maxInFlightBytesThreshold. Will pause partition {}.", tp);
+          _autoPausedSourcePartitions.put(tp, new PausedSourcePartitionMetadata(() -> !_inFlightBytesBudget.isExhausted(),
+              PausedSourcePartitionMetadata.Reason.EXCEEDED_MAX_IN_FLIGHT_BYTES_THRESHOLD));
+          _taskUpdates.add(DatastreamConstants.UpdateType.PAUSE_RESUME_PARTITIONS);
+          _inFlightBytesTriggerCount++;
+        }
+      }
     } else {
       super.sendDatastreamProducerRecord(datastreamProducerRecord, srcTopicPartition, numBytes, sendCallback);
     }
@@ -554,6 +605,11 @@ public class KafkaMirrorMakerConnectorTask extends AbstractKafkaBasedConnectorTa
     return _flowControlTriggerCount;
   }
 
+  @VisibleForTesting
+  int getInFlightBytesTriggerCount() {
+    return _inFlightBytesTriggerCount;
+  }
+
   @VisibleForTesting
   public TopicManager getTopicManager() {
     return _topicManager;
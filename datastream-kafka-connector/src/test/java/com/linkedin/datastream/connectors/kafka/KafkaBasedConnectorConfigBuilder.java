@@ -14,6 +14,7 @@ import com.linkedin.datastream.kafka.factory.KafkaConsumerFactory;
 
 import static com.linkedin.datastream.connectors.kafka.KafkaBasedConnectorConfig.CONFIG_COMMIT_INTERVAL_MILLIS;
 import static com.linkedin.datastream.connectors.kafka.KafkaBasedConnectorConfig.CONFIG_COMMIT_TIMEOUT_MILLIS;
+import static com.linkedin.datastream.connectors.kafka.KafkaBasedConnectorConfig.CONFIG_ENABLE_PIPELINED_PROCESSING;
 import static com.linkedin.datastream.connectors.kafka.KafkaBasedConnectorConfig.CONFIG_PAUSE_ERROR_PARTITION_DURATION_MILLIS;
 import static com.linkedin.datastream.connectors.kafka.KafkaBasedConnectorConfig.CONFIG_PAUSE_PARTITION_ON_ERROR;
 import static com.linkedin.datastream.connectors.kafka.KafkaBasedConnectorConfig.CONFIG_POLL_TIMEOUT_MILLIS;
@@ -156,4 +157,12 @@ public class KafkaBasedConnectorConfigBuilder {
     _properties.put(ENABLE_PARTITION_ASSIGNMENT, Boolean.toString(enablePartitionManaged));
     return this;
   }
+
+  /**
+   * Set pipelined processing of the polled records
+   */
+  public KafkaBasedConnectorConfigBuilder setEnablePipelinedProcessing(boolean enablePipelinedProcessing) {
+    _properties.put(CONFIG_ENABLE_PIPELINED_PROCESSING, Boolean.toString(enablePipelinedProcessing));
+    return this;
+  }
 }
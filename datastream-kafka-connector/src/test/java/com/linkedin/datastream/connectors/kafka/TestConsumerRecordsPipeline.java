@@ -0,0 +1,105 @@
+/**
+ *  Copyright 2019 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.connectors.kafka;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.linkedin.datastream.common.DatastreamRuntimeException;
+
+
+/**
+ * Tests for {@link ConsumerRecordsPipeline}
+ */
+public class TestConsumerRecordsPipeline {
+
+  private static ConsumerRecords<String, String> createRecords(long offset) {
+    TopicPartition topicPartition = new TopicPartition("topic", 0);
+    return new ConsumerRecords<>(Collections.singletonMap(topicPartition,
+        Collections.singletonList(new ConsumerRecord<>("topic", 0, offset, "key", "value"))));
+  }
+
+  @Test
+  public void testBatchesProcessedInOrder() {
+    List<Long> offsets = Collections.synchronizedList(new ArrayList<>());
+    List<Long> sequences = Collections.synchronizedList(new ArrayList<>());
+    ConsumerRecordsPipeline pipeline = new ConsumerRecordsPipeline("test", 2, (records, readTime, nanos, sequence) -> {
+      records.forEach(record -> offsets.add(record.offset()));
+      sequences.add(sequence);
+    });
+    pipeline.start();
+
+    List<Long> expected = new ArrayList<>();
+    for (long i = 0; i < 100; i++) {
+      Assert.assertEquals(pipeline.getNextSequence(), i);
+      pipeline.submit(createRecords(i), Instant.now(), System.nanoTime());
+      expected.add(i);
+    }
+    pipeline.awaitProcessed();
+    Assert.assertEquals(offsets, expected);
+    Assert.assertEquals(sequences, expected);
+    Assert.assertFalse(pipeline.isProcessingThread());
+    pipeline.shutdown();
+  }
+
+  @Test
+  public void testSubmitBlocksWhenQueueIsFull() throws Exception {
+    CountDownLatch processing = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ConsumerRecordsPipeline pipeline = new ConsumerRecordsPipeline("test", 1, (records, readTime, nanos, sequence) -> {
+      processing.countDown();
+      release.await();
+    });
+    pipeline.start();
+
+    // The first batch is being processed and the second one is queued, so the third one has to wait
+    pipeline.submit(createRecords(0), Instant.now(), System.nanoTime());
+    Assert.assertTrue(processing.await(10, TimeUnit.SECONDS));
+    pipeline.submit(createRecords(1), Instant.now(), System.nanoTime());
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    Future<?> submitted = executor.submit(() -> pipeline.submit(createRecords(2), Instant.now(), System.nanoTime()));
+    Thread.sleep(200);
+    Assert.assertFalse(submitted.isDone());
+
+    release.countDown();
+    submitted.get(10, TimeUnit.SECONDS);
+    pipeline.awaitProcessed();
+    pipeline.shutdown();
+    executor.shutdown();
+  }
+
+  @Test
+  public void testFailureRethrown() {
+    ConsumerRecordsPipeline pipeline = new ConsumerRecordsPipeline("test", 2, (records, readTime, nanos, sequence) -> {
+      throw new IllegalStateException("failed to send");
+    });
+    pipeline.start();
+
+    pipeline.submit(createRecords(0), Instant.now(), System.nanoTime());
+    try {
+      pipeline.awaitProcessed();
+      Assert.fail("awaitProcessed should rethrow the failure");
+    } catch (DatastreamRuntimeException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+    Assert.assertThrows(DatastreamRuntimeException.class,
+        () -> pipeline.submit(createRecords(1), Instant.now(), System.nanoTime()));
+    pipeline.shutdown();
+  }
+}
@@ -10,6 +10,9 @@ import java.util.Properties;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import com.linkedin.datastream.server.callbackstatus.CallbackStatusWithComparableOffsetsFactory;
+import com.linkedin.datastream.server.callbackstatus.CallbackStatusWithLongOffsetsFactory;
+
 
 /**
  * Tests for {@link KafkaBasedConnectorConfig}
@@ -47,4 +50,20 @@ public class TestKafkaBasedConnectorConfig {
     Assert.assertEquals(taskProps.getProperty("someProperty1"), "someValue1");
     Assert.assertEquals(taskProps.getProperty("someProperty2"), "someValue2");
   }
+
+  /**
+   * Test that the comparable offsets callback status strategy is the default, and that the long offsets one can be
+   * selected in the config
+   */
+  @Test
+  public void testCallbackStatusStrategyFactory() {
+    KafkaBasedConnectorConfig config = new KafkaBasedConnectorConfig(new Properties());
+    Assert.assertTrue(config.getCallbackStatusStrategyFactory() instanceof CallbackStatusWithComparableOffsetsFactory);
+
+    Properties props = new Properties();
+    props.put(KafkaBasedConnectorConfig.CONFIG_CALLBACK_STATUS_STRATEGY_FACTORY_CLASS,
+        CallbackStatusWithLongOffsetsFactory.class.getName());
+    config = new KafkaBasedConnectorConfig(props);
+    Assert.assertTrue(config.getCallbackStatusStrategyFactory() instanceof CallbackStatusWithLongOffsetsFactory);
+  }
 }
@@ -333,6 +333,37 @@ public class TestKafkaConnectorTask extends BaseKafkaZkTest {
         "did not shut down on time");
   }
 
+  @Test
+  public void testPipelinedProcessing() throws Exception {
+    final KafkaBasedConnectorConfig config =
+        new KafkaBasedConnectorConfigBuilder().setEnablePipelinedProcessing(true).build();
+
+    final String topic = "NeapolitanPizza";
+    createTopic(_adminClient, topic);
+
+    LOG.info("Sending first event, to avoid an empty topic.");
+    produceEvents(_kafkaCluster, _adminClient, topic, 0, 1);
+
+    LOG.info("Creating and Starting KafkaConnectorTask");
+    final Datastream datastream = getDatastream(_broker, topic);
+    final DatastreamTaskImpl task = new DatastreamTaskImpl(Collections.singletonList(datastream));
+    final MockDatastreamEventProducer datastreamProducer = new MockDatastreamEventProducer();
+    task.setEventProducer(datastreamProducer);
+
+    final KafkaConnectorTask connectorTask = createKafkaConnectorTask(task, config);
+
+    LOG.info("Producing 100 msgs to topic: " + topic);
+    produceEvents(_kafkaCluster, _adminClient, topic, 1000, 100);
+
+    if (!PollUtils.poll(() -> datastreamProducer.getEvents().size() == 100, 100, POLL_TIMEOUT_MS)) {
+      Assert.fail("did not transfer 100 msgs within timeout. transferred " + datastreamProducer.getEvents().size());
+    }
+
+    connectorTask.stop();
+    Assert.assertTrue(connectorTask.awaitStop(CONNECTOR_AWAIT_STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS),
+        "did not shut down on time");
+  }
+
   @Test
   public void testRewindWhenSkippingMessage() throws Exception {
     String topic = "pizza1";
@@ -440,6 +471,15 @@ public class TestKafkaConnectorTask extends BaseKafkaZkTest {
       state.messagesProcessed++;
       return null;
     }).when(datastreamProducer).send(any(), any());
+    doAnswer(invocation -> {
+      List<?> records = (List<?>) invocation.getArguments()[0];
+      if (state.pendingErrors > 0) {
+        state.pendingErrors--;
+        throw new RuntimeException("Flaky Exception");
+      }
+      state.messagesProcessed += records.size();
+      return null;
+    }).when(datastreamProducer).sendBatch(any(), any());
 
     LOG.info("Creating and Starting KafkaConnectorTask");
     Datastream datastream = getDatastream(_broker, topic);
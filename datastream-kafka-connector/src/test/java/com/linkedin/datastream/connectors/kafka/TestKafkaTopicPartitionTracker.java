@@ -0,0 +1,77 @@
+/**
+ *  Copyright 2021 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.connectors.kafka;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.Clock;
+
+import com.linkedin.datastream.server.PartitionThroughputInfo;
+
+
+/**
+ * Tests for {@link KafkaTopicPartitionTracker}
+ */
+public class TestKafkaTopicPartitionTracker {
+
+  private static List<ConsumerRecord<byte[], byte[]>> createRecords(TopicPartition topicPartition, int count,
+      int valueSize) {
+    List<ConsumerRecord<byte[], byte[]>> records = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      records.add(new ConsumerRecord<>(topicPartition.topic(), topicPartition.partition(), i, 0L,
+          TimestampType.CREATE_TIME, null, 24, valueSize, new byte[24], new byte[valueSize], new RecordHeaders()));
+    }
+    return records;
+  }
+
+  @Test
+  public void testPartitionThroughputInfo() {
+    AtomicLong nanos = new AtomicLong();
+    Clock clock = new Clock() {
+      @Override
+      public long getTick() {
+        return nanos.get();
+      }
+    };
+    KafkaTopicPartitionTracker tracker = new KafkaTopicPartitionTracker("group", "datastream", clock);
+    TopicPartition largeMessages = new TopicPartition("topic", 0);
+    TopicPartition smallMessages = new TopicPartition("topic", 1);
+    tracker.onPartitionsAssigned(Arrays.asList(largeMessages, smallMessages));
+
+    // 1 KB records on the first partition and 100 byte ones on the second, polled within the first 5 second tick
+    Map<TopicPartition, List<ConsumerRecord<byte[], byte[]>>> records = new HashMap<>();
+    records.put(largeMessages, createRecords(largeMessages, 500, 1000));
+    records.put(smallMessages, createRecords(smallMessages, 5000, 76));
+    tracker.onPartitionsPolled(new ConsumerRecords<>(records));
+    nanos.addAndGet(TimeUnit.SECONDS.toNanos(6));
+
+    Map<String, PartitionThroughputInfo> throughputInfo = tracker.getPartitionThroughputInfo();
+    Assert.assertEquals(throughputInfo.size(), 2);
+    Assert.assertEquals(throughputInfo.get("topic-0").getBytesInKBRate(), 100);
+    Assert.assertEquals(throughputInfo.get("topic-0").getMessagesInRate(), 100);
+    Assert.assertEquals(throughputInfo.get("topic-1").getBytesInKBRate(), 98);
+    Assert.assertEquals(throughputInfo.get("topic-1").getMessagesInRate(), 1000);
+
+    // Revoked partitions are reported by their new owner
+    tracker.onPartitionsRevoked(Collections.singletonList(largeMessages));
+    Assert.assertEquals(tracker.getPartitionThroughputInfo().keySet(), Collections.singleton("topic-1"));
+  }
+}
@@ -0,0 +1,80 @@
+/**
+ *  Copyright 2019 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.connectors.kafka.mirrormaker;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+import com.linkedin.datastream.metrics.DynamicMetricsManager;
+
+
+/**
+ * Tests for {@link InFlightBytesBudget}
+ */
+public class TestInFlightBytesBudget {
+
+  @Test
+  public void testExhaustedBetweenWatermarks() {
+    InFlightBytesBudget budget = new InFlightBytesBudget(1000, 400);
+
+    Assert.assertFalse(budget.acquire(600));
+    Assert.assertFalse(budget.acquire(400));
+    Assert.assertTrue(budget.acquire(1));
+    Assert.assertEquals(budget.getInFlightBytes(), 1001);
+    Assert.assertEquals(budget.getNumTimesExhausted(), 1);
+
+    // The budget stays exhausted until the in-flight bytes drop to the low watermark
+    budget.release(500);
+    Assert.assertTrue(budget.isExhausted());
+    Assert.assertTrue(budget.acquire(10));
+    budget.release(111);
+    Assert.assertFalse(budget.isExhausted());
+    Assert.assertEquals(budget.getInFlightBytes(), 400);
+
+    Assert.assertFalse(budget.acquire(600));
+    Assert.assertTrue(budget.acquire(1));
+    Assert.assertEquals(budget.getNumTimesExhausted(), 2);
+  }
+
+  @Test
+  public void testConcurrentAcquireAndRelease() throws InterruptedException {
+    InFlightBytesBudget budget = new InFlightBytesBudget(1000, 400);
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      threads.add(new Thread(() -> {
+        for (int j = 0; j < 10000; j++) {
+          budget.acquire(300);
+          budget.release(300);
+        }
+      }));
+    }
+    threads.forEach(Thread::start);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    // Whatever the interleaving, the budget is available again once all the bytes are released
+    Assert.assertEquals(budget.getInFlightBytes(), 0);
+    Assert.assertFalse(budget.isExhausted());
+  }
+
+  @Test
+  public void testSharedInstance() {
+    DynamicMetricsManager.createInstance(new MetricRegistry(), "testSharedInstance");
+    InFlightBytesBudget budget = InFlightBytesBudget.getSharedInstance(1000, 500);
+    Assert.assertSame(InFlightBytesBudget.getSharedInstance(2000, 1000), budget);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testInvalidWatermarks() {
+    new InFlightBytesBudget(1000, 2000);
+  }
+}
@@ -6,8 +6,10 @@
 package com.linkedin.datastream.kafka;
 
 import java.time.Duration;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
 import java.util.Optional;
 import java.util.Properties;
@@ -15,6 +17,10 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
@@ -58,6 +64,8 @@ import static com.linkedin.datastream.kafka.factory.KafkaProducerFactory.DOMAIN_
 class KafkaProducerWrapper<K, V> {
   private static final String CLASS_NAME = KafkaProducerWrapper.class.getSimpleName();
   private static final String PRODUCER_ERROR = "producerError";
+  private static final String SEND_RETRY = "sendRetry";
+  private static final String SEND_RETRY_BUDGET_EXHAUSTED = "sendRetryBudgetExhausted";
 
   // Default producer configuration for no data loss pipeline.
   private static final String DEFAULT_PRODUCER_ACKS_CONFIG_VALUE = "all";
@@ -65,10 +73,18 @@ class KafkaProducerWrapper<K, V> {
   private static final String DEFAULT_MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION_VALUE = "1";
 
   private static final long DEFAULT_SEND_FAILURE_RETRY_WAIT_MS = Duration.ofSeconds(5).toMillis();
+  private static final long DEFAULT_SEND_FAILURE_RETRY_INITIAL_WAIT_MS = 100;
+  private static final int DEFAULT_SEND_FAILURE_MAX_PENDING_SENDS = 1000;
   private static final int DEFAULT_PRODUCER_FLUSH_TIMEOUT_MS = Integer.MAX_VALUE;
   private static final Double DEFAULT_RATE_LIMITER = 0.1;
 
+  // Maximum time to wait before retrying a failed send
   private static final String CFG_SEND_FAILURE_RETRY_WAIT_MS = "send.failure.retry.wait.time.ms";
+  // Time to wait before retrying a failed send the first time, doubled on every attempt
+  private static final String CFG_SEND_FAILURE_RETRY_INITIAL_WAIT_MS = "send.failure.retry.initial.wait.time.ms";
+  // Maximum number of sends waiting for a failed send to be retried, beyond which sends are rejected
+  @VisibleForTesting
+  static final String CFG_SEND_FAILURE_MAX_PENDING_SENDS = "send.failure.max.pending.sends";
   private static final String CFG_KAFKA_PRODUCER_FACTORY = "kafkaProducerFactory";
 
   private static final AtomicInteger NUM_PRODUCERS = new AtomicInteger();
@@ -77,6 +93,12 @@ class KafkaProducerWrapper<K, V> {
   private static final int DEFAULT_PRODUCER_CLOSE_TIMEOUT_MS = 10000;
   private static final int FAST_CLOSE_TIMEOUT_MS = 2000;
   private static final int MAX_SEND_ATTEMPTS = 10;
+  private static final long SEND_RETRY_THREAD_KEEP_ALIVE_MS = Duration.ofMinutes(1).toMillis();
+
+  // Schedules the retries of the failed sends of all the producers. The retries themselves run on the retry thread
+  // of each producer, since a send can block, so that a blocked send does not hold up the retries of other producers.
+  private static final ScheduledExecutorService SEND_RETRY_SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("KafkaProducerWrapperRetryScheduler-%d").build());
 
   @VisibleForTesting
   static final String CFG_RATE_LIMITER_CFG = "producerRateLimiter";
@@ -92,6 +114,8 @@ class KafkaProducerWrapper<K, V> {
 
   private final Logger _log;
   private final long _sendFailureRetryWaitTimeMs;
+  private final long _sendFailureRetryInitialWaitTimeMs;
+  private final int _maxPendingSends;
   private final int _producerFlushTimeoutMs;
   private final int _producerCloseTimeoutMs;
 
@@ -129,6 +153,19 @@ class KafkaProducerWrapper<K, V> {
   private final ExecutorService _producerCloseExecutorService = Executors.newSingleThreadExecutor(
       new ThreadFactoryBuilder().setNameFormat("KafkaProducerWrapperClose-%d").build());
 
+  // Retries the failed sends of the producer, off the threads of the tasks. Its thread only lives while sends are
+  // being retried.
+  private final ThreadPoolExecutor _sendRetryExecutorService = new ThreadPoolExecutor(0, 1,
+      SEND_RETRY_THREAD_KEEP_ALIVE_MS, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("KafkaProducerWrapperRetry-%d").build());
+
+  // The send which failed with a retriable exception and is waiting to be retried, followed by the sends which were
+  // made after it, in order. Also used as the lock guarding it.
+  private final Deque<PendingSend<K, V>> _pendingSends = new ArrayDeque<>();
+  // Size of _pendingSends, only updated with its lock held, so that the sends can check that there is no pending
+  // send without taking the lock
+  private final AtomicInteger _numPendingSends = new AtomicInteger();
+
   KafkaProducerWrapper(String logSuffix, Properties props) {
     this(logSuffix, props, null);
   }
@@ -153,6 +190,10 @@ class KafkaProducerWrapper<K, V> {
 
     _sendFailureRetryWaitTimeMs =
         transportProviderProperties.getLong(CFG_SEND_FAILURE_RETRY_WAIT_MS, DEFAULT_SEND_FAILURE_RETRY_WAIT_MS);
+    _sendFailureRetryInitialWaitTimeMs = Math.max(1, Math.min(_sendFailureRetryWaitTimeMs, transportProviderProperties
+        .getLong(CFG_SEND_FAILURE_RETRY_INITIAL_WAIT_MS, DEFAULT_SEND_FAILURE_RETRY_INITIAL_WAIT_MS)));
+    _maxPendingSends =
+        transportProviderProperties.getInt(CFG_SEND_FAILURE_MAX_PENDING_SENDS, DEFAULT_SEND_FAILURE_MAX_PENDING_SENDS);
 
     _producerFlushTimeoutMs =
         transportProviderProperties.getInt(CFG_PRODUCER_FLUSH_TIMEOUT_MS, DEFAULT_PRODUCER_FLUSH_TIMEOUT_MS);
@@ -254,60 +295,185 @@ class KafkaProducerWrapper<K, V> {
     return _producerFactory.createProducer(_props);
   }
 
-  void send(DatastreamTask task, ProducerRecord<K, V> producerRecord, Callback onComplete)
-      throws InterruptedException {
-    // There are two known cases that lead to IllegalStateException and we should retry:
-    //  1) number of brokers is less than minISR
-    //  2) producer is closed in generateSendFailure by another thread
-    // For either condition, we should retry as broker comes back healthy or producer is recreated
-    boolean retry = true;
-    int numberOfAttempt = 0;
-    while (retry) {
-      try {
-        ++numberOfAttempt;
-        Optional<Producer<K, V>> producer = maybeGetKafkaProducer(task);
-        if (producer.isPresent()) {
-          producer.get().send(producerRecord, (metadata, exception) -> {
-            if (exception == null) {
-              onComplete.onCompletion(metadata, null);
-            } else {
-              onComplete.onCompletion(metadata, generateSendFailure(exception, task));
-            }
-          });
-        } else {
-          throw new DatastreamRuntimeException(String.format("kafka producer not available for the task: %s", task.getDatastreamTaskName()));
+  /**
+   * Send the record, or queue it behind the sends waiting to be retried to keep the sends in order. Sends which fail
+   * with a retriable exception are retried asynchronously with exponential backoff, so that the calling task is
+   * not blocked; the failure is then reported to the callback if the send is eventually given up on.
+   * @throws DatastreamTransientException if the number of pending sends has reached its limit
+   * @throws DatastreamRuntimeException if the send failed with a non-retriable exception
+   */
+  void send(DatastreamTask task, ProducerRecord<K, V> producerRecord, Callback onComplete) {
+    if (_numPendingSends.get() > 0) {
+      synchronized (_pendingSends) {
+        if (!_pendingSends.isEmpty()) {
+          addPendingSend(new PendingSend<>(task, producerRecord, onComplete));
+          return;
         }
+      }
+    }
 
-        retry = false;
-      } catch (IllegalStateException e) {
-        //The following exception should be quite rare as most exceptions will be throw async callback
-        _log.warn(String.format("Either send is called on a closed producer or broker count is less than minISR, "
-                + "retry in %d ms.", _sendFailureRetryWaitTimeMs), e);
-        Thread.sleep(_sendFailureRetryWaitTimeMs);
-      } catch (TimeoutException e) {
-        _log.warn(String.format("Kafka producer buffer is full, retry in %d ms.", _sendFailureRetryWaitTimeMs), e);
-        Thread.sleep(_sendFailureRetryWaitTimeMs);
-      } catch (KafkaException e) {
-        Throwable cause = e.getCause();
-        while (cause instanceof KafkaException) {
-          cause = cause.getCause();
+    try {
+      doSend(task, producerRecord, onComplete);
+    } catch (Exception e) {
+      if (!isRetriable(e, producerRecord, 1)) {
+        throw onSendFailure(e, task, producerRecord);
+      }
+      PendingSend<K, V> pendingSend = new PendingSend<>(task, producerRecord, onComplete);
+      pendingSend._numFailedAttempts = 1;
+      synchronized (_pendingSends) {
+        // Another send may have failed concurrently, in which case its retry also covers this one
+        boolean isRetryScheduled = !_pendingSends.isEmpty();
+        addPendingSend(pendingSend);
+        if (!isRetryScheduled) {
+          scheduleRetry(getRetryDelayMs(1));
         }
-        // Set a max_send_attempts for KafkaException as it may be non-recoverable
-        if (numberOfAttempt > MAX_SEND_ATTEMPTS || ((cause instanceof Error || cause instanceof RuntimeException))) {
-          _log.error(String.format("Send failed for partition %d with a non-retriable exception",
-              producerRecord.partition()), e);
-          throw generateSendFailure(e, task);
+      }
+    }
+  }
+
+  private void doSend(DatastreamTask task, ProducerRecord<K, V> producerRecord, Callback onComplete) {
+    Optional<Producer<K, V>> producer = maybeGetKafkaProducer(task);
+    if (producer.isPresent()) {
+      producer.get().send(producerRecord, (metadata, exception) -> {
+        if (exception == null) {
+          onComplete.onCompletion(metadata, null);
         } else {
-          _log.warn(String.format(
-              "Send failed for partition %d with a retriable exception, retry %d out of %d in %d ms.",
-              producerRecord.partition(), numberOfAttempt, MAX_SEND_ATTEMPTS, _sendFailureRetryWaitTimeMs), e);
-          Thread.sleep(_sendFailureRetryWaitTimeMs);
+          onComplete.onCompletion(metadata, generateSendFailure(exception, task));
+        }
+      });
+    } else {
+      throw new DatastreamRuntimeException(String.format("kafka producer not available for the task: %s", task.getDatastreamTaskName()));
+    }
+  }
+
+  // There are two known cases that lead to IllegalStateException and we should retry:
+  //  1) number of brokers is less than minISR
+  //  2) producer is closed in generateSendFailure by another thread
+  // For either condition, we should retry as broker comes back healthy or producer is recreated
+  private boolean isRetriable(Exception e, ProducerRecord<K, V> producerRecord, int numFailedAttempts) {
+    long retryDelayMs = getRetryDelayMs(numFailedAttempts);
+    if (e instanceof IllegalStateException) {
+      //The following exception should be quite rare as most exceptions will be throw async callback
+      _log.warn(String.format("Either send is called on a closed producer or broker count is less than minISR, "
+          + "retry in %d ms.", retryDelayMs), e);
+      return true;
+    } else if (e instanceof TimeoutException) {
+      _log.warn(String.format("Kafka producer buffer is full, retry in %d ms.", retryDelayMs), e);
+      return true;
+    } else if (e instanceof KafkaException) {
+      Throwable cause = e.getCause();
+      while (cause instanceof KafkaException) {
+        cause = cause.getCause();
+      }
+      // Set a max_send_attempts for KafkaException as it may be non-recoverable
+      if (numFailedAttempts > MAX_SEND_ATTEMPTS || ((cause instanceof Error || cause instanceof RuntimeException))) {
+        return false;
+      }
+      _log.warn(String.format("Send failed for partition %d with a retriable exception, retry %d out of %d in %d ms.",
+          producerRecord.partition(), numFailedAttempts, MAX_SEND_ATTEMPTS, retryDelayMs), e);
+      return true;
+    }
+    return false;
+  }
+
+  private DatastreamRuntimeException onSendFailure(Exception e, DatastreamTask task,
+      ProducerRecord<K, V> producerRecord) {
+    if (e instanceof KafkaException) {
+      _log.error(String.format("Send failed for partition %d with a non-retriable exception",
+          producerRecord.partition()), e);
+    } else if (!(e instanceof DatastreamRuntimeException)) {
+      _log.error(String.format("Send failed for partition %d with an exception: ", producerRecord.partition()), e);
+    }
+    return generateSendFailure(e, task);
+  }
+
+  // Exponential backoff from the initial retry wait time up to the retry wait time, with up to 50% of jitter so that
+  // the producers which failed at the same time do not retry in lockstep
+  private long getRetryDelayMs(int numFailedAttempts) {
+    long delayMs = _sendFailureRetryInitialWaitTimeMs << Math.min(numFailedAttempts - 1, 30);
+    if (delayMs <= 0 || delayMs > _sendFailureRetryWaitTimeMs) {
+      delayMs = _sendFailureRetryWaitTimeMs;
+    }
+    return delayMs - ThreadLocalRandom.current().nextLong(delayMs / 2 + 1);
+  }
+
+  // Must be called with the _pendingSends lock held
+  private void addPendingSend(PendingSend<K, V> pendingSend) {
+    if (_pendingSends.size() >= _maxPendingSends) {
+      _dynamicMetricsManager.createOrUpdateMeter(_metricsNamesPrefix, AGGREGATE, SEND_RETRY_BUDGET_EXHAUSTED, 1);
+      throw new DatastreamTransientException(String.format(
+          "Too many sends (%d) are waiting for a failed send to be retried, send is aborted for task %s",
+          _pendingSends.size(), pendingSend._task.getDatastreamTaskName()));
+    }
+    _pendingSends.addLast(pendingSend);
+    _numPendingSends.incrementAndGet();
+  }
+
+  // Must be called with the _pendingSends lock held
+  private void scheduleRetry(long delayMs) {
+    _dynamicMetricsManager.createOrUpdateMeter(_metricsNamesPrefix, AGGREGATE, SEND_RETRY, 1);
+    SEND_RETRY_SCHEDULER.schedule(() -> _sendRetryExecutorService.execute(this::retryPendingSends), delayMs,
+        TimeUnit.MILLISECONDS);
+  }
+
+  // Send the pending sends in order, until one of them fails with a retriable exception and is scheduled to be
+  // retried. Runs on the retry thread of the producer.
+  private void retryPendingSends() {
+    while (true) {
+      PendingSend<K, V> pendingSend;
+      synchronized (_pendingSends) {
+        pendingSend = _pendingSends.peekFirst();
+        if (pendingSend == null) {
+          return;
         }
-      } catch (DatastreamRuntimeException e) {
-        throw generateSendFailure(e, task);
+      }
+
+      Exception failure = null;
+      try {
+        doSend(pendingSend._task, pendingSend._producerRecord, pendingSend._onComplete);
       } catch (Exception e) {
-        _log.error(String.format("Send failed for partition %d with an exception: ", producerRecord.partition()), e);
-        throw generateSendFailure(e, task);
+        pendingSend._numFailedAttempts++;
+        if (isRetriable(e, pendingSend._producerRecord, pendingSend._numFailedAttempts)) {
+          // Keep the send at the head of the queue so that the sends behind it stay in order
+          synchronized (_pendingSends) {
+            scheduleRetry(getRetryDelayMs(pendingSend._numFailedAttempts));
+          }
+          return;
+        }
+        failure = onSendFailure(e, pendingSend._task, pendingSend._producerRecord);
+      }
+
+      // Only remove the send once it is done, so that the sends made in the meantime are queued behind it
+      synchronized (_pendingSends) {
+        _pendingSends.pollFirst();
+        _numPendingSends.decrementAndGet();
+        _pendingSends.notifyAll();
+      }
+      if (failure != null && pendingSend._onComplete != null) {
+        pendingSend._onComplete.onCompletion(null, failure);
+      }
+    }
+  }
+
+  // Wait for the pending sends to be handed over to the Kafka producer, so that they are covered by the flush
+  private void awaitPendingSends() {
+    if (_numPendingSends.get() == 0) {
+      return;
+    }
+    long deadline = System.currentTimeMillis() + _producerFlushTimeoutMs;
+    synchronized (_pendingSends) {
+      while (!_pendingSends.isEmpty()) {
+        long remainingMs = deadline - System.currentTimeMillis();
+        if (remainingMs <= 0) {
+          throw new DatastreamRuntimeException(String.format(
+              "Timed out waiting for %d sends pending retry to complete before flushing", _pendingSends.size()));
+        }
+        try {
+          _pendingSends.wait(remainingMs);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new DatastreamRuntimeException("Interrupted while waiting for the sends pending retry", e);
+        }
       }
     }
   }
@@ -386,6 +552,8 @@ class KafkaProducerWrapper<K, V> {
    * For any other exception thrown by kafka producer, shutdown the producer to avoid reusing the same producer.
    */
   void flush() {
+    awaitPendingSends();
+
     Producer<K, V> producer;
     try {
       _producerLock.lock();
@@ -436,6 +604,8 @@ class KafkaProducerWrapper<K, V> {
 
     List<BrooklinMetricInfo> metrics = new ArrayList<>();
     metrics.add(new BrooklinMeterInfo(prefix + PRODUCER_ERROR));
+    metrics.add(new BrooklinMeterInfo(prefix + SEND_RETRY));
+    metrics.add(new BrooklinMeterInfo(prefix + SEND_RETRY_BUDGET_EXHAUSTED));
     metrics.add(new BrooklinGaugeInfo(prefix + PRODUCER_COUNT));
     return Collections.unmodifiableList(metrics);
   }
@@ -462,4 +632,21 @@ class KafkaProducerWrapper<K, V> {
   public Optional<Double> getProducerMetricValue(MetricName metricName) {
     return Optional.ofNullable(_kafkaProducer).map(p -> p.metrics().get(metricName)).map(Metric::value);
   }
+
+  /**
+   * A send waiting for a failed send (possibly itself) to be retried
+   */
+  private static final class PendingSend<K, V> {
+    private final DatastreamTask _task;
+    private final ProducerRecord<K, V> _producerRecord;
+    private final Callback _onComplete;
+    // Only accessed by the thread attempting the send
+    private int _numFailedAttempts = 0;
+
+    PendingSend(DatastreamTask task, ProducerRecord<K, V> producerRecord, Callback onComplete) {
+      _task = task;
+      _producerRecord = producerRecord;
+      _onComplete = onComplete;
+    }
+  }
 }
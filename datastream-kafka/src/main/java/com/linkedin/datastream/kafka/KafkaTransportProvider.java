@@ -9,9 +9,11 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang3.Validate;
 import org.apache.kafka.clients.producer.ProducerConfig;
@@ -27,13 +29,17 @@ import com.linkedin.datastream.common.BrooklinEnvelope;
 import com.linkedin.datastream.common.BrooklinEnvelopeMetadataConstants;
 import com.linkedin.datastream.common.DatastreamRuntimeException;
 import com.linkedin.datastream.common.ErrorLogger;
+import com.linkedin.datastream.common.KafkaOriginMetadata;
 import com.linkedin.datastream.metrics.BrooklinMeterInfo;
 import com.linkedin.datastream.metrics.BrooklinMetricInfo;
 import com.linkedin.datastream.metrics.DynamicMetricsManager;
 import com.linkedin.datastream.metrics.MetricsAware;
+import com.linkedin.datastream.metrics.TrackedMetricKey;
 import com.linkedin.datastream.server.DatastreamProducerRecord;
 import com.linkedin.datastream.server.DatastreamProducerRecordBuilder;
 import com.linkedin.datastream.server.DatastreamTask;
+import com.linkedin.datastream.server.api.transport.BatchSendCallback;
+import com.linkedin.datastream.server.api.transport.BatchSendFailedException;
 import com.linkedin.datastream.server.api.transport.DatastreamRecordMetadata;
 import com.linkedin.datastream.server.api.transport.SendCallback;
 import com.linkedin.datastream.server.api.transport.TransportProvider;
@@ -60,6 +66,12 @@ public class KafkaTransportProvider implements TransportProvider {
   private final Meter _eventWriteRate;
   private final Meter _eventByteWriteRate;
   private final Meter _eventTransportErrorRate;
+  private final Meter _aggregateEventWriteRate;
+  private final Meter _aggregateEventByteWriteRate;
+  // Per-topic meters, resolved once per topic so that sends do not need to look them up in DynamicMetricsManager
+  private final Map<String, TopicMetrics> _topicMetrics = new ConcurrentHashMap<>();
+  // Number of evicted metric keys when the handles of evicted topics were last dropped
+  private long _numEvictedMetricKeys = 0;
 
   private final Properties _transportProviderProperties;
 
@@ -96,6 +108,17 @@ public class KafkaTransportProvider implements TransportProvider {
     _eventWriteRate = new Meter();
     _eventByteWriteRate = new Meter();
     _eventTransportErrorRate = new Meter();
+    _aggregateEventWriteRate = _dynamicMetricsManager.registerMeterHandle(_metricsNamesPrefix, AGGREGATE,
+        EVENT_WRITE_RATE);
+    _aggregateEventByteWriteRate = _dynamicMetricsManager.registerMeterHandle(_metricsNamesPrefix, AGGREGATE,
+        EVENT_BYTE_WRITE_RATE);
+    if (props.containsKey(KafkaTransportProviderAdmin.CONFIG_PER_TOPIC_METRICS_MAX_KEYS)
+        || props.containsKey(KafkaTransportProviderAdmin.CONFIG_PER_TOPIC_METRICS_MAX_IDLE_MS)) {
+      _dynamicMetricsManager.setKeyLimit(_metricsNamesPrefix,
+          Integer.parseInt(props.getProperty(KafkaTransportProviderAdmin.CONFIG_PER_TOPIC_METRICS_MAX_KEYS,
+              String.valueOf(Integer.MAX_VALUE))),
+          Long.parseLong(props.getProperty(KafkaTransportProviderAdmin.CONFIG_PER_TOPIC_METRICS_MAX_IDLE_MS, "0")));
+    }
   }
 
   public List<KafkaProducerWrapper<byte[], byte[]>> getProducers() {
@@ -144,8 +167,12 @@ public class KafkaTransportProvider implements TransportProvider {
   }
 
   private int getSourcePartitionFromEvent(BrooklinEnvelope event) {
-    return Integer.parseInt(
-        event.getMetadata().getOrDefault(BrooklinEnvelopeMetadataConstants.SOURCE_PARTITION, "-1"));
+    Map<String, String> metadata = event.getMetadata();
+    // Unless a plugin changed the entries, the partition is read without parsing it
+    if (metadata instanceof KafkaOriginMetadata && !((KafkaOriginMetadata) metadata).isMaterialized()) {
+      return ((KafkaOriginMetadata) metadata).getPartition();
+    }
+    return Integer.parseInt(metadata.getOrDefault(BrooklinEnvelopeMetadataConstants.SOURCE_PARTITION, "-1"));
   }
 
   @Override
@@ -203,40 +230,12 @@ public class KafkaTransportProvider implements TransportProvider {
 
       LOG.debug("Sending Datastream event record: {}", record);
 
-      for (int i = 0; i < record.getEvents().size(); ++i) {
-        BrooklinEnvelope event = record.getEvents().get(i);
-        ProducerRecord<byte[], byte[]> outgoing = convertToProducerRecord(topicName, record, event);
-
-        // Update topic-specific metrics and aggregate metrics
-        int numBytes = (outgoing.key() != null ? outgoing.key().length : 0) + outgoing.value().length;
-
-        _eventWriteRate.mark();
-        _eventByteWriteRate.mark(numBytes);
-
-        KafkaProducerWrapper<byte[], byte[]> producer =
-            _producers.get(Math.abs(Objects.hash(outgoing.topic(), outgoing.partition())) % _producers.size());
-
-        final int eventIndex = i;
-        final int sourcePartition = getSourcePartitionFromEvent(event);
-        producer.send(_datastreamTask, outgoing, (metadata, exception) -> {
-          int partition = metadata != null ? metadata.partition() : -1;
-          if (exception != null) {
-            String msg = String.format("Sending a message with source checkpoint %s to topic %s partition %d for datastream task %s "
-                + "threw an exception.", record.getCheckpoint(), topicName, partition, _datastreamTask.getDatastreamTaskName());
-            if (_isUnassigned) {
-              LOG.debug(msg, exception);
-            } else {
-              LOG.error(msg, exception);
-            }
-          }
-          doOnSendCallback(record, onSendComplete, metadata, exception, eventIndex, sourcePartition);
-        });
-
-        _dynamicMetricsManager.createOrUpdateMeter(_metricsNamesPrefix, topicName, EVENT_WRITE_RATE, 1);
-        _dynamicMetricsManager.createOrUpdateMeter(_metricsNamesPrefix, topicName, EVENT_BYTE_WRITE_RATE, numBytes);
-        _dynamicMetricsManager.createOrUpdateMeter(_metricsNamesPrefix, AGGREGATE, EVENT_WRITE_RATE, 1);
-        _dynamicMetricsManager.createOrUpdateMeter(_metricsNamesPrefix, AGGREGATE, EVENT_BYTE_WRITE_RATE, numBytes);
-      }
+      long numBytes = sendEvents(topicName, getTopicMetrics(topicName), record, onSendComplete);
+      int numEvents = record.getEvents().size();
+      _eventWriteRate.mark(numEvents);
+      _eventByteWriteRate.mark(numBytes);
+      _aggregateEventWriteRate.mark(numEvents);
+      _aggregateEventByteWriteRate.mark(numBytes);
     } catch (Exception e) {
       _eventTransportErrorRate.mark();
       _dynamicMetricsManager.createOrUpdateMeter(_metricsNamesPrefix, topicName, EVENT_TRANSPORT_ERROR_RATE, 1);
@@ -250,6 +249,106 @@ public class KafkaTransportProvider implements TransportProvider {
     LOG.debug("Done sending Datastream event record: {}", record);
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * The destination topic and its metrics are only looked up when the destination changes from one record to the
+   * next, and the aggregate metrics are updated once for the whole batch. If sending a record fails, the records
+   * after it are not sent.
+   */
+  @Override
+  public void sendBatch(String defaultDestinationUri, List<DatastreamProducerRecord> records,
+      BatchSendCallback onComplete) {
+    Validate.notNull(records, "null event records.");
+    String destinationUri = null;
+    String topicName = null;
+    TopicMetrics topicMetrics = null;
+    DatastreamProducerRecord record = null;
+    int recordIndex = 0;
+    int numEvents = 0;
+    long numBytes = 0;
+    try {
+      // if the transport provider is already unassigned, the send should fail.
+      if (_isUnassigned) {
+        throw new DatastreamRuntimeException("Transport Provider already unassigned.");
+      }
+
+      for (; recordIndex < records.size(); recordIndex++) {
+        record = records.get(recordIndex);
+        Validate.notNull(record, "null event record.");
+        Validate.notNull(record.getEvents(), "null datastream events.");
+        String recordDestinationUri = record.getDestination().orElse(defaultDestinationUri);
+        if (!recordDestinationUri.equals(destinationUri)) {
+          destinationUri = recordDestinationUri;
+          topicName = KafkaTransportProviderUtils.getTopicName(destinationUri);
+          topicMetrics = getTopicMetrics(topicName);
+        }
+
+        LOG.debug("Sending Datastream event record: {}", record);
+        int callbackRecordIndex = recordIndex;
+        numBytes += sendEvents(topicName, topicMetrics, record,
+            (metadata, exception) -> onComplete.onCompletion(callbackRecordIndex, metadata, exception));
+        numEvents += record.getEvents().size();
+      }
+    } catch (Exception e) {
+      _eventTransportErrorRate.mark();
+      if (topicName != null) {
+        _dynamicMetricsManager.createOrUpdateMeter(_metricsNamesPrefix, topicName, EVENT_TRANSPORT_ERROR_RATE, 1);
+      }
+      String errorMessage = String.format(
+          "Sending DatastreamRecord (%s) of a batch of %d records to topic %s, Kafka cluster %s failed with exception.",
+          record, records.size(), topicName, destinationUri);
+
+      LOG.error(errorMessage, e);
+      throw new BatchSendFailedException(recordIndex, errorMessage, e);
+    } finally {
+      _eventWriteRate.mark(numEvents);
+      _eventByteWriteRate.mark(numBytes);
+      _aggregateEventWriteRate.mark(numEvents);
+      _aggregateEventByteWriteRate.mark(numBytes);
+    }
+  }
+
+  /**
+   * Send the events of the record to the topic and update the per-topic metrics
+   * @return the number of bytes sent
+   */
+  private long sendEvents(String topicName, TopicMetrics topicMetrics, DatastreamProducerRecord record,
+      SendCallback onSendComplete) {
+    long totalBytes = 0;
+    for (int i = 0; i < record.getEvents().size(); ++i) {
+      BrooklinEnvelope event = record.getEvents().get(i);
+      ProducerRecord<byte[], byte[]> outgoing = convertToProducerRecord(topicName, record, event);
+
+      // Update topic-specific metrics and aggregate metrics
+      int numBytes = (outgoing.key() != null ? outgoing.key().length : 0) + outgoing.value().length;
+
+      KafkaProducerWrapper<byte[], byte[]> producer =
+          _producers.get(Math.abs(Objects.hash(outgoing.topic(), outgoing.partition())) % _producers.size());
+
+      final int eventIndex = i;
+      final int sourcePartition = getSourcePartitionFromEvent(event);
+      producer.send(_datastreamTask, outgoing, (metadata, exception) -> {
+        int partition = metadata != null ? metadata.partition() : -1;
+        if (exception != null) {
+          String msg = String.format("Sending a message with source checkpoint %s to topic %s partition %d for datastream task %s "
+              + "threw an exception.", record.getCheckpoint(), topicName, partition, _datastreamTask.getDatastreamTaskName());
+          if (_isUnassigned) {
+            LOG.debug(msg, exception);
+          } else {
+            LOG.error(msg, exception);
+          }
+        }
+        doOnSendCallback(record, onSendComplete, metadata, exception, eventIndex, sourcePartition);
+      });
+
+      topicMetrics._eventWriteRate.mark();
+      topicMetrics._eventByteWriteRate.mark(numBytes);
+      totalBytes += numBytes;
+    }
+    return totalBytes;
+  }
+
   @Override
   public void close() {
     _producers.forEach(p -> p.close(_datastreamTask));
@@ -264,6 +363,26 @@ public class KafkaTransportProvider implements TransportProvider {
     _isUnassigned = true;
   }
 
+  private TopicMetrics getTopicMetrics(String topicName) {
+    TopicMetrics topicMetrics = _topicMetrics.get(topicName);
+    if (topicMetrics == null || topicMetrics._trackedKey.isEvicted()) {
+      dropEvictedTopicMetrics();
+      topicMetrics = _topicMetrics.compute(topicName,
+          (topic, current) -> current == null || current._trackedKey.isEvicted() ? new TopicMetrics(topic) : current);
+    }
+    topicMetrics._trackedKey.touch();
+    return topicMetrics;
+  }
+
+  // Drop the handles of the topics evicted since the last call, so that they do not keep the unregistered meters alive
+  private synchronized void dropEvictedTopicMetrics() {
+    long numEvictedMetricKeys = _dynamicMetricsManager.getNumEvictedKeys(_metricsNamesPrefix);
+    if (numEvictedMetricKeys != _numEvictedMetricKeys) {
+      _numEvictedMetricKeys = numEvictedMetricKeys;
+      _topicMetrics.values().removeIf(topicMetrics -> topicMetrics._trackedKey.isEvicted());
+    }
+  }
+
   private void doOnSendCallback(DatastreamProducerRecord record, SendCallback onComplete, RecordMetadata metadata,
       Exception exception, int eventIndex, int sourcePartition) {
     if (onComplete != null) {
@@ -289,4 +408,21 @@ public class KafkaTransportProvider implements TransportProvider {
 
     return Collections.unmodifiableList(metrics);
   }
+
+  /**
+   * Handles to the per-topic meters updated on every send. They must be resolved again once the topic is evicted
+   * from the per-topic metrics.
+   */
+  private final class TopicMetrics {
+    private final TrackedMetricKey _trackedKey;
+    private final Meter _eventWriteRate;
+    private final Meter _eventByteWriteRate;
+
+    TopicMetrics(String topicName) {
+      _trackedKey = _dynamicMetricsManager.trackKey(_metricsNamesPrefix, topicName);
+      _eventWriteRate = _dynamicMetricsManager.registerMeterHandle(_metricsNamesPrefix, topicName, EVENT_WRITE_RATE);
+      _eventByteWriteRate =
+          _dynamicMetricsManager.registerMeterHandle(_metricsNamesPrefix, topicName, EVENT_BYTE_WRITE_RATE);
+    }
+  }
 }
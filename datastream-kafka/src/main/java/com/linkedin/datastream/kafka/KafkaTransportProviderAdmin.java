@@ -64,6 +64,10 @@ public class KafkaTransportProviderAdmin implements TransportProviderAdmin {
   public static final String CONFIG_NUM_PRODUCERS_PER_CONNECTOR = "numProducersPerConnector";
   public static final String CONFIG_PRODUCERS_PER_TASK = "producersPerTask";
   public static final String CONFIG_METRICS_NAMES_PREFIX = "metricsNamesPrefix";
+  // Limit on the number of topics with per-topic metrics, see DynamicMetricsManager#setKeyLimit
+  public static final String CONFIG_PER_TOPIC_METRICS_MAX_KEYS = "perTopicMetricsMaxKeys";
+  // Time after which the metrics of a topic that has not been produced to are evicted, 0 to disable
+  public static final String CONFIG_PER_TOPIC_METRICS_MAX_IDLE_MS = "perTopicMetricsMaxIdleMs";
   public static final String DOMAIN_TOPIC = "topic";
   public static final String MIN_INSYNC_REPLICAS_CONFIG = "min.insync.replicas";
   public static final String TOPIC_RETENTION_MS = "retention.ms";
@@ -0,0 +1,449 @@
+/**
+ *  Copyright 2019 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.kafka.factory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
+import org.apache.kafka.clients.consumer.OffsetCommitCallback;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+
+
+/**
+ * A {@link Consumer} backed by a {@link SharedKafkaConsumer}, which it shares with other consumers that are assigned
+ * different partitions. Only manual partition assignment is supported, as the consumer group membership belongs to
+ * the shared Kafka consumer.
+ *
+ * The records of the assigned partitions which were polled by other consumers are buffered until polled. The position
+ * of a partition is the offset of its first buffered record (if any), and committing without explicit offsets only
+ * commits the positions of the assigned partitions, so that the buffered records are not skipped. Seeking a partition
+ * drops its buffered records. The records buffered for a consumer are bounded, see {@link SharedKafkaConsumer}.
+ */
+class MultiplexedKafkaConsumer<K, V> implements Consumer<K, V> {
+  // Same as the Kafka consumer
+  private static final Duration DEFAULT_CLOSE_TIMEOUT = Duration.ofSeconds(30);
+
+  private final SharedKafkaConsumer<K, V> _sharedConsumer;
+  private final MultiplexedKafkaConsumerFactory<K, V> _factory;
+
+  // The following are guarded by the lock of the shared consumer
+  private Set<TopicPartition> _assignment = Collections.emptySet();
+  private final Map<TopicPartition, List<ConsumerRecord<K, V>>> _bufferedRecords = new HashMap<>();
+  private int _numBufferedRecords = 0;
+  private final Set<TopicPartition> _pausedPartitions = new HashSet<>();
+  // Whether the partitions are paused on the Kafka consumer because too many records are buffered
+  private boolean _throttled = false;
+
+  private volatile boolean _wakeupRequested = false;
+
+  MultiplexedKafkaConsumer(SharedKafkaConsumer<K, V> sharedConsumer, MultiplexedKafkaConsumerFactory<K, V> factory) {
+    _sharedConsumer = sharedConsumer;
+    _factory = factory;
+  }
+
+  Set<TopicPartition> getAssignment() {
+    return _assignment;
+  }
+
+  void setAssignment(Set<TopicPartition> assignment) {
+    _assignment = Collections.unmodifiableSet(assignment);
+    dropBufferedRecords(_bufferedRecords.keySet().stream()
+        .filter(partition -> !assignment.contains(partition))
+        .collect(Collectors.toList()));
+    _pausedPartitions.retainAll(assignment);
+  }
+
+  void removePartition(TopicPartition partition) {
+    Set<TopicPartition> assignment = new HashSet<>(_assignment);
+    assignment.remove(partition);
+    setAssignment(assignment);
+  }
+
+  void addRecords(TopicPartition partition, List<ConsumerRecord<K, V>> records) {
+    _bufferedRecords.computeIfAbsent(partition, tp -> new ArrayList<>()).addAll(records);
+    _numBufferedRecords += records.size();
+  }
+
+  ConsumerRecords<K, V> drainRecords() {
+    if (_bufferedRecords.isEmpty()) {
+      return ConsumerRecords.empty();
+    }
+    Map<TopicPartition, List<ConsumerRecord<K, V>>> records = new HashMap<>();
+    Iterator<Map.Entry<TopicPartition, List<ConsumerRecord<K, V>>>> iterator = _bufferedRecords.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<TopicPartition, List<ConsumerRecord<K, V>>> entry = iterator.next();
+      // Like the Kafka consumer, hold on to the records of the paused partitions until they are resumed
+      if (!_pausedPartitions.contains(entry.getKey())) {
+        records.put(entry.getKey(), entry.getValue());
+        _numBufferedRecords -= entry.getValue().size();
+        iterator.remove();
+      }
+    }
+    return records.isEmpty() ? ConsumerRecords.empty() : new ConsumerRecords<>(records);
+  }
+
+  int getNumBufferedRecords() {
+    return _numBufferedRecords;
+  }
+
+  private void dropBufferedRecords(Collection<TopicPartition> partitions) {
+    for (TopicPartition partition : partitions) {
+      List<ConsumerRecord<K, V>> records = _bufferedRecords.remove(partition);
+      if (records != null) {
+        _numBufferedRecords -= records.size();
+      }
+    }
+  }
+
+  boolean isThrottled() {
+    return _throttled;
+  }
+
+  void setThrottled(boolean throttled) {
+    _throttled = throttled;
+  }
+
+  /**
+   * Whether the partition is paused on the Kafka consumer, i.e. paused by this consumer or throttled
+   */
+  boolean isPaused(TopicPartition partition) {
+    return _throttled || _pausedPartitions.contains(partition);
+  }
+
+  Set<TopicPartition> getPausedPartitions() {
+    return new HashSet<>(_pausedPartitions);
+  }
+
+  void addPausedPartitions(Collection<TopicPartition> partitions) {
+    _pausedPartitions.addAll(partitions);
+  }
+
+  void removePausedPartitions(Collection<TopicPartition> partitions) {
+    _pausedPartitions.removeAll(partitions);
+  }
+
+  void maybeThrowWakeupException() {
+    if (clearWakeup()) {
+      throw new WakeupException();
+    }
+  }
+
+  boolean clearWakeup() {
+    if (_wakeupRequested) {
+      _wakeupRequested = false;
+      return true;
+    }
+    return false;
+  }
+
+  private Map<TopicPartition, OffsetAndMetadata> getPositions(Consumer<K, V> consumer) {
+    Map<TopicPartition, OffsetAndMetadata> positions = new HashMap<>();
+    for (TopicPartition partition : _assignment) {
+      positions.put(partition, new OffsetAndMetadata(getPosition(consumer, partition, null)));
+    }
+    return positions;
+  }
+
+  private long getPosition(Consumer<K, V> consumer, TopicPartition partition, Duration timeout) {
+    List<ConsumerRecord<K, V>> bufferedRecords = _bufferedRecords.get(partition);
+    if (bufferedRecords != null && !bufferedRecords.isEmpty()) {
+      return bufferedRecords.get(0).offset();
+    }
+    return timeout == null ? consumer.position(partition) : consumer.position(partition, timeout);
+  }
+
+  @Override
+  public Set<TopicPartition> assignment() {
+    return _sharedConsumer.call(null, consumer -> _assignment);
+  }
+
+  @Override
+  public Set<String> subscription() {
+    return Collections.emptySet();
+  }
+
+  @Override
+  public void subscribe(Collection<String> topics) {
+    throw new UnsupportedOperationException("Consumers sharing a Kafka consumer only support manual assignment");
+  }
+
+  @Override
+  public void subscribe(Collection<String> topics, ConsumerRebalanceListener callback) {
+    throw new UnsupportedOperationException("Consumers sharing a Kafka consumer only support manual assignment");
+  }
+
+  @Override
+  public void subscribe(Pattern pattern, ConsumerRebalanceListener callback) {
+    throw new UnsupportedOperationException("Consumers sharing a Kafka consumer only support manual assignment");
+  }
+
+  @Override
+  public void subscribe(Pattern pattern) {
+    throw new UnsupportedOperationException("Consumers sharing a Kafka consumer only support manual assignment");
+  }
+
+  @Override
+  public void assign(Collection<TopicPartition> partitions) {
+    _sharedConsumer.updateAssignment(this, new HashSet<>(partitions));
+  }
+
+  @Override
+  public void unsubscribe() {
+    _sharedConsumer.updateAssignment(this, new HashSet<>());
+  }
+
+  @Override
+  @Deprecated
+  public ConsumerRecords<K, V> poll(long timeout) {
+    return poll(Duration.ofMillis(timeout));
+  }
+
+  @Override
+  public ConsumerRecords<K, V> poll(Duration timeout) {
+    return _sharedConsumer.poll(this, timeout);
+  }
+
+  @Override
+  public void commitSync() {
+    _sharedConsumer.call(this, consumer -> {
+      consumer.commitSync(getPositions(consumer));
+      return null;
+    });
+  }
+
+  @Override
+  public void commitSync(Duration timeout) {
+    _sharedConsumer.call(this, consumer -> {
+      consumer.commitSync(getPositions(consumer), timeout);
+      return null;
+    });
+  }
+
+  @Override
+  public void commitSync(Map<TopicPartition, OffsetAndMetadata> offsets) {
+    _sharedConsumer.call(this, consumer -> {
+      consumer.commitSync(offsets);
+      return null;
+    });
+  }
+
+  @Override
+  public void commitSync(Map<TopicPartition, OffsetAndMetadata> offsets, Duration timeout) {
+    _sharedConsumer.call(this, consumer -> {
+      consumer.commitSync(offsets, timeout);
+      return null;
+    });
+  }
+
+  @Override
+  public void commitAsync() {
+    commitAsync(null);
+  }
+
+  @Override
+  public void commitAsync(OffsetCommitCallback callback) {
+    _sharedConsumer.call(this, consumer -> {
+      consumer.commitAsync(getPositions(consumer), callback);
+      return null;
+    });
+  }
+
+  @Override
+  public void commitAsync(Map<TopicPartition, OffsetAndMetadata> offsets, OffsetCommitCallback callback) {
+    _sharedConsumer.call(this, consumer -> {
+      consumer.commitAsync(offsets, callback);
+      return null;
+    });
+  }
+
+  @Override
+  public void seek(TopicPartition partition, long offset) {
+    _sharedConsumer.call(null, consumer -> {
+      consumer.seek(partition, offset);
+      dropBufferedRecords(Collections.singleton(partition));
+      _sharedConsumer.updateThrottling(this);
+      return null;
+    });
+  }
+
+  @Override
+  public void seek(TopicPartition partition, OffsetAndMetadata offsetAndMetadata) {
+    _sharedConsumer.call(null, consumer -> {
+      consumer.seek(partition, offsetAndMetadata);
+      dropBufferedRecords(Collections.singleton(partition));
+      _sharedConsumer.updateThrottling(this);
+      return null;
+    });
+  }
+
+  @Override
+  public void seekToBeginning(Collection<TopicPartition> partitions) {
+    _sharedConsumer.call(null, consumer -> {
+      consumer.seekToBeginning(partitions);
+      dropBufferedRecords(partitions);
+      _sharedConsumer.updateThrottling(this);
+      return null;
+    });
+  }
+
+  @Override
+  public void seekToEnd(Collection<TopicPartition> partitions) {
+    _sharedConsumer.call(null, consumer -> {
+      consumer.seekToEnd(partitions);
+      dropBufferedRecords(partitions);
+      _sharedConsumer.updateThrottling(this);
+      return null;
+    });
+  }
+
+  @Override
+  public long position(TopicPartition partition) {
+    return _sharedConsumer.call(this, consumer -> getPosition(consumer, partition, null));
+  }
+
+  @Override
+  public long position(TopicPartition partition, Duration timeout) {
+    return _sharedConsumer.call(this, consumer -> getPosition(consumer, partition, timeout));
+  }
+
+  @Override
+  @Deprecated
+  public OffsetAndMetadata committed(TopicPartition partition) {
+    return _sharedConsumer.call(this, consumer -> consumer.committed(partition));
+  }
+
+  @Override
+  @Deprecated
+  public OffsetAndMetadata committed(TopicPartition partition, Duration timeout) {
+    return _sharedConsumer.call(this, consumer -> consumer.committed(partition, timeout));
+  }
+
+  @Override
+  public Map<TopicPartition, OffsetAndMetadata> committed(Set<TopicPartition> partitions) {
+    return _sharedConsumer.call(this, consumer -> consumer.committed(partitions));
+  }
+
+  @Override
+  public Map<TopicPartition, OffsetAndMetadata> committed(Set<TopicPartition> partitions, Duration timeout) {
+    return _sharedConsumer.call(this, consumer -> consumer.committed(partitions, timeout));
+  }
+
+  @Override
+  public Map<MetricName, ? extends Metric> metrics() {
+    // Only one of the consumers sharing the Kafka consumer reports its metrics, so that they are not registered once
+    // per consumer. Thread-safe, does not need the lock.
+    return _sharedConsumer.isMetricsReporter(this) ? _sharedConsumer.getConsumer().metrics() : Collections.emptyMap();
+  }
+
+  @Override
+  public List<PartitionInfo> partitionsFor(String topic) {
+    return _sharedConsumer.call(this, consumer -> consumer.partitionsFor(topic));
+  }
+
+  @Override
+  public List<PartitionInfo> partitionsFor(String topic, Duration timeout) {
+    return _sharedConsumer.call(this, consumer -> consumer.partitionsFor(topic, timeout));
+  }
+
+  @Override
+  public Map<String, List<PartitionInfo>> listTopics() {
+    return _sharedConsumer.call(this, Consumer::listTopics);
+  }
+
+  @Override
+  public Map<String, List<PartitionInfo>> listTopics(Duration timeout) {
+    return _sharedConsumer.call(this, consumer -> consumer.listTopics(timeout));
+  }
+
+  @Override
+  public Set<TopicPartition> paused() {
+    return _sharedConsumer.paused(this);
+  }
+
+  @Override
+  public void pause(Collection<TopicPartition> partitions) {
+    _sharedConsumer.pause(this, partitions);
+  }
+
+  @Override
+  public void resume(Collection<TopicPartition> partitions) {
+    _sharedConsumer.resume(this, partitions);
+  }
+
+  @Override
+  public Map<TopicPartition, OffsetAndTimestamp> offsetsForTimes(Map<TopicPartition, Long> timestampsToSearch) {
+    return _sharedConsumer.call(this, consumer -> consumer.offsetsForTimes(timestampsToSearch));
+  }
+
+  @Override
+  public Map<TopicPartition, OffsetAndTimestamp> offsetsForTimes(Map<TopicPartition, Long> timestampsToSearch,
+      Duration timeout) {
+    return _sharedConsumer.call(this, consumer -> consumer.offsetsForTimes(timestampsToSearch, timeout));
+  }
+
+  @Override
+  public Map<TopicPartition, Long> beginningOffsets(Collection<TopicPartition> partitions) {
+    return _sharedConsumer.call(this, consumer -> consumer.beginningOffsets(partitions));
+  }
+
+  @Override
+  public Map<TopicPartition, Long> beginningOffsets(Collection<TopicPartition> partitions, Duration timeout) {
+    return _sharedConsumer.call(this, consumer -> consumer.beginningOffsets(partitions, timeout));
+  }
+
+  @Override
+  public Map<TopicPartition, Long> endOffsets(Collection<TopicPartition> partitions) {
+    return _sharedConsumer.call(this, consumer -> consumer.endOffsets(partitions));
+  }
+
+  @Override
+  public Map<TopicPartition, Long> endOffsets(Collection<TopicPartition> partitions, Duration timeout) {
+    return _sharedConsumer.call(this, consumer -> consumer.endOffsets(partitions, timeout));
+  }
+
+  @Override
+  public void close() {
+    close(DEFAULT_CLOSE_TIMEOUT);
+  }
+
+  @Override
+  @Deprecated
+  public void close(long timeout, TimeUnit unit) {
+    close(Duration.ofMillis(unit.toMillis(timeout)));
+  }
+
+  @Override
+  public void close(Duration timeout) {
+    _factory.release(_sharedConsumer, this, timeout);
+  }
+
+  @Override
+  public void wakeup() {
+    _wakeupRequested = true;
+    _sharedConsumer.wakeup();
+  }
+}
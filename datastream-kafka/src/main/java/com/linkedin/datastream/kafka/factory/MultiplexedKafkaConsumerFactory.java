@@ -0,0 +1,111 @@
+/**
+ *  Copyright 2019 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.kafka.factory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.commons.lang.Validate;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+
+
+/**
+ * A {@link KafkaConsumerFactory} which multiplexes the consumers it creates over a small, fixed pool of Kafka
+ * consumers, instead of creating a Kafka consumer (with its own connections, buffers and fetch sessions) for each of
+ * them. Consumers created with the same properties, other than their client.id, share the Kafka consumers of the same
+ * pool, up to the configured pool size, and are spread evenly across them. A shared Kafka consumer keeps the client.id
+ * of the consumer it was created for.
+ *
+ * Sharing is therefore limited to the consumers reading from the same cluster with the same settings, in the same
+ * consumer group, since the offsets are committed for the group of the shared Kafka consumer. For the Kafka-based
+ * connectors, these are the tasks of the same datastream, or of datastreams configured with the same group id.
+ *
+ * The consumers created by this factory only support manual partition assignment, and the consumers sharing a
+ * Kafka consumer must be assigned disjoint sets of partitions. The records polled by any of them are demultiplexed
+ * to the consumer the partition is assigned to, which buffers them until it polls them. The partitions of a consumer
+ * which buffered too many records are paused until it polls them. See {@link MultiplexedKafkaConsumer}.
+ *
+ * @param <K> The type that the key is deserialized into
+ * @param <V> The type that the value is deserialized into
+ */
+public class MultiplexedKafkaConsumerFactory<K, V> implements KafkaConsumerFactory<K, V> {
+  private static final Logger LOG = LoggerFactory.getLogger(MultiplexedKafkaConsumerFactory.class);
+  static final int DEFAULT_MAX_BUFFERED_RECORDS = 10000;
+
+  private final KafkaConsumerFactory<K, V> _consumerFactory;
+  private final int _poolSize;
+  private final int _maxBufferedRecords;
+  // Pools of shared Kafka consumers, by consumer properties other than the client.id. Guarded by this.
+  private final Map<Map<Object, Object>, List<SharedKafkaConsumer<K, V>>> _pools = new HashMap<>();
+
+  /**
+   * Constructor for MultiplexedKafkaConsumerFactory
+   * @param consumerFactory the factory creating the shared Kafka consumers
+   * @param poolSize the maximum number of Kafka consumers created for the same consumer properties
+   */
+  public MultiplexedKafkaConsumerFactory(KafkaConsumerFactory<K, V> consumerFactory, int poolSize) {
+    this(consumerFactory, poolSize, DEFAULT_MAX_BUFFERED_RECORDS);
+  }
+
+  /**
+   * Constructor for MultiplexedKafkaConsumerFactory
+   * @param consumerFactory the factory creating the shared Kafka consumers
+   * @param poolSize the maximum number of Kafka consumers created for the same consumer properties
+   * @param maxBufferedRecords the number of records buffered for a consumer above which its partitions are paused
+   */
+  public MultiplexedKafkaConsumerFactory(KafkaConsumerFactory<K, V> consumerFactory, int poolSize,
+      int maxBufferedRecords) {
+    Validate.notNull(consumerFactory, "null consumer factory");
+    Validate.isTrue(poolSize > 0, "pool size must be positive");
+    Validate.isTrue(maxBufferedRecords > 0, "max buffered records must be positive");
+    _consumerFactory = consumerFactory;
+    _poolSize = poolSize;
+    _maxBufferedRecords = maxBufferedRecords;
+  }
+
+  @Override
+  public synchronized Consumer<K, V> createConsumer(Properties properties) {
+    Map<Object, Object> key = new HashMap<>(properties);
+    key.remove(ConsumerConfig.CLIENT_ID_CONFIG);
+    List<SharedKafkaConsumer<K, V>> pool = _pools.computeIfAbsent(key, k -> new ArrayList<>());
+    SharedKafkaConsumer<K, V> sharedConsumer;
+    if (pool.size() < _poolSize) {
+      sharedConsumer = new SharedKafkaConsumer<>(_consumerFactory.createConsumer(properties), _maxBufferedRecords);
+      pool.add(sharedConsumer);
+      LOG.info("Created shared Kafka consumer {} of {} for consumer properties {}", pool.size(), _poolSize, properties);
+    } else {
+      sharedConsumer = pool.stream().min(Comparator.comparingInt(SharedKafkaConsumer::getNumMembers)).get();
+    }
+    return sharedConsumer.addMember(this);
+  }
+
+  /**
+   * Release a consumer which was closed, closing the Kafka consumer it shared if it was the last one using it
+   */
+  synchronized void release(SharedKafkaConsumer<K, V> sharedConsumer, MultiplexedKafkaConsumer<K, V> consumer,
+      Duration timeout) {
+    if (sharedConsumer.removeMember(consumer, timeout)) {
+      _pools.values().forEach(pool -> pool.remove(sharedConsumer));
+      _pools.values().removeIf(List::isEmpty);
+      LOG.info("Closed shared Kafka consumer as it is no longer used");
+    }
+  }
+
+  @VisibleForTesting
+  synchronized int getNumKafkaConsumers() {
+    return _pools.values().stream().mapToInt(List::size).sum();
+  }
+}
@@ -0,0 +1,310 @@
+/**
+ *  Copyright 2019 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.kafka.factory;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.InterruptException;
+import org.apache.kafka.common.errors.WakeupException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A Kafka consumer shared by several {@link MultiplexedKafkaConsumer}s, each of which is assigned its own set of
+ * partitions. The records polled by any of them are dispatched to the one the partition is assigned to.
+ *
+ * The Kafka consumer is not thread-safe, so all the calls to it are serialized with a fair lock. A poll of the Kafka
+ * consumer is made on behalf of all the members: it is made without holding the lock, so that the other polling
+ * members wait for it to dispatch their records rather than for their turn to poll, and the calls of the other members
+ * wait for at most {@link #MAX_POLL_TIMEOUT_MS}.
+ *
+ * The records dispatched to a member are buffered until it polls them. Once a member has buffered
+ * {@code maxBufferedRecords} records, its partitions are paused on the Kafka consumer, until it has polled more than
+ * half of them.
+ */
+class SharedKafkaConsumer<K, V> {
+  private static final Logger LOG = LoggerFactory.getLogger(SharedKafkaConsumer.class);
+  static final long MAX_POLL_TIMEOUT_MS = 50;
+
+  private final Consumer<K, V> _consumer;
+  private final int _maxBufferedRecords;
+  private final ReentrantLock _lock = new ReentrantLock(true);
+  private final Condition _pollCompleted = _lock.newCondition();
+  // The following are guarded by _lock
+  private final Set<MultiplexedKafkaConsumer<K, V>> _members = new HashSet<>();
+  private final Map<TopicPartition, MultiplexedKafkaConsumer<K, V>> _owners = new HashMap<>();
+  // Whether a member is polling the Kafka consumer, which the other calls must wait for
+  private boolean _polling = false;
+  // The member reporting the metrics of the Kafka consumer, written under _lock
+  private volatile MultiplexedKafkaConsumer<K, V> _metricsReporter;
+
+  SharedKafkaConsumer(Consumer<K, V> consumer, int maxBufferedRecords) {
+    _consumer = consumer;
+    _maxBufferedRecords = maxBufferedRecords;
+  }
+
+  Consumer<K, V> getConsumer() {
+    return _consumer;
+  }
+
+  int getNumMembers() {
+    return call(null, consumer -> _members.size());
+  }
+
+  MultiplexedKafkaConsumer<K, V> addMember(MultiplexedKafkaConsumerFactory<K, V> factory) {
+    MultiplexedKafkaConsumer<K, V> member = new MultiplexedKafkaConsumer<>(this, factory);
+    return call(null, consumer -> {
+      _members.add(member);
+      if (_metricsReporter == null) {
+        _metricsReporter = member;
+      }
+      return member;
+    });
+  }
+
+  /**
+   * Check whether the member is the one reporting the metrics of the Kafka consumer. The reporting member is replaced
+   * by another one when it is removed.
+   */
+  boolean isMetricsReporter(MultiplexedKafkaConsumer<K, V> member) {
+    return _metricsReporter == member;
+  }
+
+  /**
+   * Remove the member, and close the Kafka consumer if it was the last one.
+   * @return true if the Kafka consumer was closed
+   */
+  boolean removeMember(MultiplexedKafkaConsumer<K, V> member, Duration timeout) {
+    return call(null, consumer -> {
+      if (!_members.remove(member)) {
+        return false;
+      }
+      assign(member, new HashSet<>());
+      if (_metricsReporter == member) {
+        _metricsReporter = _members.stream().findFirst().orElse(null);
+      }
+      if (_members.isEmpty()) {
+        consumer.close(timeout);
+        return true;
+      }
+      return false;
+    });
+  }
+
+  /**
+   * Run a call to the Kafka consumer on behalf of the member. A wakeup of the Kafka consumer only fails the call if
+   * it was requested by the member, otherwise the call is retried.
+   * @param member the member making the call, or null for the calls which are not woken up (i.e. do not block)
+   */
+  <T> T call(MultiplexedKafkaConsumer<K, V> member, Function<Consumer<K, V>, T> call) {
+    lock();
+    try {
+      awaitPollCompletion();
+      if (member != null) {
+        member.maybeThrowWakeupException();
+      }
+      try {
+        return call.apply(_consumer);
+      } catch (WakeupException e) {
+        if (member == null || member.clearWakeup()) {
+          throw e;
+        }
+        // The wakeup was requested by another member, which will be woken up on its next call
+        return call.apply(_consumer);
+      }
+    } finally {
+      _lock.unlock();
+    }
+  }
+
+  void updateAssignment(MultiplexedKafkaConsumer<K, V> member, Set<TopicPartition> partitions) {
+    call(null, consumer -> {
+      assign(member, partitions);
+      return null;
+    });
+  }
+
+  // Must be called with the lock held, while not polling
+  private void assign(MultiplexedKafkaConsumer<K, V> member, Set<TopicPartition> partitions) {
+    for (TopicPartition partition : partitions) {
+      MultiplexedKafkaConsumer<K, V> owner = _owners.get(partition);
+      if (owner != null && owner != member) {
+        // The partition moved between two consumers, and the new owner was assigned it before the previous one was
+        // unassigned it. Hand it over, dropping the records buffered for the previous owner.
+        LOG.info("Handing over partition {} to another consumer sharing the same Kafka consumer", partition);
+        owner.removePartition(partition);
+        updateThrottling(owner);
+      }
+    }
+    _owners.values().removeIf(owner -> owner == member);
+    partitions.forEach(partition -> _owners.put(partition, member));
+    member.setAssignment(partitions);
+    _consumer.assign(new HashSet<>(_owners.keySet()));
+    // Keep the partitions paused by their owners, or throttled, paused
+    Set<TopicPartition> pausedPartitions = new HashSet<>();
+    Set<TopicPartition> resumedPartitions = new HashSet<>();
+    _owners.forEach((partition, owner) -> (owner.isPaused(partition) ? pausedPartitions : resumedPartitions).add(partition));
+    _consumer.pause(pausedPartitions);
+    _consumer.resume(resumedPartitions);
+    updateThrottling(member);
+  }
+
+  ConsumerRecords<K, V> poll(MultiplexedKafkaConsumer<K, V> member, Duration timeout) {
+    long deadline = System.nanoTime() + timeout.toNanos();
+    lock();
+    try {
+      while (true) {
+        member.maybeThrowWakeupException();
+        ConsumerRecords<K, V> records = drainRecords(member);
+        if (!records.isEmpty()) {
+          return records;
+        }
+        long remainingNanos = deadline - System.nanoTime();
+        if (remainingNanos <= 0) {
+          return ConsumerRecords.empty();
+        }
+        if (member.getAssignment().isEmpty()) {
+          throw new IllegalStateException("Consumer is not assigned any partitions");
+        }
+
+        if (_polling) {
+          // Another member is polling the Kafka consumer, which also polls the partitions of this one
+          awaitNanos(remainingNanos);
+          continue;
+        }
+
+        // Resume the members which polled their buffered records while another member was polling
+        _members.forEach(this::updateThrottling);
+        long pollTimeoutMs = Math.min(TimeUnit.NANOSECONDS.toMillis(remainingNanos), MAX_POLL_TIMEOUT_MS);
+        _polling = true;
+        _lock.unlock();
+        ConsumerRecords<K, V> polledRecords = ConsumerRecords.empty();
+        WakeupException wakeupException = null;
+        try {
+          polledRecords = _consumer.poll(Duration.ofMillis(pollTimeoutMs));
+        } catch (WakeupException e) {
+          wakeupException = e;
+        } finally {
+          _lock.lock();
+          _polling = false;
+          _pollCompleted.signalAll();
+        }
+        dispatch(polledRecords);
+        if (wakeupException != null && member.clearWakeup()) {
+          throw wakeupException;
+        }
+      }
+    } finally {
+      _lock.unlock();
+    }
+  }
+
+  void wakeup() {
+    // Thread-safe, interrupts the poll in progress if any
+    _consumer.wakeup();
+  }
+
+  /**
+   * Pause partitions of the member, which stay paused on the Kafka consumer until the member resumes them
+   */
+  void pause(MultiplexedKafkaConsumer<K, V> member, Collection<TopicPartition> partitions) {
+    call(null, consumer -> {
+      consumer.pause(partitions);
+      member.addPausedPartitions(partitions);
+      return null;
+    });
+  }
+
+  /**
+   * Resume partitions of the member, which stay paused on the Kafka consumer if the member is throttled
+   */
+  void resume(MultiplexedKafkaConsumer<K, V> member, Collection<TopicPartition> partitions) {
+    call(null, consumer -> {
+      member.removePausedPartitions(partitions);
+      consumer.resume(partitions.stream().filter(partition -> !member.isPaused(partition)).collect(Collectors.toSet()));
+      return null;
+    });
+  }
+
+  Set<TopicPartition> paused(MultiplexedKafkaConsumer<K, V> member) {
+    return call(null, consumer -> member.getPausedPartitions());
+  }
+
+  /**
+   * Pause the partitions of the member on the Kafka consumer once it buffered too many records, and resume them once it
+   * polled more than half of them. Must be called with the lock held, while not polling.
+   */
+  void updateThrottling(MultiplexedKafkaConsumer<K, V> member) {
+    int numBufferedRecords = member.getNumBufferedRecords();
+    if (!member.isThrottled() && numBufferedRecords >= _maxBufferedRecords) {
+      member.setThrottled(true);
+      _consumer.pause(member.getAssignment());
+    } else if (member.isThrottled() && numBufferedRecords < _maxBufferedRecords / 2) {
+      member.setThrottled(false);
+      _consumer.resume(
+          member.getAssignment().stream().filter(partition -> !member.isPaused(partition)).collect(Collectors.toSet()));
+    }
+  }
+
+  private ConsumerRecords<K, V> drainRecords(MultiplexedKafkaConsumer<K, V> member) {
+    ConsumerRecords<K, V> records = member.drainRecords();
+    // The Kafka consumer can't be resumed during a poll, the next poll does it instead
+    if (!records.isEmpty() && !_polling) {
+      updateThrottling(member);
+    }
+    return records;
+  }
+
+  private void dispatch(ConsumerRecords<K, V> records) {
+    Set<MultiplexedKafkaConsumer<K, V>> owners = new HashSet<>();
+    for (TopicPartition partition : records.partitions()) {
+      MultiplexedKafkaConsumer<K, V> owner = _owners.get(partition);
+      // The records of a partition which was unassigned in the meantime are dropped, like the Kafka consumer does
+      if (owner != null) {
+        owner.addRecords(partition, records.records(partition));
+        owners.add(owner);
+      }
+    }
+    owners.forEach(this::updateThrottling);
+  }
+
+  // Must be called with the lock held
+  private void awaitPollCompletion() {
+    while (_polling) {
+      awaitNanos(TimeUnit.MILLISECONDS.toNanos(MAX_POLL_TIMEOUT_MS));
+    }
+  }
+
+  private void awaitNanos(long nanos) {
+    try {
+      _pollCompleted.awaitNanos(nanos);
+    } catch (InterruptedException e) {
+      throw new InterruptException(e);
+    }
+  }
+
+  private void lock() {
+    try {
+      _lock.lockInterruptibly();
+    } catch (InterruptedException e) {
+      throw new InterruptException(e);
+    }
+  }
+}
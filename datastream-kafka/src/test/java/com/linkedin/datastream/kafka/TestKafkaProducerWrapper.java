@@ -6,12 +6,17 @@
 package com.linkedin.datastream.kafka;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.kafka.clients.producer.Callback;
 import org.apache.kafka.clients.producer.Producer;
@@ -27,6 +32,7 @@ import com.codahale.metrics.MetricRegistry;
 
 import com.linkedin.datastream.common.Datastream;
 import com.linkedin.datastream.common.DatastreamRuntimeException;
+import com.linkedin.datastream.common.DatastreamTransientException;
 import com.linkedin.datastream.common.PollUtils;
 import com.linkedin.datastream.metrics.DynamicMetricsManager;
 import com.linkedin.datastream.server.DatastreamTask;
@@ -36,6 +42,7 @@ import com.linkedin.datastream.testutil.DatastreamTestUtils;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.mockingDetails;
@@ -246,6 +253,119 @@ public class TestKafkaProducerWrapper {
     Assert.assertEquals(producerWrapper.getNumCreateKafkaProducerCalls(), 2);
   }
 
+  @Test
+  public void testSendRetriedAsynchronously() throws Exception {
+    String topicName = "retry-topic";
+    DatastreamTask task = createTask(topicName);
+    MockKafkaProducerWrapper<byte[], byte[]> producerWrapper =
+        createRetryingProducerWrapper(createRetryProperties(10, 50), task, 3);
+
+    // The sends return right away although the first one fails, and are completed in order once retried
+    List<Integer> completed = Collections.synchronizedList(new ArrayList<>());
+    for (int i = 0; i < 3; i++) {
+      int index = i;
+      producerWrapper.send(task, new ProducerRecord<>(topicName, 0, null, null), (metadata, exception) -> {
+        Assert.assertNull(exception);
+        completed.add(index);
+      });
+    }
+
+    // Flush waits for the sends pending retry to be handed over to the producer
+    producerWrapper.flush();
+    Assert.assertEquals(completed, Arrays.asList(0, 1, 2));
+    producerWrapper.verifySend(6);
+    producerWrapper.verifyFlush(1);
+  }
+
+  @Test
+  public void testSendRetryBudgetExhausted() throws Exception {
+    Properties transportProviderProperties = createRetryProperties(60000, 60000);
+    transportProviderProperties.put(KafkaProducerWrapper.CFG_PRODUCER_FLUSH_TIMEOUT_MS, "100");
+    transportProviderProperties.put(KafkaProducerWrapper.CFG_SEND_FAILURE_MAX_PENDING_SENDS, "2");
+
+    String topicName = "retry-budget-topic";
+    DatastreamTask task = createTask(topicName);
+    MockKafkaProducerWrapper<byte[], byte[]> producerWrapper =
+        createRetryingProducerWrapper(transportProviderProperties, task, Integer.MAX_VALUE);
+
+    ProducerRecord<byte[], byte[]> producerRecord = new ProducerRecord<>(topicName, 0, null, null);
+    // The first send fails and waits to be retried, the second one is queued behind it
+    producerWrapper.send(task, producerRecord, (metadata, exception) -> { });
+    producerWrapper.send(task, producerRecord, (metadata, exception) -> { });
+    producerWrapper.verifySend(1);
+
+    // The third one exceeds the budget of pending sends and is rejected instead of blocking the caller
+    Assert.assertThrows(DatastreamTransientException.class,
+        () -> producerWrapper.send(task, producerRecord, (metadata, exception) -> { }));
+    producerWrapper.verifySend(1);
+
+    // Flush does not wait forever for the pending sends
+    Assert.assertThrows(DatastreamRuntimeException.class, producerWrapper::flush);
+    producerWrapper.verifyFlush(0);
+  }
+
+  @Test
+  public void testBlockedRetryDoesNotHoldUpOtherProducers() throws Exception {
+    Properties transportProviderProperties = createRetryProperties(10, 50);
+    String topicName = "blocked-retry-topic";
+    DatastreamTask task = createTask(topicName);
+    ProducerRecord<byte[], byte[]> producerRecord = new ProducerRecord<>(topicName, 0, null, null);
+
+    // The retries of these producers block, as many of them as there used to be threads for all the retries
+    CountDownLatch sendReleased = new CountDownLatch(1);
+    CountDownLatch blockedRetriesCompleted = new CountDownLatch(4);
+    for (int i = 0; i < 4; i++) {
+      MockKafkaProducerWrapper<byte[], byte[]> blockedProducerWrapper =
+          createRetryingProducerWrapper(transportProviderProperties, task, 1);
+      blockedProducerWrapper.setSendReleased(sendReleased);
+      blockedProducerWrapper.send(task, producerRecord, (metadata, exception) -> blockedRetriesCompleted.countDown());
+    }
+
+    try {
+      MockKafkaProducerWrapper<byte[], byte[]> producerWrapper =
+          createRetryingProducerWrapper(transportProviderProperties, task, 1);
+      CountDownLatch retryCompleted = new CountDownLatch(1);
+      producerWrapper.send(task, producerRecord, (metadata, exception) -> retryCompleted.countDown());
+      Assert.assertTrue(retryCompleted.await(5, TimeUnit.SECONDS));
+    } finally {
+      sendReleased.countDown();
+    }
+    Assert.assertTrue(blockedRetriesCompleted.await(5, TimeUnit.SECONDS));
+  }
+
+  /**
+   * Create the properties of a producer whose failed sends are retried after the given waits
+   */
+  private Properties createRetryProperties(long retryInitialWaitMs, long retryWaitMs) {
+    DynamicMetricsManager.createInstance(new MetricRegistry(), getClass().getSimpleName());
+    Properties transportProviderProperties = new Properties();
+    transportProviderProperties.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:1234");
+    transportProviderProperties.put(ProducerConfig.CLIENT_ID_CONFIG, "testClient");
+    transportProviderProperties.put(KafkaTransportProviderAdmin.ZK_CONNECT_STRING_CONFIG, "zk-connect-string");
+    transportProviderProperties.put(KafkaProducerWrapper.CFG_RATE_LIMITER_CFG, "1");
+    transportProviderProperties.put("send.failure.retry.initial.wait.time.ms", String.valueOf(retryInitialWaitMs));
+    transportProviderProperties.put("send.failure.retry.wait.time.ms", String.valueOf(retryWaitMs));
+    return transportProviderProperties;
+  }
+
+  private static DatastreamTask createTask(String topicName) {
+    String destinationUri = "localhost:1234/" + topicName;
+    Datastream ds = DatastreamTestUtils.createDatastream("test", "ds1", "source", destinationUri, 1);
+    return new DatastreamTaskImpl(Collections.singletonList(ds));
+  }
+
+  /**
+   * Create a producer wrapper assigned the task, whose first sends fail with a retriable exception
+   */
+  private static MockKafkaProducerWrapper<byte[], byte[]> createRetryingProducerWrapper(
+      Properties transportProviderProperties, DatastreamTask task, int numSendFailures) {
+    MockKafkaProducerWrapper<byte[], byte[]> producerWrapper =
+        new MockKafkaProducerWrapper<>("log-suffix", transportProviderProperties, "metrics", null);
+    producerWrapper.setNumSendFailures(numSendFailures);
+    producerWrapper.assignTask(task);
+    return producerWrapper;
+  }
+
   private static class MockKafkaProducerWrapper<K, V> extends KafkaProducerWrapper<K, V> {
     private Class<? extends Throwable> _exceptionClass;
     private boolean _createKafkaProducerCalled;
@@ -253,6 +373,8 @@ public class TestKafkaProducerWrapper {
     private int _numShutdownProducerCalls;
     private int _numFastShutdownProducerCalls;
     private Producer<K, V> _mockProducer;
+    private final AtomicInteger _numSendFailures = new AtomicInteger();
+    private volatile CountDownLatch _sendReleased;
 
     MockKafkaProducerWrapper(String logSuffix, Properties props, String metricsNamesPrefix,
         Class<? extends Throwable> exceptionClass) {
@@ -265,9 +387,22 @@ public class TestKafkaProducerWrapper {
       @SuppressWarnings("unchecked")
       Producer<K, V> producer = (Producer<K, V>) mock(Producer.class);
       // Calling flush() on the first producer created will throw an exception of type _exceptionClass.
-      if (!_createKafkaProducerCalled) {
+      if (!_createKafkaProducerCalled && _exceptionClass != null) {
         doThrow(_exceptionClass).when(producer).flush(anyInt(), any(TimeUnit.class));
       }
+      // The first sends fail with a retriable exception, the next ones succeed right away
+      if (_numSendFailures.get() > 0) {
+        doAnswer(invocation -> {
+          if (_numSendFailures.getAndDecrement() > 0) {
+            throw new TimeoutException("Failed to allocate memory within the configured max blocking time");
+          }
+          if (_sendReleased != null) {
+            _sendReleased.await();
+          }
+          ((Callback) invocation.getArguments()[1]).onCompletion(null, null);
+          return null;
+        }).when(producer).send(any(), any(Callback.class));
+      }
 
       _mockProducer = producer;
       _createKafkaProducerCalled = true;
@@ -307,6 +442,15 @@ public class TestKafkaProducerWrapper {
       Assert.assertEquals(_numFastShutdownProducerCalls, numFastShutdownProducerCalls);
     }
 
+    void setNumSendFailures(int numSendFailures) {
+      _numSendFailures.set(numSendFailures);
+    }
+
+    // Make the sends which do not fail block until the latch is released
+    void setSendReleased(CountDownLatch sendReleased) {
+      _sendReleased = sendReleased;
+    }
+
     public int getNumCreateKafkaProducerCalls() {
       return _numCreateKafkaProducerCalls;
     }
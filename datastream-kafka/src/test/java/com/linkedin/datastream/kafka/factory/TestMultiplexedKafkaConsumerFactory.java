@@ -0,0 +1,260 @@
+/**
+ *  Copyright 2019 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.kafka.factory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+
+/**
+ * Tests for {@link MultiplexedKafkaConsumerFactory}
+ */
+public class TestMultiplexedKafkaConsumerFactory {
+  private static final String TOPIC = "topic";
+  private static final TopicPartition PARTITION0 = new TopicPartition(TOPIC, 0);
+  private static final TopicPartition PARTITION1 = new TopicPartition(TOPIC, 1);
+  private static final Duration POLL_TIMEOUT = Duration.ofMillis(500);
+  private static final int MAX_BUFFERED_RECORDS = 4;
+
+  private List<MockConsumer<String, String>> _kafkaConsumers;
+  private MultiplexedKafkaConsumerFactory<String, String> _factory;
+
+  @BeforeMethod
+  public void setup() {
+    _kafkaConsumers = new ArrayList<>();
+    _factory = new MultiplexedKafkaConsumerFactory<>(properties -> {
+      MockConsumer<String, String> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+      Map<TopicPartition, Long> beginningOffsets = new HashMap<>();
+      beginningOffsets.put(PARTITION0, 0L);
+      beginningOffsets.put(PARTITION1, 0L);
+      consumer.updateBeginningOffsets(beginningOffsets);
+      _kafkaConsumers.add(consumer);
+      return consumer;
+    }, 1, MAX_BUFFERED_RECORDS);
+  }
+
+  private static Properties createProperties(String groupId) {
+    Properties properties = new Properties();
+    properties.put("bootstrap.servers", "MyBroker:10251");
+    properties.put("group.id", groupId);
+    return properties;
+  }
+
+  private static void addRecords(MockConsumer<String, String> consumer, TopicPartition partition, int count) {
+    addRecords(consumer, partition, 0, count);
+  }
+
+  private static void addRecords(MockConsumer<String, String> consumer, TopicPartition partition, long offset,
+      int count) {
+    for (int i = 0; i < count; i++) {
+      consumer.addRecord(new ConsumerRecord<>(partition.topic(), partition.partition(), offset + i, "key", "value" + i));
+    }
+  }
+
+  @Test
+  public void testRecordsDemultiplexed() {
+    Consumer<String, String> consumer0 = _factory.createConsumer(createProperties("group"));
+    Consumer<String, String> consumer1 = _factory.createConsumer(createProperties("group"));
+    Assert.assertEquals(_factory.getNumKafkaConsumers(), 1);
+    consumer0.assign(Collections.singleton(PARTITION0));
+    consumer1.assign(Collections.singleton(PARTITION1));
+    Assert.assertEquals(_kafkaConsumers.get(0).assignment(), new HashSet<>(Arrays.asList(PARTITION0, PARTITION1)));
+
+    MockConsumer<String, String> kafkaConsumer = _kafkaConsumers.get(0);
+    addRecords(kafkaConsumer, PARTITION0, 2);
+    addRecords(kafkaConsumer, PARTITION1, 3);
+
+    // The records of both partitions are polled at once, and those of the other partition are held for its consumer
+    ConsumerRecords<String, String> records0 = consumer0.poll(POLL_TIMEOUT);
+    Assert.assertEquals(records0.partitions(), Collections.singleton(PARTITION0));
+    Assert.assertEquals(records0.count(), 2);
+    Assert.assertEquals(consumer1.position(PARTITION1), 0);
+
+    ConsumerRecords<String, String> records1 = consumer1.poll(POLL_TIMEOUT);
+    Assert.assertEquals(records1.partitions(), Collections.singleton(PARTITION1));
+    Assert.assertEquals(records1.count(), 3);
+    Assert.assertEquals(consumer1.position(PARTITION1), 3);
+
+  }
+
+  @Test
+  public void testPartitionHandedOver() {
+    Consumer<String, String> consumer0 = _factory.createConsumer(createProperties("group"));
+    Consumer<String, String> consumer1 = _factory.createConsumer(createProperties("group"));
+    consumer0.assign(Collections.singleton(PARTITION0));
+    consumer1.assign(Collections.singleton(PARTITION1));
+
+    MockConsumer<String, String> kafkaConsumer = _kafkaConsumers.get(0);
+    addRecords(kafkaConsumer, PARTITION0, 2);
+    addRecords(kafkaConsumer, PARTITION1, 3);
+    consumer1.poll(POLL_TIMEOUT);
+
+    // The partition moves to consumer1 before consumer0 is unassigned it, and the records buffered for consumer0 are
+    // dropped rather than returned to consumer1
+    consumer1.assign(new HashSet<>(Arrays.asList(PARTITION0, PARTITION1)));
+    Assert.assertEquals(consumer0.assignment(), Collections.emptySet());
+    Assert.assertEquals(consumer1.assignment(), new HashSet<>(Arrays.asList(PARTITION0, PARTITION1)));
+    consumer1.seek(PARTITION0, 0);
+    addRecords(kafkaConsumer, PARTITION0, 2);
+    ConsumerRecords<String, String> records1 = consumer1.poll(POLL_TIMEOUT);
+    Assert.assertEquals(records1.partitions(), Collections.singleton(PARTITION0));
+    Assert.assertEquals(records1.count(), 2);
+
+    consumer0.assign(Collections.emptySet());
+    Assert.assertEquals(consumer1.assignment(), new HashSet<>(Arrays.asList(PARTITION0, PARTITION1)));
+    Assert.assertEquals(kafkaConsumer.assignment(), new HashSet<>(Arrays.asList(PARTITION0, PARTITION1)));
+  }
+
+  @Test
+  public void testSlowConsumerThrottled() {
+    Consumer<String, String> consumer0 = _factory.createConsumer(createProperties("group"));
+    Consumer<String, String> consumer1 = _factory.createConsumer(createProperties("group"));
+    consumer0.assign(Collections.singleton(PARTITION0));
+    consumer1.assign(Collections.singleton(PARTITION1));
+
+    // consumer0 polls the records of consumer1, which buffers too many of them, so its partition is paused
+    MockConsumer<String, String> kafkaConsumer = _kafkaConsumers.get(0);
+    addRecords(kafkaConsumer, PARTITION0, 1);
+    addRecords(kafkaConsumer, PARTITION1, MAX_BUFFERED_RECORDS);
+    Assert.assertEquals(consumer0.poll(POLL_TIMEOUT).count(), 1);
+    Assert.assertEquals(kafkaConsumer.paused(), Collections.singleton(PARTITION1));
+    Assert.assertEquals(consumer1.paused(), Collections.emptySet());
+
+    // The partition is resumed once consumer1 polled its buffered records
+    Assert.assertEquals(consumer1.poll(POLL_TIMEOUT).count(), MAX_BUFFERED_RECORDS);
+    Assert.assertEquals(kafkaConsumer.paused(), Collections.emptySet());
+    addRecords(kafkaConsumer, PARTITION1, MAX_BUFFERED_RECORDS, 1);
+    Assert.assertEquals(consumer1.poll(POLL_TIMEOUT).count(), 1);
+
+    // A partition paused by its consumer stays paused when the consumer is no longer throttled
+    consumer1.pause(Collections.singleton(PARTITION1));
+    Assert.assertEquals(kafkaConsumer.paused(), Collections.singleton(PARTITION1));
+    Assert.assertEquals(consumer1.paused(), Collections.singleton(PARTITION1));
+  }
+
+  @Test
+  public void testSeekDropsBufferedRecords() {
+    Consumer<String, String> consumer0 = _factory.createConsumer(createProperties("group"));
+    Consumer<String, String> consumer1 = _factory.createConsumer(createProperties("group"));
+    consumer0.assign(Collections.singleton(PARTITION0));
+    consumer1.assign(Collections.singleton(PARTITION1));
+
+    MockConsumer<String, String> kafkaConsumer = _kafkaConsumers.get(0);
+    addRecords(kafkaConsumer, PARTITION0, 2);
+    addRecords(kafkaConsumer, PARTITION1, 3);
+    consumer0.poll(POLL_TIMEOUT);
+
+    consumer1.seek(PARTITION1, 2);
+    Assert.assertEquals(consumer1.position(PARTITION1), 2);
+    addRecords(kafkaConsumer, PARTITION1, 3);
+    ConsumerRecords<String, String> records1 = consumer1.poll(POLL_TIMEOUT);
+    Assert.assertEquals(records1.count(), 1);
+    Assert.assertEquals(records1.records(PARTITION1).get(0).offset(), 2);
+  }
+
+  @Test
+  public void testPoolSizeAndClose() {
+    Consumer<String, String> consumer0 = _factory.createConsumer(createProperties("group"));
+    Consumer<String, String> consumer1 = _factory.createConsumer(createProperties("group"));
+    Consumer<String, String> otherGroupConsumer = _factory.createConsumer(createProperties("otherGroup"));
+    Assert.assertEquals(_factory.getNumKafkaConsumers(), 2);
+
+    consumer0.close();
+    Assert.assertFalse(_kafkaConsumers.get(0).closed());
+    consumer1.close();
+    Assert.assertTrue(_kafkaConsumers.get(0).closed());
+    Assert.assertEquals(_factory.getNumKafkaConsumers(), 1);
+
+    otherGroupConsumer.close();
+    Assert.assertTrue(_kafkaConsumers.get(1).closed());
+    Assert.assertEquals(_factory.getNumKafkaConsumers(), 0);
+  }
+
+  @Test
+  public void testClientIdNotPartOfPoolKey() {
+    Properties properties = createProperties("group");
+    properties.put("client.id", "client0");
+    Consumer<String, String> consumer0 = _factory.createConsumer(properties);
+    properties.put("client.id", "client1");
+    Consumer<String, String> consumer1 = _factory.createConsumer(properties);
+    Assert.assertEquals(_factory.getNumKafkaConsumers(), 1);
+
+    consumer0.close();
+    consumer1.close();
+    Assert.assertEquals(_factory.getNumKafkaConsumers(), 0);
+  }
+
+  @Test
+  public void testMetricsReportedByOneConsumer() {
+    MetricName metricName = new MetricName("metric", "group", "", Collections.emptyMap());
+    Metric metric = new Metric() {
+      @Override
+      public MetricName metricName() {
+        return metricName;
+      }
+
+      @Override
+      public double value() {
+        return 1.0;
+      }
+
+      @Override
+      public Object metricValue() {
+        return 1.0;
+      }
+    };
+    MultiplexedKafkaConsumerFactory<String, String> factory = new MultiplexedKafkaConsumerFactory<>(
+        properties -> new MockConsumer<String, String>(OffsetResetStrategy.EARLIEST) {
+          @Override
+          public synchronized Map<MetricName, ? extends Metric> metrics() {
+            return Collections.singletonMap(metricName, metric);
+          }
+        }, 1);
+    Consumer<String, String> consumer0 = factory.createConsumer(createProperties("group"));
+    Consumer<String, String> consumer1 = factory.createConsumer(createProperties("group"));
+    Assert.assertEquals(consumer0.metrics().keySet(), Collections.singleton(metricName));
+    Assert.assertTrue(consumer1.metrics().isEmpty());
+
+    // Another consumer reports the metrics once the reporting one is closed
+    consumer0.close();
+    Assert.assertEquals(consumer1.metrics().keySet(), Collections.singleton(metricName));
+    consumer1.close();
+  }
+
+  @Test
+  public void testWakeupOnlyAffectsRequestingConsumer() {
+    Consumer<String, String> consumer0 = _factory.createConsumer(createProperties("group"));
+    Consumer<String, String> consumer1 = _factory.createConsumer(createProperties("group"));
+    consumer0.assign(Collections.singleton(PARTITION0));
+    consumer1.assign(Collections.singleton(PARTITION1));
+    addRecords(_kafkaConsumers.get(0), PARTITION1, 1);
+
+    consumer0.wakeup();
+    Assert.assertEquals(consumer1.poll(POLL_TIMEOUT).count(), 1);
+    Assert.assertThrows(WakeupException.class, () -> consumer0.poll(POLL_TIMEOUT));
+    Assert.assertTrue(consumer0.poll(Duration.ZERO).isEmpty());
+  }
+}
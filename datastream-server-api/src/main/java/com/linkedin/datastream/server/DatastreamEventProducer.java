@@ -5,6 +5,10 @@
  */
 package com.linkedin.datastream.server;
 
+import java.util.List;
+
+import com.linkedin.datastream.server.api.transport.BatchSendCallback;
+import com.linkedin.datastream.server.api.transport.BatchSendFailedException;
 import com.linkedin.datastream.server.api.transport.DatastreamRecordMetadata;
 import com.linkedin.datastream.server.api.transport.SendCallback;
 
@@ -35,6 +39,27 @@ public interface DatastreamEventProducer {
    */
   void send(DatastreamProducerRecord event, SendCallback callback);
 
+  /**
+   * Send a batch of events onto the transport, in order. Producers can override this to do the work common to all
+   * the events of the batch once; by default, each event is sent through {@link #send(DatastreamProducerRecord,
+   * SendCallback)}. The same threading considerations as for send apply to the callback.
+   *
+   * @param events events to send
+   * @param callback call back that needs to called when the send of each event completes, with the index of the
+   *                 event within the batch. If an event cannot be sent, a {@link BatchSendFailedException} is
+   *                 thrown and the events after it are not sent.
+   */
+  default void sendBatch(List<DatastreamProducerRecord> events, BatchSendCallback callback) {
+    for (int i = 0; i < events.size(); i++) {
+      int eventIndex = i;
+      try {
+        send(events.get(i), (metadata, exception) -> callback.onCompletion(eventIndex, metadata, exception));
+      } catch (RuntimeException e) {
+        throw new BatchSendFailedException(i, String.format("Failed to send event %d of the batch", i), e);
+      }
+    }
+  }
+
   /**
    * Flush the transport for the pending events. This can be a slow and heavy operation.
    * As such, it is not efficient to be invoked very frequently.
@@ -9,7 +9,9 @@ import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
 
@@ -19,6 +21,7 @@ import com.linkedin.datastream.common.DatastreamException;
 import com.linkedin.datastream.common.DatastreamMetadataConstants;
 import com.linkedin.datastream.metrics.MetricsAware;
 import com.linkedin.datastream.server.DatastreamTask;
+import com.linkedin.datastream.server.PartitionThroughputInfo;
 import com.linkedin.datastream.server.providers.CheckpointProvider;
 
 
@@ -162,4 +165,15 @@ public interface Connector extends MetricsAware, DatastreamChangeListener {
    */
   default void postDatastreamStateChangeAction(Datastream stream) throws DatastreamException {
   }
+
+  /**
+   * Get the throughput of the partitions consumed by the tasks running on this instance, as observed by the connector.
+   * The Coordinator periodically publishes it to ZooKeeper, so that load-based assignment strategies can balance the
+   * partitions on their actual load.
+   * @return A map, where the key is the task prefix of the datastream group, and the value is a map of the partition
+   * name to the {@link PartitionThroughputInfo} of the partition
+   */
+  default Map<String, Map<String, PartitionThroughputInfo>> getPartitionThroughputInfo() {
+    return Collections.emptyMap();
+  }
 }
@@ -0,0 +1,25 @@
+/**
+ *  Copyright 2019 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.server.api.transport;
+
+/**
+ * Callback interface to listen to the completion of the sends of a batch of records. A single callback is used for
+ * the whole batch, and the record each completion is for is identified by its index within the batch.
+ */
+@FunctionalInterface
+public interface BatchSendCallback {
+
+  /**
+   * Callback method that needs to be called when the send of an event of a record of the batch completes
+   * @param recordIndex
+   *   Index of the record within the batch
+   * @param metadata
+   *   Metadata of the Datastream record that got sent. Could be null if an exception occurred based on the transport
+   * @param exception
+   *   null if the send succeeded, Contains the exception if the send failed.
+   */
+  void onCompletion(int recordIndex, DatastreamRecordMetadata metadata, Exception exception);
+}
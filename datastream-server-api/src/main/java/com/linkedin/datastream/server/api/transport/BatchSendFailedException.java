@@ -0,0 +1,37 @@
+/**
+ *  Copyright 2019 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.server.api.transport;
+
+import com.linkedin.datastream.common.DatastreamRuntimeException;
+
+
+/**
+ * Exception thrown when the send of a batch of records fails, which identifies the record of the batch that could
+ * not be sent. The records after it in the batch were not sent.
+ */
+public class BatchSendFailedException extends DatastreamRuntimeException {
+  private static final long serialVersionUID = 1;
+
+  private final int _recordIndex;
+
+  /**
+   * Constructor for BatchSendFailedException
+   * @param recordIndex Index of the record which could not be sent within the batch
+   * @param message Exception message
+   * @param cause Exception cause
+   */
+  public BatchSendFailedException(int recordIndex, String message, Throwable cause) {
+    super(message, cause);
+    _recordIndex = recordIndex;
+  }
+
+  /**
+   * Get the index of the record which could not be sent within the batch
+   */
+  public int getRecordIndex() {
+    return _recordIndex;
+  }
+}
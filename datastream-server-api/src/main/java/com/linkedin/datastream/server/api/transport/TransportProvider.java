@@ -5,6 +5,8 @@
  */
 package com.linkedin.datastream.server.api.transport;
 
+import java.util.List;
+
 import com.linkedin.datastream.server.DatastreamProducerRecord;
 
 
@@ -29,6 +31,37 @@ public interface TransportProvider {
    */
   void send(String destination, DatastreamProducerRecord record, SendCallback onComplete);
 
+  /**
+   * Send a batch of DatastreamEvents. Each record is sent to its own destination, if it has one, or to the given
+   * default destination otherwise. Transport providers can override this to do the work common to all the records
+   * of the batch once; by default, each record is sent through {@link #send(String, DatastreamProducerRecord,
+   * SendCallback)}.
+   *
+   * <p>
+   * The same threading considerations as for {@link #send(String, DatastreamProducerRecord, SendCallback)} apply to
+   * the onComplete callback.
+   *
+   * @param defaultDestination the destination topic of the records which do not have a destination of their own.
+   * @param records DatastreamEvents that need to be sent to the stream, in order.
+   * @param onComplete call back that needs to called when the send of each event of each record completes, with the
+   *                   index of the record within the batch. Any exception during sending will be reported through
+   *                   callback. If a record cannot be handed to the transport, a {@link BatchSendFailedException}
+   *                   is thrown and the records after it are not sent.
+   */
+  default void sendBatch(String defaultDestination, List<DatastreamProducerRecord> records,
+      BatchSendCallback onComplete) {
+    for (int i = 0; i < records.size(); i++) {
+      int recordIndex = i;
+      DatastreamProducerRecord record = records.get(i);
+      try {
+        send(record.getDestination().orElse(defaultDestination), record,
+            (metadata, exception) -> onComplete.onCompletion(recordIndex, metadata, exception));
+      } catch (RuntimeException e) {
+        throw new BatchSendFailedException(i, String.format("Failed to send record %d of the batch", i), e);
+      }
+    }
+  }
+
   /**
    * Closes the transport provider and its corresponding producer.
    */
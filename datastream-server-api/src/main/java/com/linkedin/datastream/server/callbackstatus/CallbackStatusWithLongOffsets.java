@@ -0,0 +1,185 @@
+/**
+ *  Copyright 2021 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.server.callbackstatus;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Helper class to store the callback status of the inflight events with monotonically increasing long offsets
+ * (e.g. Kafka offsets), with the same checkpointing behavior as {@link CallbackStatusWithComparableOffsets}.
+ *
+ * The registered offsets which are not checkpointed yet are kept in a primitive circular buffer, in increasing order,
+ * with a bitset marking the ones that have been acked. An ack looks up its offset with a binary search and the
+ * checkpoint (the low watermark) is advanced past the acked offsets at the head of the buffer, so neither register
+ * nor ack allocates once the buffer has grown to the number of in-flight offsets. Offsets do not need to be
+ * contiguous.
+ *
+ * Offsets must be registered in increasing order: an offset that is not larger than the last registered offset that
+ * is still tracked is ignored (and its ack is then reported as an internal state error).
+ */
+public class CallbackStatusWithLongOffsets extends CallbackStatus<Long> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CallbackStatusWithLongOffsets.class);
+
+  private static final int INITIAL_CAPACITY = 64;
+  private static final long NO_CHECKPOINT = Long.MIN_VALUE;
+
+  // Registered offsets which are not checkpointed yet, from _head (oldest) for _size slots. The capacity is always
+  // a power of two and a multiple of 64, so that slots can be wrapped with a mask and map to whole bitset words.
+  private long[] _offsets = new long[INITIAL_CAPACITY];
+  private long[] _ackedBits = new long[INITIAL_CAPACITY / Long.SIZE];
+  private int _head = 0;
+  private int _size = 0;
+  private int _numAcked = 0;
+
+  // Read without holding the lock
+  private volatile long _inFlightCount = 0;
+  private volatile long _ackedPastCheckpointCount = 0;
+  private volatile long _currentCheckpoint = NO_CHECKPOINT;
+
+  /**
+   * Get the latest checkpoint to be acked
+   * @return the largest acked offset below which all the registered offsets have been acked, or null if there is none
+   */
+  @Override
+  public Long getAckCheckpoint() {
+    long currentCheckpoint = _currentCheckpoint;
+    return currentCheckpoint == NO_CHECKPOINT ? null : currentCheckpoint;
+  }
+
+  /**
+   * Get the count of the records which are in flight
+   */
+  @Override
+  public long getInFlightCount() {
+    return _inFlightCount;
+  }
+
+  /**
+   * Get the count of the records which are all acked from the producer
+   */
+  @Override
+  public long getAckMessagesPastCheckpointCount() {
+    return _ackedPastCheckpointCount;
+  }
+
+  /**
+   * Registers the given checkpoint by appending it to the buffer of in-flight checkpoints.
+   * @param checkpoint is the latest record acked by the producer of the underlying pub sub framework
+   */
+  @Override
+  public synchronized void register(Long checkpoint) {
+    long offset = checkpoint;
+    if (_size > 0) {
+      long lastOffset = _offsets[slot(_size - 1)];
+      if (offset <= lastOffset) {
+        if (offset < lastOffset) {
+          LOG.error("Internal state error; checkpoint {} registered after checkpoint {}, ignoring it", offset,
+              lastOffset);
+        }
+        return;
+      }
+    }
+
+    if (_size == _offsets.length) {
+      grow();
+    }
+    int slot = slot(_size);
+    _offsets[slot] = offset;
+    _ackedBits[slot >>> 6] &= ~(1L << slot);
+    _size++;
+    updateCounts();
+  }
+
+  /**
+   * The checkpoint acknowledgement can be received out of order. In that case the acked offset is only marked
+   * in the buffer, and the ackCheckpoint is only updated when all the offsets registered before it have been acked.
+   */
+  @Override
+  public synchronized void ack(Long checkpoint) {
+    long offset = checkpoint;
+    int index = indexOf(offset);
+    if (index < 0) {
+      LOG.error("Internal state error; could not remove checkpoint {}", offset);
+      return;
+    }
+    int slot = slot(index);
+    long bit = 1L << slot;
+    if ((_ackedBits[slot >>> 6] & bit) != 0) {
+      LOG.error("Internal state error; checkpoint {} acked more than once", offset);
+      return;
+    }
+    _ackedBits[slot >>> 6] |= bit;
+    _numAcked++;
+
+    // Advance the checkpoint past the acked offsets at the head of the buffer
+    long currentCheckpoint = NO_CHECKPOINT;
+    while (_size > 0 && (_ackedBits[_head >>> 6] & (1L << _head)) != 0) {
+      currentCheckpoint = _offsets[_head];
+      _ackedBits[_head >>> 6] &= ~(1L << _head);
+      _head = slot(1);
+      _size--;
+      _numAcked--;
+    }
+    if (currentCheckpoint != NO_CHECKPOINT) {
+      if (_currentCheckpoint != NO_CHECKPOINT && currentCheckpoint < _currentCheckpoint) {
+        // should not happen, unless the offsets were registered again after a rewind without clearing the status
+        LOG.error(
+            "Internal error: checkpoints should progress in increasing order. Resolved checkpoint as {} which is "
+                + "less than current checkpoint of {}",
+            currentCheckpoint, _currentCheckpoint);
+      }
+      _currentCheckpoint = currentCheckpoint;
+    }
+    updateCounts();
+  }
+
+  // Slot of the offset at the given index from the head
+  private int slot(int index) {
+    return (_head + index) & (_offsets.length - 1);
+  }
+
+  // Index from the head of the given registered offset, or -1 if it is not tracked
+  private int indexOf(long offset) {
+    int low = 0;
+    int high = _size - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      long midOffset = _offsets[slot(mid)];
+      if (midOffset < offset) {
+        low = mid + 1;
+      } else if (midOffset > offset) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  private void grow() {
+    int capacity = _offsets.length * 2;
+    long[] offsets = new long[capacity];
+    long[] ackedBits = new long[capacity / Long.SIZE];
+    for (int i = 0; i < _size; i++) {
+      int slot = slot(i);
+      offsets[i] = _offsets[slot];
+      if ((_ackedBits[slot >>> 6] & (1L << slot)) != 0) {
+        ackedBits[i >>> 6] |= 1L << i;
+      }
+    }
+    _offsets = offsets;
+    _ackedBits = ackedBits;
+    _head = 0;
+  }
+
+  private void updateCounts() {
+    _inFlightCount = _size - _numAcked;
+    _ackedPastCheckpointCount = _numAcked;
+  }
+}
@@ -0,0 +1,22 @@
+/**
+ *  Copyright 2021 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.server.callbackstatus;
+
+/**
+ * Factory implementation for Callback Status With Long Offsets
+ */
+public class CallbackStatusWithLongOffsetsFactory implements CallbackStatusFactory<Long> {
+
+  /**
+   * Creates a callback status strategy that checkpoints the consumer offset on successful produce of that record
+   * with monotonically increasing long offsets
+   * @return CallbackStatus strategy construct
+   */
+  @Override
+  public CallbackStatus<Long> createCallbackStatusStrategy() {
+    return new CallbackStatusWithLongOffsets();
+  }
+}
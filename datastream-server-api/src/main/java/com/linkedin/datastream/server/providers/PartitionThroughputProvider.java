@@ -41,6 +41,12 @@ public interface PartitionThroughputProvider extends MetricsAware {
    */
   Map<String, ClusterThroughputInfo> getThroughputInfo();
 
+  /**
+   * Release the resources held by the provider, such as its threads, when the assignment strategy is cleaned up
+   */
+  default void close() {
+  }
+
   @Override
   default List<BrooklinMetricInfo> getMetricInfos() {
     return Collections.emptyList();
@@ -23,6 +23,7 @@ import com.linkedin.datastream.server.api.transport.DatastreamRecordMetadata;
 import com.linkedin.datastream.server.api.transport.SendCallback;
 import com.linkedin.datastream.server.callbackstatus.CallbackStatusFactory;
 import com.linkedin.datastream.server.callbackstatus.CallbackStatusWithComparableOffsetsFactory;
+import com.linkedin.datastream.server.callbackstatus.CallbackStatusWithLongOffsetsFactory;
 import com.linkedin.datastream.server.callbackstatus.CallbackStatusWithNonComparableOffsetsFactory;
 
 import static com.linkedin.datastream.server.FlushlessEventProducerHandler.SourcePartition;
@@ -42,6 +43,9 @@ public class TestFlushlessEventProducerHandler {
   private static final CallbackStatusFactory<Long> OFFSET_CHECKPOINT_TRACKING_STRATEGY_WITH_COMPARABLE_OFFSETS =
       ReflectionUtils.createInstance(CallbackStatusWithComparableOffsetsFactory.class.getName());
 
+  private static final CallbackStatusFactory<Long> OFFSET_CHECKPOINT_TRACKING_STRATEGY_WITH_LONG_OFFSETS =
+      ReflectionUtils.createInstance(CallbackStatusWithLongOffsetsFactory.class.getName());
+
   /**
    * Helper function to test the scenario of sending single record for both comparable and non comparable offsets
    * @param eventProducer is the interface for Connectors to send events to the designated destination
@@ -80,6 +84,14 @@ public class TestFlushlessEventProducerHandler {
     testSingleRecordWithGivenHandler(eventProducer, handler);
   }
 
+  @Test
+  public void testSingleRecordWithLongOffsets() {
+    RandomEventProducer eventProducer = new RandomEventProducer();
+    FlushlessEventProducerHandler<Long> handler =
+        new FlushlessEventProducerHandler<>(eventProducer, OFFSET_CHECKPOINT_TRACKING_STRATEGY_WITH_LONG_OFFSETS);
+    testSingleRecordWithGivenHandler(eventProducer, handler);
+  }
+
   @Test
   public void testMultipleSendsWithComparableOffsets() {
     RandomEventProducer eventProducer = new RandomEventProducer();
@@ -231,6 +243,14 @@ public class TestFlushlessEventProducerHandler {
     testOutOfOrderAckForGivenHandler(eventProducer, handler);
   }
 
+  @Test
+  public void testOutOfOrderAckForLongOffsets() {
+    RandomEventProducer eventProducer = new RandomEventProducer();
+    FlushlessEventProducerHandler<Long> handler =
+        new FlushlessEventProducerHandler<>(eventProducer, OFFSET_CHECKPOINT_TRACKING_STRATEGY_WITH_LONG_OFFSETS);
+    testOutOfOrderAckForGivenHandler(eventProducer, handler);
+  }
+
   /**
    * Helper function to test the behavior of backwards order record acking for both comparable and non comparable offsets
    * @param randomEventProducer is the event producer to send records to randomized topic partition
@@ -276,6 +296,82 @@ public class TestFlushlessEventProducerHandler {
     testBackwardsOrderAckWithGivenHandler(eventProducer, handler);
   }
 
+  @Test
+  public void testBackwardsOrderAckWithLongOffsets() {
+    RandomEventProducer eventProducer = new RandomEventProducer();
+    FlushlessEventProducerHandler<Long> handler =
+        new FlushlessEventProducerHandler<>(eventProducer, OFFSET_CHECKPOINT_TRACKING_STRATEGY_WITH_LONG_OFFSETS);
+    testBackwardsOrderAckWithGivenHandler(eventProducer, handler);
+  }
+
+  @Test
+  public void testMultipleSendsWithLongOffsets() {
+    RandomEventProducer eventProducer = new RandomEventProducer();
+    FlushlessEventProducerHandler<Long> handler =
+        new FlushlessEventProducerHandler<>(eventProducer, OFFSET_CHECKPOINT_TRACKING_STRATEGY_WITH_LONG_OFFSETS);
+
+    // Send 1000 messages to 10 partitions, with gaps between the offsets
+    for (int i = 0; i < 10; i++) {
+      SourcePartition tp = new SourcePartition(TOPIC, i);
+      for (int j = 0; j < 100; j++) {
+        sendEvent(tp, handler, j * 3);
+      }
+    }
+
+    for (int i = 0; i < 999; i++) {
+      eventProducer.processOne();
+      long minOffsetPending = eventProducer.minCheckpoint();
+      Long ackOffset = handler.getAckCheckpoint(BIG_CHECKPOINT, Comparator.naturalOrder()).orElse(-1L);
+
+      Assert.assertTrue(ackOffset < minOffsetPending,
+          "Not true that " + ackOffset + " is less than " + minOffsetPending);
+    }
+    // event producer calls ack on the last element
+    eventProducer.processOne();
+
+    for (int par = 0; par < 10; par++) {
+      Assert.assertEquals(handler.getInFlightCount(TOPIC, par), 0);
+      Assert.assertEquals(handler.getAckCheckpoint(TOPIC, par).get(), Long.valueOf(297));
+    }
+    Assert.assertEquals(handler.getAckCheckpoint(BIG_CHECKPOINT, Comparator.naturalOrder()).get(), BIG_CHECKPOINT);
+  }
+
+  @Test
+  public void testRandomAcksWithLongOffsetsMatchComparableOffsets() {
+    RandomEventProducer comparableEventProducer = new RandomEventProducer();
+    FlushlessEventProducerHandler<Long> comparableHandler = new FlushlessEventProducerHandler<>(comparableEventProducer,
+        OFFSET_CHECKPOINT_TRACKING_STRATEGY_WITH_COMPARABLE_OFFSETS);
+    RandomEventProducer longEventProducer = new RandomEventProducer();
+    FlushlessEventProducerHandler<Long> longHandler =
+        new FlushlessEventProducerHandler<>(longEventProducer, OFFSET_CHECKPOINT_TRACKING_STRATEGY_WITH_LONG_OFFSETS);
+    SourcePartition tp = new SourcePartition(TOPIC, 0);
+
+    // Interleave sends and random acks so that the buffer of the long offsets wraps around and grows
+    long checkpoint = 0;
+    int numPending = 0;
+    for (int round = 0; round < 50; round++) {
+      int numSends = RANDOM.nextInt(200);
+      for (int i = 0; i < numSends; i++) {
+        checkpoint += 1 + RANDOM.nextInt(3);
+        sendEvent(tp, comparableHandler, checkpoint);
+        sendEvent(tp, longHandler, checkpoint);
+        numPending++;
+      }
+      int numAcks = RANDOM.nextInt(numPending + 1);
+      for (int i = 0; i < numAcks; i++) {
+        int queueIndex = RANDOM.nextInt(numPending);
+        comparableEventProducer.process(tp, queueIndex);
+        longEventProducer.process(tp, queueIndex);
+        numPending--;
+
+        Assert.assertEquals(longHandler.getAckCheckpoint(TOPIC, 0), comparableHandler.getAckCheckpoint(TOPIC, 0));
+        Assert.assertEquals(longHandler.getInFlightCount(TOPIC, 0), comparableHandler.getInFlightCount(TOPIC, 0));
+        Assert.assertEquals(longHandler.getAckMessagesPastCheckpointCount(TOPIC, 0),
+            comparableHandler.getAckMessagesPastCheckpointCount(TOPIC, 0));
+      }
+    }
+  }
+
   private void sendEvent(SourcePartition tp, FlushlessEventProducerHandler<Long> handler, long checkpoint) {
     DatastreamProducerRecord record = getDatastreamProducerRecord(checkpoint, tp.getKey(), tp.getValue());
     handler.send(record, tp.getSource(), tp.getPartition(), checkpoint, null);
@@ -7,15 +7,18 @@ package com.linkedin.datastream.server;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import org.apache.helix.zookeeper.zkclient.exception.ZkNoNodeException;
+import org.apache.zookeeper.data.Stat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,8 +37,12 @@ import com.linkedin.datastream.server.zk.KeyBuilder;
  * But the complete datastream objects are lazily read from ZooKeeper when they are
  * requested.
  *
- * Note: Caller of this class is expected to call invalidateAllCache for any datastream
- * update events such that any future datastream accesses will update the cached copies.
+ * The datastream groups are kept as a snapshot which is updated incrementally, by regrouping only the datastreams
+ * which were added, removed or changed since the previous snapshot, and which can be read without locking as long
+ * as none of them changed.
+ *
+ * Note: Caller of this class is expected to call invalidateChangedDatastreams or invalidateAllCache for any
+ * datastream update events such that any future datastream accesses will update the cached copies.
  */
 public class CachedDatastreamReader {
   private static final Logger LOG = LoggerFactory.getLogger(CachedDatastreamReader.class);
@@ -43,8 +50,17 @@ public class CachedDatastreamReader {
   private final String _cluster;
   private final ZkClient _zkclient;
 
-  private List<String> _datastreamNames;
+  private volatile List<String> _datastreamNames;
   private final Map<String, Datastream> _datastreams = new ConcurrentHashMap<>();
+  // ZooKeeper versions of the cached datastreams, to find the ones which were updated
+  private final Map<String, Integer> _datastreamVersions = new ConcurrentHashMap<>();
+
+  // Names of the datastreams which may have changed since the datastream groups were last updated
+  private final Set<String> _changedDatastreams = ConcurrentHashMap.newKeySet();
+  // The datastreams in the datastream groups, guarded by this
+  private final Map<String, Datastream> _groupedDatastreams = new HashMap<>();
+  private final Map<String, Set<String>> _groupedDatastreamNamesByTaskPrefix = new HashMap<>();
+  private volatile DatastreamGroups _datastreamGroups = new DatastreamGroups(Collections.emptyMap());
 
   /**
    * Constructor for CachedDatastreamReader
@@ -57,6 +73,7 @@ public class CachedDatastreamReader {
 
     // Get the initial datastream list.
     _datastreamNames = fetchAllDatastreamNamesFromZk();
+    _changedDatastreams.addAll(_datastreamNames);
 
     String path = KeyBuilder.datastreams(_cluster);
     LOG.info("Subscribing to notification on zk path " + path);
@@ -68,13 +85,16 @@ public class CachedDatastreamReader {
         LOG.debug(
             String.format("Received datastream add or delete notification. parentPath %s, children %s", parentPath,
                 currentChildren));
+        List<String> previousDatastreamNames = _datastreamNames;
         _datastreamNames = new ArrayList<>(currentChildren);
         Set<String> datastreamsRemoved = new HashSet<>(_datastreams.keySet());
         datastreamsRemoved.removeAll(_datastreamNames);
         if (!datastreamsRemoved.isEmpty()) {
           LOG.info("Removing the deleted datastreams {} from cache", datastreamsRemoved);
           _datastreams.keySet().removeAll(datastreamsRemoved);
+          _datastreamVersions.keySet().removeAll(datastreamsRemoved);
         }
+        markChangedDatastreams(previousDatastreamNames, _datastreamNames);
 
         LOG.debug("New datastream list in the cache: {}", _datastreamNames);
       }
@@ -82,25 +102,26 @@ public class CachedDatastreamReader {
   }
 
   /**
-   * Get the current datastream groups in the cache (no calls to ZK).
+   * Get the current datastream groups in the cache (no calls to ZK unless the datastreams are not cached).
+   * @return an unmodifiable list of the datastream groups
    */
-  public synchronized List<DatastreamGroup> getDatastreamGroups() {
-    List<Datastream> allStreams = getAllDatastreams(false);
-
-    Map<String, List<Datastream>> streamsByTaskPrefix = allStreams.stream()
-        .filter(DatastreamUtils::containsTaskPrefix)
-        .collect(Collectors.groupingBy(DatastreamUtils::getTaskPrefix, Collectors.toList()));
+  public List<DatastreamGroup> getDatastreamGroups() {
+    return getDatastreamGroupsSnapshot()._datastreamGroups;
+  }
 
-    return streamsByTaskPrefix.keySet()
-        .stream()
-        .map(x -> new DatastreamGroup(streamsByTaskPrefix.get(x)))
-        .collect(Collectors.toList());
+  /**
+   * Get the current datastream groups in the cache by their task prefix (no calls to ZK unless the datastreams are not
+   * cached).
+   * @return an unmodifiable map of the datastream groups by task prefix
+   */
+  public Map<String, DatastreamGroup> getDatastreamGroupsByTaskPrefix() {
+    return getDatastreamGroupsSnapshot()._datastreamGroupsByTaskPrefix;
   }
 
   /**
    * Get the current list of datastream names in the cache (no calls to ZK).
    */
-  public synchronized List<String> getAllDatastreamNames() {
+  public List<String> getAllDatastreamNames() {
     return Collections.unmodifiableList(_datastreamNames);
   }
 
@@ -119,7 +140,9 @@ public class CachedDatastreamReader {
    */
   public synchronized List<Datastream> getAllDatastreams(boolean flushCache) {
     if (flushCache) {
+      List<String> previousDatastreamNames = _datastreamNames;
       _datastreamNames = fetchAllDatastreamNamesFromZk();
+      markChangedDatastreams(previousDatastreamNames, _datastreamNames);
     }
 
     return _datastreamNames.stream()
@@ -137,6 +160,28 @@ public class CachedDatastreamReader {
   public synchronized void invalidateAllCache() {
     LOG.info("About to invalidate all cache entries...");
     _datastreams.clear();
+    _datastreamVersions.clear();
+    // The datastreams will be compared to the grouped ones once they are read again, to find the ones which changed
+    _changedDatastreams.addAll(_datastreamNames);
+  }
+
+  /**
+   * Invalidate the cache entries of the datastreams which were updated in ZooKeeper since they were cached, so that
+   * any following getDatastream calls get a newer copy of them. Unlike invalidateAllCache, this only reads the version
+   * of each cached datastream from ZooKeeper, and the datastreams which did not change stay cached and grouped.
+   */
+  public synchronized void invalidateChangedDatastreams() {
+    List<String> changedDatastreams = _datastreams.keySet().stream().filter(name -> {
+      Stat stat = _zkclient.getStat(KeyBuilder.datastream(_cluster, name));
+      return stat == null || !Integer.valueOf(stat.getVersion()).equals(_datastreamVersions.get(name));
+    }).collect(Collectors.toList());
+
+    if (!changedDatastreams.isEmpty()) {
+      LOG.info("Invalidating the cache entries of the updated datastreams {}", changedDatastreams);
+      _datastreams.keySet().removeAll(changedDatastreams);
+      _datastreamVersions.keySet().removeAll(changedDatastreams);
+      _changedDatastreams.addAll(changedDatastreams);
+    }
   }
 
   /**
@@ -149,7 +194,9 @@ public class CachedDatastreamReader {
   Datastream getDatastream(String datastreamName, boolean flushCache) {
     Datastream ds = _datastreams.get(datastreamName);
     if (ds == null || flushCache) {
-      ds = getDatastreamFromZk(datastreamName);
+      // The version is read before the content, so that an update in between is at worst seen as another update
+      Stat stat = _zkclient.getStat(KeyBuilder.datastream(_cluster, datastreamName));
+      ds = stat == null ? null : getDatastreamFromZk(datastreamName);
 
       if (ds == null) {
         LOG.info("Datastream {} does not exist in cache/ZK.", datastreamName);
@@ -157,11 +204,100 @@ public class CachedDatastreamReader {
         LOG.info("Datastream {} does not have a valid destination yet and is not ready for use.", datastreamName);
       } else {
         _datastreams.put(datastreamName, ds);
+        _datastreamVersions.put(datastreamName, stat.getVersion());
+        _changedDatastreams.add(datastreamName);
       }
     }
     return ds;
   }
 
+  private void markChangedDatastreams(List<String> previousDatastreamNames, List<String> datastreamNames) {
+    Set<String> previous = new HashSet<>(previousDatastreamNames);
+    Set<String> current = new HashSet<>(datastreamNames);
+    previousDatastreamNames.stream().filter(name -> !current.contains(name)).forEach(_changedDatastreams::add);
+    datastreamNames.stream().filter(name -> !previous.contains(name)).forEach(_changedDatastreams::add);
+  }
+
+  private DatastreamGroups getDatastreamGroupsSnapshot() {
+    // The snapshot is up-to-date as long as no datastream changed since it was taken
+    return _changedDatastreams.isEmpty() ? _datastreamGroups : updateDatastreamGroups();
+  }
+
+  /**
+   * Update the datastream groups of the datastreams which changed since the previous snapshot, and publish the
+   * updated groups as a new snapshot. The datastreams are regrouped only if their content changed.
+   */
+  private synchronized DatastreamGroups updateDatastreamGroups() {
+    if (_changedDatastreams.isEmpty()) {
+      return _datastreamGroups;
+    }
+
+    Set<String> datastreamNames = new HashSet<>(_datastreamNames);
+    Set<String> changedTaskPrefixes = new HashSet<>();
+    for (String name : new ArrayList<>(_changedDatastreams)) {
+      _changedDatastreams.remove(name);
+      Datastream datastream = null;
+      if (datastreamNames.contains(name)) {
+        datastream = getDatastream(name, false);
+        if (datastream == null || _datastreams.get(name) != datastream) {
+          // Not cached because it was just deleted or isn't ready for use yet, check it again next time
+          _changedDatastreams.add(name);
+        }
+      }
+      if (datastream != null && !DatastreamUtils.containsTaskPrefix(datastream)) {
+        LOG.error("Datastream {} is ignored in the datastream groups because it doesn't contain a task prefix", name);
+        datastream = null;
+      }
+
+      Datastream groupedDatastream = _groupedDatastreams.get(name);
+      if (Objects.equals(datastream, groupedDatastream)) {
+        continue;
+      }
+      if (groupedDatastream != null) {
+        String taskPrefix = DatastreamUtils.getTaskPrefix(groupedDatastream);
+        changedTaskPrefixes.add(taskPrefix);
+        _groupedDatastreams.remove(name);
+        _groupedDatastreamNamesByTaskPrefix.get(taskPrefix).remove(name);
+      }
+      if (datastream != null) {
+        String taskPrefix = DatastreamUtils.getTaskPrefix(datastream);
+        changedTaskPrefixes.add(taskPrefix);
+        _groupedDatastreams.put(name, datastream);
+        _groupedDatastreamNamesByTaskPrefix.computeIfAbsent(taskPrefix, k -> new TreeSet<>()).add(name);
+      }
+    }
+
+    if (changedTaskPrefixes.isEmpty()) {
+      return _datastreamGroups;
+    }
+
+    Map<String, DatastreamGroup> datastreamGroupsByTaskPrefix =
+        new HashMap<>(_datastreamGroups._datastreamGroupsByTaskPrefix);
+    try {
+      for (String taskPrefix : changedTaskPrefixes) {
+        Set<String> names = _groupedDatastreamNamesByTaskPrefix.get(taskPrefix);
+        if (names.isEmpty()) {
+          _groupedDatastreamNamesByTaskPrefix.remove(taskPrefix);
+          datastreamGroupsByTaskPrefix.remove(taskPrefix);
+        } else {
+          // The groups are shared by all the readers of the snapshot, so their datastream lists can't be modified
+          datastreamGroupsByTaskPrefix.put(taskPrefix, new DatastreamGroup(Collections.unmodifiableList(
+              names.stream().map(_groupedDatastreams::get).collect(Collectors.toList()))));
+        }
+      }
+    } catch (RuntimeException e) {
+      // Regroup all the datastreams next time
+      _changedDatastreams.addAll(_groupedDatastreams.keySet());
+      _groupedDatastreams.clear();
+      _groupedDatastreamNamesByTaskPrefix.clear();
+      _datastreamGroups = new DatastreamGroups(Collections.emptyMap());
+      throw e;
+    }
+
+    _datastreamGroups = new DatastreamGroups(datastreamGroupsByTaskPrefix);
+    return _datastreamGroups;
+  }
+
   /**
    * Lookup the datastream based on its name from ZK.
    * @param datastreamName name of the datastream
@@ -198,4 +334,17 @@ public class CachedDatastreamReader {
   ZkClient getZkclient() {
     return _zkclient;
   }
+
+  /**
+   * An immutable snapshot of the datastream groups
+   */
+  private static class DatastreamGroups {
+    private final Map<String, DatastreamGroup> _datastreamGroupsByTaskPrefix;
+    private final List<DatastreamGroup> _datastreamGroups;
+
+    DatastreamGroups(Map<String, DatastreamGroup> datastreamGroupsByTaskPrefix) {
+      _datastreamGroupsByTaskPrefix = Collections.unmodifiableMap(datastreamGroupsByTaskPrefix);
+      _datastreamGroups = Collections.unmodifiableList(new ArrayList<>(datastreamGroupsByTaskPrefix.values()));
+    }
+  }
 }
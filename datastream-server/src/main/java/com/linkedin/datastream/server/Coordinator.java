@@ -15,6 +15,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Properties;
@@ -261,7 +262,7 @@ public class Coordinator implements ZkAdapter.ZkAdapterListener, MetricsAware {
     _heartbeatPeriod = Duration.ofMillis(config.getHeartbeatPeriodMs());
 
     _adapter = createZkAdapter();
-    _eventQueue = new CoordinatorEventBlockingQueue(Coordinator.class.getSimpleName());
+    _eventQueue = new CoordinatorEventBlockingQueue(Coordinator.class.getSimpleName(), config.getEventDebounceMs());
     createEventThread();
 
     VerifiableProperties coordinatorProperties = new VerifiableProperties(_config.getConfigProperties());
@@ -324,6 +325,13 @@ public class Coordinator implements ZkAdapter.ZkAdapterListener, MetricsAware {
     // Queue up one heartbeat per period with a initial delay of 3 periods
     _scheduledExecutor.scheduleAtFixedRate(() -> _eventQueue.put(CoordinatorEvent.HEARTBEAT_EVENT),
         _heartbeatPeriod.toMillis() * 3, _heartbeatPeriod.toMillis(), TimeUnit.MILLISECONDS);
+
+    // The partition throughput is published outside of the event thread, since it doesn't change any state
+    long throughputPublishIntervalMs = _config.getPartitionThroughputPublishIntervalMs();
+    if (throughputPublishIntervalMs > 0) {
+      _scheduledExecutor.scheduleAtFixedRate(this::publishPartitionThroughput, throughputPublishIntervalMs,
+          throughputPublishIntervalMs, TimeUnit.MILLISECONDS);
+    }
   }
 
   protected synchronized void createEventThread() {
@@ -522,14 +530,15 @@ public class Coordinator implements ZkAdapter.ZkAdapterListener, MetricsAware {
     // We need this synchronization to protect the updates on _assignedDatastreamTasks
     synchronized (_assignedDatastreamTasks) {
       // On datastream update the CachedDatastreamReader won't refresh its data, so we need to invalidate the cache
-      _datastreamCache.invalidateAllCache();
-      datastreamGroups = _datastreamCache.getDatastreamGroups();
+      // entries of the updated datastreams
+      _datastreamCache.invalidateChangedDatastreams();
+      Map<String, DatastreamGroup> datastreamGroupsByTaskPrefix = _datastreamCache.getDatastreamGroupsByTaskPrefix();
+      datastreamGroups = new ArrayList<>(datastreamGroupsByTaskPrefix.values());
       // Refresh the datastream task
       _assignedDatastreamTasks.values().forEach(task -> {
-        Optional<DatastreamGroup> dg =
-            datastreamGroups.stream().filter(x -> x.getTaskPrefix().equals(task.getTaskPrefix())).findFirst();
-        if (dg.isPresent()) {
-          ((DatastreamTaskImpl) task).setDatastreams(dg.get().getDatastreams());
+        DatastreamGroup dg = datastreamGroupsByTaskPrefix.get(task.getTaskPrefix());
+        if (dg != null) {
+          ((DatastreamTaskImpl) task).setDatastreams(dg.getDatastreams());
         } else {
           _log.warn("Can't find datastream group for task {}", task);
         }
@@ -748,10 +757,11 @@ public class Coordinator implements ZkAdapter.ZkAdapterListener, MetricsAware {
     if (isThroughputViolatingTopicsHandlingEnabled()) {
       try {
         // On creating a datastream if the metadata contains any throughput violating topics, we populate the host level cache
-        List<DatastreamGroup> datastreamGroups = _adapter.getInstanceAssignment(_adapter.getInstanceName())
-            .stream()
-            .map(task -> new DatastreamGroup(getDatastreamTask(task).getDatastreams()))
-            .collect(Collectors.toList());
+        List<DatastreamGroup> datastreamGroups =
+            getDatastreamTasks(_adapter.getInstanceAssignment(_adapter.getInstanceName())).values()
+                .stream()
+                .map(task -> new DatastreamGroup(task.getDatastreams()))
+                .collect(Collectors.toList());
         _log.info(
             "Populating the datastream violating topics to host level cache from the datastream objects on the create trigger");
         populateThroughputViolatingTopicsMap(datastreamGroups);
@@ -810,8 +820,9 @@ public class Coordinator implements ZkAdapter.ZkAdapterListener, MetricsAware {
 
     // all datastream tasks for all connector types
     Map<String, List<DatastreamTask>> currentAssignment = new HashMap<>();
+    Map<String, DatastreamTask> tasksByName = getDatastreamTasks(assignment);
     assignment.forEach(ds -> {
-      DatastreamTask task = getDatastreamTask(ds);
+      DatastreamTask task = tasksByName.get(ds);
       if (task != null) {
         String connectorType = task.getConnectorType();
         if (!currentAssignment.containsKey(connectorType)) {
@@ -913,24 +924,36 @@ public class Coordinator implements ZkAdapter.ZkAdapterListener, MetricsAware {
     _metrics.updateMeter(CoordinatorMetrics.Meter.NUM_ASSIGNMENT_CHANGES, 1);
   }
 
-  private DatastreamTask getDatastreamTask(String taskName) {
-    if (_assignedDatastreamTasks.containsKey(taskName)) {
-      return _assignedDatastreamTasks.get(taskName);
-    } else {
-      DatastreamTaskImpl task = _adapter.getAssignedDatastreamTask(_adapter.getInstanceName(), taskName);
-
+  /**
+   * Get the tasks of the given names assigned to this instance. The tasks which are not assigned yet are all read
+   * from ZooKeeper at once, rather than one round trip at a time.
+   * @return the tasks by name, which doesn't include the tasks unassigned in the meantime
+   */
+  private Map<String, DatastreamTask> getDatastreamTasks(List<String> taskNames) {
+    Map<String, DatastreamTask> tasks = new HashMap<>();
+    List<String> newTaskNames = new ArrayList<>();
+    taskNames.forEach(taskName -> {
+      DatastreamTask task = _assignedDatastreamTasks.get(taskName);
       if (task != null) {
-        DatastreamGroup dg = _datastreamCache.getDatastreamGroups()
-            .stream()
-            .filter(x -> x.getTaskPrefix().equals(task.getTaskPrefix()))
-            .findFirst()
-            .get();
-
-        task.setDatastreams(dg.getDatastreams());
+        tasks.put(taskName, task);
+      } else {
+        newTaskNames.add(taskName);
       }
+    });
 
-      return task;
+    if (!newTaskNames.isEmpty()) {
+      Map<String, DatastreamGroup> datastreamGroupsByTaskPrefix = _datastreamCache.getDatastreamGroupsByTaskPrefix();
+      _adapter.getAssignedDatastreamTasks(_adapter.getInstanceName(), newTaskNames).forEach((taskName, task) -> {
+        DatastreamGroup dg = datastreamGroupsByTaskPrefix.get(task.getTaskPrefix());
+        if (dg == null) {
+          throw new NoSuchElementException("No datastream group found for task " + taskName);
+        }
+        task.setDatastreams(dg.getDatastreams());
+        tasks.put(taskName, task);
+      });
     }
+
+    return tasks;
   }
 
   private Future<Boolean> dispatchAssignmentChangeIfNeeded(String connectorType, List<DatastreamTask> assignment,
@@ -1266,6 +1289,27 @@ public class Coordinator implements ZkAdapter.ZkAdapterListener, MetricsAware {
     _metrics.updateCounter(CoordinatorMetrics.Counter.NUM_HEARTBEATS, 1);
   }
 
+  /**
+   * Publish the throughput of the partitions consumed by the connectors of this instance to ZooKeeper, where the
+   * leader reads it for load-based partition assignment
+   */
+  @VisibleForTesting
+  void publishPartitionThroughput() {
+    if (_zkSessionExpired) {
+      return;
+    }
+    try {
+      Map<String, Map<String, PartitionThroughputInfo>> throughputInfo = new HashMap<>();
+      for (ConnectorInfo connectorInfo : _connectors.values()) {
+        throughputInfo.putAll(connectorInfo.getConnector().getConnectorInstance().getPartitionThroughputInfo());
+      }
+      _adapter.savePartitionThroughput(new InstanceThroughputSnapshot(System.currentTimeMillis(), throughputInfo));
+    } catch (Exception ex) {
+      // Don't let the exception cancel the future executions of the scheduled task
+      _log.warn("Failed to publish the partition throughput to ZooKeeper", ex);
+    }
+  }
+
   /**
    * Check if a datastream is either marked as deleting or its TTL has expired
    */
@@ -1466,28 +1510,22 @@ public class Coordinator implements ZkAdapter.ZkAdapterListener, MetricsAware {
     //  2) TTL has not expired
     // Note: We do not need to flush the cache, because the datastreams should have been read as part of the
     //       handleDatastreamAddOrDelete event (that should occur before handleLeaderDoAssignment)
-    List<Datastream> allStreams = _datastreamCache.getAllDatastreams(false)
-        .stream()
-        .filter(datastream -> datastream.hasStatus() && requiredStatus.contains(datastream.getStatus())
-            && hasValidDestination(datastream) && !isDeletingOrExpired(datastream))
-        .collect(Collectors.toList());
-
-    Set<Datastream> invalidDatastreams =
-        allStreams.stream().filter(s -> !DatastreamUtils.containsTaskPrefix(s)).collect(Collectors.toSet());
-    if (!invalidDatastreams.isEmpty()) {
-      _log.error("Datastreams {} are ignored during assignment because they didn't contain task prefixes",
-          invalidDatastreams);
+    // The datastreams are already grouped by task prefix in the cache, which leaves out the ones without a task prefix.
+    // A cached group is reused as is when all its datastreams are assignable.
+    List<DatastreamGroup> datastreamGroups = new ArrayList<>();
+    for (DatastreamGroup datastreamGroup : _datastreamCache.getDatastreamGroups()) {
+      List<Datastream> datastreams = datastreamGroup.getDatastreams();
+      List<Datastream> assignableDatastreams = datastreams.stream()
+          .filter(datastream -> datastream.hasStatus() && requiredStatus.contains(datastream.getStatus())
+              && hasValidDestination(datastream) && !isDeletingOrExpired(datastream))
+          .collect(Collectors.toList());
+      if (assignableDatastreams.size() == datastreams.size()) {
+        datastreamGroups.add(datastreamGroup);
+      } else if (!assignableDatastreams.isEmpty()) {
+        datastreamGroups.add(new DatastreamGroup(assignableDatastreams));
+      }
     }
-
-    // Process only the streams that contains the taskPrefix.
-    Map<String, List<Datastream>> streamsByTaskPrefix = allStreams.stream()
-        .filter(s -> !invalidDatastreams.contains(s))
-        .collect(Collectors.groupingBy(DatastreamUtils::getTaskPrefix, Collectors.toList()));
-
-    return streamsByTaskPrefix.keySet()
-        .stream()
-        .map(x -> new DatastreamGroup(streamsByTaskPrefix.get(x)))
-        .collect(Collectors.toList());
+    return datastreamGroups;
   }
 
   /*
@@ -2521,6 +2559,9 @@ public class Coordinator implements ZkAdapter.ZkAdapterListener, MetricsAware {
 
       // EventProducer metrics
       _metricInfos.addAll(EventProducer.getMetricInfos());
+
+      // DynamicMetricsManager metrics
+      _metricInfos.addAll(DynamicMetricsManager.getMetricInfos());
     }
 
     private void registerMeterMetrics() {
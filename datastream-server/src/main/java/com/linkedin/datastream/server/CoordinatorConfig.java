@@ -6,6 +6,10 @@
 package com.linkedin.datastream.server;
 
 import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.Properties;
 
 import com.linkedin.datastream.common.VerifiableProperties;
@@ -48,6 +52,12 @@ public final class CoordinatorConfig {
 
   public static final String CONFIG_ENABLE_THROUGHPUT_VIOLATING_TOPICS_HANDLING = PREFIX + "enableThroughputViolatingTopicsHandling";
   public static final String CONFIG_LOG_SIZE_LIMIT_IN_BYTES = PREFIX + "logSizeLimitInBytes";
+  // how long should the coordinator hold events of a given type, e.g. eventDebounceMs.LEADER_DO_ASSIGNMENT, so that the
+  // duplicates queued in the meantime are coalesced with them
+  public static final String CONFIG_EVENT_DEBOUNCE_MS = PREFIX + "eventDebounceMs";
+  // how often should the coordinator publish the throughput of the partitions consumed by its connectors to ZooKeeper,
+  // for load-based partition assignment. Disabled if 0.
+  public static final String CONFIG_PARTITION_THROUGHPUT_PUBLISH_INTERVAL_MS = PREFIX + "partitionThroughputPublishIntervalMs";
 
   public static final int DEFAULT_MAX_ASSIGNMENT_RETRY_COUNT = 100;
   public static final long DEFAULT_STOP_PROPAGATION_TIMEOUT_MS = 60 * 1000;
@@ -82,6 +92,8 @@ public final class CoordinatorConfig {
   private final long _markDatastreamsStoppedRetryPeriodMs;
   private final boolean _enableThroughputViolatingTopicsHandling;
   private final double _logSizeLimitInBytes;
+  private final Map<CoordinatorEvent.EventType, Long> _eventDebounceMs;
+  private final long _partitionThroughputPublishIntervalMs;
 
 
   /**
@@ -121,6 +133,23 @@ public final class CoordinatorConfig {
     _enableThroughputViolatingTopicsHandling = _properties.getBoolean(
         CONFIG_ENABLE_THROUGHPUT_VIOLATING_TOPICS_HANDLING, false);
     _logSizeLimitInBytes = _properties.getDouble(CONFIG_LOG_SIZE_LIMIT_IN_BYTES, DEFAULT_LOG_SIZE_LIMIT_IN_BYTES);
+    _eventDebounceMs = Collections.unmodifiableMap(getEventDebounceMs(_properties));
+    _partitionThroughputPublishIntervalMs = _properties.getLongInRange(CONFIG_PARTITION_THROUGHPUT_PUBLISH_INTERVAL_MS,
+        0, 0, Long.MAX_VALUE);
+  }
+
+  private static Map<CoordinatorEvent.EventType, Long> getEventDebounceMs(VerifiableProperties properties) {
+    Map<CoordinatorEvent.EventType, Long> eventDebounceMs = new EnumMap<>(CoordinatorEvent.EventType.class);
+    for (String eventType : properties.getDomainProperties(CONFIG_EVENT_DEBOUNCE_MS).stringPropertyNames()) {
+      String name = CONFIG_EVENT_DEBOUNCE_MS + "." + eventType;
+      CoordinatorEvent.EventType type = Arrays.stream(CoordinatorEvent.EventType.values())
+          .filter(value -> value.name().equals(eventType))
+          .findFirst()
+          .orElseThrow(() -> new IllegalArgumentException(name + " is not for a known event type, valid event types are "
+              + Arrays.toString(CoordinatorEvent.EventType.values())));
+      eventDebounceMs.put(type, properties.getLongInRange(name, 0, 0, Long.MAX_VALUE));
+    }
+    return eventDebounceMs;
   }
 
   public Properties getConfigProperties() {
@@ -220,4 +249,12 @@ public final class CoordinatorConfig {
   public double getLogSizeLimitInBytes() {
     return _logSizeLimitInBytes;
   }
+
+  public Map<CoordinatorEvent.EventType, Long> getEventDebounceMs() {
+    return _eventDebounceMs;
+  }
+
+  public long getPartitionThroughputPublishIntervalMs() {
+    return _partitionThroughputPublishIntervalMs;
+  }
 }
@@ -5,33 +5,59 @@
  */
 package com.linkedin.datastream.server;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Deque;
-import java.util.HashSet;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.codahale.metrics.Counter;
 import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
 
 import com.linkedin.datastream.metrics.BrooklinCounterInfo;
 import com.linkedin.datastream.metrics.BrooklinGaugeInfo;
+import com.linkedin.datastream.metrics.BrooklinHistogramInfo;
 import com.linkedin.datastream.metrics.BrooklinMetricInfo;
 import com.linkedin.datastream.metrics.DynamicMetricsManager;
 import com.linkedin.datastream.metrics.MetricsAware;
 
 
 /**
- * A blocking queue for {@link Coordinator} events. Includes two metrics, a
- * {@link Gauge} and {@link Counter}. The gauge provides the queue size and
- * the counter increments when duplicate events are {@code put()}.
+ * A blocking queue for {@link Coordinator} events, which coalesces the events queued while an equal event is already
+ * waiting to be taken.
+ *
+ * <p>Events are taken from two lanes: the events added with {@link #putFirst(CoordinatorEvent)}, the most recent
+ * first, and then the events added with {@link #put(CoordinatorEvent)} in the order they were added. The events of a
+ * type configured with a debounce window are held for that long before joining the second lane, so that the bursts of
+ * events of that type (e.g. during ZooKeeper storms) are coalesced into a single event. Each queued event is tracked
+ * in a hash map, so that duplicates are detected, and an event re-added with {@code putFirst()} is moved, in constant
+ * time.
+ *
+ * <p>Includes the following metrics:
+ * <ul>
+ *   <li>a {@link Counter} of the duplicate events {@code put()}</li>
+ *   <li>a {@link Gauge} of the queue size</li>
+ *   <li>a {@link Histogram} of the time events spent in the queue</li>
+ *   <li>a {@link Gauge} of the ratio of the events {@code put()} which were coalesced with a queued event</li>
+ * </ul>
  *
  * @see CoordinatorEvent.EventType
  */
@@ -42,12 +68,23 @@ class CoordinatorEventBlockingQueue implements MetricsAware {
 
   static final String COUNTER_KEY = "duplicateEvents";
   static final String GAUGE_KEY = "queuedEvents";
+  static final String QUEUE_DELAY_KEY = "eventQueueDelayMs";
+  static final String COALESCING_RATIO_KEY = "coalescingRatio";
 
-  private final Set<CoordinatorEvent> _eventSet;
-  private final Deque<CoordinatorEvent> _eventQueue;
+  private final ReentrantLock _lock = new ReentrantLock();
+  private final Condition _eventAvailable = _lock.newCondition();
+  private final Map<CoordinatorEvent, QueuedEvent> _queuedEvents = new HashMap<>();
+  private final Deque<QueuedEvent> _firstLane = new ArrayDeque<>();
+  private final Deque<QueuedEvent> _defaultLane = new ArrayDeque<>();
+  private final Queue<QueuedEvent> _debouncedEvents =
+      new PriorityQueue<>(Comparator.comparingLong((QueuedEvent e) -> e._readyTimeMs));
+  private final Map<CoordinatorEvent.EventType, Long> _debounceMs = new EnumMap<>(CoordinatorEvent.EventType.class);
+  private final AtomicLong _numPuts = new AtomicLong();
+  private final AtomicLong _numCoalescedPuts = new AtomicLong();
   private final DynamicMetricsManager _dynamicMetricsManager;
   private final Gauge<Integer> _gauge;
   private final Counter _counter;
+  private final Histogram _queueDelayMs;
 
   /**
    * Construct a blocking event queue for all types of events in {@link CoordinatorEvent.EventType}
@@ -58,25 +95,39 @@ class CoordinatorEventBlockingQueue implements MetricsAware {
    *            or {@link CoordinatorEventBlockingQueue#GAUGE_KEY}.
    */
   CoordinatorEventBlockingQueue(String key) {
-    _eventSet = new HashSet<>();
-    _eventQueue = new LinkedBlockingDeque<>();
+    this(key, Collections.emptyMap());
+  }
+
+  /**
+   * Construct a blocking event queue for all types of events in {@link CoordinatorEvent.EventType}
+   *
+   * @param key String used to register CoordinatorEventBlockQueue metrics. The metrics
+   *            will be registered to {@code CoordinatorEventBlockingQueue.<key>.<metric>}.
+   * @param debounceMs how long the events of each type are held before they can be taken, events of the types which
+   *                   are missing are not held
+   */
+  CoordinatorEventBlockingQueue(String key, Map<CoordinatorEvent.EventType, Long> debounceMs) {
+    _debounceMs.putAll(debounceMs);
     _dynamicMetricsManager = DynamicMetricsManager.getInstance();
 
     String prefix = buildMetricName(key);
     _counter = _dynamicMetricsManager.registerMetric(prefix, COUNTER_KEY, Counter.class);
-    _gauge = _dynamicMetricsManager.registerGauge(prefix, GAUGE_KEY, _eventQueue::size);
+    _gauge = _dynamicMetricsManager.registerGauge(prefix, GAUGE_KEY, this::size);
+    _queueDelayMs = _dynamicMetricsManager.registerMetric(prefix, QUEUE_DELAY_KEY, Histogram.class);
+    _dynamicMetricsManager.registerGauge(prefix, COALESCING_RATIO_KEY, this::getCoalescingRatio);
 
     BrooklinCounterInfo counterInfo = new BrooklinCounterInfo(MetricRegistry.name(prefix, COUNTER_KEY));
     BrooklinGaugeInfo gaugeInfo = new BrooklinGaugeInfo(MetricRegistry.name(prefix, GAUGE_KEY));
-    _metricInfos.addAll(Arrays.asList(counterInfo, gaugeInfo));
+    BrooklinHistogramInfo queueDelayInfo = new BrooklinHistogramInfo(MetricRegistry.name(prefix, QUEUE_DELAY_KEY));
+    BrooklinGaugeInfo coalescingRatioInfo = new BrooklinGaugeInfo(MetricRegistry.name(prefix, COALESCING_RATIO_KEY));
+    _metricInfos.addAll(Arrays.asList(counterInfo, gaugeInfo, queueDelayInfo, coalescingRatioInfo));
   }
 
-
   /**
    * Add a single event to the queue. Defaults to adding the event at the end of the queue.
    * @param event CoordinatorEvent event to add to the queue
    */
-  public synchronized void put(CoordinatorEvent event) {
+  public void put(CoordinatorEvent event) {
     put(event, true);
   }
 
@@ -84,17 +135,20 @@ class CoordinatorEventBlockingQueue implements MetricsAware {
    * Add a single event to the queue. Adds the event to the front of the queue.
    * @param event CoordinatorEvent event to add to the queue
    */
-  public synchronized void putFirst(CoordinatorEvent event) {
-    // If the requested event is already in the CoordinatorEventBlockingQueue, it will be removed to prioritize the
-    // event to be putFirst.
-    if (_eventSet.contains(event)) {
-      LOG.info("Prioritizing the event to be putFirst by removing the existing CoordinatorEvent " + event);
-      // Since the distinct content of the CoordinatorEventBlockingQueue is not anticipated to be extensive, the
-      // linear complexity removal operation deemed acceptable.
-      _eventQueue.remove(event);
-      _eventSet.remove(event);
+  public void putFirst(CoordinatorEvent event) {
+    _lock.lock();
+    try {
+      // If the requested event is already in the CoordinatorEventBlockingQueue, it will be removed to prioritize the
+      // event to be putFirst. It is only marked as removed, and skipped when reaching the head of its lane.
+      QueuedEvent queuedEvent = _queuedEvents.remove(event);
+      if (queuedEvent != null) {
+        LOG.info("Prioritizing the event to be putFirst by removing the existing CoordinatorEvent " + event);
+        queuedEvent._removed = true;
+      }
+      put(event, false);
+    } finally {
+      _lock.unlock();
     }
-    put(event, false);
   }
 
   /**
@@ -102,27 +156,34 @@ class CoordinatorEventBlockingQueue implements MetricsAware {
    * @param event CoordinatorEvent event to add to the queue
    * @param insertInTheEnd if true, indicates to add the event to the end of the queue and front, otherwise.
    */
-  private synchronized void put(CoordinatorEvent event, boolean insertInTheEnd) {
+  private void put(CoordinatorEvent event, boolean insertInTheEnd) {
     LOG.info("Queuing event {} at the " + (insertInTheEnd ? "end" : "front") + " of the event queue", event.getType());
-    if (_eventSet.contains(event)) {
-      _counter.inc(); // count duplicate event
-    } else {
-      // only insert if there isn't an event present in the queue with the same name and same metadata.
-      boolean result;
-      if (insertInTheEnd) {
-        result = _eventQueue.offer(event);
+    _lock.lock();
+    try {
+      _numPuts.incrementAndGet();
+      if (_queuedEvents.containsKey(event)) {
+        _counter.inc(); // count duplicate event
+        _numCoalescedPuts.incrementAndGet();
       } else {
-        result = _eventQueue.offerFirst(event);
-      }
-      if (!result) {
-        return;
+        // only insert if there isn't an event present in the queue with the same name and same metadata.
+        long now = System.currentTimeMillis();
+        long debounceMs = _debounceMs.getOrDefault(event.getType(), 0L);
+        QueuedEvent queuedEvent = new QueuedEvent(event, now, insertInTheEnd ? now + debounceMs : now);
+        if (!insertInTheEnd) {
+          _firstLane.offerFirst(queuedEvent);
+        } else if (debounceMs > 0) {
+          _debouncedEvents.offer(queuedEvent);
+        } else {
+          _defaultLane.offer(queuedEvent);
+        }
+        _queuedEvents.put(event, queuedEvent);
+        _dynamicMetricsManager.setGauge(_gauge, this::size);
+        _eventAvailable.signal();
       }
-      _eventSet.add(event);
-      _dynamicMetricsManager.setGauge(_gauge, _eventQueue::size);
+      LOG.debug("Event queue size {}", _queuedEvents.size());
+    } finally {
+      _lock.unlock();
     }
-
-    LOG.debug("Event queue size {}", _eventQueue.size());
-    notify();
   }
 
   /**
@@ -134,51 +195,92 @@ class CoordinatorEventBlockingQueue implements MetricsAware {
    *             current thread before or while the current thread
    *             was waiting for a notification
    */
-  public synchronized CoordinatorEvent take() throws InterruptedException {
-    while (_eventQueue.isEmpty()) {
-      wait();
-    }
+  public CoordinatorEvent take() throws InterruptedException {
+    _lock.lockInterruptibly();
+    try {
+      while (true) {
+        long now = System.currentTimeMillis();
+        promoteDebouncedEvents(now);
+        QueuedEvent queuedEvent = pollLane(_firstLane);
+        if (queuedEvent == null) {
+          queuedEvent = pollLane(_defaultLane);
+        }
 
-    CoordinatorEvent queuedEvent = _eventQueue.poll();
+        if (queuedEvent != null) {
+          _queuedEvents.remove(queuedEvent._event);
+          _dynamicMetricsManager.setGauge(_gauge, this::size);
+          if (CoordinatorEvent.NO_OP_EVENT == queuedEvent._event) {
+            return null;
+          }
 
-    if (CoordinatorEvent.NO_OP_EVENT == queuedEvent) {
-      return null;
-    }
+          _queueDelayMs.update(now - queuedEvent._queuedTimeMs);
+          LOG.info("De-queuing event " + queuedEvent._event.getType());
+          LOG.debug("Event queue size: {}", _queuedEvents.size());
+          return queuedEvent._event;
+        }
 
-    if (queuedEvent != null) {
-      LOG.info("De-queuing event " + queuedEvent.getType());
-      LOG.debug("Event queue size: {}", _eventQueue.size());
-      _eventSet.remove(queuedEvent);
-      _dynamicMetricsManager.setGauge(_gauge, _eventQueue::size);
+        QueuedEvent debouncedEvent = peekLane(_debouncedEvents);
+        if (debouncedEvent == null) {
+          _eventAvailable.await();
+        } else {
+          _eventAvailable.await(debouncedEvent._readyTimeMs - now, TimeUnit.MILLISECONDS);
+        }
+      }
+    } finally {
+      _lock.unlock();
     }
-
-    return queuedEvent;
   }
 
   /**
-   *
+   * Remove all the events from the queue
    */
-  public synchronized void clear() {
-    _eventQueue.clear();
-    _eventSet.clear();
-    _dynamicMetricsManager.setGauge(_gauge, _eventQueue::size);
+  public void clear() {
+    _lock.lock();
+    try {
+      _queuedEvents.clear();
+      _firstLane.clear();
+      _defaultLane.clear();
+      _debouncedEvents.clear();
+      _dynamicMetricsManager.setGauge(_gauge, this::size);
+    } finally {
+      _lock.unlock();
+    }
   }
 
   /**
    * Retrieve, but do not remove, the event at the head of this queue,
-   * or return {@code null} if this queue is empty.
+   * or return {@code null} if this queue is empty. The head of the queue
+   * is the next event which can be taken, or the next event to be held
+   * for its debounce window if there is none.
    *
    * @return the head of this queue, or {@code null} if this queue is empty
    */
-  public synchronized CoordinatorEvent peek() {
-    return _eventQueue.peek();
+  public CoordinatorEvent peek() {
+    _lock.lock();
+    try {
+      promoteDebouncedEvents(System.currentTimeMillis());
+      for (Queue<QueuedEvent> lane : Arrays.asList(_firstLane, _defaultLane, _debouncedEvents)) {
+        QueuedEvent queuedEvent = peekLane(lane);
+        if (queuedEvent != null) {
+          return queuedEvent._event;
+        }
+      }
+      return null;
+    } finally {
+      _lock.unlock();
+    }
   }
 
   /**
    * Get the number of events in this queue
    */
   public int size() {
-    return _eventQueue.size();
+    _lock.lock();
+    try {
+      return _queuedEvents.size();
+    } finally {
+      _lock.unlock();
+    }
   }
 
   /**
@@ -187,11 +289,53 @@ class CoordinatorEventBlockingQueue implements MetricsAware {
    * @return true if the queue is empty
    */
   public boolean isEmpty() {
-    return _eventQueue.isEmpty();
+    return size() == 0;
+  }
+
+  /**
+   * Get the ratio of the events {@code put()} which were coalesced with an event already in the queue
+   */
+  double getCoalescingRatio() {
+    long numPuts = _numPuts.get();
+    return numPuts == 0 ? 0 : (double) _numCoalescedPuts.get() / numPuts;
   }
 
   @Override
   public List<BrooklinMetricInfo> getMetricInfos() {
     return new ArrayList<>(_metricInfos);
   }
+
+  // Move the events whose debounce window is over to the end of the default lane
+  private void promoteDebouncedEvents(long now) {
+    QueuedEvent queuedEvent = peekLane(_debouncedEvents);
+    while (queuedEvent != null && queuedEvent._readyTimeMs <= now) {
+      _defaultLane.offer(_debouncedEvents.poll());
+      queuedEvent = peekLane(_debouncedEvents);
+    }
+  }
+
+  // Get the head of the lane, discarding the events which were removed from the queue
+  private static QueuedEvent peekLane(Queue<QueuedEvent> lane) {
+    while (!lane.isEmpty() && lane.peek()._removed) {
+      lane.poll();
+    }
+    return lane.peek();
+  }
+
+  private static QueuedEvent pollLane(Queue<QueuedEvent> lane) {
+    return peekLane(lane) == null ? null : lane.poll();
+  }
+
+  private static class QueuedEvent {
+    private final CoordinatorEvent _event;
+    private final long _queuedTimeMs;
+    private final long _readyTimeMs;
+    private boolean _removed = false;
+
+    QueuedEvent(CoordinatorEvent event, long queuedTimeMs, long readyTimeMs) {
+      _event = event;
+      _queuedTimeMs = queuedTimeMs;
+      _readyTimeMs = readyTimeMs;
+    }
+  }
 }
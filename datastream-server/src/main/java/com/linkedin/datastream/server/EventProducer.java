@@ -6,7 +6,6 @@
 package com.linkedin.datastream.server;
 
 import java.time.Duration;
-import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -16,7 +15,11 @@ import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Function;
 
 import org.apache.commons.lang3.StringUtils;
@@ -25,6 +28,12 @@ import org.apache.kafka.common.TopicPartition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 import com.linkedin.datastream.common.BrooklinEnvelope;
 import com.linkedin.datastream.common.Datastream;
 import com.linkedin.datastream.common.DatastreamRuntimeException;
@@ -35,6 +44,9 @@ import com.linkedin.datastream.metrics.BrooklinMeterInfo;
 import com.linkedin.datastream.metrics.BrooklinMetricInfo;
 import com.linkedin.datastream.metrics.DynamicMetricsManager;
 import com.linkedin.datastream.metrics.MetricsAware;
+import com.linkedin.datastream.metrics.TrackedMetricKey;
+import com.linkedin.datastream.server.api.transport.BatchSendCallback;
+import com.linkedin.datastream.server.api.transport.BatchSendFailedException;
 import com.linkedin.datastream.server.api.transport.DatastreamRecordMetadata;
 import com.linkedin.datastream.server.api.transport.SendCallback;
 import com.linkedin.datastream.server.api.transport.SendFailedException;
@@ -50,12 +62,20 @@ public class EventProducer implements DatastreamEventProducer {
   public static final String CFG_SKIP_MSG_SERIALIZATION_ERRORS = "skipMessageOnSerializationErrors";
   public static final String DEFAULT_SKIP_MSG_SERIALIZATION_ERRORS = "false";
   public static final String CONFIG_FLUSH_INTERVAL_MS = "flushIntervalMs";
+  // How long shutdown waits for the periodic flush in progress, if any, before closing the transport provider anyway
+  public static final String CONFIG_PERIODIC_FLUSH_SHUTDOWN_TIMEOUT_MS = "periodicFlushShutdownTimeoutMs";
   public static final String CONFIG_ENABLE_PER_TOPIC_METRICS = "enablePerTopicMetrics";
   public static final String CONFIG_ENABLE_PER_TOPIC_EVENT_LATENCY_METRICS = "enablePerTopicEventLatencyMetrics";
+  // Limit on the number of topics (or datastreams) with metrics, shared by all event producers (see
+  // DynamicMetricsManager#setKeyLimit); the least recently used topics are evicted when it is exceeded
+  public static final String CONFIG_PER_TOPIC_METRICS_MAX_KEYS = "perTopicMetricsMaxKeys";
+  // Time after which the metrics of a topic (or datastream) that has not been produced to are evicted, 0 to disable
+  public static final String CONFIG_PER_TOPIC_METRICS_MAX_IDLE_MS = "perTopicMetricsMaxIdleMs";
 
   // Default flush interval, It is intentionally kept at low frequency. If a particular connectors wants
   // a more frequent flush (high traffic connectors), it can perform that on it's own.
   public static final String DEFAULT_FLUSH_INTERVAL_MS = String.valueOf(Duration.ofMinutes(5).toMillis());
+  public static final String DEFAULT_PERIODIC_FLUSH_SHUTDOWN_TIMEOUT_MS = String.valueOf(Duration.ofSeconds(5).toMillis());
 
   static final String EVENTS_LATENCY_MS_STRING = "eventsLatencyMs";
   static final String EVENTS_SEND_LATENCY_MS_STRING = "eventsSendLatencyMs";
@@ -70,6 +90,7 @@ public class EventProducer implements DatastreamEventProducer {
   private static final String EVENTS_PRODUCED_WITHIN_ALTERNATE_SLA = "eventsProducedWithinAlternateSla";
   private static final String EVENT_PRODUCE_RATE = "eventProduceRate";
   private static final String FLUSH_LATENCY_MS_STRING = "flushLatencyMs";
+  private static final String PERIODIC_FLUSH_LATENCY_MS_STRING = "periodicFlushLatencyMs";
   private static final String AVAILABILITY_THRESHOLD_SLA_MS = "availabilityThresholdSlaMs";
   private static final String AVAILABILITY_THRESHOLD_ALTERNATE_SLA_MS = "availabilityThresholdAlternateSlaMs";
   private static final String WARN_LOG_LATENCY_ENABLED = "warnLogLatencyEnabled";
@@ -88,6 +109,12 @@ public class EventProducer implements DatastreamEventProducer {
   private static final String DEFAULT_NUM_EVENTS_OUTSIDE_ALT_SLA_LOG_FREQUENCY_MS = "300000"; // 5 minutes
   private static final long LATENCY_SLIDING_WINDOW_LENGTH_MS = Duration.ofMinutes(3).toMillis();
   private static final long LONG_FLUSH_WARN_THRESHOLD_MS = Duration.ofMinutes(5).toMillis();
+  // Number of threads shared by all the event producers for periodic flushes, so that a slow flush of one task
+  // does not hold up the periodic flushes of the others
+  private static final int PERIODIC_FLUSH_THREADS = 4;
+
+  // Performs the periodic flushes of all the event producers off the sending threads
+  private static final ScheduledThreadPoolExecutor PERIODIC_FLUSH_SCHEDULER = createPeriodicFlushScheduler();
 
   private final DatastreamTask _datastreamTask;
   private final int _producerId;
@@ -109,13 +136,28 @@ public class EventProducer implements DatastreamEventProducer {
   private final boolean _skipMessageOnSerializationErrors;
   private final boolean _enablePerTopicMetrics;
   private final boolean _enablePerTopicEventLatencyMetrics;
-  private final Duration _flushInterval;
+  private final long _flushIntervalMs;
+  private final long _periodicFlushShutdownTimeoutMs;
   private final Function<DatastreamTask, Set<String>> _throughputViolatingTopicsProvider;
 
-  private Instant _lastFlushTime = Instant.now();
+  private volatile long _lastFlushTimeMs = System.currentTimeMillis();
   private long _lastEventsOutsideAltSlaLogTimeMs = System.currentTimeMillis();
   private Map<TopicPartition, Integer> _trackEventsOutsideAltSlaMap = new ConcurrentHashMap<>();
-  private boolean _enableFlushOnSend = true;
+  private volatile boolean _enableFlushOnSend = true;
+  // Whether events have been sent since the last flush, the only state touched by the send path for periodic flushes
+  private volatile boolean _sentSinceLastFlush = false;
+  private volatile boolean _isShutdown = false;
+  private volatile ScheduledFuture<?> _periodicFlushFuture;
+  // Held by the periodic flushes, so that shutdown can wait for the one in progress before closing the transport
+  private final ReentrantLock _periodicFlushLock = new ReentrantLock();
+  private volatile Runnable _periodicFlushListener;
+
+  // Metric handles per topic or datastream name (depending on _enablePerTopicMetrics), resolved on first use so that
+  // the send callbacks can update the metrics without looking each of them up in DynamicMetricsManager
+  private final Map<String, MetricHandles> _metricHandles = new ConcurrentHashMap<>();
+  private final Map<String, MetricHandles> _throughputViolatingMetricHandles = new ConcurrentHashMap<>();
+  // Number of evicted metric keys when the handles of evicted keys were last dropped
+  private long _numEvictedMetricKeys = 0;
 
   /**
    * Construct an EventProducer instance.
@@ -178,8 +220,10 @@ public class EventProducer implements DatastreamEventProducer {
     _numEventsOutsideAltSlaFrequencyMs = Long.parseLong(config.getProperty(NUM_EVENTS_OUTSIDE_ALT_SLA_LOG_FREQUENCY_MS,
         DEFAULT_NUM_EVENTS_OUTSIDE_ALT_SLA_LOG_FREQUENCY_MS));
 
-    _flushInterval =
-        Duration.ofMillis(Long.parseLong(config.getProperty(CONFIG_FLUSH_INTERVAL_MS, DEFAULT_FLUSH_INTERVAL_MS)));
+    _flushIntervalMs = Long.parseLong(config.getProperty(CONFIG_FLUSH_INTERVAL_MS, DEFAULT_FLUSH_INTERVAL_MS));
+
+    _periodicFlushShutdownTimeoutMs = Long.parseLong(config.getProperty(CONFIG_PERIODIC_FLUSH_SHUTDOWN_TIMEOUT_MS,
+        DEFAULT_PERIODIC_FLUSH_SHUTDOWN_TIMEOUT_MS));
 
     _enablePerTopicMetrics =
         Boolean.parseBoolean(config.getProperty(CONFIG_ENABLE_PER_TOPIC_METRICS, Boolean.TRUE.toString()));
@@ -191,6 +235,11 @@ public class EventProducer implements DatastreamEventProducer {
     _logger.info("Created event producer with customCheckpointing={}", customCheckpointing);
 
     _dynamicMetricsManager = DynamicMetricsManager.getInstance();
+    if (config.containsKey(CONFIG_PER_TOPIC_METRICS_MAX_KEYS) || config.containsKey(CONFIG_PER_TOPIC_METRICS_MAX_IDLE_MS)) {
+      _dynamicMetricsManager.setKeyLimit(MODULE,
+          Integer.parseInt(config.getProperty(CONFIG_PER_TOPIC_METRICS_MAX_KEYS, String.valueOf(Integer.MAX_VALUE))),
+          Long.parseLong(config.getProperty(CONFIG_PER_TOPIC_METRICS_MAX_IDLE_MS, "0")));
+    }
     // provision some metrics to force them to create
     _dynamicMetricsManager.createOrUpdateCounter(MODULE, AGGREGATE, EVENTS_PRODUCED_OUTSIDE_SLA, 0);
     if (!_enablePerTopicMetrics) {
@@ -200,6 +249,18 @@ public class EventProducer implements DatastreamEventProducer {
         EVENTS_PRODUCED_OUTSIDE_SLA, 0);
     _dynamicMetricsManager.createOrUpdateCounter(MODULE, _datastreamTask.getConnectorType(),
         DROPPED_SENT_FROM_SERIALIZATION_ERROR, 0);
+
+    if (_flushIntervalMs > 0) {
+      schedulePeriodicFlush(_flushIntervalMs);
+    }
+  }
+
+  private static ScheduledThreadPoolExecutor createPeriodicFlushScheduler() {
+    ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(PERIODIC_FLUSH_THREADS,
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("EventProducerPeriodicFlush-%d").build());
+    // Do not hold on to the event producers of the tasks which have been shut down until their next flush time
+    scheduler.setRemoveOnCancelPolicy(true);
+    return scheduler;
   }
 
   /**
@@ -233,20 +294,71 @@ public class EventProducer implements DatastreamEventProducer {
   }
 
   /**
-   * Send the event onto the underlying transport.
-   * @param record the datastream event
-   * @param sendEventCallback the callback to be invoked after the event is sent to the destination
-   *
-   * @return For broadcast return DatastreamRecordMetadata got from transport provider broadcast, null for send
+   * Send the events onto the underlying transport, doing the validation and serialization of each record but reading
+   * the clock once for the whole batch.
+   * @param records the datastream events
+   * @param sendEventCallback the callback to be invoked after each event is sent to the destination
    */
-  private DatastreamRecordMetadata helperSendOrBroadcast(DatastreamProducerRecord record,
-      SendCallback sendEventCallback, boolean isBroadcast) {
-    DatastreamRecordMetadata broadcastMetadata = null;
+  @Override
+  public void sendBatch(List<DatastreamProducerRecord> records, BatchSendCallback sendEventCallback) {
+    Validate.notNull(records, "null event records.");
+    // Records skipped on serialization errors are not sent and do not get callbacks, like with send
+    List<DatastreamProducerRecord> recordsToSend = new ArrayList<>(records.size());
+    int[] recordIndexes = new int[records.size()];
+    for (int i = 0; i < records.size(); i++) {
+      boolean serialized;
+      try {
+        serialized = validateAndSerialize(records.get(i));
+      } catch (DatastreamRuntimeException e) {
+        throw new BatchSendFailedException(i, e.getMessage(), e);
+      }
+      if (serialized) {
+        recordIndexes[recordsToSend.size()] = i;
+        recordsToSend.add(records.get(i));
+      }
+    }
+    if (recordsToSend.isEmpty()) {
+      return;
+    }
 
+    try {
+      long sendTimestamp = System.currentTimeMillis();
+      long[] sourceTimestamps = new long[recordsToSend.size()];
+      for (int i = 0; i < recordsToSend.size(); i++) {
+        DatastreamProducerRecord record = recordsToSend.get(i);
+        record.setEventsSendTimestamp(sendTimestamp);
+        sourceTimestamps[i] = record.getEventsSourceTimestamp();
+      }
+      _transportProvider.sendBatch(getDefaultDestination(), recordsToSend,
+          (recordIndex, metadata, exception) -> onSendCallback(metadata, exception,
+              sendEventCallback == null ? null : (m, e) -> sendEventCallback.onCompletion(recordIndexes[recordIndex], m, e),
+              sourceTimestamps[recordIndex], sendTimestamp));
+    } catch (BatchSendFailedException e) {
+      int recordIndex = e.getRecordIndex();
+      String errorMessage = String.format("Failed to send the event %s of a batch of %d events exception %s",
+          recordsToSend.get(recordIndex), recordsToSend.size(), e);
+      _logger.warn(errorMessage, e);
+      throw new BatchSendFailedException(recordIndexes[recordIndex], errorMessage, e);
+    } catch (Exception e) {
+      String errorMessage = String.format("Failed to send the batch of %d events starting with %s exception %s",
+          recordsToSend.size(), recordsToSend.get(0), e);
+      _logger.warn(errorMessage, e);
+      throw new DatastreamRuntimeException(errorMessage, e);
+    }
+
+    markSent();
+  }
+
+  /**
+   * Validate the record and serialize its events
+   * @return false if the record must be skipped because of a serialization error
+   */
+  private boolean validateAndSerialize(DatastreamProducerRecord record) {
     try {
       validateEventRecord(record);
 
       record.serializeEvents(_datastreamTask.getDestinationSerDes());
+      return true;
     } catch (NullPointerException e) {
       String errorMessage = String.format("Validation failed for record %s exception %s", record, e);
       _logger.warn(errorMessage, e);
@@ -259,16 +371,100 @@ public class EventProducer implements DatastreamEventProducer {
         _dynamicMetricsManager.createOrUpdateCounter(MODULE, getDatastreamName(),
             DROPPED_SENT_FROM_SERIALIZATION_ERROR, 1);
         _dynamicMetricsManager.createOrUpdateCounter(MODULE, AGGREGATE, DROPPED_SENT_FROM_SERIALIZATION_ERROR, 1);
-        if (isBroadcast) {
-          return new DatastreamRecordMetadata(true);
-        }
-        return null;
+        return false;
       } else {
         String errorMessage = String.format("Failed to send event %s because of serialization exception %s", record, e);
         _logger.warn(errorMessage, e);
         throw new DatastreamRuntimeException(errorMessage, e);
       }
     }
+  }
+
+  // The destination of the records which do not specify one
+  private String getDefaultDestination() {
+    if (_datastreamTask.getTransportProviderName().
+        equalsIgnoreCase(NoOpTransportProviderAdminFactory.NoOpTransportProvider.NAME)) {
+      return StringUtils.EMPTY;
+    }
+    return _datastreamTask.getDatastreamDestination().getConnectionString();
+  }
+
+  // Let the next periodic flush know that there is something to flush. The flag is only written when it changes, so
+  // that the send path usually only reads it.
+  private void markSent() {
+    if (!_sentSinceLastFlush) {
+      _sentSinceLastFlush = true;
+    }
+  }
+
+  private void schedulePeriodicFlush(long delayMs) {
+    if (!_isShutdown) {
+      _periodicFlushFuture = PERIODIC_FLUSH_SCHEDULER.schedule(this::periodicFlush, delayMs, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  // Force a periodic flush if flushless mode isn't enabled, in case the connector is not calling flush at
+  // regular intervals. Runs on the shared scheduler, so that the sending thread never blocks on it.
+  private void periodicFlush() {
+    _periodicFlushLock.lock();
+    try {
+      if (_isShutdown) {
+        return;
+      }
+
+      // The connector may have flushed on its own since this was scheduled
+      long msSinceLastFlush = System.currentTimeMillis() - _lastFlushTimeMs;
+      if (msSinceLastFlush < _flushIntervalMs) {
+        schedulePeriodicFlush(_flushIntervalMs - msSinceLastFlush);
+      } else {
+        if (_enableFlushOnSend && _sentSinceLastFlush) {
+          long startTime = System.currentTimeMillis();
+          try {
+            flush();
+          } catch (Exception e) {
+            _logger.warn("Periodic flush failed, will retry in {} ms", _flushIntervalMs, e);
+          } finally {
+            long periodicFlushLatencyMs = System.currentTimeMillis() - startTime;
+            _dynamicMetricsManager.createOrUpdateHistogram(MODULE, AGGREGATE, PERIODIC_FLUSH_LATENCY_MS_STRING,
+                periodicFlushLatencyMs);
+            _dynamicMetricsManager.createOrUpdateHistogram(MODULE, _datastreamTask.getConnectorType(),
+                PERIODIC_FLUSH_LATENCY_MS_STRING, periodicFlushLatencyMs);
+          }
+        }
+        schedulePeriodicFlush(_flushIntervalMs);
+      }
+    } finally {
+      _periodicFlushLock.unlock();
+    }
+
+    Runnable listener = _periodicFlushListener;
+    if (listener != null) {
+      listener.run();
+    }
+  }
+
+  /**
+   * Set a listener called each time the periodic flush check completes, whether it flushed or not
+   */
+  @VisibleForTesting
+  void setPeriodicFlushListener(Runnable listener) {
+    _periodicFlushListener = listener;
+  }
+
+  /**
+   * Send the event onto the underlying transport.
+   * @param record the datastream event
+   * @param sendEventCallback the callback to be invoked after the event is sent to the destination
+   *
+   * @return For broadcast return DatastreamRecordMetadata got from transport provider broadcast, null for send
+   */
+  private DatastreamRecordMetadata helperSendOrBroadcast(DatastreamProducerRecord record,
+      SendCallback sendEventCallback, boolean isBroadcast) {
+    DatastreamRecordMetadata broadcastMetadata = null;
+
+    if (!validateAndSerialize(record)) {
+      return isBroadcast ? new DatastreamRecordMetadata(true) : null;
+    }
 
     try {
       // Send the event to the transport
@@ -301,29 +497,16 @@ public class EventProducer implements DatastreamEventProducer {
       throw new DatastreamRuntimeException(errorMessage, e);
     }
 
-    // Force a periodic flush if flushless mode isn't enabled, in case the connector is not calling flush at
-    // regular intervals
-    if (_enableFlushOnSend && Instant.now().isAfter(_lastFlushTime.plus(_flushInterval))) {
-      flush();
-    }
+    markSent();
 
     return broadcastMetadata;
   }
 
-  // Report SLA metrics for aggregate, connector and task
-  private void reportSLAMetrics(String topicOrDatastreamName, boolean isWithinSLA, String metricNameForWithinSLA,
-      String metricNameForOutsideSLA) {
-    int withinSLAValue = isWithinSLA ? 1 : 0;
-    int outsideSLAValue = isWithinSLA ? 0 : 1;
-    _dynamicMetricsManager.createOrUpdateCounter(MODULE, AGGREGATE, metricNameForWithinSLA, withinSLAValue);
-    _dynamicMetricsManager.createOrUpdateCounter(MODULE, _datastreamTask.getConnectorType(), metricNameForWithinSLA,
-        withinSLAValue);
-    _dynamicMetricsManager.createOrUpdateCounter(MODULE, topicOrDatastreamName, metricNameForWithinSLA, withinSLAValue);
-    _dynamicMetricsManager.createOrUpdateCounter(MODULE, AGGREGATE, metricNameForOutsideSLA, outsideSLAValue);
-    _dynamicMetricsManager.createOrUpdateCounter(MODULE, _datastreamTask.getConnectorType(), metricNameForOutsideSLA,
-        outsideSLAValue);
-    _dynamicMetricsManager.createOrUpdateCounter(MODULE, topicOrDatastreamName, metricNameForOutsideSLA,
-        outsideSLAValue);
+  // Report SLA metrics for aggregate, connector and topic/datastream
+  private void reportSLAMetrics(Counter[] withinSLACounters, Counter[] outsideSLACounters, boolean isWithinSLA) {
+    for (Counter counter : isWithinSLA ? withinSLACounters : outsideSLACounters) {
+      counter.inc();
+    }
   }
 
   private void performSlaRelatedLogging(DatastreamRecordMetadata metadata, long eventsSourceTimestamp,
@@ -370,17 +553,19 @@ public class EventProducer implements DatastreamEventProducer {
     String datastreamName = getDatastreamName();
 
     String topicOrDatastreamName = _enablePerTopicMetrics ? metadata.getTopic() : datastreamName;
+    MetricHandles handles = getMetricHandles(_metricHandles, topicOrDatastreamName, EVENTS_LATENCY_MS_STRING,
+        EVENTS_SEND_LATENCY_MS_STRING, true);
     // Treat all events within this record equally (assume same timestamp)
     if (eventsSourceTimestamp > 0) {
       // Report availability metrics
       long sourceToDestinationLatencyMs = System.currentTimeMillis() - eventsSourceTimestamp;
-      reportEventLatencyMetrics(topicOrDatastreamName, metadata, sourceToDestinationLatencyMs, EVENTS_LATENCY_MS_STRING);
+      reportEventLatencyMetrics(handles, metadata, sourceToDestinationLatencyMs, EVENTS_LATENCY_MS_STRING);
 
-      reportSLAMetrics(topicOrDatastreamName, sourceToDestinationLatencyMs <= _availabilityThresholdSlaMs,
-          EVENTS_PRODUCED_WITHIN_SLA, EVENTS_PRODUCED_OUTSIDE_SLA);
+      reportSLAMetrics(handles._eventsProducedWithinSla, handles._eventsProducedOutsideSla,
+          sourceToDestinationLatencyMs <= _availabilityThresholdSlaMs);
 
-      reportSLAMetrics(topicOrDatastreamName, sourceToDestinationLatencyMs <= _availabilityThresholdAlternateSlaMs,
-          EVENTS_PRODUCED_WITHIN_ALTERNATE_SLA, EVENTS_PRODUCED_OUTSIDE_ALTERNATE_SLA);
+      reportSLAMetrics(handles._eventsProducedWithinAlternateSla, handles._eventsProducedOutsideAlternateSla,
+          sourceToDestinationLatencyMs <= _availabilityThresholdAlternateSlaMs);
 
       if (_logger.isDebugEnabled()) {
         if (sourceToDestinationLatencyMs > _availabilityThresholdSlaMs) {
@@ -397,9 +582,9 @@ public class EventProducer implements DatastreamEventProducer {
         }
       }
 
-      _dynamicMetricsManager.createOrUpdateCounter(MODULE, AGGREGATE, TOTAL_EVENTS_PRODUCED, 1);
-      _dynamicMetricsManager.createOrUpdateCounter(MODULE, _datastreamTask.getConnectorType(), TOTAL_EVENTS_PRODUCED,
-          1);
+      for (Counter counter : handles._totalEventsProduced) {
+        counter.inc();
+      }
 
       // Log information about events if either warn logging is enabled or logging for topic partitions outside
       // alternate SLA is enabled
@@ -409,10 +594,11 @@ public class EventProducer implements DatastreamEventProducer {
     // Report the time it took to just send the events to destination
     if (eventsSendTimestamp > 0) {
       long sendLatency = System.currentTimeMillis() - eventsSendTimestamp;
-      reportSendLatencyMetrics(metadata, sendLatency, EVENTS_SEND_LATENCY_MS_STRING);
+      reportSendLatencyMetrics(handles, sendLatency);
+    }
+    for (Meter meter : handles._eventProduceRate) {
+      meter.mark();
     }
-    _dynamicMetricsManager.createOrUpdateMeter(MODULE, AGGREGATE, EVENT_PRODUCE_RATE, 1);
-    _dynamicMetricsManager.createOrUpdateMeter(MODULE, _datastreamTask.getConnectorType(), EVENT_PRODUCE_RATE, 1);
   }
 
   /**
@@ -426,14 +612,17 @@ public class EventProducer implements DatastreamEventProducer {
   private void reportMetricsForThroughputViolatingTopics(DatastreamRecordMetadata metadata, long eventsSourceTimestamp,
       long eventsSendTimestamp) {
     String topicOrDatastreamName = _enablePerTopicMetrics ? metadata.getTopic() : getDatastreamName();
+    MetricHandles handles = getMetricHandles(_throughputViolatingMetricHandles, topicOrDatastreamName,
+        THROUGHPUT_VIOLATING_EVENTS_LATENCY_MS_STRING, THROUGHPUT_VIOLATING_EVENTS_SEND_LATENCY_MS_STRING, false);
     // Treat all events within this record equally (assume same timestamp)
     if (eventsSourceTimestamp > 0) {
       // Report availability metrics
       long sourceToDestinationLatencyMs = System.currentTimeMillis() - eventsSourceTimestamp;
-      reportEventLatencyMetrics(topicOrDatastreamName, metadata, sourceToDestinationLatencyMs, THROUGHPUT_VIOLATING_EVENTS_LATENCY_MS_STRING);
+      reportEventLatencyMetrics(handles, metadata, sourceToDestinationLatencyMs,
+          THROUGHPUT_VIOLATING_EVENTS_LATENCY_MS_STRING);
 
-      reportSLAMetrics(topicOrDatastreamName, sourceToDestinationLatencyMs <= _availabilityThresholdAlternateSlaMs,
-          EVENTS_PRODUCED_WITHIN_ALTERNATE_SLA, EVENTS_PRODUCED_OUTSIDE_ALTERNATE_SLA);
+      reportSLAMetrics(handles._eventsProducedWithinAlternateSla, handles._eventsProducedOutsideAlternateSla,
+          sourceToDestinationLatencyMs <= _availabilityThresholdAlternateSlaMs);
 
       if (_logger.isDebugEnabled()) {
         if (sourceToDestinationLatencyMs > _availabilityThresholdAlternateSlaMs) {
@@ -444,9 +633,9 @@ public class EventProducer implements DatastreamEventProducer {
         }
       }
 
-      _dynamicMetricsManager.createOrUpdateCounter(MODULE, AGGREGATE, TOTAL_EVENTS_PRODUCED, 1);
-      _dynamicMetricsManager.createOrUpdateCounter(MODULE, _datastreamTask.getConnectorType(), TOTAL_EVENTS_PRODUCED,
-          1);
+      for (Counter counter : handles._totalEventsProduced) {
+        counter.inc();
+      }
 
       // Log information about events if either warn logging is enabled or logging for topic partitions outside
       // alternate SLA is enabled
@@ -456,42 +645,57 @@ public class EventProducer implements DatastreamEventProducer {
     // Report the time it took to just send the events to destination
     if (eventsSendTimestamp > 0) {
       long sendLatency = System.currentTimeMillis() - eventsSendTimestamp;
-      reportSendLatencyMetrics(metadata, sendLatency, THROUGHPUT_VIOLATING_EVENTS_SEND_LATENCY_MS_STRING);
+      reportSendLatencyMetrics(handles, sendLatency);
+    }
+    for (Meter meter : handles._eventProduceRate) {
+      meter.mark();
     }
-    _dynamicMetricsManager.createOrUpdateMeter(MODULE, AGGREGATE, EVENT_PRODUCE_RATE, 1);
-    _dynamicMetricsManager.createOrUpdateMeter(MODULE, _datastreamTask.getConnectorType(), EVENT_PRODUCE_RATE, 1);
   }
 
   // Report Event Latency metrics for aggregate, connector and topic/datastream
-  private void reportEventLatencyMetrics(String topicOrDatastreamName, DatastreamRecordMetadata metadata,
+  private void reportEventLatencyMetrics(MetricHandles handles, DatastreamRecordMetadata metadata,
       long sourceToDestinationLatencyMs, String eventLatencyMetricName) {
     // Using a time sliding window for reporting latency specifically.
     // Otherwise we report very stuck max value for slow source
-    _dynamicMetricsManager.createOrUpdateSlidingWindowHistogram(MODULE, topicOrDatastreamName, eventLatencyMetricName,
-        LATENCY_SLIDING_WINDOW_LENGTH_MS, sourceToDestinationLatencyMs);
-    _dynamicMetricsManager.createOrUpdateSlidingWindowHistogram(MODULE, AGGREGATE, eventLatencyMetricName,
-        LATENCY_SLIDING_WINDOW_LENGTH_MS, sourceToDestinationLatencyMs);
-    _dynamicMetricsManager.createOrUpdateSlidingWindowHistogram(MODULE, _datastreamTask.getConnectorType(),
-        eventLatencyMetricName, LATENCY_SLIDING_WINDOW_LENGTH_MS, sourceToDestinationLatencyMs);
+    for (Histogram histogram : handles._eventsLatencyMs) {
+      histogram.update(sourceToDestinationLatencyMs);
+    }
 
     // Only update the per topic latency metric here if 'enablePerTopicMetrics' is false, otherwise this will
     // update the metric twice.
     if (_enablePerTopicEventLatencyMetrics && !_enablePerTopicMetrics) {
-      _dynamicMetricsManager.createOrUpdateSlidingWindowHistogram(MODULE, metadata.getTopic(), eventLatencyMetricName,
-          LATENCY_SLIDING_WINDOW_LENGTH_MS, sourceToDestinationLatencyMs);
+      _dynamicMetricsManager.createOrUpdateBucketedSlidingWindowHistogram(MODULE, metadata.getTopic(),
+          eventLatencyMetricName, LATENCY_SLIDING_WINDOW_LENGTH_MS, sourceToDestinationLatencyMs);
     }
   }
 
   // Report Send to destination Latency metrics for aggregate, connector and topic/datastream
-  private void reportSendLatencyMetrics(DatastreamRecordMetadata metadata, long sendLatency,
-      String sendLatencyMetricName) {
-    String topicOrDatastreamName = _enablePerTopicMetrics ? metadata.getTopic() : getDatastreamName();
-    _dynamicMetricsManager.createOrUpdateHistogram(MODULE, topicOrDatastreamName,
-        sendLatencyMetricName, sendLatency);
-    _dynamicMetricsManager.createOrUpdateHistogram(MODULE, AGGREGATE,
-        sendLatencyMetricName, sendLatency);
-    _dynamicMetricsManager.createOrUpdateHistogram(MODULE, _datastreamTask.getConnectorType(),
-        sendLatencyMetricName, sendLatency);
+  private void reportSendLatencyMetrics(MetricHandles handles, long sendLatency) {
+    for (Histogram histogram : handles._eventsSendLatencyMs) {
+      histogram.update(sendLatency);
+    }
+  }
+
+  private MetricHandles getMetricHandles(Map<String, MetricHandles> handlesMap, String topicOrDatastreamName,
+      String eventsLatencyMetricName, String eventsSendLatencyMetricName, boolean includeMainSla) {
+    MetricHandles handles = handlesMap.get(topicOrDatastreamName);
+    if (handles == null || handles._trackedKey.isEvicted()) {
+      dropEvictedMetricHandles();
+      handles = handlesMap.compute(topicOrDatastreamName, (key, current) -> current == null || current._trackedKey.isEvicted()
+          ? new MetricHandles(key, eventsLatencyMetricName, eventsSendLatencyMetricName, includeMainSla) : current);
+    }
+    handles._trackedKey.touch();
+    return handles;
+  }
+
+  // Drop the handles of the keys evicted since the last call, so that they do not keep the unregistered metrics alive
+  private synchronized void dropEvictedMetricHandles() {
+    long numEvictedMetricKeys = _dynamicMetricsManager.getNumEvictedKeys(MODULE);
+    if (numEvictedMetricKeys != _numEvictedMetricKeys) {
+      _numEvictedMetricKeys = numEvictedMetricKeys;
+      _metricHandles.values().removeIf(handles -> handles._trackedKey.isEvicted());
+      _throughputViolatingMetricHandles.values().removeIf(handles -> handles._trackedKey.isEvicted());
+    }
   }
 
   private void onSendCallback(DatastreamRecordMetadata metadata, Exception exception, SendCallback sendCallback,
@@ -551,14 +755,24 @@ public class EventProducer implements DatastreamEventProducer {
 
   @Override
   public void flush() {
-    Instant beforeFlush = Instant.now();
+    long beforeFlush = System.currentTimeMillis();
+    // Events sent from now on are not covered by this flush
+    _sentSinceLastFlush = false;
+    boolean isFlushed = false;
     try {
       _transportProvider.flush();
       _checkpointProvider.flush();
-      _lastFlushTime = Instant.now();
+      _lastFlushTimeMs = System.currentTimeMillis();
+      isFlushed = true;
     } finally {
+      if (!isFlushed) {
+        // The events sent before are still to be flushed, so the next periodic flush must retry even if nothing else
+        // is sent
+        _sentSinceLastFlush = true;
+      }
+
       // Report flush latency metrics
-      long flushLatencyMs = Duration.between(beforeFlush, _lastFlushTime).toMillis();
+      long flushLatencyMs = System.currentTimeMillis() - beforeFlush;
       _dynamicMetricsManager.createOrUpdateHistogram(MODULE, AGGREGATE, FLUSH_LATENCY_MS_STRING, flushLatencyMs);
       _dynamicMetricsManager.createOrUpdateHistogram(MODULE, _datastreamTask.getConnectorType(), FLUSH_LATENCY_MS_STRING,
           flushLatencyMs);
@@ -592,12 +806,34 @@ public class EventProducer implements DatastreamEventProducer {
    * Shuts down the event producer by flushing the checkpoints and closing the transport provider
    */
   public void shutdown(boolean skipCheckpoint) {
+    _isShutdown = true;
+    // The periodic flush in progress, if any, does not schedule another one once it sees the shutdown
+    ScheduledFuture<?> periodicFlushFuture = _periodicFlushFuture;
+    if (periodicFlushFuture != null) {
+      periodicFlushFuture.cancel(false);
+    }
+    awaitPeriodicFlush();
     if (!skipCheckpoint) {
       _checkpointProvider.flush();
     }
     _transportProvider.close();
   }
 
+  // Wait for the periodic flush in progress, if any, for a bounded time, so that a stuck flush of the transport provider
+  // does not block the shutdown of the task. Closing the transport provider then lets such a flush fail.
+  private void awaitPeriodicFlush() {
+    try {
+      if (_periodicFlushLock.tryLock(_periodicFlushShutdownTimeoutMs, TimeUnit.MILLISECONDS)) {
+        _periodicFlushLock.unlock();
+      } else {
+        _logger.warn("Periodic flush still in progress after {} ms, shutting down anyway", _periodicFlushShutdownTimeoutMs);
+      }
+    } catch (InterruptedException e) {
+      _logger.warn("Interrupted while waiting for the periodic flush in progress, shutting down anyway");
+      Thread.currentThread().interrupt();
+    }
+  }
+
   @Override
   public String toString() {
     return String.format("EventProducer producerId=%d", _producerId);
@@ -629,7 +865,56 @@ public class EventProducer implements DatastreamEventProducer {
             BrooklinHistogramInfo.PERCENTILE_999))));
     metrics.add(new BrooklinHistogramInfo(METRICS_PREFIX + THROUGHPUT_VIOLATING_EVENTS_SEND_LATENCY_MS_STRING));
     metrics.add(new BrooklinHistogramInfo(METRICS_PREFIX + FLUSH_LATENCY_MS_STRING));
+    metrics.add(new BrooklinHistogramInfo(METRICS_PREFIX + PERIODIC_FLUSH_LATENCY_MS_STRING));
 
     return Collections.unmodifiableList(metrics);
   }
+
+  /**
+   * Handles to the metrics reported on every send callback for a topic or datastream name. Each array holds the
+   * metric for every key it is reported under, i.e. the topic or datastream name (except for the total events
+   * produced and the produce rate), aggregate and the connector type. Only the topic or datastream name key is
+   * tracked against the key limit of the module; the handles must be resolved again once it is evicted.
+   */
+  private final class MetricHandles {
+    private final TrackedMetricKey _trackedKey;
+    private final Histogram[] _eventsLatencyMs;
+    private final Histogram[] _eventsSendLatencyMs;
+    private final Counter[] _eventsProducedWithinSla;
+    private final Counter[] _eventsProducedOutsideSla;
+    private final Counter[] _eventsProducedWithinAlternateSla;
+    private final Counter[] _eventsProducedOutsideAlternateSla;
+    private final Counter[] _totalEventsProduced;
+    private final Meter[] _eventProduceRate;
+
+    MetricHandles(String topicOrDatastreamName, String eventsLatencyMetricName, String eventsSendLatencyMetricName,
+        boolean includeMainSla) {
+      _trackedKey = _dynamicMetricsManager.trackKey(MODULE, topicOrDatastreamName);
+      String connectorType = _datastreamTask.getConnectorType();
+      String[] keys = {topicOrDatastreamName, AGGREGATE, connectorType};
+      _eventsLatencyMs = Arrays.stream(keys)
+          .map(key -> _dynamicMetricsManager.registerBucketedSlidingWindowHistogramHandle(MODULE, key,
+              eventsLatencyMetricName, LATENCY_SLIDING_WINDOW_LENGTH_MS))
+          .toArray(Histogram[]::new);
+      _eventsSendLatencyMs = Arrays.stream(keys)
+          .map(key -> _dynamicMetricsManager.registerBucketedSlidingWindowHistogramHandle(MODULE, key,
+              eventsSendLatencyMetricName, LATENCY_SLIDING_WINDOW_LENGTH_MS))
+          .toArray(Histogram[]::new);
+      _eventsProducedWithinSla =
+          includeMainSla ? registerCounterHandles(keys, EVENTS_PRODUCED_WITHIN_SLA) : new Counter[0];
+      _eventsProducedOutsideSla =
+          includeMainSla ? registerCounterHandles(keys, EVENTS_PRODUCED_OUTSIDE_SLA) : new Counter[0];
+      _eventsProducedWithinAlternateSla = registerCounterHandles(keys, EVENTS_PRODUCED_WITHIN_ALTERNATE_SLA);
+      _eventsProducedOutsideAlternateSla = registerCounterHandles(keys, EVENTS_PRODUCED_OUTSIDE_ALTERNATE_SLA);
+      _totalEventsProduced = registerCounterHandles(new String[]{AGGREGATE, connectorType}, TOTAL_EVENTS_PRODUCED);
+      _eventProduceRate = new Meter[]{_dynamicMetricsManager.registerMeterHandle(MODULE, AGGREGATE, EVENT_PRODUCE_RATE),
+          _dynamicMetricsManager.registerMeterHandle(MODULE, connectorType, EVENT_PRODUCE_RATE)};
+    }
+
+    private Counter[] registerCounterHandles(String[] keys, String metricName) {
+      return Arrays.stream(keys)
+          .map(key -> _dynamicMetricsManager.registerCounterHandle(MODULE, key, metricName))
+          .toArray(Counter[]::new);
+    }
+  }
 }
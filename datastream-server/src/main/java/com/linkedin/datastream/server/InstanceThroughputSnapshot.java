@@ -0,0 +1,131 @@
+/**
+ *  Copyright 2021 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.server;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import com.linkedin.datastream.common.JsonUtils;
+
+
+/**
+ * Data structure to store the throughput of the partitions consumed by an instance, as published to ZooKeeper under
+ * {@code /{cluster}/instances/{instanceName}/throughput}. To keep the znode compact, the rates of each partition are
+ * stored as a [bytesInKBRate, messagesInRate] pair.
+ */
+public class InstanceThroughputSnapshot {
+  private long _timestamp;
+  private Map<String, Map<String, int[]>> _partitionThroughput;
+
+  /**
+   * Constructor for InstanceThroughputSnapshot
+   * @param timestamp Time at which the rates were observed, in milliseconds since the epoch
+   * @param partitionThroughputInfo A map, where the key is the task prefix of the datastream group, and the value is a
+   *                                map of the partition name to the {@link PartitionThroughputInfo} of the partition
+   */
+  public InstanceThroughputSnapshot(long timestamp,
+      Map<String, Map<String, PartitionThroughputInfo>> partitionThroughputInfo) {
+    _timestamp = timestamp;
+    _partitionThroughput = new HashMap<>();
+    partitionThroughputInfo.forEach((taskPrefix, partitions) -> {
+      Map<String, int[]> rates = new HashMap<>();
+      partitions.forEach((partition, info) ->
+          rates.put(partition, new int[]{info.getBytesInKBRate(), info.getMessagesInRate()}));
+      _partitionThroughput.put(taskPrefix, rates);
+    });
+  }
+
+  /**
+   * Constructor for InstanceThroughputSnapshot, required for json
+   */
+  public InstanceThroughputSnapshot() {
+
+  }
+
+  /**
+   * create InstanceThroughputSnapshot from json
+   */
+  public static InstanceThroughputSnapshot fromJson(String json) {
+    return JsonUtils.fromJson(json, InstanceThroughputSnapshot.class);
+  }
+
+  /**
+   * convert this object to json
+   */
+  public String toJson() {
+    return JsonUtils.toJson(this);
+  }
+
+  /**
+   * Get the throughput of the partitions of a datastream group
+   * @param taskPrefix Task prefix of the datastream group
+   * @return A map, where the key is the partition name, and the value is the {@link PartitionThroughputInfo} of the
+   * partition
+   */
+  public Map<String, PartitionThroughputInfo> getPartitionThroughputInfo(String taskPrefix) {
+    Map<String, PartitionThroughputInfo> partitionInfoMap = new HashMap<>();
+    _partitionThroughput.getOrDefault(taskPrefix, new HashMap<>()).forEach((partition, rates) ->
+        partitionInfoMap.put(partition, new PartitionThroughputInfo(rates[0], rates[1], partition)));
+    return partitionInfoMap;
+  }
+
+  /**
+   * Get the number of partitions of all the datastream groups in the snapshot
+   */
+  @JsonIgnore
+  public int getNumPartitions() {
+    return _partitionThroughput.values().stream().mapToInt(Map::size).sum();
+  }
+
+  /**
+   * Get a snapshot which only has the partitions with the highest throughput, to bound the size of the snapshot
+   * @param maxPartitions Maximum number of partitions to keep, across all the datastream groups
+   * @return A snapshot with the same timestamp, which has at most maxPartitions partitions
+   */
+  public InstanceThroughputSnapshot withHighestThroughputPartitions(int maxPartitions) {
+    // The partitions as (task prefix, partition name) pairs, by decreasing throughput
+    List<Map.Entry<String, String>> partitions = new ArrayList<>();
+    _partitionThroughput.forEach((taskPrefix, rates) ->
+        rates.keySet().forEach(partition -> partitions.add(new AbstractMap.SimpleEntry<>(taskPrefix, partition))));
+    Comparator<Map.Entry<String, String>> byBytesInRate = Comparator.comparingInt(partition -> getRates(partition)[0]);
+    partitions.sort(byBytesInRate.thenComparingInt(partition -> getRates(partition)[1]).reversed());
+
+    Map<String, Map<String, int[]>> partitionThroughput = new HashMap<>();
+    partitions.stream().limit(maxPartitions).forEach(partition ->
+        partitionThroughput.computeIfAbsent(partition.getKey(), k -> new HashMap<>())
+            .put(partition.getValue(), getRates(partition)));
+    InstanceThroughputSnapshot snapshot = new InstanceThroughputSnapshot();
+    snapshot.setTimestamp(_timestamp);
+    snapshot.setPartitionThroughput(partitionThroughput);
+    return snapshot;
+  }
+
+  private int[] getRates(Map.Entry<String, String> partition) {
+    return _partitionThroughput.get(partition.getKey()).get(partition.getValue());
+  }
+
+  public long getTimestamp() {
+    return _timestamp;
+  }
+
+  public Map<String, Map<String, int[]>> getPartitionThroughput() {
+    return _partitionThroughput;
+  }
+
+  public void setTimestamp(long timestamp) {
+    _timestamp = timestamp;
+  }
+
+  public void setPartitionThroughput(Map<String, Map<String, int[]>> partitionThroughput) {
+    _partitionThroughput = partitionThroughput;
+  }
+}
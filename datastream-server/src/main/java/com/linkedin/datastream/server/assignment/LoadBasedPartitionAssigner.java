@@ -186,6 +186,28 @@ public class LoadBasedPartitionAssigner implements MetricsAware {
       unrecognizedPartitionCountPerTask.put(currentTask, unrecognizedPartitionCountPerTask.getOrDefault(currentTask, 0) + 1);
     }
 
+    return buildNewAssignment(currentAssignment, newPartitionAssignmentMap, tasksWithChangedPartition,
+        partitionInfoMap, taskThroughputMap, unrecognizedPartitionCountPerTask, partitionMetadata);
+  }
+
+  /**
+   * Builds the new assignment, replacing the tasks of the datastream group whose partitions changed with new tasks
+   * holding their new partitions and assignment stats, and updates the metrics of the datastream group.
+   * @param currentAssignment Current assignment
+   * @param newPartitionAssignmentMap New partitions of each task of the datastream group, by task ID
+   * @param tasksWithChangedPartition IDs of the tasks whose partitions changed
+   * @param partitionInfoMap Per partition throughput information
+   * @param taskThroughputMap Bytes in rate in KB of each task, by task ID
+   * @param unrecognizedPartitionCountPerTask Number of partitions without throughput information assigned to each
+   *                                          task, by task ID
+   * @param partitionMetadata Partition metadata
+   * @return New assignment
+   */
+  Map<String, Set<DatastreamTask>> buildNewAssignment(Map<String, Set<DatastreamTask>> currentAssignment,
+      Map<String, Set<String>> newPartitionAssignmentMap, Set<String> tasksWithChangedPartition,
+      Map<String, PartitionThroughputInfo> partitionInfoMap, Map<String, Integer> taskThroughputMap,
+      Map<String, Integer> unrecognizedPartitionCountPerTask, DatastreamGroupPartitionsMetadata partitionMetadata) {
+    String datastreamGroupName = partitionMetadata.getDatastreamGroup().getName();
     // build the new assignment using the new partitions for the affected datastream's tasks
     LOG.info("Finishing building new assignment");
     Map<String, Set<DatastreamTask>> newAssignments = currentAssignment.entrySet().stream()
@@ -243,7 +265,7 @@ public class LoadBasedPartitionAssigner implements MetricsAware {
     }
   }
 
-  private void validatePartitionCountAndThrow(String datastream, int numTasks, int numPartitions,
+  void validatePartitionCountAndThrow(String datastream, int numTasks, int numPartitions,
       int maxPartitionsPerTask) {
     // conversion to long to avoid integer overflow
     if (numTasks * (long) maxPartitionsPerTask < numPartitions) {
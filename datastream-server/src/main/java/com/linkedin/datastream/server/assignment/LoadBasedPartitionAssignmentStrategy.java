@@ -70,6 +70,25 @@ public class LoadBasedPartitionAssignmentStrategy extends StickyPartitionAssignm
       int throughputInfoFetchTimeoutMs, int throughputInfoFetchRetryPeriodMs, ZkClient zkClient, String clusterName,
       boolean enableThroughputBasedPartitionAssignment, boolean enablePartitionNumBasedTaskCountEstimation,
       int defaultPartitionBytesInKBRate, int defaultPartitionMsgsInRate, double logSizeLimitInBytes) {
+    this(throughputProvider, maxTasks, imbalanceThreshold, maxPartitionPerTask, enableElasticTaskAssignment,
+        partitionsPerTask, partitionFullnessFactorPct, taskCapacityMBps, taskCapacityUtilizationPct,
+        throughputInfoFetchTimeoutMs, throughputInfoFetchRetryPeriodMs, zkClient, clusterName,
+        enableThroughputBasedPartitionAssignment, enablePartitionNumBasedTaskCountEstimation,
+        defaultPartitionBytesInKBRate, defaultPartitionMsgsInRate, logSizeLimitInBytes,
+        new LoadBasedPartitionAssigner(defaultPartitionBytesInKBRate, defaultPartitionMsgsInRate));
+  }
+
+  /**
+   * Creates an instance of {@link LoadBasedPartitionAssignmentStrategy} which assigns the partitions with the given
+   * assigner
+   */
+  public LoadBasedPartitionAssignmentStrategy(PartitionThroughputProvider throughputProvider, Optional<Integer> maxTasks,
+      int imbalanceThreshold, int maxPartitionPerTask, boolean enableElasticTaskAssignment, int partitionsPerTask,
+      int partitionFullnessFactorPct, int taskCapacityMBps, int taskCapacityUtilizationPct,
+      int throughputInfoFetchTimeoutMs, int throughputInfoFetchRetryPeriodMs, ZkClient zkClient, String clusterName,
+      boolean enableThroughputBasedPartitionAssignment, boolean enablePartitionNumBasedTaskCountEstimation,
+      int defaultPartitionBytesInKBRate, int defaultPartitionMsgsInRate, double logSizeLimitInBytes,
+      LoadBasedPartitionAssigner assigner) {
     super(maxTasks, imbalanceThreshold, maxPartitionPerTask, enableElasticTaskAssignment, partitionsPerTask,
         partitionFullnessFactorPct, zkClient, clusterName);
     _throughputProvider = throughputProvider;
@@ -88,7 +107,7 @@ public class LoadBasedPartitionAssignmentStrategy extends StickyPartitionAssignm
         + "partition num based task count estimation : {}", _taskCapacityMBps, _taskCapacityUtilizationPct,
         _throughputInfoFetchTimeoutMs, _throughputInfoFetchRetryPeriodMs, _enableThroughputBasedPartitionAssignment ?
             "enabled" : "disabled", _enablePartitionNumBasedTaskCountEstimation ? "enabled" : "disabled");
-    _assigner = new LoadBasedPartitionAssigner(defaultPartitionBytesInKBRate, defaultPartitionMsgsInRate);
+    _assigner = assigner;
   }
 
   /**
@@ -240,6 +259,7 @@ public class LoadBasedPartitionAssignmentStrategy extends StickyPartitionAssignm
   @Override
   public void cleanupStrategy() {
     _assigner.cleanupMetrics();
+    _throughputProvider.close();
     super.cleanupStrategy();
   }
 
@@ -24,6 +24,11 @@ public class LoadBasedPartitionAssignmentStrategyConfig extends PartitionAssignm
   public static final String CFG_DEFAULT_PARTITION_BYTES_IN_KB_RATE = "defaultPartitionBytesInKBRate";
   public static final String CFG_DEFAULT_PARTITION_MSGS_IN_RATE = "defaultPartitionMsgsInRate";
   public static final String CFG_LOG_SIZE_LIMIT_IN_BYTES = "logSizeLimitInBytes";
+  public static final String CFG_ENABLE_MULTI_DIMENSIONAL_PARTITION_ASSIGNMENT = "enableMultiDimensionalPartitionAssignment";
+  public static final String CFG_MAX_PARTITION_MOVES_PER_REBALANCE = "maxPartitionMovesPerRebalance";
+  public static final String CFG_ENABLE_LIVE_THROUGHPUT_INFO = "enableLiveThroughputInfo";
+  public static final String CFG_LIVE_THROUGHPUT_INFO_REFRESH_INTERVAL_MS = "liveThroughputInfoRefreshIntervalMs";
+  public static final String CFG_LIVE_THROUGHPUT_INFO_TTL_MS = "liveThroughputInfoTtlMs";
 
   private static final int DEFAULT_THROUGHPUT_INFO_FETCH_TIMEOUT_MS = (int) Duration.ofSeconds(10).toMillis();
   private static final int DEFAULT_THROUGHPUT_INFO_FETCH_RETRY_PERIOD_MS = (int) Duration.ofSeconds(1).toMillis();
@@ -34,6 +39,11 @@ public class LoadBasedPartitionAssignmentStrategyConfig extends PartitionAssignm
   private static final int DEFAULT_PARTITION_BYTES_IN_KB_RATE = 5;
   private static final int DEFAULT_PARTITION_MSGS_IN_RATE = 5;
   private static final double DEFAULT_LOG_SIZE_LIMIT_IN_BYTES = 1024 * 1024;
+  private static final boolean DEFAULT_ENABLE_MULTI_DIMENSIONAL_PARTITION_ASSIGNMENT = false;
+  private static final int DEFAULT_MAX_PARTITION_MOVES_PER_REBALANCE = 100;
+  private static final boolean DEFAULT_ENABLE_LIVE_THROUGHPUT_INFO = false;
+  private static final long DEFAULT_LIVE_THROUGHPUT_INFO_REFRESH_INTERVAL_MS = Duration.ofMinutes(1).toMillis();
+  private static final long DEFAULT_LIVE_THROUGHPUT_INFO_TTL_MS = Duration.ofMinutes(10).toMillis();
 
 
   private final int _taskCapacityMBps;
@@ -45,6 +55,11 @@ public class LoadBasedPartitionAssignmentStrategyConfig extends PartitionAssignm
   private final int _defaultPartitionBytesInKBRate;
   private final int _defaultPartitionMsgsInRate;
   private final double _logSizeLimitInBytes;
+  private final boolean _enableMultiDimensionalPartitionAssignment;
+  private final int _maxPartitionMovesPerRebalance;
+  private final boolean _enableLiveThroughputInfo;
+  private final long _liveThroughputInfoRefreshIntervalMs;
+  private final long _liveThroughputInfoTtlMs;
 
   /**
    * Creates an instance of {@link LoadBasedPartitionAssignmentStrategyConfig}
@@ -64,6 +79,15 @@ public class LoadBasedPartitionAssignmentStrategyConfig extends PartitionAssignm
     _defaultPartitionBytesInKBRate = props.getInt(CFG_DEFAULT_PARTITION_BYTES_IN_KB_RATE, DEFAULT_PARTITION_BYTES_IN_KB_RATE);
     _defaultPartitionMsgsInRate = props.getInt(CFG_DEFAULT_PARTITION_MSGS_IN_RATE, DEFAULT_PARTITION_MSGS_IN_RATE);
     _logSizeLimitInBytes = props.getDouble(CFG_LOG_SIZE_LIMIT_IN_BYTES, DEFAULT_LOG_SIZE_LIMIT_IN_BYTES);
+    _enableMultiDimensionalPartitionAssignment = props.getBoolean(CFG_ENABLE_MULTI_DIMENSIONAL_PARTITION_ASSIGNMENT,
+        DEFAULT_ENABLE_MULTI_DIMENSIONAL_PARTITION_ASSIGNMENT);
+    _maxPartitionMovesPerRebalance = props.getIntInRange(CFG_MAX_PARTITION_MOVES_PER_REBALANCE,
+        DEFAULT_MAX_PARTITION_MOVES_PER_REBALANCE, 0, Integer.MAX_VALUE);
+    _enableLiveThroughputInfo = props.getBoolean(CFG_ENABLE_LIVE_THROUGHPUT_INFO, DEFAULT_ENABLE_LIVE_THROUGHPUT_INFO);
+    _liveThroughputInfoRefreshIntervalMs = props.getLongInRange(CFG_LIVE_THROUGHPUT_INFO_REFRESH_INTERVAL_MS,
+        DEFAULT_LIVE_THROUGHPUT_INFO_REFRESH_INTERVAL_MS, 0, Long.MAX_VALUE);
+    _liveThroughputInfoTtlMs = props.getLongInRange(CFG_LIVE_THROUGHPUT_INFO_TTL_MS, DEFAULT_LIVE_THROUGHPUT_INFO_TTL_MS,
+        0, Long.MAX_VALUE);
   }
 
   /**
@@ -125,4 +149,47 @@ public class LoadBasedPartitionAssignmentStrategyConfig extends PartitionAssignm
   public double getLogSizeLimitInBytes() {
     return _logSizeLimitInBytes;
   }
+
+  /**
+   * Check if the partitions are assigned balancing both their bytes in and messages in rates, with
+   * {@link MultiDimensionalPartitionAssigner}
+   * @return True if multi-dimensional partition assignment is enabled else false
+   */
+  public boolean isEnableMultiDimensionalPartitionAssignment() {
+    return _enableMultiDimensionalPartitionAssignment;
+  }
+
+  /**
+   * Gets the maximum number of assigned partitions moved to another task per partition assignment, when
+   * multi-dimensional partition assignment is enabled
+   * @return Maximum number of partition moves per rebalance
+   */
+  public int getMaxPartitionMovesPerRebalance() {
+    return _maxPartitionMovesPerRebalance;
+  }
+
+  /**
+   * Check if the partition throughput is read from the snapshots published to ZooKeeper by the instances of the
+   * cluster, instead of the provider constructed by the factory
+   * @return True if the live throughput info is enabled else false
+   */
+  public boolean isEnableLiveThroughputInfo() {
+    return _enableLiveThroughputInfo;
+  }
+
+  /**
+   * Gets the age after which the live throughput info is refreshed asynchronously
+   * @return Live throughput info refresh interval in milliseconds
+   */
+  public long getLiveThroughputInfoRefreshIntervalMs() {
+    return _liveThroughputInfoRefreshIntervalMs;
+  }
+
+  /**
+   * Gets the age after which the live throughput info, or the snapshot of an instance, is no longer used
+   * @return Live throughput info TTL in milliseconds
+   */
+  public long getLiveThroughputInfoTtlMs() {
+    return _liveThroughputInfoTtlMs;
+  }
 }
@@ -14,6 +14,7 @@ import com.linkedin.datastream.common.zk.ZkClient;
 import com.linkedin.datastream.server.api.strategy.AssignmentStrategy;
 import com.linkedin.datastream.server.providers.NoOpPartitionThroughputProvider;
 import com.linkedin.datastream.server.providers.PartitionThroughputProvider;
+import com.linkedin.datastream.server.providers.ZookeeperPartitionThroughputProvider;
 
 
 /**
@@ -36,7 +37,17 @@ public class LoadBasedPartitionAssignmentStrategyFactory extends StickyPartition
       enableElasticTaskAssignment = false;
     }
 
-    PartitionThroughputProvider provider = constructPartitionThroughputProvider();
+    PartitionThroughputProvider provider;
+    if (config.isEnableLiveThroughputInfo() && zkClient != null) {
+      provider = new ZookeeperPartitionThroughputProvider(zkClient, _config.getCluster(),
+          config.getLiveThroughputInfoRefreshIntervalMs(), config.getLiveThroughputInfoTtlMs());
+    } else {
+      provider = constructPartitionThroughputProvider();
+    }
+    LoadBasedPartitionAssigner assigner = config.isEnableMultiDimensionalPartitionAssignment() ?
+        new MultiDimensionalPartitionAssigner(config.getDefaultPartitionBytesInKBRate(),
+            config.getDefaultPartitionMsgsInRate(), config.getMaxPartitionMovesPerRebalance()) :
+        new LoadBasedPartitionAssigner(config.getDefaultPartitionBytesInKBRate(), config.getDefaultPartitionMsgsInRate());
 
     //TODO: Directly pass the config object.
     return new LoadBasedPartitionAssignmentStrategy(provider, _config.getMaxTasks(),
@@ -45,7 +56,8 @@ public class LoadBasedPartitionAssignmentStrategyFactory extends StickyPartition
         config.getTaskCapacityUtilizationPct(), config.getThroughputInfoFetchTimeoutMs(),
         config.getThroughputInfoFetchRetryPeriodMs(), zkClient, _config.getCluster(),
         config.isEnableThroughputBasedPartitionAssignment(), config.isEnablePartitionNumBasedTaskCountEstimation(),
-        config.getDefaultPartitionBytesInKBRate(), config.getDefaultPartitionMsgsInRate(), config.getLogSizeLimitInBytes());
+        config.getDefaultPartitionBytesInKBRate(), config.getDefaultPartitionMsgsInRate(), config.getLogSizeLimitInBytes(),
+        assigner);
   }
 
   protected PartitionThroughputProvider constructPartitionThroughputProvider() {
@@ -0,0 +1,446 @@
+/**
+ *  Copyright 2021 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.server.assignment;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.linkedin.datastream.common.DatastreamRuntimeException;
+import com.linkedin.datastream.server.ClusterThroughputInfo;
+import com.linkedin.datastream.server.DatastreamGroupPartitionsMetadata;
+import com.linkedin.datastream.server.DatastreamTask;
+import com.linkedin.datastream.server.PartitionThroughputInfo;
+
+
+/**
+ * Performs partition assignment based on partition throughput information, balancing the bytes in and messages in
+ * rates of the tasks together.
+ * <p>
+ * The load of a task is the largest of its bytes in and messages in rates, each relative to the average rate per
+ * task, so that no task is hot in either dimension when the two rates diverge (e.g. a few partitions with large
+ * messages and many with small ones). The unassigned partitions are placed heaviest first on the task whose load they
+ * increase the least. Partitions are then moved from the most to the least loaded task as long as it reduces the load
+ * of the most loaded one, without moving more than a maximum number of the previously assigned partitions.
+ * </p>
+ * <p>
+ * Partitions with no throughput information are weighted with the default rates. Partitions and tasks are referred to
+ * by their index in primitive arrays, so that large datastream groups can be assigned without boxing.
+ * </p>
+ */
+public class MultiDimensionalPartitionAssigner extends LoadBasedPartitionAssigner {
+  private static final Logger LOG = LoggerFactory.getLogger(MultiDimensionalPartitionAssigner.class.getName());
+  // number of the least loaded tasks considered for each unassigned partition
+  private static final int NUM_CANDIDATE_TASKS = 4;
+  // smallest relative reduction of the load of the most loaded task for which a partition is moved
+  private static final double MIN_LOAD_REDUCTION = 1e-6;
+
+  private final int _defaultPartitionBytesInKBRate;
+  private final int _defaultPartitionMsgsInRate;
+  private final int _maxPartitionMovesPerRebalance;
+
+  /**
+   * Constructor of MultiDimensionalPartitionAssigner
+   * @param defaultPartitionBytesInKBRate default bytesIn rate in KB for partition
+   * @param defaultPartitionMsgsInRate default msgsIn rate for partition
+   * @param maxPartitionMovesPerRebalance maximum number of assigned partitions moved to another task per assignment
+   */
+  public MultiDimensionalPartitionAssigner(int defaultPartitionBytesInKBRate, int defaultPartitionMsgsInRate,
+      int maxPartitionMovesPerRebalance) {
+    super(defaultPartitionBytesInKBRate, defaultPartitionMsgsInRate);
+    _defaultPartitionBytesInKBRate = defaultPartitionBytesInKBRate;
+    _defaultPartitionMsgsInRate = defaultPartitionMsgsInRate;
+    _maxPartitionMovesPerRebalance = maxPartitionMovesPerRebalance;
+  }
+
+  /**
+   * Performs partition assignment based on partition throughput information.
+   * @param throughputInfo Per partition throughput information
+   * @param currentAssignment Current assignment
+   * @param unassignedPartitions Unassigned partitions
+   * @param partitionMetadata Partition metadata
+   * @param maxPartitionsPerTask Maximum number of partitions per task
+   * @return New assignment
+   */
+  @Override
+  public Map<String, Set<DatastreamTask>> assignPartitions(ClusterThroughputInfo throughputInfo,
+      Map<String, Set<DatastreamTask>> currentAssignment, Set<String> unassignedPartitions,
+      DatastreamGroupPartitionsMetadata partitionMetadata, int maxPartitionsPerTask) {
+    String datastreamGroupName = partitionMetadata.getDatastreamGroup().getName();
+    LOG.info("START: assignPartitions for datastream={}", datastreamGroupName);
+    Map<String, PartitionThroughputInfo> partitionInfoMap = throughputInfo.getPartitionInfoMap();
+    Set<String> partitions = new HashSet<>(partitionMetadata.getPartitions());
+    Set<String> tasksWithChangedPartition = new HashSet<>();
+
+    // filter out all the tasks for the current datastream group, and retain assignments in a map
+    Map<String, Set<String>> retainedPartitionsByTask = new LinkedHashMap<>();
+    currentAssignment.values().forEach(tasks -> tasks.forEach(task -> {
+      if (task.getTaskPrefix().equals(datastreamGroupName)) {
+        Set<String> retainedPartitions = new HashSet<>(task.getPartitionsV2());
+        retainedPartitions.retainAll(partitions);
+        retainedPartitionsByTask.put(task.getId(), retainedPartitions);
+        if (retainedPartitions.size() != task.getPartitionsV2().size()) {
+          tasksWithChangedPartition.add(task.getId());
+        }
+      }
+    }));
+
+    int numTasks = retainedPartitionsByTask.size();
+    validatePartitionCountAndThrow(datastreamGroupName, numTasks, partitions.size(), maxPartitionsPerTask);
+
+    // index the retained partitions by task, followed by the unassigned partitions
+    String[] taskIds = retainedPartitionsByTask.keySet().toArray(new String[0]);
+    int numRetained = retainedPartitionsByTask.values().stream().mapToInt(Set::size).sum();
+    String[] partitionNames = new String[numRetained + unassignedPartitions.size()];
+    int[] initialOwners = new int[numRetained];
+    int index = 0;
+    for (int task = 0; task < numTasks; task++) {
+      for (String partition : retainedPartitionsByTask.get(taskIds[task])) {
+        initialOwners[index] = task;
+        partitionNames[index++] = partition;
+      }
+    }
+    for (String partition : unassignedPartitions) {
+      partitionNames[index++] = partition;
+    }
+
+    boolean[] unrecognized = new boolean[partitionNames.length];
+    TaskLoads loads = getTaskLoads(partitionNames, partitionInfoMap, numTasks, unrecognized);
+    for (int partition = 0; partition < numRetained; partition++) {
+      loads.add(partition, initialOwners[partition]);
+    }
+
+    LOG.info("Assigning {} unassigned partitions to the least loaded tasks", unassignedPartitions.size());
+    assignUnassignedPartitions(loads, numRetained, maxPartitionsPerTask);
+
+    int numMoves = rebalance(loads, initialOwners, maxPartitionsPerTask);
+    LOG.info("Moved {} assigned partitions of datastream={} across {} tasks, max moves: {}, max task load: {} of the "
+        + "average", numMoves, datastreamGroupName, numTasks, _maxPartitionMovesPerRebalance, loads.getMaxLoad());
+
+    Map<String, Set<String>> newPartitionAssignmentMap = new HashMap<>();
+    Map<String, Integer> taskThroughputMap = new HashMap<>();
+    Map<String, Integer> unrecognizedPartitionCountPerTask = new HashMap<>();
+    for (int task = 0; task < numTasks; task++) {
+      Set<String> taskPartitions = new HashSet<>();
+      int numUnrecognized = 0;
+      for (int partition = loads.first(task); partition >= 0; partition = loads.next(partition)) {
+        taskPartitions.add(partitionNames[partition]);
+        if (partition >= numRetained && unrecognized[partition]) {
+          numUnrecognized++;
+        }
+      }
+      String taskId = taskIds[task];
+      if (!taskPartitions.equals(retainedPartitionsByTask.get(taskId))) {
+        tasksWithChangedPartition.add(taskId);
+      }
+      newPartitionAssignmentMap.put(taskId, taskPartitions);
+      taskThroughputMap.put(taskId, (int) Math.min(Integer.MAX_VALUE, loads.getBytesInKBRate(task)));
+      if (numUnrecognized > 0) {
+        unrecognizedPartitionCountPerTask.put(taskId, numUnrecognized);
+      }
+    }
+
+    return buildNewAssignment(currentAssignment, newPartitionAssignmentMap, tasksWithChangedPartition,
+        partitionInfoMap, taskThroughputMap, unrecognizedPartitionCountPerTask, partitionMetadata);
+  }
+
+  private TaskLoads getTaskLoads(String[] partitionNames, Map<String, PartitionThroughputInfo> partitionInfoMap,
+      int numTasks, boolean[] unrecognized) {
+    long[] bytesInKBRates = new long[partitionNames.length];
+    long[] msgsInRates = new long[partitionNames.length];
+    for (int partition = 0; partition < partitionNames.length; partition++) {
+      // fall back to the topic level information, and then to the default rates
+      PartitionThroughputInfo info = partitionInfoMap.get(partitionNames[partition]);
+      if (info == null) {
+        info = partitionInfoMap.get(extractTopicFromPartition(partitionNames[partition]));
+      }
+      if (info == null) {
+        unrecognized[partition] = true;
+        bytesInKBRates[partition] = _defaultPartitionBytesInKBRate;
+        msgsInRates[partition] = _defaultPartitionMsgsInRate;
+      } else {
+        bytesInKBRates[partition] = info.getBytesInKBRate();
+        msgsInRates[partition] = info.getMessagesInRate();
+      }
+    }
+    return new TaskLoads(numTasks, bytesInKBRates, msgsInRates);
+  }
+
+  // Place the unassigned partitions heaviest first, each on the candidate task whose load it increases the least
+  private static void assignUnassignedPartitions(TaskLoads loads, int firstUnassigned, int maxPartitionsPerTask) {
+    int numPartitions = loads.getNumPartitions();
+    // sort on the partition load, packed with the partition index
+    long[] order = new long[numPartitions - firstUnassigned];
+    for (int partition = firstUnassigned; partition < numPartitions; partition++) {
+      order[partition - firstUnassigned] =
+          ((long) Float.floatToIntBits((float) loads.getLoad(partition)) << 32) | partition;
+    }
+    Arrays.sort(order);
+
+    TaskHeap heap = new TaskHeap(loads);
+    for (int task = 0; task < loads.getNumTasks(); task++) {
+      if (loads.getNumPartitions(task) < maxPartitionsPerTask) {
+        heap.add(task);
+      }
+    }
+
+    int[] candidates = new int[NUM_CANDIDATE_TASKS];
+    for (int i = order.length - 1; i >= 0; i--) {
+      int partition = (int) order[i];
+      int numCandidates = 0;
+      while (numCandidates < NUM_CANDIDATE_TASKS && !heap.isEmpty()) {
+        candidates[numCandidates++] = heap.poll();
+      }
+      if (numCandidates == 0) {
+        throw new DatastreamRuntimeException("No tasks found that can host an additional partition");
+      }
+
+      int best = 0;
+      for (int candidate = 1; candidate < numCandidates; candidate++) {
+        double load = loads.getLoadWith(candidates[candidate], partition);
+        double bestLoad = loads.getLoadWith(candidates[best], partition);
+        if (load < bestLoad || (load == bestLoad
+            && loads.getNumPartitions(candidates[candidate]) < loads.getNumPartitions(candidates[best]))) {
+          best = candidate;
+        }
+      }
+      loads.add(partition, candidates[best]);
+
+      for (int candidate = 0; candidate < numCandidates; candidate++) {
+        if (loads.getNumPartitions(candidates[candidate]) < maxPartitionsPerTask) {
+          heap.add(candidates[candidate]);
+        }
+      }
+    }
+  }
+
+  // Move partitions from the most to the least loaded task while it reduces the load of the most loaded one, and
+  // return the number of retained partitions moved away from their task
+  private int rebalance(TaskLoads loads, int[] initialOwners, int maxPartitionsPerTask) {
+    int numMoves = 0;
+    for (int iteration = 0; iteration < loads.getNumPartitions(); iteration++) {
+      int heaviest = -1;
+      int lightest = -1;
+      for (int task = 0; task < loads.getNumTasks(); task++) {
+        if (heaviest < 0 || loads.compare(task, heaviest) > 0) {
+          heaviest = task;
+        }
+        if (loads.getNumPartitions(task) < maxPartitionsPerTask && (lightest < 0 || loads.compare(task, lightest) < 0)) {
+          lightest = task;
+        }
+      }
+      if (heaviest < 0 || lightest < 0 || heaviest == lightest) {
+        break;
+      }
+
+      int bestPartition = -1;
+      int bestCost = 0;
+      double bestLoad = loads.getTaskLoad(heaviest) * (1 - MIN_LOAD_REDUCTION);
+      for (int partition = loads.first(heaviest); partition >= 0; partition = loads.next(partition)) {
+        int cost = getMoveCost(partition, heaviest, lightest, initialOwners);
+        if (numMoves + cost > _maxPartitionMovesPerRebalance) {
+          continue;
+        }
+        double load = Math.max(loads.getLoadWithout(heaviest, partition), loads.getLoadWith(lightest, partition));
+        if (load < bestLoad) {
+          bestLoad = load;
+          bestPartition = partition;
+          bestCost = cost;
+        }
+      }
+      if (bestPartition < 0) {
+        break;
+      }
+      loads.remove(bestPartition, heaviest);
+      loads.add(bestPartition, lightest);
+      numMoves += bestCost;
+    }
+    return numMoves;
+  }
+
+  // Moving an unassigned partition is free, and moving a retained partition back to its task cancels a move
+  private static int getMoveCost(int partition, int from, int to, int[] initialOwners) {
+    if (partition >= initialOwners.length) {
+      return 0;
+    }
+    return (initialOwners[partition] == from ? 1 : 0) - (initialOwners[partition] == to ? 1 : 0);
+  }
+
+  /**
+   * The bytes in and messages in rates of each task, and its partitions as a doubly linked list of partition indexes
+   */
+  private static class TaskLoads {
+    private final long[] _partitionBytesInKBRates;
+    private final long[] _partitionMsgsInRates;
+    private final long[] _taskBytesInKBRates;
+    private final long[] _taskMsgsInRates;
+    private final int[] _taskNumPartitions;
+    private final int[] _taskFirstPartitions;
+    private final int[] _nextPartitions;
+    private final int[] _previousPartitions;
+    // weights making each rate relative to the average rate per task
+    private final double _bytesInWeight;
+    private final double _msgsInWeight;
+
+    TaskLoads(int numTasks, long[] partitionBytesInKBRates, long[] partitionMsgsInRates) {
+      _partitionBytesInKBRates = partitionBytesInKBRates;
+      _partitionMsgsInRates = partitionMsgsInRates;
+      _taskBytesInKBRates = new long[numTasks];
+      _taskMsgsInRates = new long[numTasks];
+      _taskNumPartitions = new int[numTasks];
+      _taskFirstPartitions = new int[numTasks];
+      Arrays.fill(_taskFirstPartitions, -1);
+      _nextPartitions = new int[partitionBytesInKBRates.length];
+      _previousPartitions = new int[partitionBytesInKBRates.length];
+
+      long totalBytesInKBRate = Arrays.stream(partitionBytesInKBRates).sum();
+      long totalMsgsInRate = Arrays.stream(partitionMsgsInRates).sum();
+      _bytesInWeight = totalBytesInKBRate == 0 ? 0 : (double) numTasks / totalBytesInKBRate;
+      _msgsInWeight = totalMsgsInRate == 0 ? 0 : (double) numTasks / totalMsgsInRate;
+    }
+
+    int getNumTasks() {
+      return _taskNumPartitions.length;
+    }
+
+    int getNumPartitions() {
+      return _nextPartitions.length;
+    }
+
+    int getNumPartitions(int task) {
+      return _taskNumPartitions[task];
+    }
+
+    long getBytesInKBRate(int task) {
+      return _taskBytesInKBRates[task];
+    }
+
+    double getLoad(int partition) {
+      return load(_partitionBytesInKBRates[partition], _partitionMsgsInRates[partition]);
+    }
+
+    double getTaskLoad(int task) {
+      return load(_taskBytesInKBRates[task], _taskMsgsInRates[task]);
+    }
+
+    double getLoadWith(int task, int partition) {
+      return load(_taskBytesInKBRates[task] + _partitionBytesInKBRates[partition],
+          _taskMsgsInRates[task] + _partitionMsgsInRates[partition]);
+    }
+
+    double getLoadWithout(int task, int partition) {
+      return load(_taskBytesInKBRates[task] - _partitionBytesInKBRates[partition],
+          _taskMsgsInRates[task] - _partitionMsgsInRates[partition]);
+    }
+
+    double getMaxLoad() {
+      double maxLoad = 0;
+      for (int task = 0; task < getNumTasks(); task++) {
+        maxLoad = Math.max(maxLoad, getTaskLoad(task));
+      }
+      return maxLoad;
+    }
+
+    // compare the tasks on their load, and then on their number of partitions
+    int compare(int task1, int task2) {
+      int result = Double.compare(getTaskLoad(task1), getTaskLoad(task2));
+      return result != 0 ? result : Integer.compare(_taskNumPartitions[task1], _taskNumPartitions[task2]);
+    }
+
+    int first(int task) {
+      return _taskFirstPartitions[task];
+    }
+
+    int next(int partition) {
+      return _nextPartitions[partition];
+    }
+
+    void add(int partition, int task) {
+      int first = _taskFirstPartitions[task];
+      _nextPartitions[partition] = first;
+      _previousPartitions[partition] = -1;
+      if (first >= 0) {
+        _previousPartitions[first] = partition;
+      }
+      _taskFirstPartitions[task] = partition;
+      _taskBytesInKBRates[task] += _partitionBytesInKBRates[partition];
+      _taskMsgsInRates[task] += _partitionMsgsInRates[partition];
+      _taskNumPartitions[task]++;
+    }
+
+    void remove(int partition, int task) {
+      int next = _nextPartitions[partition];
+      int previous = _previousPartitions[partition];
+      if (previous >= 0) {
+        _nextPartitions[previous] = next;
+      } else {
+        _taskFirstPartitions[task] = next;
+      }
+      if (next >= 0) {
+        _previousPartitions[next] = previous;
+      }
+      _taskBytesInKBRates[task] -= _partitionBytesInKBRates[partition];
+      _taskMsgsInRates[task] -= _partitionMsgsInRates[partition];
+      _taskNumPartitions[task]--;
+    }
+
+    private double load(long bytesInKBRate, long msgsInRate) {
+      return Math.max(bytesInKBRate * _bytesInWeight, msgsInRate * _msgsInWeight);
+    }
+  }
+
+  /**
+   * A binary min heap of task indexes, ordered on the task loads
+   */
+  private static class TaskHeap {
+    private final TaskLoads _loads;
+    private final int[] _tasks;
+    private int _size = 0;
+
+    TaskHeap(TaskLoads loads) {
+      _loads = loads;
+      _tasks = new int[loads.getNumTasks()];
+    }
+
+    boolean isEmpty() {
+      return _size == 0;
+    }
+
+    void add(int task) {
+      int i = _size++;
+      while (i > 0 && _loads.compare(task, _tasks[(i - 1) / 2]) < 0) {
+        _tasks[i] = _tasks[(i - 1) / 2];
+        i = (i - 1) / 2;
+      }
+      _tasks[i] = task;
+    }
+
+    int poll() {
+      int top = _tasks[0];
+      int task = _tasks[--_size];
+      int i = 0;
+      while (2 * i + 1 < _size) {
+        int child = 2 * i + 1;
+        if (child + 1 < _size && _loads.compare(_tasks[child + 1], _tasks[child]) < 0) {
+          child++;
+        }
+        if (_loads.compare(_tasks[child], task) >= 0) {
+          break;
+        }
+        _tasks[i] = _tasks[child];
+        i = child;
+      }
+      _tasks[i] = task;
+      return top;
+    }
+  }
+}
@@ -8,11 +8,15 @@ package com.linkedin.datastream.server.providers;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.Validate;
@@ -53,6 +57,12 @@ public class ZookeeperCheckpointProvider implements CheckpointProvider {
 
   private final ConcurrentHashMap<DatastreamTask, Map<Integer, String>> _checkpointsToCommit = new ConcurrentHashMap<>();
   private final ConcurrentHashMap<DatastreamTask, Instant> _lastCommitTime = new ConcurrentHashMap<>();
+  // Checkpoints last committed to ZooKeeper for each task. Since the task is only committed to by the instance it is
+  // assigned to, they are read from ZooKeeper once per assignment instead of before every write.
+  private final ConcurrentHashMap<DatastreamTask, Map<Integer, String>> _committedCheckpoints = new ConcurrentHashMap<>();
+  // Serialize the writes of each task to ZooKeeper, so that older checkpoints of a task never overwrite newer ones,
+  // without holding up the writes of the other tasks
+  private final ConcurrentHashMap<DatastreamTask, ReentrantLock> _storeLocks = new ConcurrentHashMap<>();
 
    /**
     * Construct an instance of ZookeeperCheckpointProvider
@@ -68,6 +78,8 @@ public class ZookeeperCheckpointProvider implements CheckpointProvider {
   public void unassignDatastreamTask(DatastreamTask task) {
     _checkpointsToCommit.remove(task);
     _lastCommitTime.remove(task);
+    _committedCheckpoints.remove(task);
+    _storeLocks.remove(task);
   }
 
   /**
@@ -76,13 +88,16 @@ public class ZookeeperCheckpointProvider implements CheckpointProvider {
   @Override
   public void updateCheckpoint(DatastreamTask task, int partition, String checkpoint) {
     Map<Integer, String> taskMap = getOrAddCheckpointMap(task);
+    boolean shouldCommit;
     synchronized (taskMap) {
       taskMap.put(partition, checkpoint);
-
-      if (!_lastCommitTime.containsKey(task) || Instant.now()
-          .isAfter(_lastCommitTime.get(task).plus(CHECKPOINT_INTERVAL))) {
-        writeCheckpointsToStore(task);
-      }
+      shouldCommit = !_lastCommitTime.containsKey(task) || Instant.now()
+          .isAfter(_lastCommitTime.get(task).plus(CHECKPOINT_INTERVAL));
+    }
+    if (shouldCommit) {
+      // The send callbacks do not wait for a write of the task in progress, the checkpoint is committed on the next
+      // update or flush instead
+      writeCheckpointsToStore(Collections.singletonList(task), false);
     }
   }
 
@@ -90,31 +105,83 @@ public class ZookeeperCheckpointProvider implements CheckpointProvider {
     return _checkpointsToCommit.computeIfAbsent(task, k -> new HashMap<>());
   }
 
-  private void writeCheckpointsToStore(DatastreamTask task) {
-    Map<Integer, String> taskMap = getOrAddCheckpointMap(task);
-    synchronized (taskMap) {
-      long startTime = System.currentTimeMillis();
-      Map<Integer, String> checkpoints = mergeAndGetSafeCheckpoints(task, taskMap);
-
-      _zkAdapter.setDatastreamTaskStateForKey(task, CHECKPOINT_KEY_NAME, JsonUtils.toJson(checkpoints));
-      _dynamicMetricsManager.createOrUpdateMeter(MODULE, NUM_CHECKPOINT_COMMITS, 1);
-      _dynamicMetricsManager.createOrUpdateHistogram(MODULE, CHECKPOINT_COMMIT_LATENCY_MS,
-          System.currentTimeMillis() - startTime);
-
-      Map<Integer, String> committedCheckpoints = _checkpointsToCommit.get(task);
-      // This check is necessary since task may have been unassigned/removed by a concurrent call to unassignDatastreamTask().
-      if (committedCheckpoints != null) {
-        // Clear the checkpoints to commit.
-        committedCheckpoints.clear();
+  /**
+   * Write the checkpoints of the tasks to ZooKeeper, in a single batch
+   * @param tasks the tasks whose checkpoints to write
+   * @param waitForWrites whether to wait for the writes of the tasks in progress, or skip these tasks
+   */
+  private void writeCheckpointsToStore(Collection<DatastreamTask> tasks, boolean waitForWrites) {
+    // Lock the tasks in a consistent order, so that concurrent writes of overlapping sets of tasks do not deadlock
+    List<DatastreamTask> sortedTasks = new ArrayList<>(tasks);
+    sortedTasks.sort(Comparator.comparing(DatastreamTask::getDatastreamTaskName));
+    List<DatastreamTask> lockedTasks = new ArrayList<>(sortedTasks.size());
+    List<ReentrantLock> locks = new ArrayList<>(sortedTasks.size());
+    try {
+      for (DatastreamTask task : sortedTasks) {
+        ReentrantLock lock = _storeLocks.computeIfAbsent(task, k -> new ReentrantLock());
+        if (waitForWrites) {
+          lock.lock();
+        } else if (!lock.tryLock()) {
+          continue;
+        }
+        locks.add(lock);
+        lockedTasks.add(task);
       }
-      _lastCommitTime.put(task, Instant.now());
+      writeLockedCheckpointsToStore(lockedTasks);
+    } finally {
+      locks.forEach(ReentrantLock::unlock);
     }
   }
 
+  private void writeLockedCheckpointsToStore(Collection<DatastreamTask> tasks) {
+    long startTime = System.currentTimeMillis();
+    Map<DatastreamTask, Map<Integer, String>> checkpointsToCommit = new HashMap<>();
+    Map<DatastreamTask, Map<Integer, String>> checkpoints = new HashMap<>();
+    Map<DatastreamTask, String> serializedCheckpoints = new HashMap<>();
+    for (DatastreamTask task : tasks) {
+      Map<Integer, String> taskMap = _checkpointsToCommit.get(task);
+      // The task may have been unassigned/removed by a concurrent call to unassignDatastreamTask()
+      if (taskMap == null) {
+        continue;
+      }
+      synchronized (taskMap) {
+        if (taskMap.isEmpty()) {
+          continue;
+        }
+        checkpointsToCommit.put(task, new HashMap<>(taskMap));
+        Map<Integer, String> taskCheckpoints = mergeAndGetSafeCheckpoints(task, taskMap);
+        checkpoints.put(task, taskCheckpoints);
+        serializedCheckpoints.put(task, JsonUtils.toJson(taskCheckpoints));
+      }
+    }
+    if (serializedCheckpoints.isEmpty()) {
+      return;
+    }
+
+    _zkAdapter.setDatastreamTaskStatesForKey(CHECKPOINT_KEY_NAME, serializedCheckpoints);
+    _dynamicMetricsManager.createOrUpdateMeter(MODULE, NUM_CHECKPOINT_COMMITS, serializedCheckpoints.size());
+    _dynamicMetricsManager.createOrUpdateHistogram(MODULE, CHECKPOINT_COMMIT_LATENCY_MS,
+        System.currentTimeMillis() - startTime);
+
+    Instant now = Instant.now();
+    checkpoints.forEach((task, taskCheckpoints) -> {
+      Map<Integer, String> taskMap = _checkpointsToCommit.get(task);
+      if (taskMap != null) {
+        Map<Integer, String> committed = checkpointsToCommit.get(task);
+        synchronized (taskMap) {
+          _committedCheckpoints.put(task, taskCheckpoints);
+          // Keep the checkpoints which were updated while being committed
+          taskMap.entrySet().removeIf(entry -> Objects.equals(entry.getValue(), committed.get(entry.getKey())));
+        }
+        _lastCommitTime.put(task, now);
+      }
+    });
+  }
+
   @Override
   public void flush() {
     LOG.info("Flushing checkpoints for {} datatstream tasks to ZooKeeper", _checkpointsToCommit.size());
-    _checkpointsToCommit.keySet().forEach(this::writeCheckpointsToStore);
+    writeCheckpointsToStore(_checkpointsToCommit.keySet(), true);
     LOG.info("Flushing checkpoints to ZooKeeper completed successfully");
   }
 
@@ -122,7 +189,8 @@ public class ZookeeperCheckpointProvider implements CheckpointProvider {
 
     // It is possible that the safe checkpoints contains only subset of partitions.
     // So it is safe to merge them with the existing checkpoints in ZooKeeper.
-    Map<Integer, String> checkpoints = getCheckpoint(task);
+    Map<Integer, String> checkpoints =
+        new HashMap<>(_committedCheckpoints.computeIfAbsent(task, this::getCheckpoint));
 
     if (safeCheckpoints != null && !safeCheckpoints.isEmpty()) {
       for (Map.Entry<Integer, String> safeCheckpoint : safeCheckpoints.entrySet()) {
@@ -165,6 +233,7 @@ public class ZookeeperCheckpointProvider implements CheckpointProvider {
   public Map<Integer, String> getCommitted(DatastreamTask datastreamTask) {
     Validate.notNull(datastreamTask, "datastreamTask should not be null");
     Map<Integer, String> checkpoints = getCheckpoint(datastreamTask);
+    _committedCheckpoints.put(datastreamTask, new HashMap<>(checkpoints));
     LOG.info("GetCommitted returning the last committed checkpoints " + checkpoints.toString());
     return checkpoints;
   }
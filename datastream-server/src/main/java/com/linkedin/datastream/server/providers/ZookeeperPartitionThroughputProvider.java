@@ -0,0 +1,232 @@
+/**
+ *  Copyright 2021 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.server.providers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import com.linkedin.datastream.common.zk.ZkClient;
+import com.linkedin.datastream.metrics.BrooklinHistogramInfo;
+import com.linkedin.datastream.metrics.BrooklinMeterInfo;
+import com.linkedin.datastream.metrics.BrooklinMetricInfo;
+import com.linkedin.datastream.metrics.DynamicMetricsManager;
+import com.linkedin.datastream.server.ClusterThroughputInfo;
+import com.linkedin.datastream.server.DatastreamGroup;
+import com.linkedin.datastream.server.InstanceThroughputSnapshot;
+import com.linkedin.datastream.server.PartitionThroughputInfo;
+import com.linkedin.datastream.server.zk.KeyBuilder;
+
+
+/**
+ * ZooKeeper-backed {@link PartitionThroughputProvider} that aggregates the partition throughput published by the
+ * instances of the cluster under {@code /{cluster}/instances/{instanceName}/throughput}, so that load-based assignment
+ * works on the rates actually observed by the connectors. Since the instances report the throughput per datastream
+ * group, the {@link ClusterThroughputInfo} are keyed by the task prefixes of the datastream groups.
+ *
+ * The aggregated throughput is cached. Once it is older than the refresh interval it is refreshed asynchronously, while
+ * the cached one keeps being returned until it is older than the TTL. The snapshots of the instances which haven't
+ * published for longer than the TTL are ignored. If the throughput can't be refreshed once it is older than the TTL,
+ * the stale throughput is still returned, or no throughput at all if it was never read.
+ */
+public class ZookeeperPartitionThroughputProvider implements PartitionThroughputProvider {
+  private static final Logger LOG = LoggerFactory.getLogger(ZookeeperPartitionThroughputProvider.class.getName());
+  private static final String MODULE = ZookeeperPartitionThroughputProvider.class.getSimpleName();
+  private static final String NUM_THROUGHPUT_REFRESHES = "numThroughputRefreshes";
+  private static final String NUM_THROUGHPUT_REFRESH_FAILURES = "numThroughputRefreshFailures";
+  private static final String THROUGHPUT_REFRESH_LATENCY_MS = "throughputRefreshLatencyMs";
+
+  private final ZkClient _zkClient;
+  private final String _cluster;
+  private final long _refreshIntervalMs;
+  private final long _ttlMs;
+  private final DynamicMetricsManager _dynamicMetricsManager;
+
+  private volatile CachedThroughputInfo _cachedThroughputInfo;
+  // Guarded by this, and created on demand so that the provider can still be used once closed
+  private ExecutorService _refreshExecutor;
+  private CompletableFuture<CachedThroughputInfo> _pendingRefresh;
+
+  /**
+   * Construct an instance of ZookeeperPartitionThroughputProvider
+   * @param zkClient ZooKeeper client to use
+   * @param cluster Brooklin cluster name
+   * @param refreshIntervalMs Age after which the cached throughput is refreshed asynchronously
+   * @param ttlMs Age after which the cached throughput, or the snapshot of an instance, is no longer used
+   */
+  public ZookeeperPartitionThroughputProvider(ZkClient zkClient, String cluster, long refreshIntervalMs, long ttlMs) {
+    _zkClient = zkClient;
+    _cluster = cluster;
+    _refreshIntervalMs = refreshIntervalMs;
+    _ttlMs = ttlMs;
+    _dynamicMetricsManager = DynamicMetricsManager.getInstance();
+  }
+
+  /**
+   * Retrieves the per-partition throughput of a datastream group
+   * @param taskPrefix Task prefix of the datastream group
+   * @return Throughput information for the datastream group, which is empty if no instance reported any
+   */
+  @Override
+  public ClusterThroughputInfo getThroughputInfo(String taskPrefix) {
+    return getCachedThroughputInfo().getOrDefault(taskPrefix,
+        new ClusterThroughputInfo(taskPrefix, Collections.emptyMap()));
+  }
+
+  @Override
+  public ClusterThroughputInfo getThroughputInfo(DatastreamGroup datastreamGroup) {
+    return getThroughputInfo(datastreamGroup.getTaskPrefix());
+  }
+
+  /**
+   * Retrieves the per-partition throughput of all the datastream groups
+   * @return A map, where keys are task prefixes and values are throughput information for the datastream group
+   */
+  @Override
+  public Map<String, ClusterThroughputInfo> getThroughputInfo() {
+    return getCachedThroughputInfo();
+  }
+
+  private Map<String, ClusterThroughputInfo> getCachedThroughputInfo() {
+    CachedThroughputInfo cached = _cachedThroughputInfo;
+    long age = cached == null ? Long.MAX_VALUE : System.currentTimeMillis() - cached.getRefreshTimeMs();
+    if (age < _refreshIntervalMs) {
+      return cached.getThroughputInfo();
+    }
+
+    CompletableFuture<CachedThroughputInfo> refresh = refreshAsync();
+    if (age < _ttlMs) {
+      return cached.getThroughputInfo();
+    }
+    // The cached throughput is too old to be used, so wait for the refresh
+    try {
+      return refresh.join().getThroughputInfo();
+    } catch (CompletionException | CancellationException ex) {
+      // The failure is logged by the refresh. Stale throughput is better than none, and without any the assignment
+      // falls back to the default rates.
+      return cached == null ? Collections.emptyMap() : cached.getThroughputInfo();
+    }
+  }
+
+  private synchronized CompletableFuture<CachedThroughputInfo> refreshAsync() {
+    if (_pendingRefresh == null || _pendingRefresh.isDone()) {
+      if (_refreshExecutor == null) {
+        _refreshExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("PartitionThroughputRefreshThread-%d").build());
+      }
+      _pendingRefresh = CompletableFuture.supplyAsync(this::readThroughputInfo, _refreshExecutor);
+    }
+    return _pendingRefresh;
+  }
+
+  private CachedThroughputInfo readThroughputInfo() {
+    long startTime = System.currentTimeMillis();
+    try {
+      List<InstanceThroughputSnapshot> snapshots = new ArrayList<>();
+      String instancesPath = KeyBuilder.instances(_cluster);
+      if (_zkClient.exists(instancesPath)) {
+        for (String instance : _zkClient.getChildren(instancesPath)) {
+          InstanceThroughputSnapshot snapshot = readSnapshot(instance);
+          if (snapshot != null && startTime - snapshot.getTimestamp() < _ttlMs) {
+            snapshots.add(snapshot);
+          }
+        }
+      }
+
+      // A partition reported by several instances has just moved, so the most recent snapshot wins
+      snapshots.sort(Comparator.comparingLong(InstanceThroughputSnapshot::getTimestamp));
+      Map<String, Map<String, PartitionThroughputInfo>> partitionInfoMaps = new HashMap<>();
+      for (InstanceThroughputSnapshot snapshot : snapshots) {
+        for (String taskPrefix : snapshot.getPartitionThroughput().keySet()) {
+          partitionInfoMaps.computeIfAbsent(taskPrefix, k -> new HashMap<>())
+              .putAll(snapshot.getPartitionThroughputInfo(taskPrefix));
+        }
+      }
+      Map<String, ClusterThroughputInfo> throughputInfo = new HashMap<>();
+      partitionInfoMaps.forEach((taskPrefix, partitionInfoMap) ->
+          throughputInfo.put(taskPrefix, new ClusterThroughputInfo(taskPrefix, partitionInfoMap)));
+
+      CachedThroughputInfo cached = new CachedThroughputInfo(startTime, Collections.unmodifiableMap(throughputInfo));
+      _cachedThroughputInfo = cached;
+      _dynamicMetricsManager.createOrUpdateMeter(MODULE, NUM_THROUGHPUT_REFRESHES, 1);
+      _dynamicMetricsManager.createOrUpdateHistogram(MODULE, THROUGHPUT_REFRESH_LATENCY_MS,
+          System.currentTimeMillis() - startTime);
+      LOG.info("Refreshed the partition throughput of {} datastream groups from {} instances", throughputInfo.size(),
+          snapshots.size());
+      return cached;
+    } catch (RuntimeException ex) {
+      _dynamicMetricsManager.createOrUpdateMeter(MODULE, NUM_THROUGHPUT_REFRESH_FAILURES, 1);
+      LOG.warn("Failed to refresh the partition throughput from ZooKeeper", ex);
+      throw ex;
+    }
+  }
+
+  private InstanceThroughputSnapshot readSnapshot(String instance) {
+    String json = _zkClient.readData(KeyBuilder.instanceThroughput(_cluster, instance), true);
+    if (json == null) {
+      return null;
+    }
+    try {
+      return InstanceThroughputSnapshot.fromJson(json);
+    } catch (RuntimeException ex) {
+      LOG.warn("Ignoring the invalid partition throughput of instance {}: {}", instance, json, ex);
+      return null;
+    }
+  }
+
+  /**
+   * Stop the refresh thread. It is started again by the next refresh, if the provider is used again.
+   */
+  @Override
+  public synchronized void close() {
+    if (_refreshExecutor != null) {
+      _refreshExecutor.shutdownNow();
+      _refreshExecutor = null;
+    }
+  }
+
+  @Override
+  public List<BrooklinMetricInfo> getMetricInfos() {
+    List<BrooklinMetricInfo> metrics = new ArrayList<>();
+
+    metrics.add(new BrooklinMeterInfo(buildMetricName(NUM_THROUGHPUT_REFRESHES)));
+    metrics.add(new BrooklinMeterInfo(buildMetricName(NUM_THROUGHPUT_REFRESH_FAILURES)));
+    metrics.add(new BrooklinHistogramInfo(buildMetricName(THROUGHPUT_REFRESH_LATENCY_MS)));
+
+    return Collections.unmodifiableList(metrics);
+  }
+
+  private static class CachedThroughputInfo {
+    private final long _refreshTimeMs;
+    private final Map<String, ClusterThroughputInfo> _throughputInfo;
+
+    CachedThroughputInfo(long refreshTimeMs, Map<String, ClusterThroughputInfo> throughputInfo) {
+      _refreshTimeMs = refreshTimeMs;
+      _throughputInfo = throughputInfo;
+    }
+
+    long getRefreshTimeMs() {
+      return _refreshTimeMs;
+    }
+
+    Map<String, ClusterThroughputInfo> getThroughputInfo() {
+      return _throughputInfo;
+    }
+  }
+}
@@ -19,6 +19,7 @@ public final class KeyBuilder {
   private static final String INSTANCE = "/%s/instances/%s";
   private static final String INSTANCE_ASSIGNMENTS = "/%s/instances/%s/assignments";
   private static final String INSTANCE_ERRORS = "/%s/instances/%s/errors";
+  private static final String INSTANCE_THROUGHPUT = "/%s/instances/%s/throughput";
   private static final String INSTANCE_ASSIGNMENT = "/%s/instances/%s/assignments/%s";
   private static final String DATASTREAMS = "/%s/dms";
   private static final String DATASTREAM = "/%s/dms/%s";
@@ -172,6 +173,15 @@ public final class KeyBuilder {
     return String.format(INSTANCE_ERRORS, cluster, instance);
   }
 
+  /**
+   * Get the ZooKeeper znode that holds the throughput of the partitions consumed by a Brooklin instance
+   * @param cluster Brooklin cluster name
+   * @param instance Instance name
+   */
+  public static String instanceThroughput(String cluster, String instance) {
+    return String.format(INSTANCE_THROUGHPUT, cluster, instance);
+  }
+
   /**
    * Get the ZooKeeper znode for a specific datastream task assigned to a Brooklin instance
    *
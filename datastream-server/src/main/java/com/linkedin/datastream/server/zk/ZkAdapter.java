@@ -8,20 +8,25 @@ package com.linkedin.datastream.server.zk;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -34,10 +39,15 @@ import org.apache.commons.lang3.Validate;
 import org.apache.helix.zookeeper.zkclient.IZkChildListener;
 import org.apache.helix.zookeeper.zkclient.IZkDataListener;
 import org.apache.helix.zookeeper.zkclient.IZkStateListener;
+import org.apache.helix.zookeeper.zkclient.callback.ZkAsyncCallbacks;
 import org.apache.helix.zookeeper.zkclient.exception.ZkException;
 import org.apache.helix.zookeeper.zkclient.exception.ZkNoNodeException;
 import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Op;
 import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.data.Stat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -55,6 +65,7 @@ import com.linkedin.datastream.server.DatastreamGroup;
 import com.linkedin.datastream.server.DatastreamTask;
 import com.linkedin.datastream.server.DatastreamTaskImpl;
 import com.linkedin.datastream.server.HostTargetAssignment;
+import com.linkedin.datastream.server.InstanceThroughputSnapshot;
 
 import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.mapping;
@@ -122,6 +133,10 @@ import static java.util.stream.Collectors.toSet;
  */
 public class ZkAdapter {
   private static final Logger LOG = LoggerFactory.getLogger(ZkAdapter.class);
+  private static final int TASK_PARSER_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+  // Stay clear of the 1 MB limit of the size of a znode
+  @VisibleForTesting
+  static final int MAX_THROUGHPUT_SNAPSHOT_BYTES = 900 * 1024;
 
   private final String _defaultTransportProviderName;
 
@@ -138,6 +153,8 @@ public class ZkAdapter {
   private ZkClient _zkclient;
   private String _instanceName;
   private String _liveInstanceName;
+  // Number of ZooKeeper round trips saved by batching the writes of the last assignment update
+  private int _numAssignmentRoundTripsSaved = 0;
   private String _hostname;
   private Set<String> _connectorTypes = new HashSet<>();
 
@@ -153,6 +170,7 @@ public class ZkAdapter {
   private ZkBackedDMSDatastreamList _datastreamList = null;
   private ZkTargetAssignmentProvider _targetAssignmentProvider = null;
   private ZkBackedLiveInstanceListProvider _liveInstancesProvider = null;
+  private ZkBackedInstanceAssignmentCache _instanceAssignmentCache = null;
 
   // Cache all live DatastreamTasks per instance for assignment strategy
   private Map<String, Set<DatastreamTask>> _liveTaskMap = new HashMap<>();
@@ -163,6 +181,9 @@ public class ZkAdapter {
   private List<String> _finalOrphanLockList = new ArrayList<>();
   private Future<?> _orphanLockCleanupFuture = CompletableFuture.completedFuture("completed");
 
+  // parse the tasks read in bulk from ZooKeeper in parallel, created on connect and shut down on disconnect
+  private volatile ExecutorService _taskParserExecutorService = null;
+
   // object to synchronize zk session handling states
   private final Object _zkSessionLock = new Object();
 
@@ -248,6 +269,10 @@ public class ZkAdapter {
         _leaderElectionListener = null;
       }
     }
+    if (_taskParserExecutorService != null) {
+      _taskParserExecutorService.shutdown();
+      _taskParserExecutorService = null;
+    }
     // isLeader will be reinitialized when we reconnect
   }
 
@@ -284,6 +309,11 @@ public class ZkAdapter {
       _leaderElectionListener = new ZkLeaderElectionListener();
     }
 
+    if (_taskParserExecutorService == null) {
+      _taskParserExecutorService = Executors.newFixedThreadPool(TASK_PARSER_THREADS,
+          new ThreadFactoryBuilder().setDaemon(true).setNameFormat("DatastreamTaskParserThread-%d").build());
+    }
+
     // create a globally unique instance name and create a live instance node in ZooKeeper
     _instanceName = createLiveInstanceNode();
 
@@ -309,6 +339,7 @@ public class ZkAdapter {
     _datastreamList = new ZkBackedDMSDatastreamList();
     _targetAssignmentProvider = new ZkTargetAssignmentProvider(_connectorTypes);
     _liveInstancesProvider = new ZkBackedLiveInstanceListProvider();
+    _instanceAssignmentCache = new ZkBackedInstanceAssignmentCache();
 
     // Load all existing tasks when we just become the new leader. This is needed
     // for resuming working on the tasks from previous sessions.
@@ -375,6 +406,11 @@ public class ZkAdapter {
       _targetAssignmentProvider.close();
       _targetAssignmentProvider = null;
     }
+
+    if (_instanceAssignmentCache != null) {
+      _instanceAssignmentCache.close();
+      _instanceAssignmentCache = null;
+    }
   }
 
   /**
@@ -631,17 +667,7 @@ public class ZkAdapter {
   public DatastreamTaskImpl getAssignedDatastreamTask(String instance, String taskName) {
     try {
       String content = _zkclient.ensureReadData(KeyBuilder.instanceAssignment(_cluster, instance, taskName));
-      DatastreamTaskImpl task = DatastreamTaskImpl.fromJson(content);
-      if (Strings.isNullOrEmpty(task.getTaskPrefix())) {
-        task.setTaskPrefix(parseTaskPrefix(task.getDatastreamTaskName()));
-      }
-
-      if (Strings.isNullOrEmpty(task.getTransportProviderName())) {
-        task.setTransportProviderName(_defaultTransportProviderName);
-      }
-
-      task.setZkAdapter(this);
-      return task;
+      return parseAssignedDatastreamTask(content);
     } catch (ZkNoNodeException e) {
       // This can occur if there is another task assignment change in the middle of
       // handleAssignmentChange and some tasks are unassigned to the current
@@ -653,6 +679,77 @@ public class ZkAdapter {
     }
   }
 
+  /**
+   * Get the datastream tasks of the given names assigned to an instance. Unlike {@link #getAssignedDatastreamTask},
+   * the task nodes are all read at once asynchronously, and parsed in parallel as they are received.
+   * @param instance the instance name
+   * @param taskNames the names of the tasks
+   * @return the tasks by name, which doesn't include the tasks whose node doesn't exist anymore
+   */
+  public Map<String, DatastreamTaskImpl> getAssignedDatastreamTasks(String instance, Collection<String> taskNames) {
+    Map<String, ZkAsyncCallbacks.GetDataCallbackHandler> callbacks = new LinkedHashMap<>();
+    for (String taskName : taskNames) {
+      ZkAsyncCallbacks.GetDataCallbackHandler callback = new ZkAsyncCallbacks.GetDataCallbackHandler();
+      _zkclient.asyncGetData(KeyBuilder.instanceAssignment(_cluster, instance, taskName), callback);
+      callbacks.put(taskName, callback);
+    }
+
+    ExecutorService taskParserExecutorService = _taskParserExecutorService;
+    Map<String, CompletableFuture<DatastreamTaskImpl>> futures = new LinkedHashMap<>();
+    callbacks.forEach((taskName, callback) -> {
+      callback.waitForSuccess();
+      if (callback.getRc() == KeeperException.Code.NONODE.intValue()) {
+        LOG.warn("ZNode does not exist for instance={}, task={}, ignoring the task.", instance, taskName);
+      } else if (callback.getRc() != KeeperException.Code.OK.intValue() || callback._data == null) {
+        // Read the node again synchronously, with the retries of ensureReadData
+        futures.put(taskName, CompletableFuture.completedFuture(getAssignedDatastreamTask(instance, taskName)));
+      } else {
+        String content = _zkclient.deserialize(callback._data);
+        futures.put(taskName, parseAssignedDatastreamTaskAsync(content, taskParserExecutorService));
+      }
+    });
+
+    Map<String, DatastreamTaskImpl> tasks = new HashMap<>();
+    futures.forEach((taskName, future) -> {
+      DatastreamTaskImpl task;
+      try {
+        task = future.join();
+      } catch (CompletionException e) {
+        throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+      }
+      if (task != null) {
+        tasks.put(taskName, task);
+      }
+    });
+    return tasks;
+  }
+
+  private CompletableFuture<DatastreamTaskImpl> parseAssignedDatastreamTaskAsync(String content,
+      ExecutorService taskParserExecutorService) {
+    if (taskParserExecutorService != null) {
+      try {
+        return CompletableFuture.supplyAsync(() -> parseAssignedDatastreamTask(content), taskParserExecutorService);
+      } catch (RejectedExecutionException e) {
+        // The adapter got disconnected in the meantime, parse the task inline
+      }
+    }
+    return CompletableFuture.completedFuture(parseAssignedDatastreamTask(content));
+  }
+
+  private DatastreamTaskImpl parseAssignedDatastreamTask(String content) {
+    DatastreamTaskImpl task = DatastreamTaskImpl.fromJson(content);
+    if (Strings.isNullOrEmpty(task.getTaskPrefix())) {
+      task.setTaskPrefix(parseTaskPrefix(task.getDatastreamTaskName()));
+    }
+
+    if (Strings.isNullOrEmpty(task.getTransportProviderName())) {
+      task.setTransportProviderName(_defaultTransportProviderName);
+    }
+
+    task.setZkAdapter(this);
+    return task;
+  }
+
   private String parseTaskPrefix(String datastreamTaskName) {
     return datastreamTaskName.substring(0, datastreamTaskName.lastIndexOf("_"));
   }
@@ -664,17 +761,91 @@ public class ZkAdapter {
    *   <li>{@code /<cluster>/connectors/<connectorType>/<task>/<config>}</li>
    *   <li>{@code /<cluster>/connectors/<connectorType>/<task>/<state>}</li>
    * </ol>
-   *  If any one failed, RuntimeException will be thrown.
+   * The nodes are written in multi() transactions of the batch, which fall back to writing the nodes of each task one
+   * by one if they fail. If any one failed, RuntimeException will be thrown.
    */
-  private void addTaskNodes(String instance, DatastreamTaskImpl task) {
-    LOG.info("Adding Task Node: " + instance + ", task: " + task);
-    String name = task.getDatastreamTaskName();
-
+  private void addTaskNodes(Map<String, Set<String>> nodesToAdd, Map<String, DatastreamTask> assignmentsMap,
+      ZkMultiOpBatch batch) {
     // Must add task node under connector first because as soon as we update the
     // instance assignment node, ZkBackTaskListProvider will be notified and the
     // connector will receive onAssignmentChange() with the new task. If it tries
     // to acquire the task before the connector task node is created, this will
     // fail with NoNodeException since lock node hangs off of connector task node.
+    // Read the existing tasks of each connector once, rather than checking the existence of each of their nodes.
+    Map<String, Set<String>> existingTasksByConnector = new HashMap<>();
+    nodesToAdd.forEach((instance, added) -> added.forEach(name -> {
+      DatastreamTaskImpl task = (DatastreamTaskImpl) assignmentsMap.get(name);
+      Set<String> existingTasks = existingTasksByConnector.computeIfAbsent(task.getConnectorType(), connectorType -> {
+        String connectorPath = KeyBuilder.connector(_cluster, connectorType);
+        _zkclient.ensurePath(connectorPath);
+        return new HashSet<>(_zkclient.getChildren(connectorPath));
+      });
+      addConnectorTaskNodes(instance, task, existingTasks.contains(name), batch);
+    }));
+    batch.flush();
+
+    for (String instance : nodesToAdd.keySet()) {
+      Set<String> added = nodesToAdd.get(instance);
+      if (added.size() > 0) {
+        LOG.info("Instance: {}, adding assignments: {}", instance, added);
+        // Ensure that the instance and instance/Assignment paths are ready before writing the tasks
+        _zkclient.ensurePath(KeyBuilder.instance(_cluster, instance));
+        _zkclient.ensurePath(KeyBuilder.instanceAssignments(_cluster, instance));
+        for (String name : added) {
+          DatastreamTaskImpl task = (DatastreamTaskImpl) assignmentsMap.get(name);
+          byte[] data = _zkclient.serialize(getTaskJson(task));
+          batch.add(Op.create(KeyBuilder.instanceAssignment(_cluster, instance, name), data,
+              ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT), data.length,
+              () -> {
+                addInstanceAssignmentNode(instance, task);
+                return 1;
+              });
+        }
+      }
+    }
+    batch.flush();
+  }
+
+  /**
+   * Add the connector task nodes of a task to the batch. The nodes of a task which doesn't exist yet are created in the
+   * same transaction, while the ones of an existing task (e.g. a task moved to another instance) are expected to exist.
+   */
+  private void addConnectorTaskNodes(String instance, DatastreamTaskImpl task, boolean exists, ZkMultiOpBatch batch) {
+    String name = task.getDatastreamTaskName();
+    String taskPath = KeyBuilder.connectorTask(_cluster, task.getConnectorType(), name);
+    String taskConfigPath = KeyBuilder.datastreamTaskConfig(_cluster, task.getConnectorType(), name);
+    String taskStatePath = KeyBuilder.datastreamTaskState(_cluster, task.getConnectorType(), name);
+    byte[] data = _zkclient.serialize(instance);
+    List<Op> ops = new ArrayList<>();
+    int numBytes = data.length;
+    if (!exists) {
+      ops.add(Op.create(taskPath, data, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT));
+      ops.add(Op.create(taskConfigPath, null, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT));
+      ops.add(Op.create(taskStatePath, null, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT));
+      if (!StringUtils.isEmpty(task.getStats())) {
+        byte[] stats = _zkclient.serialize(task.getStats());
+        ops.add(Op.create(KeyBuilder.datastreamTaskStateKey(_cluster, task.getConnectorType(), name, "stats"), stats,
+            ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT));
+        numBytes += stats.length;
+      }
+    } else if (StringUtils.isEmpty(task.getStats())) {
+      ops.add(Op.setData(taskPath, data, -1));
+      ops.add(Op.check(taskConfigPath, -1));
+      ops.add(Op.check(taskStatePath, -1));
+    } else {
+      // The stats node of an existing task may or may not exist
+      addConnectorTaskNodes(instance, task);
+      return;
+    }
+    batch.add(ops, numBytes, () -> addConnectorTaskNodes(instance, task));
+  }
+
+  /**
+   * Write the connector task nodes of a task one by one
+   * @return the number of ZooKeeper writes made
+   */
+  private int addConnectorTaskNodes(String instance, DatastreamTaskImpl task) {
+    LOG.info("Adding Task Node: " + instance + ", task: " + task);
     String taskPath =
         KeyBuilder.connectorTask(_cluster, task.getConnectorType(), task.getDatastreamTaskName());
     _zkclient.ensurePath(taskPath);
@@ -690,25 +861,20 @@ public class ZkAdapter {
         KeyBuilder.datastreamTaskState(_cluster, task.getConnectorType(), task.getDatastreamTaskName());
     _zkclient.ensurePath(taskStatePath);
 
+    // The three nodes were ensured and the task node was written
+    int numWrites = 4;
+
     // save the task stats.
     if (!StringUtils.isEmpty(task.getStats())) {
       task.saveState("stats", task.getStats());
+      numWrites += 2;
     }
+    return numWrites;
+  }
 
-    String instancePath = KeyBuilder.instanceAssignment(_cluster, instance, name);
-    String json = "";
-    try {
-      json = task.toJson();
-    } catch (IOException e) {
-      // This should never happen
-      String errorMessage = "Failed to serialize task into JSON.";
-      ErrorLogger.logAndThrowDatastreamRuntimeException(LOG, errorMessage, e);
-    }
-
-    // Ensure that the instance and instance/Assignment paths are ready before writing the task
-    _zkclient.ensurePath(KeyBuilder.instance(_cluster, instance));
-    _zkclient.ensurePath(KeyBuilder.instanceAssignments(_cluster, instance));
-    String created = _zkclient.create(instancePath, json, CreateMode.PERSISTENT);
+  private void addInstanceAssignmentNode(String instance, DatastreamTaskImpl task) {
+    String instancePath = KeyBuilder.instanceAssignment(_cluster, instance, task.getDatastreamTaskName());
+    String created = _zkclient.create(instancePath, getTaskJson(task), CreateMode.PERSISTENT);
 
     if (created != null && !created.isEmpty()) {
       LOG.info("create zookeeper node: " + instancePath);
@@ -719,6 +885,18 @@ public class ZkAdapter {
     }
   }
 
+  private String getTaskJson(DatastreamTaskImpl task) {
+    String json = "";
+    try {
+      json = task.toJson();
+    } catch (IOException e) {
+      // This should never happen
+      String errorMessage = "Failed to serialize task into JSON.";
+      ErrorLogger.logAndThrowDatastreamRuntimeException(LOG, errorMessage, e);
+    }
+    return json;
+  }
+
   /**
    * Two nodes need to be removed for a removed task:
    * <ol>
@@ -740,6 +918,14 @@ public class ZkAdapter {
     _zkclient.deleteRecursive(instancePath);
   }
 
+  private void addRemoveTaskNode(String instance, String name, ZkMultiOpBatch batch) {
+    batch.add(Op.delete(KeyBuilder.instanceAssignment(_cluster, instance, name), -1), 0,
+        () -> {
+          removeTaskNode(instance, name);
+          return 1;
+        });
+  }
+
   /**
    * Update the task assignment for the given instances and issue assignment tokens for stopping tasks.
    * Assignment tokens are used by the follower hosts to signal the leader that they finished handling their assignments.
@@ -906,29 +1092,50 @@ public class ZkAdapter {
     Map<String, Set<String>> nodesToAdd = new HashMap<>();
     diffAssignmentNodes(assignmentsByInstance, nodesToRemove, nodesToAdd);
 
-    // Add the new tasks znodes.
-    // We need to add the nodes BEFORE removing the old ones, to avoid tasks loss in case of server crash.
-    // In case of crash, the new leader will remove duplicate tasks when updating the assignments.
-    for (String instance : nodesToAdd.keySet()) {
-      Set<String> added = nodesToAdd.get(instance);
-      if (added.size() > 0) {
-        LOG.info("Instance: {}, adding assignments: {}", instance, added);
-        for (String name : added) {
-          addTaskNodes(instance, (DatastreamTaskImpl) assignmentsMap.get(name));
-        }
-      }
+    // Let the cache of the leader expect the changes to the instances assignments before making them, so that the
+    // notifications of the changes are not mistaken for changes made by others
+    Set<String> changedInstances = assignmentsByInstance.keySet()
+        .stream()
+        .filter(instance -> !nodesToAdd.get(instance).isEmpty() || !nodesToRemove.get(instance).isEmpty())
+        .collect(toSet());
+    if (_instanceAssignmentCache != null) {
+      changedInstances.forEach(instance -> _instanceAssignmentCache.expect(instance,
+          assignmentsByInstance.get(instance).stream().map(DatastreamTask::getDatastreamTaskName).collect(toSet()),
+          nodesToAdd.get(instance).size() + nodesToRemove.get(instance).size()));
     }
 
-    // Second remove the old tasks znodes.
-    for (String instance : nodesToRemove.keySet()) {
-      Set<String> removed = nodesToRemove.get(instance);
-      if (removed.size() > 0) {
-        LOG.info("Instance: {}, removing assignments: {}", instance, removed);
-        for (String name : removed) {
-          removeTaskNode(instance, name);
+    // The task nodes are written in multi() transactions, which fall back to writing them one by one if they fail
+    ZkMultiOpBatch batch = new ZkMultiOpBatch(_zkclient, "update the task assignments");
+    boolean updated = false;
+    try {
+      // Add the new tasks znodes.
+      // We need to add the nodes BEFORE removing the old ones, to avoid tasks loss in case of server crash.
+      // In case of crash, the new leader will remove duplicate tasks when updating the assignments.
+      addTaskNodes(nodesToAdd, assignmentsMap, batch);
+
+      // Second remove the old tasks znodes.
+      for (String instance : nodesToRemove.keySet()) {
+        Set<String> removed = nodesToRemove.get(instance);
+        if (removed.size() > 0) {
+          LOG.info("Instance: {}, removing assignments: {}", instance, removed);
+          removed.forEach(name -> addRemoveTaskNode(instance, name, batch));
+        }
+      }
+      batch.flush();
+      updated = true;
+    } finally {
+      if (_instanceAssignmentCache != null) {
+        if (updated) {
+          _instanceAssignmentCache.verify(changedInstances);
+        } else {
+          _instanceAssignmentCache.invalidate(changedInstances);
         }
       }
     }
+    _numAssignmentRoundTripsSaved = batch.getNumRoundTripsSaved();
+    LOG.info("Updated the task assignments with {} ZooKeeper operations in batches, saving {} round trips "
+        + "({} batches failed and were written one by one)", batch.getNumOps(), batch.getNumRoundTripsSaved(),
+        batch.getNumFailedTransactions());
 
     // Finally, Save the new assignments in the cache.
     _liveTaskMap = new HashMap<>();
@@ -942,11 +1149,32 @@ public class ZkAdapter {
    * @param tasksByInstance list of tasks per instance
    */
   public void removeTaskNodes(Map<String, List<DatastreamTask>> tasksByInstance) {
-    for (String instance : tasksByInstance.keySet()) {
-      tasksByInstance.get(instance).forEach(task -> removeTaskNode(instance, task.getDatastreamTaskName()));
+    ZkMultiOpBatch batch = new ZkMultiOpBatch(_zkclient, "remove the task assignments");
+    try {
+      for (String instance : tasksByInstance.keySet()) {
+        tasksByInstance.get(instance).forEach(task -> addRemoveTaskNode(instance, task.getDatastreamTaskName(), batch));
+      }
+      batch.flush();
+    } finally {
+      if (_instanceAssignmentCache != null) {
+        _instanceAssignmentCache.invalidate(tasksByInstance.keySet());
+      }
     }
   }
 
+  @VisibleForTesting
+  int getNumAssignmentRoundTripsSaved() {
+    return _numAssignmentRoundTripsSaved;
+  }
+
+  /**
+   * Get the number of times the leader read the assignment of an instance from ZooKeeper rather than its cache
+   */
+  @VisibleForTesting
+  long getNumInstanceAssignmentCacheMisses() {
+    return _instanceAssignmentCache != null ? _instanceAssignmentCache.getNumMisses() : 0;
+  }
+
   /**
    * Compare the current assignment with the new assignment, and update the list of nodes
    * to add and remove per instance.
@@ -960,8 +1188,9 @@ public class ZkAdapter {
           .map(DatastreamTask::getDatastreamTaskName)
           .collect(Collectors.toSet());
 
-      // get the old assignment from ZooKeeper
-      List<String> oldAssignmentNames = getInstanceAssignment(instance);
+      // get the old assignment from the cache of the leader, or from ZooKeeper
+      Set<String> oldAssignmentNames = _instanceAssignmentCache != null ? _instanceAssignmentCache.get(instance)
+          : new HashSet<>(getInstanceAssignment(instance));
 
       //
       // find assignments removed
@@ -974,7 +1203,7 @@ public class ZkAdapter {
       // find assignments added
       //
       Set<String> added = new HashSet<>(assignmentsNames);
-      added.removeAll(new HashSet<>(oldAssignmentNames));
+      added.removeAll(oldAssignmentNames);
       nodesToAdd.put(instance, added);
     }
   }
@@ -1078,6 +1307,43 @@ public class ZkAdapter {
     }
   }
 
+  /**
+   * Save the throughput of the partitions consumed by this instance in ZooKeeper under
+   * {@code /{cluster}/instances/{instanceName}/throughput}
+   * @param snapshot Throughput snapshot of the instance
+   */
+  public void savePartitionThroughput(InstanceThroughputSnapshot snapshot) {
+    String instancePath = KeyBuilder.instance(_cluster, _instanceName);
+    if (!_zkclient.exists(instancePath)) {
+      LOG.warn("failed to persist partition throughput because znode does not exist:" + instancePath);
+      return;
+    }
+    String path = KeyBuilder.instanceThroughput(_cluster, _instanceName);
+    _zkclient.ensurePath(path);
+    _zkclient.writeData(path, toBoundedJson(snapshot));
+  }
+
+  /**
+   * Serialize a throughput snapshot, only keeping the partitions with the highest throughput if it doesn't fit in a
+   * znode. The partitions left out are assigned with the default rates of the load-based assignment.
+   */
+  private static String toBoundedJson(InstanceThroughputSnapshot snapshot) {
+    String json = snapshot.toJson();
+    int size = json.getBytes(StandardCharsets.UTF_8).length;
+    int totalPartitions = snapshot.getNumPartitions();
+    int numPartitions = totalPartitions;
+    while (size > MAX_THROUGHPUT_SNAPSHOT_BYTES && numPartitions > 0) {
+      numPartitions = (int) Math.min(numPartitions - 1, (long) numPartitions * MAX_THROUGHPUT_SNAPSHOT_BYTES / size);
+      json = snapshot.withHighestThroughputPartitions(numPartitions).toJson();
+      size = json.getBytes(StandardCharsets.UTF_8).length;
+    }
+    if (numPartitions < totalPartitions) {
+      LOG.warn("Partition throughput snapshot too large, only publishing the {} partitions with the highest throughput "
+          + "out of {}", numPartitions, totalPartitions);
+    }
+    return json;
+  }
+
   /**
    * For a given datastream task, return a specific category of state information persisted in ZooKeeper
    * @param  datastreamTask Datastream task name
@@ -1106,6 +1372,28 @@ public class ZkAdapter {
     }
   }
 
+  /**
+   * Persist a specific category of state information for several datastream tasks in ZooKeeper, batching the writes
+   * into as few multi() transactions as possible. The tasks whose state node doesn't exist yet, which fails the whole
+   * transaction, are written one by one instead, like {@link #setDatastreamTaskStateForKey} does.
+   * @param key Name for the category of state information to persist
+   * @param values Serialized state information to persist for each datastream task
+   */
+  public void setDatastreamTaskStatesForKey(String key, Map<DatastreamTask, String> values) {
+    ZkMultiOpBatch batch = new ZkMultiOpBatch(_zkclient, "set the " + key + " state of datastream tasks");
+    values.forEach((task, value) -> {
+      String path = KeyBuilder.datastreamTaskStateKey(_cluster, task.getConnectorType(), task.getDatastreamTaskName(),
+          key);
+      byte[] data = _zkclient.serialize(value);
+      batch.add(Op.setData(path, data, -1), data.length, () -> {
+        // Ensures the state node and writes it
+        setDatastreamTaskStateForKey(task, key, value);
+        return 2;
+      });
+    });
+    batch.flush();
+  }
+
   /**
    * Remove instance assignment nodes whose instances are dead. This also
    * removes the unused node from under /cluster/<connectorType>/connector/.
@@ -1175,6 +1463,9 @@ public class ZkAdapter {
         }
 
         _liveTaskMap.remove(instance);
+        if (_instanceAssignmentCache != null) {
+          _instanceAssignmentCache.remove(instance);
+        }
       }
     }
     LOG.debug("unusedTasks remaining after dead instances cleanup: {}", unusedTasks.stream()
@@ -1823,6 +2114,135 @@ public class ZkAdapter {
     }
   }
 
+  /**
+   * ZkBackedInstanceAssignmentCache mirrors the names of the tasks assigned to each instance for the leader, so that
+   * it doesn't need to read the assignments of every instance from ZooKeeper whenever it updates the assignments.
+   *
+   * <p>Each entry is versioned with the child version (cversion) of the {@code /{cluster}/instances/{instance}/assignments}
+   * znode, which ZooKeeper increments whenever a task node is created or deleted under it. The leader lets the cache
+   * expect the version resulting from its changes before making them, and verifies it afterwards. A child watch on the
+   * node marks the entry as stale whenever its version goes past the expected one, i.e. when the node was changed by
+   * anyone else. Stale entries are read from ZooKeeper again on their next use, as are all the entries after the
+   * ZooKeeper session is re-established.
+   */
+  private class ZkBackedInstanceAssignmentCache implements IZkChildListener {
+    private final Map<String, CachedInstanceAssignment> _assignments = new HashMap<>();
+    private final Map<String, String> _instancesByPath = new HashMap<>();
+    private long _numMisses = 0;
+
+    /**
+     * Get the names of the tasks assigned to the instance, reading them from ZooKeeper unless they are cached
+     */
+    public synchronized Set<String> get(String instance) {
+      CachedInstanceAssignment cached = _assignments.get(instance);
+      if (cached != null && !cached._stale) {
+        return cached._taskNames;
+      }
+
+      _numMisses++;
+      String path = KeyBuilder.instanceAssignments(_cluster, instance);
+      _instancesByPath.put(path, instance);
+      // Read the version before the children, so that any change in between is seen as a newer version
+      Stat stat = _zkclient.getStat(path);
+      List<String> children = _zkclient.subscribeChildChanges(path, this);
+      cached = new CachedInstanceAssignment(children == null ? new HashSet<>() : new HashSet<>(children),
+          stat == null ? 0 : stat.getCversion());
+      _assignments.put(instance, cached);
+      return cached._taskNames;
+    }
+
+    /**
+     * Update the task names of the instance before they are written to ZooKeeper
+     * @param instance the instance
+     * @param taskNames the names of the tasks assigned to the instance once written
+     * @param numChanges the number of task nodes which will be created or deleted under the instance
+     */
+    public synchronized void expect(String instance, Set<String> taskNames, int numChanges) {
+      CachedInstanceAssignment cached = _assignments.get(instance);
+      if (cached != null) {
+        _assignments.put(instance, new CachedInstanceAssignment(taskNames, cached._version + numChanges));
+      }
+    }
+
+    /**
+     * Check that the assignments of the instances were written as expected, marking them as stale otherwise
+     */
+    public void verify(Collection<String> instances) {
+      for (String instance : instances) {
+        Stat stat = _zkclient.getStat(KeyBuilder.instanceAssignments(_cluster, instance));
+        synchronized (this) {
+          CachedInstanceAssignment cached = _assignments.get(instance);
+          if (cached != null && (stat == null || stat.getCversion() != cached._version)) {
+            LOG.info("Assignment of instance {} is not at the expected version {}, it will be read again", instance,
+                cached._version);
+            cached._stale = true;
+          }
+        }
+      }
+    }
+
+    /**
+     * Mark the assignments of the instances as stale, so that they are read again from ZooKeeper
+     */
+    public synchronized void invalidate(Collection<String> instances) {
+      instances.stream().map(_assignments::get).filter(cached -> cached != null).forEach(cached -> cached._stale = true);
+    }
+
+    /**
+     * Stop caching the assignment of a removed instance
+     */
+    public synchronized void remove(String instance) {
+      String path = KeyBuilder.instanceAssignments(_cluster, instance);
+      if (_assignments.remove(instance) != null) {
+        _zkclient.unsubscribeChildChanges(path, this);
+      }
+      _instancesByPath.remove(path);
+    }
+
+    public synchronized Set<String> getInstances() {
+      return new HashSet<>(_assignments.keySet());
+    }
+
+    public synchronized long getNumMisses() {
+      return _numMisses;
+    }
+
+    /**
+     * Unsubscribe from the changes of all the cached assignments
+     */
+    public synchronized void close() {
+      _instancesByPath.keySet().forEach(path -> _zkclient.unsubscribeChildChanges(path, this));
+      _instancesByPath.clear();
+      _assignments.clear();
+    }
+
+    @Override
+    public void handleChildChange(String parentPath, List<String> currentChildren) {
+      // The version is read outside of the lock, any change made by the leader in the meantime is verified by it
+      Stat stat = currentChildren == null ? null : _zkclient.getStat(parentPath);
+      synchronized (this) {
+        String instance = _instancesByPath.get(parentPath);
+        CachedInstanceAssignment cached = instance == null ? null : _assignments.get(instance);
+        if (cached != null && !cached._stale && (stat == null || stat.getCversion() > cached._version)) {
+          LOG.info("ZkBackedInstanceAssignmentCache::Assignment of instance {} was changed by another writer, "
+              + "it will be read again", instance);
+          cached._stale = true;
+        }
+      }
+    }
+  }
+
+  private static class CachedInstanceAssignment {
+    private final Set<String> _taskNames;
+    private final int _version;
+    private boolean _stale = false;
+
+    CachedInstanceAssignment(Set<String> taskNames, int version) {
+      _taskNames = Collections.unmodifiableSet(taskNames);
+      _version = version;
+    }
+  }
+
   /**
    * Listener for ZooKeeper leader election updates.
    */
@@ -1986,6 +2406,10 @@ public class ZkAdapter {
     public void handleNewSession(final String sessionId) {
       synchronized (_zkSessionLock) {
         LOG.info("ZkStateChangeListener::A new session with ID {} has been established.", sessionId);
+        // Changes may have been missed while the session was being re-established
+        if (_instanceAssignmentCache != null) {
+          _instanceAssignmentCache.invalidate(_instanceAssignmentCache.getInstances());
+        }
         if (_reinitOnNewSession) {
           onNewSession();
         }
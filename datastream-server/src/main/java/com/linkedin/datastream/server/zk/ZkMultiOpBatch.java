@@ -0,0 +1,139 @@
+/**
+ *  Copyright 2019 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.server.zk;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntSupplier;
+
+import org.apache.helix.zookeeper.zkclient.exception.ZkException;
+import org.apache.zookeeper.Op;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.linkedin.datastream.common.zk.ZkClient;
+
+
+/**
+ * Groups ZooKeeper write operations into as few multi() transactions as possible, each of which takes a single round
+ * trip to ZooKeeper instead of one per operation.
+ *
+ * The operations are added in groups, e.g. all the nodes of a task, which are always sent in the same transaction
+ * along with a fallback which performs the same writes one by one. As a transaction either applies all of its
+ * operations or none of them, the fallbacks of all the groups of a failed transaction (e.g. because a node it creates
+ * already exists) are run instead, which makes the batch as tolerant as the sequential writes it replaces. Each
+ * fallback returns the number of writes it made, so that the round trips they cost are accounted for.
+ *
+ * This class is not thread-safe.
+ */
+class ZkMultiOpBatch {
+  private static final Logger LOG = LoggerFactory.getLogger(ZkMultiOpBatch.class);
+
+  // Keeps the multi() transactions well below the default jute.maxbuffer of 1MB
+  static final int MAX_TRANSACTION_BYTES = 512 * 1024;
+  static final int MAX_TRANSACTION_OPS = 1000;
+
+  private final ZkClient _zkClient;
+  private final String _description;
+  private final List<Op> _ops = new ArrayList<>();
+  private final List<IntSupplier> _fallbacks = new ArrayList<>();
+  private int _numBytes = 0;
+
+  private int _numOps = 0;
+  private int _numRoundTripsSaved = 0;
+  private int _numFailedTransactions = 0;
+
+  /**
+   * Constructor for ZkMultiOpBatch
+   * @param zkClient the ZooKeeper client to write with
+   * @param description the description of the writes, used for logging
+   */
+  ZkMultiOpBatch(ZkClient zkClient, String description) {
+    _zkClient = zkClient;
+    _description = description;
+  }
+
+  /**
+   * Add an operation, sending the pending ones first if it doesn't fit in the current transaction
+   * @param op the operation
+   * @param numBytes the size of the data written by the operation
+   * @param fallback performs the same write as the operation and returns the number of writes it made, used if the
+   *                 transaction fails
+   */
+  void add(Op op, int numBytes, IntSupplier fallback) {
+    add(Collections.singletonList(op), numBytes, fallback);
+  }
+
+  /**
+   * Add a group of operations which must be sent in the same transaction, sending the pending ones first if they
+   * don't fit in the current transaction
+   * @param ops the operations
+   * @param numBytes the size of the data written by the operations
+   * @param fallback performs the same writes as the operations and returns the number of writes it made, used if the
+   *                 transaction fails
+   */
+  void add(List<Op> ops, int numBytes, IntSupplier fallback) {
+    if (!_ops.isEmpty()
+        && (_numBytes + numBytes > MAX_TRANSACTION_BYTES || _ops.size() + ops.size() > MAX_TRANSACTION_OPS)) {
+      flush();
+    }
+    _ops.addAll(ops);
+    _fallbacks.add(fallback);
+    _numBytes += numBytes;
+  }
+
+  /**
+   * Send the pending operations
+   */
+  void flush() {
+    if (_ops.isEmpty()) {
+      return;
+    }
+    _numOps += _ops.size();
+    if (_fallbacks.size() == 1) {
+      // Nothing to group, avoid failing a transaction on a node which already exists or doesn't exist yet
+      _numRoundTripsSaved += _ops.size() - _fallbacks.get(0).getAsInt();
+    } else {
+      try {
+        _zkClient.multi(_ops);
+        _numRoundTripsSaved += _ops.size() - 1;
+      } catch (ZkException e) {
+        LOG.info("Failed to {} in a single transaction of {} operations, writing them one by one: {}", _description,
+            _ops.size(), e.getMessage());
+        _numFailedTransactions++;
+        // The failed transaction costs a round trip, on top of the writes of the fallbacks
+        int numFallbackWrites = _fallbacks.stream().mapToInt(IntSupplier::getAsInt).sum();
+        _numRoundTripsSaved += _ops.size() - 1 - numFallbackWrites;
+      }
+    }
+    _ops.clear();
+    _fallbacks.clear();
+    _numBytes = 0;
+  }
+
+  /**
+   * Get the number of operations sent so far
+   */
+  int getNumOps() {
+    return _numOps;
+  }
+
+  /**
+   * Get the number of ZooKeeper round trips saved so far compared to sending the operations one by one. A transaction
+   * which failed costs its own round trip plus the writes of its fallbacks.
+   */
+  int getNumRoundTripsSaved() {
+    return _numRoundTripsSaved;
+  }
+
+  /**
+   * Get the number of transactions which failed and were written one by one
+   */
+  int getNumFailedTransactions() {
+    return _numFailedTransactions;
+  }
+}
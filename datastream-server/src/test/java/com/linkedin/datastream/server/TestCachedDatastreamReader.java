@@ -0,0 +1,137 @@
+/**
+ *  Copyright 2019 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.server;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.zookeeper.CreateMode;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+import com.linkedin.datastream.common.Datastream;
+import com.linkedin.datastream.common.DatastreamMetadataConstants;
+import com.linkedin.datastream.common.DatastreamUtils;
+import com.linkedin.datastream.common.PollUtils;
+import com.linkedin.datastream.common.zk.ZkClient;
+import com.linkedin.datastream.server.zk.KeyBuilder;
+import com.linkedin.datastream.testutil.DatastreamTestUtils;
+import com.linkedin.datastream.testutil.EmbeddedZookeeper;
+
+
+/**
+ * Tests for {@link CachedDatastreamReader}
+ */
+public class TestCachedDatastreamReader {
+  private static final String CLUSTER = "testCluster";
+  private static final String CONNECTOR_TYPE = "connectorType";
+
+  private EmbeddedZookeeper _embeddedZookeeper;
+  private ZkClient _zkClient;
+
+  @BeforeMethod
+  public void setup() throws IOException {
+    _embeddedZookeeper = new EmbeddedZookeeper();
+    _embeddedZookeeper.startup();
+    _zkClient = new ZkClient(_embeddedZookeeper.getConnection());
+    _zkClient.ensurePath(KeyBuilder.datastreams(CLUSTER));
+  }
+
+  @AfterMethod
+  public void teardown() {
+    _zkClient.close();
+    _embeddedZookeeper.shutdown();
+  }
+
+  private Datastream createDatastream(String name, String taskPrefix) {
+    Datastream datastream = DatastreamTestUtils.createDatastreams(CONNECTOR_TYPE, name)[0];
+    datastream.getMetadata().put(DatastreamMetadataConstants.TASK_PREFIX, taskPrefix);
+    return datastream;
+  }
+
+  private void storeDatastream(Datastream datastream) {
+    _zkClient.create(KeyBuilder.datastream(CLUSTER, datastream.getName()), DatastreamUtils.toJSON(datastream),
+        CreateMode.PERSISTENT);
+  }
+
+  private static Set<String> getDatastreamNames(DatastreamGroup datastreamGroup) {
+    return datastreamGroup.getDatastreams().stream().map(Datastream::getName).collect(Collectors.toSet());
+  }
+
+  @Test
+  public void testDatastreamGroups() {
+    storeDatastream(createDatastream("ds1", "group1"));
+    storeDatastream(createDatastream("ds2", "group1"));
+    storeDatastream(createDatastream("ds3", "group3"));
+    CachedDatastreamReader reader = new CachedDatastreamReader(_zkClient, CLUSTER);
+
+    Map<String, DatastreamGroup> groups = reader.getDatastreamGroupsByTaskPrefix();
+    Assert.assertEquals(groups.keySet(), ImmutableSet.of("group1", "group3"));
+    Assert.assertEquals(getDatastreamNames(groups.get("group1")), ImmutableSet.of("ds1", "ds2"));
+    Assert.assertEquals(getDatastreamNames(groups.get("group3")), ImmutableSet.of("ds3"));
+    Assert.assertEquals(reader.getDatastreamGroups().size(), 2);
+
+    // The snapshot is reused as long as no datastream changed
+    Assert.assertSame(reader.getDatastreamGroupsByTaskPrefix(), groups);
+  }
+
+  @Test
+  public void testDatastreamGroupsUpdatedIncrementally() throws Exception {
+    Datastream ds1 = createDatastream("ds1", "group1");
+    storeDatastream(ds1);
+    storeDatastream(createDatastream("ds2", "group2"));
+    CachedDatastreamReader reader = new CachedDatastreamReader(_zkClient, CLUSTER);
+    Map<String, DatastreamGroup> groups = reader.getDatastreamGroupsByTaskPrefix();
+
+    // Only the group of the added datastream is created
+    storeDatastream(createDatastream("ds3", "group3"));
+    Assert.assertTrue(PollUtils.poll(() -> reader.getDatastreamGroupsByTaskPrefix().containsKey("group3"), 100, 5000));
+    Assert.assertSame(reader.getDatastreamGroupsByTaskPrefix().get("group1"), groups.get("group1"));
+    Assert.assertSame(reader.getDatastreamGroupsByTaskPrefix().get("group2"), groups.get("group2"));
+
+    // The group of the deleted datastream is removed
+    _zkClient.delete(KeyBuilder.datastream(CLUSTER, "ds2"));
+    Assert.assertTrue(PollUtils.poll(() -> !reader.getDatastreamGroupsByTaskPrefix().containsKey("group2"), 100, 5000));
+    groups = reader.getDatastreamGroupsByTaskPrefix();
+
+    // Reading all the datastreams again only regroups the ones whose content changed
+    ds1.getMetadata().put("key", "value");
+    _zkClient.writeData(KeyBuilder.datastream(CLUSTER, "ds1"), DatastreamUtils.toJSON(ds1));
+    reader.invalidateAllCache();
+    Map<String, DatastreamGroup> updatedGroups = reader.getDatastreamGroupsByTaskPrefix();
+    Assert.assertEquals(updatedGroups.get("group1").getDatastreams().get(0).getMetadata().get("key"), "value");
+    Assert.assertSame(updatedGroups.get("group3"), groups.get("group3"));
+  }
+
+  @Test
+  public void testInvalidateChangedDatastreams() {
+    Datastream ds1 = createDatastream("ds1", "group1");
+    storeDatastream(ds1);
+    storeDatastream(createDatastream("ds2", "group2"));
+    CachedDatastreamReader reader = new CachedDatastreamReader(_zkClient, CLUSTER);
+    Map<String, DatastreamGroup> groups = reader.getDatastreamGroupsByTaskPrefix();
+    Datastream cachedDs2 = reader.getDatastream("ds2", false);
+
+    // Nothing is invalidated as long as no datastream was updated
+    reader.invalidateChangedDatastreams();
+    Assert.assertSame(reader.getDatastreamGroupsByTaskPrefix(), groups);
+
+    // Only the updated datastream is read again
+    ds1.getMetadata().put("key", "value");
+    _zkClient.writeData(KeyBuilder.datastream(CLUSTER, "ds1"), DatastreamUtils.toJSON(ds1));
+    reader.invalidateChangedDatastreams();
+    Map<String, DatastreamGroup> updatedGroups = reader.getDatastreamGroupsByTaskPrefix();
+    Assert.assertEquals(updatedGroups.get("group1").getDatastreams().get(0).getMetadata().get("key"), "value");
+    Assert.assertSame(updatedGroups.get("group2"), groups.get("group2"));
+    Assert.assertSame(reader.getDatastream("ds2", false), cachedDs2);
+  }
+}
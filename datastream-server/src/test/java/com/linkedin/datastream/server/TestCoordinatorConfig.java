@@ -69,4 +69,39 @@ public class TestCoordinatorConfig {
     config = createCoordinatorConfig(props);
     Assert.assertTrue(config.getForceStopStreamsOnFailure());
   }
+
+  @Test
+  public void testEventDebounceConfig() {
+    Properties props = new Properties();
+    CoordinatorConfig config = createCoordinatorConfig(props);
+    Assert.assertTrue(config.getEventDebounceMs().isEmpty());
+
+    props.put(CoordinatorConfig.CONFIG_EVENT_DEBOUNCE_MS + ".LEADER_DO_ASSIGNMENT", "500");
+    props.put(CoordinatorConfig.CONFIG_EVENT_DEBOUNCE_MS + ".HANDLE_ASSIGNMENT_CHANGE", "100");
+    CoordinatorConfig config2 = createCoordinatorConfig(props);
+    Assert.assertEquals(config2.getEventDebounceMs().size(), 2);
+    Assert.assertEquals((long) config2.getEventDebounceMs().get(CoordinatorEvent.EventType.LEADER_DO_ASSIGNMENT), 500);
+    Assert.assertEquals((long) config2.getEventDebounceMs().get(CoordinatorEvent.EventType.HANDLE_ASSIGNMENT_CHANGE), 100);
+
+    props.put(CoordinatorConfig.CONFIG_EVENT_DEBOUNCE_MS + ".UNKNOWN_EVENT", "100");
+    try {
+      createCoordinatorConfig(props);
+      Assert.fail("Expected the unknown event type to be rejected");
+    } catch (IllegalArgumentException e) {
+      Assert.assertTrue(e.getMessage().contains(CoordinatorConfig.CONFIG_EVENT_DEBOUNCE_MS + ".UNKNOWN_EVENT"));
+      Assert.assertTrue(e.getMessage().contains(CoordinatorEvent.EventType.LEADER_DO_ASSIGNMENT.name()));
+    }
+  }
+
+  @Test
+  public void testPartitionThroughputPublishIntervalConfig() {
+    Properties props = new Properties();
+    Assert.assertEquals(createCoordinatorConfig(props).getPartitionThroughputPublishIntervalMs(), 0);
+
+    props.put(CoordinatorConfig.CONFIG_PARTITION_THROUGHPUT_PUBLISH_INTERVAL_MS, "30000");
+    Assert.assertEquals(createCoordinatorConfig(props).getPartitionThroughputPublishIntervalMs(), 30000);
+
+    props.put(CoordinatorConfig.CONFIG_PARTITION_THROUGHPUT_PUBLISH_INTERVAL_MS, "-1");
+    Assert.assertThrows(IllegalArgumentException.class, () -> createCoordinatorConfig(props));
+  }
 }
@@ -5,6 +5,7 @@
  */
 package com.linkedin.datastream.server;
 
+import java.util.Collections;
 import java.util.Random;
 
 import org.testng.Assert;
@@ -13,13 +14,16 @@ import org.testng.annotations.Test;
 
 import com.codahale.metrics.Counter;
 import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
 
 import com.linkedin.datastream.metrics.DynamicMetricsManager;
 import com.linkedin.datastream.testutil.MetricsTestUtils;
 
+import static com.linkedin.datastream.server.CoordinatorEventBlockingQueue.COALESCING_RATIO_KEY;
 import static com.linkedin.datastream.server.CoordinatorEventBlockingQueue.COUNTER_KEY;
 import static com.linkedin.datastream.server.CoordinatorEventBlockingQueue.GAUGE_KEY;
+import static com.linkedin.datastream.server.CoordinatorEventBlockingQueue.QUEUE_DELAY_KEY;
 
 
 /**
@@ -32,6 +36,10 @@ public class TestCoordinatorEventBlockingQueue {
       MetricRegistry.name(CoordinatorEventBlockingQueue.class.getSimpleName(), SIMPLE_NAME, COUNTER_KEY);
   private static final String GAUGE_NAME =
       MetricRegistry.name(CoordinatorEventBlockingQueue.class.getSimpleName(), SIMPLE_NAME, GAUGE_KEY);
+  private static final String QUEUE_DELAY_NAME =
+      MetricRegistry.name(CoordinatorEventBlockingQueue.class.getSimpleName(), SIMPLE_NAME, QUEUE_DELAY_KEY);
+  private static final String COALESCING_RATIO_NAME =
+      MetricRegistry.name(CoordinatorEventBlockingQueue.class.getSimpleName(), SIMPLE_NAME, COALESCING_RATIO_KEY);
 
   @BeforeMethod(alwaysRun = true)
   public void resetMetrics() {
@@ -182,4 +190,53 @@ public class TestCoordinatorEventBlockingQueue {
     Assert.assertEquals(queue.size(), 0);
     Assert.assertEquals((int) gauge.getValue(), queue.size(), "Value is never less than zero.");
   }
+
+  @Test
+  public void testDebouncedEventsCoalesced() throws Exception {
+    long debounceMs = 200;
+    CoordinatorEventBlockingQueue queue = new CoordinatorEventBlockingQueue(SIMPLE_NAME,
+        Collections.singletonMap(CoordinatorEvent.EventType.LEADER_DO_ASSIGNMENT, debounceMs));
+    long start = System.currentTimeMillis();
+    queue.put(CoordinatorEvent.createLeaderDoAssignmentEvent(false));
+    queue.put(CoordinatorEvent.HANDLE_ASSIGNMENT_CHANGE_EVENT);
+    for (int i = 0; i < 10; i++) {
+      queue.put(CoordinatorEvent.createLeaderDoAssignmentEvent(false));
+    }
+    Assert.assertEquals(queue.size(), 2);
+    Assert.assertEquals(queue.getCoalescingRatio(), 10.0 / 12);
+
+    // The events which are not debounced are taken while the others are held
+    Assert.assertEquals(queue.peek(), CoordinatorEvent.HANDLE_ASSIGNMENT_CHANGE_EVENT);
+    Assert.assertEquals(queue.take(), CoordinatorEvent.HANDLE_ASSIGNMENT_CHANGE_EVENT);
+    Assert.assertEquals(queue.peek(), CoordinatorEvent.createLeaderDoAssignmentEvent(false));
+    Assert.assertEquals(queue.take(), CoordinatorEvent.createLeaderDoAssignmentEvent(false));
+    Assert.assertTrue(System.currentTimeMillis() - start >= debounceMs);
+    Assert.assertTrue(queue.isEmpty());
+
+    Histogram queueDelayMs = DynamicMetricsManager.getInstance().getMetric(QUEUE_DELAY_NAME);
+    Assert.assertEquals(queueDelayMs.getCount(), 2);
+    Assert.assertTrue(queueDelayMs.getSnapshot().getMax() >= debounceMs);
+    Gauge<Double> coalescingRatio = DynamicMetricsManager.getInstance().getMetric(COALESCING_RATIO_NAME);
+    Assert.assertEquals((double) coalescingRatio.getValue(), 10.0 / 12);
+  }
+
+  @Test(timeOut = 5000)
+  public void testPutFirstNotDebounced() throws Exception {
+    CoordinatorEventBlockingQueue queue = new CoordinatorEventBlockingQueue(SIMPLE_NAME,
+        Collections.singletonMap(CoordinatorEvent.EventType.LEADER_DO_ASSIGNMENT, 60_000L));
+    queue.put(CoordinatorEvent.createLeaderDoAssignmentEvent(true));
+    queue.put(CoordinatorEvent.createLeaderDoAssignmentEvent(false));
+    queue.put(CoordinatorEvent.HEARTBEAT_EVENT);
+
+    // The held event is moved to the front of the queue
+    queue.putFirst(CoordinatorEvent.createLeaderDoAssignmentEvent(true));
+    Assert.assertEquals(queue.size(), 3);
+    Assert.assertEquals(queue.take(), CoordinatorEvent.createLeaderDoAssignmentEvent(true));
+    Assert.assertEquals(queue.take(), CoordinatorEvent.HEARTBEAT_EVENT);
+    Assert.assertEquals(queue.size(), 1);
+    Assert.assertEquals(queue.peek(), CoordinatorEvent.createLeaderDoAssignmentEvent(false));
+
+    queue.clear();
+    Assert.assertNull(queue.peek());
+  }
 }
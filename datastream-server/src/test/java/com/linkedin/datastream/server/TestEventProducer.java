@@ -6,9 +6,15 @@
 package com.linkedin.datastream.server;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.testng.Assert;
@@ -16,14 +22,19 @@ import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
 
 import com.linkedin.datastream.common.BrooklinEnvelope;
 import com.linkedin.datastream.common.Datastream;
+import com.linkedin.datastream.common.DatastreamRuntimeException;
+import com.linkedin.datastream.common.PollUtils;
 import com.linkedin.datastream.connectors.DummyConnector;
 import com.linkedin.datastream.metrics.DynamicMetricsManager;
 import com.linkedin.datastream.serde.SerDe;
 import com.linkedin.datastream.serde.SerDeSet;
+import com.linkedin.datastream.server.api.transport.BatchSendCallback;
+import com.linkedin.datastream.server.api.transport.BatchSendFailedException;
 import com.linkedin.datastream.server.api.transport.DatastreamRecordMetadata;
 import com.linkedin.datastream.server.api.transport.SendCallback;
 import com.linkedin.datastream.server.api.transport.TransportProvider;
@@ -89,6 +100,257 @@ public class TestEventProducer {
 
 
 
+  @Test
+  public void testSendBatch() {
+    Datastream datastream = DatastreamTestUtils.createDatastreams(DummyConnector.CONNECTOR_TYPE, "test-ds")[0];
+    DatastreamTaskImpl task = new DatastreamTaskImpl(Collections.singletonList(datastream));
+
+    String someTopicName = "someTopicName";
+    AtomicInteger numBatchesProduced = new AtomicInteger();
+    AtomicInteger numEventsProduced = new AtomicInteger();
+    TransportProvider transport = new NoOpTransportProviderAdminFactory.NoOpTransportProvider() {
+      @Override
+      public void sendBatch(String defaultDestination, List<DatastreamProducerRecord> records,
+          BatchSendCallback onComplete) {
+        numBatchesProduced.incrementAndGet();
+        for (int i = 0; i < records.size(); i++) {
+          numEventsProduced.incrementAndGet();
+          DatastreamProducerRecord record = records.get(i);
+          DatastreamRecordMetadata metadata =
+              new DatastreamRecordMetadata(record.getCheckpoint(), someTopicName, record.getPartition().orElse(0));
+          onComplete.onCompletion(i, metadata, null);
+        }
+      }
+    };
+
+    EventProducer eventProducer =
+        new EventProducer(task, transport, new NoOpCheckpointProvider(), new Properties(), false);
+
+    int eventCount = 5;
+    List<DatastreamProducerRecord> records = new ArrayList<>();
+    for (int i = 0; i < eventCount; i++) {
+      records.add(createDatastreamProducerRecord(0, String.valueOf(i), 1));
+    }
+    List<String> completedCheckpoints = new ArrayList<>();
+    eventProducer.sendBatch(records, (recordIndex, metadata, exception) -> {
+      Assert.assertNull(exception);
+      Assert.assertEquals(metadata.getCheckpoint(), records.get(recordIndex).getCheckpoint());
+      completedCheckpoints.add(metadata.getCheckpoint());
+    });
+    Assert.assertEquals(numBatchesProduced.get(), 1);
+    Assert.assertEquals(numEventsProduced.get(), eventCount);
+    Assert.assertEquals(completedCheckpoints, Arrays.asList("0", "1", "2", "3", "4"));
+
+    DynamicMetricsManager metrics = DynamicMetricsManager.getInstance();
+    Assert.assertEquals(((Histogram) metrics.getMetric(
+        "EventProducer." + someTopicName + "." + EventProducer.EVENTS_LATENCY_MS_STRING)).getCount(), eventCount);
+  }
+
+  @Test
+  public void testSendBatchFailure() {
+    Datastream datastream = DatastreamTestUtils.createDatastreams(DummyConnector.CONNECTOR_TYPE, "test-ds")[0];
+    DatastreamTaskImpl task = new DatastreamTaskImpl(Collections.singletonList(datastream));
+    task.setTransportProviderName(NoOpTransportProviderAdminFactory.NoOpTransportProvider.NAME);
+
+    List<String> sentCheckpoints = new ArrayList<>();
+    TransportProvider transport = new NoOpTransportProviderAdminFactory.NoOpTransportProvider() {
+      @Override
+      public void send(String destination, DatastreamProducerRecord record, SendCallback onComplete) {
+        // The records are sent to their own destinations
+        Assert.assertEquals(destination, "someTopicName");
+        if (record.getCheckpoint().equals("2")) {
+          throw new IllegalStateException("Failed to send");
+        }
+        sentCheckpoints.add(record.getCheckpoint());
+        onComplete.onCompletion(new DatastreamRecordMetadata(record.getCheckpoint(), "someTopicName", 0), null);
+      }
+    };
+
+    EventProducer eventProducer =
+        new EventProducer(task, transport, new NoOpCheckpointProvider(), new Properties(), false);
+
+    List<DatastreamProducerRecord> records = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      DatastreamProducerRecordBuilder builder = new DatastreamProducerRecordBuilder();
+      builder.setSourceCheckpoint(String.valueOf(i));
+      builder.setDestination("someTopicName");
+      builder.setEventsSourceTimestamp(System.currentTimeMillis());
+      builder.addEvent(new BrooklinEnvelope(new byte[0], new byte[0], null, new HashMap<>()));
+      records.add(builder.build());
+    }
+    try {
+      eventProducer.sendBatch(records, (recordIndex, metadata, exception) -> Assert.assertNull(exception));
+      Assert.fail("The send of the batch should have failed");
+    } catch (BatchSendFailedException e) {
+      // The records after the one which failed are not sent
+      Assert.assertEquals(e.getRecordIndex(), 2);
+      Assert.assertEquals(sentCheckpoints, Arrays.asList("0", "1"));
+    }
+  }
+
+  @Test
+  public void testPeriodicFlush() throws Exception {
+    Datastream datastream = DatastreamTestUtils.createDatastreams(DummyConnector.CONNECTOR_TYPE, "test-ds")[0];
+    DatastreamTaskImpl task = new DatastreamTaskImpl(Collections.singletonList(datastream));
+
+    AtomicInteger numFlushes = new AtomicInteger();
+    TransportProvider transport = new NoOpTransportProviderAdminFactory.NoOpTransportProvider() {
+      @Override
+      public void send(String destination, DatastreamProducerRecord record, SendCallback onComplete) {
+        onComplete.onCompletion(new DatastreamRecordMetadata(record.getCheckpoint(), "someTopicName", 0), null);
+      }
+
+      @Override
+      public void flush() {
+        numFlushes.incrementAndGet();
+      }
+    };
+
+    Properties config = new Properties();
+    config.put(EventProducer.CONFIG_FLUSH_INTERVAL_MS, "50");
+    EventProducer eventProducer = new EventProducer(task, transport, new NoOpCheckpointProvider(), config, false);
+
+    // Nothing is flushed until something is sent
+    awaitPeriodicFlushChecks(eventProducer, 3);
+    Assert.assertEquals(numFlushes.get(), 0);
+
+    eventProducer.send(createDatastreamProducerRecord(), (m, e) -> { });
+    Assert.assertTrue(PollUtils.poll(() -> numFlushes.get() == 1, 10, 5000));
+    awaitPeriodicFlushChecks(eventProducer, 3);
+    Assert.assertEquals(numFlushes.get(), 1);
+    Assert.assertNotNull(DynamicMetricsManager.getInstance()
+        .getMetric("EventProducer." + DummyConnector.CONNECTOR_TYPE + ".periodicFlushLatencyMs"));
+
+    // Nothing is flushed once periodic flushes are disabled or the producer is shut down
+    eventProducer.enablePeriodicFlushOnSend(false);
+    eventProducer.send(createDatastreamProducerRecord(), (m, e) -> { });
+    awaitPeriodicFlushChecks(eventProducer, 3);
+    Assert.assertEquals(numFlushes.get(), 1);
+
+    eventProducer.enablePeriodicFlushOnSend(true);
+    eventProducer.shutdown(true);
+    Assert.assertEquals(numFlushes.get(), 1);
+  }
+
+  @Test
+  public void testPeriodicFlushRetriedAfterFailure() throws Exception {
+    Datastream datastream = DatastreamTestUtils.createDatastreams(DummyConnector.CONNECTOR_TYPE, "test-ds")[0];
+    DatastreamTaskImpl task = new DatastreamTaskImpl(Collections.singletonList(datastream));
+
+    AtomicInteger numFlushes = new AtomicInteger();
+    TransportProvider transport = new NoOpTransportProviderAdminFactory.NoOpTransportProvider() {
+      @Override
+      public void send(String destination, DatastreamProducerRecord record, SendCallback onComplete) {
+        onComplete.onCompletion(new DatastreamRecordMetadata(record.getCheckpoint(), "someTopicName", 0), null);
+      }
+
+      @Override
+      public void flush() {
+        if (numFlushes.incrementAndGet() == 1) {
+          throw new DatastreamRuntimeException("Test flush failure");
+        }
+      }
+    };
+
+    Properties config = new Properties();
+    config.put(EventProducer.CONFIG_FLUSH_INTERVAL_MS, "50");
+    EventProducer eventProducer = new EventProducer(task, transport, new NoOpCheckpointProvider(), config, false);
+
+    // The events sent before the failed flush are flushed by the next periodic flush, without any other send
+    eventProducer.send(createDatastreamProducerRecord(), (m, e) -> { });
+    Assert.assertTrue(PollUtils.poll(() -> numFlushes.get() == 2, 10, 5000));
+    awaitPeriodicFlushChecks(eventProducer, 3);
+    Assert.assertEquals(numFlushes.get(), 2);
+    eventProducer.shutdown(true);
+  }
+
+  @Test
+  public void testShutdownWaitsForPeriodicFlush() throws Exception {
+    BlockingFlushTransportProvider transport = new BlockingFlushTransportProvider();
+    EventProducer eventProducer = createPeriodicFlushProducer(transport, 5000);
+    eventProducer.send(createDatastreamProducerRecord(), (m, e) -> { });
+    Assert.assertTrue(transport._flushStarted.await(5, TimeUnit.SECONDS));
+
+    Thread shutdownThread = new Thread(() -> eventProducer.shutdown(true));
+    shutdownThread.start();
+    // Only let the flush complete once the shutdown waits for it
+    Assert.assertTrue(PollUtils.poll(() -> shutdownThread.getState() == Thread.State.TIMED_WAITING, 10, 5000));
+    transport._flushReleased.countDown();
+    shutdownThread.join(5000);
+    Assert.assertFalse(shutdownThread.isAlive());
+    Assert.assertFalse(transport._closedDuringFlush.get());
+  }
+
+  @Test
+  public void testShutdownDoesNotWaitForStuckPeriodicFlush() throws Exception {
+    BlockingFlushTransportProvider transport = new BlockingFlushTransportProvider();
+    EventProducer eventProducer = createPeriodicFlushProducer(transport, 100);
+    eventProducer.send(createDatastreamProducerRecord(), (m, e) -> { });
+    Assert.assertTrue(transport._flushStarted.await(5, TimeUnit.SECONDS));
+
+    try {
+      // The flush never completes, and the transport provider is closed anyway
+      Thread shutdownThread = new Thread(() -> eventProducer.shutdown(true));
+      shutdownThread.start();
+      shutdownThread.join(5000);
+      Assert.assertFalse(shutdownThread.isAlive());
+      Assert.assertTrue(transport._closedDuringFlush.get());
+    } finally {
+      transport._flushReleased.countDown();
+    }
+  }
+
+  private static EventProducer createPeriodicFlushProducer(TransportProvider transport, long shutdownTimeoutMs) {
+    Datastream datastream = DatastreamTestUtils.createDatastreams(DummyConnector.CONNECTOR_TYPE, "test-ds")[0];
+    DatastreamTaskImpl task = new DatastreamTaskImpl(Collections.singletonList(datastream));
+    Properties config = new Properties();
+    config.put(EventProducer.CONFIG_FLUSH_INTERVAL_MS, "50");
+    config.put(EventProducer.CONFIG_PERIODIC_FLUSH_SHUTDOWN_TIMEOUT_MS, String.valueOf(shutdownTimeoutMs));
+    return new EventProducer(task, transport, new NoOpCheckpointProvider(), config, false);
+  }
+
+  /**
+   * Transport provider whose flushes block until released, and which records whether it was closed during a flush
+   */
+  private static class BlockingFlushTransportProvider extends NoOpTransportProviderAdminFactory.NoOpTransportProvider {
+    private final CountDownLatch _flushStarted = new CountDownLatch(1);
+    private final CountDownLatch _flushReleased = new CountDownLatch(1);
+    private final AtomicBoolean _flushInProgress = new AtomicBoolean();
+    private final AtomicBoolean _closedDuringFlush = new AtomicBoolean();
+
+    @Override
+    public void send(String destination, DatastreamProducerRecord record, SendCallback onComplete) {
+      onComplete.onCompletion(new DatastreamRecordMetadata(record.getCheckpoint(), "someTopicName", 0), null);
+    }
+
+    @Override
+    public void flush() {
+      _flushInProgress.set(true);
+      _flushStarted.countDown();
+      try {
+        _flushReleased.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      _flushInProgress.set(false);
+    }
+
+    @Override
+    public void close() {
+      _closedDuringFlush.set(_flushInProgress.get());
+    }
+  }
+
+  /**
+   * Wait for the given number of periodic flush checks of the event producer to complete
+   */
+  private static void awaitPeriodicFlushChecks(EventProducer eventProducer, int count) throws InterruptedException {
+    CountDownLatch checks = new CountDownLatch(count);
+    eventProducer.setPeriodicFlushListener(checks::countDown);
+    Assert.assertTrue(checks.await(5, TimeUnit.SECONDS));
+    eventProducer.setPeriodicFlushListener(null);
+  }
+
   @Test
   public void testSendWithSerdeErrors() {
     Datastream datastream = DatastreamTestUtils.createDatastreams(DummyConnector.CONNECTOR_TYPE, "test-ds")[0];
@@ -155,6 +417,44 @@ public class TestEventProducer {
         metrics.getMetric("EventProducer." + datastreamName + "." + EventProducer.EVENTS_SEND_LATENCY_MS_STRING));
   }
 
+  @Test
+  public void testPerTopicMetricsKeyLimit() {
+    Datastream datastream = DatastreamTestUtils.createDatastreams(DummyConnector.CONNECTOR_TYPE, "test-ds")[0];
+    DatastreamTaskImpl task = new DatastreamTaskImpl(Collections.singletonList(datastream));
+
+    AtomicInteger topicIndex = new AtomicInteger();
+    TransportProvider transport = new NoOpTransportProviderAdminFactory.NoOpTransportProvider() {
+      @Override
+      public void send(String destination, DatastreamProducerRecord record, SendCallback onComplete) {
+        DatastreamRecordMetadata metadata = new DatastreamRecordMetadata(record.getCheckpoint(),
+            "topic" + topicIndex.get(), record.getPartition().orElse(0));
+        onComplete.onCompletion(metadata, null);
+      }
+    };
+
+    Properties props = new Properties();
+    props.put(EventProducer.CONFIG_PER_TOPIC_METRICS_MAX_KEYS, "2");
+    EventProducer eventProducer = new EventProducer(task, transport, new NoOpCheckpointProvider(), props, false);
+
+    // Produce to topic0, topic1 and topic2 in turn; topic0 is then the least recently used topic and gets evicted
+    for (int i = 0; i < 3; i++) {
+      topicIndex.set(i);
+      eventProducer.send(createDatastreamProducerRecord(), (m, e) -> { });
+    }
+    DynamicMetricsManager metrics = DynamicMetricsManager.getInstance();
+    String topic0Latency = "EventProducer.topic0." + EventProducer.EVENTS_LATENCY_MS_STRING;
+    Assert.assertNull(metrics.getMetric(topic0Latency));
+    Assert.assertNotNull(metrics.getMetric("EventProducer.topic2." + EventProducer.EVENTS_LATENCY_MS_STRING));
+    Assert.assertNotNull(metrics.getMetric("EventProducer.aggregate." + EventProducer.EVENTS_LATENCY_MS_STRING));
+
+    // Producing to the evicted topic again registers new metrics
+    topicIndex.set(0);
+    eventProducer.send(createDatastreamProducerRecord(), (m, e) -> { });
+    Histogram histogram = metrics.getMetric(topic0Latency);
+    Assert.assertNotNull(histogram);
+    Assert.assertEquals(histogram.getCount(), 1);
+  }
+
   private DatastreamProducerRecord createDatastreamProducerRecord() {
     return createDatastreamProducerRecord(0, "0", 1);
   }
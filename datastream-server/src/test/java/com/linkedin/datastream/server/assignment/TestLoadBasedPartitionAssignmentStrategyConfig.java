@@ -50,5 +50,39 @@ public class TestLoadBasedPartitionAssignmentStrategyConfig {
     Assert.assertFalse(config.isEnablePartitionNumBasedTaskCountEstimation());
     Assert.assertEquals(config.getDefaultPartitionBytesInKBRate(), Integer.parseInt(CFG_PARTITION_BYTES_IN_KB_RATE));
     Assert.assertEquals(config.getDefaultPartitionMsgsInRate(), Integer.parseInt(CFG_PARTITION_MSGS_IN_RATE));
+    Assert.assertFalse(config.isEnableMultiDimensionalPartitionAssignment());
+    Assert.assertEquals(config.getMaxPartitionMovesPerRebalance(), 100);
+  }
+
+  @Test
+  public void multiDimensionalPartitionAssignmentConfigTest() {
+    Properties props = new Properties();
+    props.setProperty(LoadBasedPartitionAssignmentStrategyConfig.CFG_ENABLE_MULTI_DIMENSIONAL_PARTITION_ASSIGNMENT,
+        String.valueOf(true));
+    props.setProperty(LoadBasedPartitionAssignmentStrategyConfig.CFG_MAX_PARTITION_MOVES_PER_REBALANCE, "20");
+
+    LoadBasedPartitionAssignmentStrategyConfig config = new LoadBasedPartitionAssignmentStrategyConfig(props);
+    Assert.assertTrue(config.isEnableMultiDimensionalPartitionAssignment());
+    Assert.assertEquals(config.getMaxPartitionMovesPerRebalance(), 20);
+
+    props.setProperty(LoadBasedPartitionAssignmentStrategyConfig.CFG_MAX_PARTITION_MOVES_PER_REBALANCE, "-1");
+    Assert.assertThrows(IllegalArgumentException.class, () -> new LoadBasedPartitionAssignmentStrategyConfig(props));
+  }
+
+  @Test
+  public void liveThroughputInfoConfigTest() {
+    Properties props = new Properties();
+    LoadBasedPartitionAssignmentStrategyConfig defaultConfig = new LoadBasedPartitionAssignmentStrategyConfig(props);
+    Assert.assertFalse(defaultConfig.isEnableLiveThroughputInfo());
+    Assert.assertEquals(defaultConfig.getLiveThroughputInfoRefreshIntervalMs(), 60000);
+    Assert.assertEquals(defaultConfig.getLiveThroughputInfoTtlMs(), 600000);
+
+    props.setProperty(LoadBasedPartitionAssignmentStrategyConfig.CFG_ENABLE_LIVE_THROUGHPUT_INFO, String.valueOf(true));
+    props.setProperty(LoadBasedPartitionAssignmentStrategyConfig.CFG_LIVE_THROUGHPUT_INFO_REFRESH_INTERVAL_MS, "1000");
+    props.setProperty(LoadBasedPartitionAssignmentStrategyConfig.CFG_LIVE_THROUGHPUT_INFO_TTL_MS, "5000");
+    LoadBasedPartitionAssignmentStrategyConfig config = new LoadBasedPartitionAssignmentStrategyConfig(props);
+    Assert.assertTrue(config.isEnableLiveThroughputInfo());
+    Assert.assertEquals(config.getLiveThroughputInfoRefreshIntervalMs(), 1000);
+    Assert.assertEquals(config.getLiveThroughputInfoTtlMs(), 5000);
   }
 }
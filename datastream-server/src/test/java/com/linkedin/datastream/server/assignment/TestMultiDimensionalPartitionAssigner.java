@@ -0,0 +1,178 @@
+/**
+ *  Copyright 2021 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.server.assignment;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+import com.linkedin.datastream.common.Datastream;
+import com.linkedin.datastream.common.DatastreamMetadataConstants;
+import com.linkedin.datastream.common.DatastreamRuntimeException;
+import com.linkedin.datastream.connectors.DummyConnector;
+import com.linkedin.datastream.metrics.DynamicMetricsManager;
+import com.linkedin.datastream.server.ClusterThroughputInfo;
+import com.linkedin.datastream.server.DatastreamGroup;
+import com.linkedin.datastream.server.DatastreamGroupPartitionsMetadata;
+import com.linkedin.datastream.server.DatastreamTask;
+import com.linkedin.datastream.server.DatastreamTaskImpl;
+import com.linkedin.datastream.server.PartitionThroughputInfo;
+import com.linkedin.datastream.server.zk.ZkAdapter;
+import com.linkedin.datastream.testutil.DatastreamTestUtils;
+
+import static org.mockito.Matchers.anyString;
+
+
+/**
+ * Tests for {@link MultiDimensionalPartitionAssigner}
+ */
+public class TestMultiDimensionalPartitionAssigner {
+  private Datastream _datastream;
+
+  /**
+   * Test setup
+   */
+  @BeforeClass
+  public void setup() {
+    DynamicMetricsManager.createInstance(new MetricRegistry(), "TestMultiDimensionalPartitionAssigner");
+    _datastream = DatastreamTestUtils.createDatastreams(DummyConnector.CONNECTOR_TYPE, "ds1")[0];
+    _datastream.getSource().setPartitions(0);
+    _datastream.getMetadata().put(DatastreamMetadataConstants.TASK_PREFIX, DatastreamTaskImpl.getTaskPrefix(_datastream));
+  }
+
+  @Test
+  public void balancesBytesAndMessagesTest() {
+    // Partitions with large messages have a high byte rate and a low message rate, and the others the opposite
+    Map<String, PartitionThroughputInfo> throughputMap = new HashMap<>();
+    for (int i = 0; i < 4; i++) {
+      throughputMap.put("large-" + i, new PartitionThroughputInfo(1000, 10, "large-" + i));
+      throughputMap.put("small-" + i, new PartitionThroughputInfo(10, 1000, "small-" + i));
+    }
+    Set<String> partitions = throughputMap.keySet();
+    Map<String, Set<DatastreamTask>> currentAssignment = new HashMap<>();
+    currentAssignment.put("instance1", new HashSet<>(Collections.singletonList(createTask(Collections.emptyList()))));
+    currentAssignment.put("instance2", new HashSet<>(Collections.singletonList(createTask(Collections.emptyList()))));
+
+    MultiDimensionalPartitionAssigner assigner = new MultiDimensionalPartitionAssigner(5, 5, 0);
+    Map<String, Set<DatastreamTask>> newAssignment = assigner.assignPartitions(
+        new ClusterThroughputInfo("dummy", throughputMap), currentAssignment, new HashSet<>(partitions),
+        createMetadata(partitions), Integer.MAX_VALUE);
+
+    // Each task gets two partitions of each kind, so that neither rate is skewed
+    for (String instance : Arrays.asList("instance1", "instance2")) {
+      List<String> taskPartitions = getTask(newAssignment, instance).getPartitionsV2();
+      Assert.assertEquals(taskPartitions.stream().filter(p -> p.startsWith("large")).count(), 2);
+      Assert.assertEquals(taskPartitions.stream().filter(p -> p.startsWith("small")).count(), 2);
+    }
+  }
+
+  @Test
+  public void partitionMovesCappedTest() {
+    Map<String, PartitionThroughputInfo> throughputMap = new HashMap<>();
+    List<String> partitions = Arrays.asList("P-0", "P-1", "P-2", "P-3", "P-4", "P-5");
+    partitions.forEach(p -> throughputMap.put(p, new PartitionThroughputInfo(10, 10, p)));
+    ClusterThroughputInfo throughputInfo = new ClusterThroughputInfo("dummy", throughputMap);
+
+    // All the partitions are assigned to the first task
+    for (int maxMoves : Arrays.asList(0, 1, 2, 3, 10)) {
+      Map<String, Set<DatastreamTask>> currentAssignment = new HashMap<>();
+      currentAssignment.put("instance1", new HashSet<>(Collections.singletonList(createTask(partitions))));
+      currentAssignment.put("instance2", new HashSet<>(Collections.singletonList(createTask(Collections.emptyList()))));
+
+      MultiDimensionalPartitionAssigner assigner = new MultiDimensionalPartitionAssigner(5, 5, maxMoves);
+      Map<String, Set<DatastreamTask>> newAssignment = assigner.assignPartitions(throughputInfo, currentAssignment,
+          Collections.emptySet(), createMetadata(partitions), Integer.MAX_VALUE);
+
+      // Moves stop once the tasks are balanced
+      int expectedMoves = Math.min(maxMoves, 3);
+      Assert.assertEquals(getTask(newAssignment, "instance1").getPartitionsV2().size(), 6 - expectedMoves);
+      Assert.assertEquals(getTask(newAssignment, "instance2").getPartitionsV2().size(), expectedMoves);
+      if (maxMoves == 0) {
+        Assert.assertEquals(newAssignment, currentAssignment);
+      }
+    }
+  }
+
+  @Test
+  public void unassignedPartitionsNotCountedAsMovesTest() {
+    Map<String, PartitionThroughputInfo> throughputMap = new HashMap<>();
+    throughputMap.put("P-0", new PartitionThroughputInfo(100, 100, "P-0"));
+    throughputMap.put("P-1", new PartitionThroughputInfo(100, 100, "P-1"));
+    // Q has topic level information only, and R none
+    throughputMap.put("Q", new PartitionThroughputInfo(50, 50, "Q"));
+    List<String> partitions = Arrays.asList("P-0", "P-1", "Q-0", "Q-1", "R-0", "R-1");
+    Map<String, Set<DatastreamTask>> currentAssignment = new HashMap<>();
+    currentAssignment.put("instance1", new HashSet<>(Collections.singletonList(createTask(Arrays.asList("P-0", "P-1")))));
+    currentAssignment.put("instance2", new HashSet<>(Collections.singletonList(createTask(Collections.emptyList()))));
+    currentAssignment.put("instance3", new HashSet<>(Collections.singletonList(createTask(Collections.emptyList()))));
+
+    MultiDimensionalPartitionAssigner assigner = new MultiDimensionalPartitionAssigner(5, 5, 0);
+    Map<String, Set<DatastreamTask>> newAssignment = assigner.assignPartitions(
+        new ClusterThroughputInfo("dummy", throughputMap), currentAssignment,
+        new HashSet<>(Arrays.asList("Q-0", "Q-1", "R-0", "R-1")), createMetadata(partitions), 2);
+
+    // The assigned partitions stay on the full task, and the others are spread on the other tasks
+    Assert.assertEquals(new HashSet<>(getTask(newAssignment, "instance1").getPartitionsV2()),
+        new HashSet<>(Arrays.asList("P-0", "P-1")));
+    DatastreamTaskImpl task2 = (DatastreamTaskImpl) getTask(newAssignment, "instance2");
+    DatastreamTaskImpl task3 = (DatastreamTaskImpl) getTask(newAssignment, "instance3");
+    Assert.assertEquals(task2.getPartitionsV2().size(), 2);
+    Assert.assertEquals(task3.getPartitionsV2().size(), 2);
+    Assert.assertEquals(task2.getPartitionsV2().stream().filter(p -> p.startsWith("Q")).count(), 1);
+    Assert.assertEquals(task3.getPartitionsV2().stream().filter(p -> p.startsWith("Q")).count(), 1);
+
+    LoadBasedPartitionAssigner.PartitionAssignmentStatPerTask stat =
+        LoadBasedPartitionAssigner.PartitionAssignmentStatPerTask.fromJson(task2.getStats());
+    Assert.assertEquals(stat.getTotalPartitions(), 2);
+    Assert.assertEquals(stat.getPartitionsWithUnknownThroughput(), 1);
+    Assert.assertEquals(stat.getThroughputRateInKBps(), 55);
+  }
+
+  @Test
+  public void notEnoughRoomTest() {
+    List<String> partitions = Arrays.asList("P-0", "P-1", "P-2");
+    Map<String, Set<DatastreamTask>> currentAssignment = new HashMap<>();
+    currentAssignment.put("instance1", new HashSet<>(Collections.singletonList(createTask(Collections.emptyList()))));
+
+    MultiDimensionalPartitionAssigner assigner = new MultiDimensionalPartitionAssigner(5, 5, 10);
+    Assert.assertThrows(DatastreamRuntimeException.class, () -> assigner.assignPartitions(
+        new ClusterThroughputInfo("dummy", Collections.emptyMap()), currentAssignment, new HashSet<>(partitions),
+        createMetadata(partitions), 2));
+  }
+
+  private DatastreamGroupPartitionsMetadata createMetadata(Set<String> partitions) {
+    return createMetadata(partitions.stream().sorted().collect(Collectors.toList()));
+  }
+
+  private DatastreamGroupPartitionsMetadata createMetadata(List<String> partitions) {
+    return new DatastreamGroupPartitionsMetadata(new DatastreamGroup(Collections.singletonList(_datastream)), partitions);
+  }
+
+  private static DatastreamTask getTask(Map<String, Set<DatastreamTask>> assignment, String instance) {
+    return assignment.get(instance).iterator().next();
+  }
+
+  private DatastreamTask createTask(List<String> partitions) {
+    DatastreamTaskImpl task = new DatastreamTaskImpl(Collections.singletonList(_datastream));
+    task.setPartitionsV2(partitions);
+    ZkAdapter mockAdapter = Mockito.mock(ZkAdapter.class);
+    Mockito.when(mockAdapter.checkIsTaskLocked(anyString(), anyString(), anyString())).thenReturn(true);
+    task.setZkAdapter(mockAdapter);
+    return task;
+  }
+}
@@ -8,7 +8,12 @@ package com.linkedin.datastream.server.providers;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.mockito.Mockito;
 
 import org.testng.Assert;
 import org.testng.annotations.AfterMethod;
@@ -25,6 +30,7 @@ import com.linkedin.datastream.common.DatastreamSource;
 import com.linkedin.datastream.common.zk.ZkClient;
 import com.linkedin.datastream.connectors.DummyConnector;
 import com.linkedin.datastream.metrics.DynamicMetricsManager;
+import com.linkedin.datastream.server.DatastreamTask;
 import com.linkedin.datastream.server.DatastreamTaskImpl;
 import com.linkedin.datastream.server.DummyTransportProviderAdminFactory;
 import com.linkedin.datastream.server.zk.KeyBuilder;
@@ -116,6 +122,84 @@ public class TestZookeeperCheckpointProvider {
     Assert.assertEquals(committedCheckpoints2.get(0), "checkpoint2");
   }
 
+  @Test
+  public void testCommittedCheckpointsCachedAndFlushBatched() {
+    ZkAdapter adapter = Mockito.mock(ZkAdapter.class);
+    ZookeeperCheckpointProvider checkpointProvider = new ZookeeperCheckpointProvider(adapter);
+    DatastreamTaskImpl datastreamTask1 = new DatastreamTaskImpl(Collections.singletonList(generateDatastream(1)));
+    datastreamTask1.setId("dt1");
+    DatastreamTaskImpl datastreamTask2 = new DatastreamTaskImpl(Collections.singletonList(generateDatastream(2)));
+    datastreamTask2.setId("dt2");
+    String key = ZookeeperCheckpointProvider.CHECKPOINT_KEY_NAME;
+    Mockito.when(adapter.getDatastreamTaskStateForKey(datastreamTask1, key)).thenReturn("{\"1\":\"committed1\"}");
+
+    // The first checkpoint of each task is committed right away, the following ones on flush
+    checkpointProvider.updateCheckpoint(datastreamTask1, 0, "checkpoint1");
+    checkpointProvider.updateCheckpoint(datastreamTask2, 0, "checkpoint2");
+    checkpointProvider.updateCheckpoint(datastreamTask1, 0, "checkpoint3");
+    checkpointProvider.updateCheckpoint(datastreamTask2, 0, "checkpoint4");
+    Mockito.verify(adapter).setDatastreamTaskStatesForKey(key,
+        Collections.singletonMap(datastreamTask1, "{\"0\":\"checkpoint1\",\"1\":\"committed1\"}"));
+    Mockito.verify(adapter).setDatastreamTaskStatesForKey(key,
+        Collections.singletonMap(datastreamTask2, "{\"0\":\"checkpoint2\"}"));
+
+    checkpointProvider.flush();
+    Map<DatastreamTask, String> flushed = new HashMap<>();
+    flushed.put(datastreamTask1, "{\"0\":\"checkpoint3\",\"1\":\"committed1\"}");
+    flushed.put(datastreamTask2, "{\"0\":\"checkpoint4\"}");
+    Mockito.verify(adapter).setDatastreamTaskStatesForKey(key, flushed);
+
+    // Nothing left to commit
+    checkpointProvider.flush();
+    Mockito.verify(adapter, Mockito.times(3)).setDatastreamTaskStatesForKey(Mockito.eq(key),
+        Mockito.anyMapOf(DatastreamTask.class, String.class));
+
+    Assert.assertEquals(checkpointProvider.getSafeCheckpoints(datastreamTask1).get(0), "checkpoint3");
+    // The committed checkpoints are only read once per task
+    Mockito.verify(adapter).getDatastreamTaskStateForKey(datastreamTask1, key);
+    Mockito.verify(adapter).getDatastreamTaskStateForKey(datastreamTask2, key);
+  }
+
+  @Test
+  public void testWriteInProgressDoesNotBlockOtherTasks() throws Exception {
+    ZkAdapter adapter = Mockito.mock(ZkAdapter.class);
+    ZookeeperCheckpointProvider checkpointProvider = new ZookeeperCheckpointProvider(adapter);
+    DatastreamTaskImpl datastreamTask1 = new DatastreamTaskImpl(Collections.singletonList(generateDatastream(1)));
+    datastreamTask1.setId("dt1");
+    DatastreamTaskImpl datastreamTask2 = new DatastreamTaskImpl(Collections.singletonList(generateDatastream(2)));
+    datastreamTask2.setId("dt2");
+    String key = ZookeeperCheckpointProvider.CHECKPOINT_KEY_NAME;
+
+    CountDownLatch writeStarted = new CountDownLatch(1);
+    CountDownLatch writeReleased = new CountDownLatch(1);
+    Mockito.doAnswer(invocation -> {
+      writeStarted.countDown();
+      Assert.assertTrue(writeReleased.await(5, TimeUnit.SECONDS));
+      return null;
+    }).when(adapter).setDatastreamTaskStatesForKey(key,
+        Collections.singletonMap(datastreamTask1, "{\"0\":\"checkpoint1\"}"));
+
+    Thread writer = new Thread(() -> checkpointProvider.updateCheckpoint(datastreamTask1, 0, "checkpoint1"));
+    writer.start();
+    Assert.assertTrue(writeStarted.await(5, TimeUnit.SECONDS));
+
+    // The checkpoints of the other tasks are written while the write of the task is in progress, and the updates of
+    // the task do not wait for it
+    checkpointProvider.updateCheckpoint(datastreamTask2, 0, "checkpoint2");
+    Mockito.verify(adapter).setDatastreamTaskStatesForKey(key,
+        Collections.singletonMap(datastreamTask2, "{\"0\":\"checkpoint2\"}"));
+    checkpointProvider.updateCheckpoint(datastreamTask1, 0, "checkpoint3");
+
+    writeReleased.countDown();
+    writer.join(5000);
+    Assert.assertFalse(writer.isAlive());
+
+    // The update skipped during the write is committed on flush
+    checkpointProvider.flush();
+    Mockito.verify(adapter).setDatastreamTaskStatesForKey(key,
+        Collections.singletonMap(datastreamTask1, "{\"0\":\"checkpoint3\"}"));
+  }
+
   /**
    * Generate a datastream
    */
@@ -0,0 +1,172 @@
+/**
+ *  Copyright 2021 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.server.providers;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+import com.linkedin.datastream.common.PollUtils;
+import com.linkedin.datastream.common.zk.ZkClient;
+import com.linkedin.datastream.metrics.DynamicMetricsManager;
+import com.linkedin.datastream.server.ClusterThroughputInfo;
+import com.linkedin.datastream.server.InstanceThroughputSnapshot;
+import com.linkedin.datastream.server.PartitionThroughputInfo;
+import com.linkedin.datastream.server.zk.KeyBuilder;
+import com.linkedin.datastream.testutil.EmbeddedZookeeper;
+
+
+/**
+ * Tests for {@link ZookeeperPartitionThroughputProvider}
+ */
+public class TestZookeeperPartitionThroughputProvider {
+  private static final String CLUSTER = "testcluster";
+  private static final long TTL_MS = Duration.ofMinutes(10).toMillis();
+
+  private EmbeddedZookeeper _zookeeper;
+  private ZkClient _zkClient;
+
+  @BeforeMethod
+  public void setup(Method method) throws IOException {
+    DynamicMetricsManager.createInstance(new MetricRegistry(), method.getName());
+    _zookeeper = new EmbeddedZookeeper();
+    _zookeeper.startup();
+    _zkClient = new ZkClient(_zookeeper.getConnection());
+  }
+
+  @AfterMethod
+  public void cleanup() {
+    _zkClient.close();
+    _zookeeper.shutdown();
+  }
+
+  @Test
+  public void testAggregatesInstanceSnapshots() {
+    long now = System.currentTimeMillis();
+    publish("instance1", now - 1000, "group1", "topic-0", 100, 1000);
+    publish("instance1", now - 1000, "group1", "topic-1", 200, 2000);
+    publish("instance2", now, "group1", "topic-2", 300, 3000);
+    publish("instance2", now, "group2", "topic-0", 400, 4000);
+    // The first partition has just moved to the third instance
+    publish("instance3", now, "group1", "topic-0", 500, 5000);
+    // The fourth instance hasn't published for longer than the TTL
+    publish("instance4", now - TTL_MS, "group1", "topic-3", 600, 6000);
+    _zkClient.ensurePath(KeyBuilder.instance(CLUSTER, "instance5"));
+
+    ZookeeperPartitionThroughputProvider provider =
+        new ZookeeperPartitionThroughputProvider(_zkClient, CLUSTER, TTL_MS, TTL_MS);
+    ClusterThroughputInfo group1 = provider.getThroughputInfo("group1");
+    Assert.assertEquals(group1.getPartitionInfoMap().size(), 3);
+    assertRates(group1, "topic-0", 500, 5000);
+    assertRates(group1, "topic-1", 200, 2000);
+    assertRates(group1, "topic-2", 300, 3000);
+    Assert.assertEquals(provider.getThroughputInfo().keySet(), new HashSet<>(Arrays.asList("group1", "group2")));
+    assertRates(provider.getThroughputInfo().get("group2"), "topic-0", 400, 4000);
+
+    // The datastream groups no instance reported have no throughput info
+    Assert.assertTrue(provider.getThroughputInfo("group3").getPartitionInfoMap().isEmpty());
+  }
+
+  @Test
+  public void testCachedThroughputRefreshedAsynchronously() {
+    publish("instance1", System.currentTimeMillis(), "group1", "topic-0", 100, 1000);
+
+    // The cached throughput is returned until it is older than the refresh interval
+    ZookeeperPartitionThroughputProvider provider =
+        new ZookeeperPartitionThroughputProvider(_zkClient, CLUSTER, TTL_MS, TTL_MS);
+    assertRates(provider.getThroughputInfo("group1"), "topic-0", 100, 1000);
+    publish("instance1", System.currentTimeMillis() + TTL_MS, "group1", "topic-0", 200, 2000);
+    assertRates(provider.getThroughputInfo("group1"), "topic-0", 100, 1000);
+
+    // Once it is, it keeps being returned while it is refreshed in the background
+    ZookeeperPartitionThroughputProvider refreshingProvider =
+        new ZookeeperPartitionThroughputProvider(_zkClient, CLUSTER, 0, TTL_MS);
+    assertRates(refreshingProvider.getThroughputInfo("group1"), "topic-0", 200, 2000);
+    publish("instance1", System.currentTimeMillis(), "group1", "topic-0", 300, 3000);
+    Assert.assertTrue(PollUtils.poll(() -> refreshingProvider.getThroughputInfo("group1")
+        .getPartitionInfoMap().get("topic-0").getBytesInKBRate() == 300, 10, 5000));
+    assertRates(refreshingProvider.getThroughputInfo("group1"), "topic-0", 300, 3000);
+  }
+
+  @Test
+  public void testRefreshFailure() {
+    // The throughput is always older than a TTL of 0, so every call waits for the refresh, and the snapshot is
+    // timestamped ahead so that it isn't ignored
+    publish("instance1", System.currentTimeMillis() + TTL_MS, "group1", "topic-0", 100, 1000);
+
+    // Without any throughput read yet, there is none
+    ZkClient closedZkClient = new ZkClient(_zookeeper.getConnection());
+    closedZkClient.close();
+    ZookeeperPartitionThroughputProvider failingProvider =
+        new ZookeeperPartitionThroughputProvider(closedZkClient, CLUSTER, 0, 0);
+    Assert.assertEquals(failingProvider.getThroughputInfo(), Collections.emptyMap());
+    failingProvider.close();
+
+    // Once read, the stale throughput is returned
+    ZkClient zkClient = new ZkClient(_zookeeper.getConnection());
+    ZookeeperPartitionThroughputProvider provider = new ZookeeperPartitionThroughputProvider(zkClient, CLUSTER, 0, 0);
+    assertRates(provider.getThroughputInfo("group1"), "topic-0", 100, 1000);
+    zkClient.close();
+    assertRates(provider.getThroughputInfo("group1"), "topic-0", 100, 1000);
+    provider.close();
+  }
+
+  @Test
+  public void testRefreshAfterClose() {
+    // Every call waits for the refresh, as in testRefreshFailure
+    publish("instance1", System.currentTimeMillis() + TTL_MS, "group1", "topic-0", 100, 1000);
+    ZookeeperPartitionThroughputProvider provider = new ZookeeperPartitionThroughputProvider(_zkClient, CLUSTER, 0, 0);
+    assertRates(provider.getThroughputInfo("group1"), "topic-0", 100, 1000);
+    provider.close();
+
+    // The provider of an assignment strategy which was cleaned up is used again once the instance is leader again
+    publish("instance1", System.currentTimeMillis() + TTL_MS, "group1", "topic-0", 200, 2000);
+    assertRates(provider.getThroughputInfo("group1"), "topic-0", 200, 2000);
+    provider.close();
+  }
+
+  @Test
+  public void testEmptyCluster() {
+    ZookeeperPartitionThroughputProvider provider =
+        new ZookeeperPartitionThroughputProvider(_zkClient, CLUSTER, TTL_MS, TTL_MS);
+    Assert.assertEquals(provider.getThroughputInfo(), Collections.emptyMap());
+  }
+
+  private void publish(String instance, long timestamp, String taskPrefix, String partition, int bytesInKBRate,
+      int messagesInRate) {
+    String path = KeyBuilder.instanceThroughput(CLUSTER, instance);
+    Map<String, Map<String, PartitionThroughputInfo>> throughputInfo = new HashMap<>();
+    if (_zkClient.exists(path)) {
+      InstanceThroughputSnapshot snapshot = InstanceThroughputSnapshot.fromJson(_zkClient.readData(path));
+      snapshot.getPartitionThroughput().keySet().forEach(prefix ->
+          throughputInfo.put(prefix, snapshot.getPartitionThroughputInfo(prefix)));
+    }
+    throughputInfo.computeIfAbsent(taskPrefix, k -> new HashMap<>())
+        .put(partition, new PartitionThroughputInfo(bytesInKBRate, messagesInRate, partition));
+    _zkClient.ensurePath(path);
+    _zkClient.writeData(path, new InstanceThroughputSnapshot(timestamp, throughputInfo).toJson());
+  }
+
+  private static void assertRates(ClusterThroughputInfo throughputInfo, String partition, int bytesInKBRate,
+      int messagesInRate) {
+    PartitionThroughputInfo partitionInfo = throughputInfo.getPartitionInfoMap().get(partition);
+    Assert.assertEquals(partitionInfo.getBytesInKBRate(), bytesInKBRate);
+    Assert.assertEquals(partitionInfo.getMessagesInRate(), messagesInRate);
+    Assert.assertEquals(partitionInfo.getPartitionName(), partition);
+  }
+}
@@ -6,6 +6,7 @@
 package com.linkedin.datastream.server.zk;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -16,6 +17,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import org.apache.zookeeper.CreateMode;
 import org.slf4j.Logger;
@@ -37,6 +39,8 @@ import com.linkedin.datastream.server.DatastreamTask;
 import com.linkedin.datastream.server.DatastreamTaskImpl;
 import com.linkedin.datastream.server.DatastreamTaskStatus;
 import com.linkedin.datastream.server.HostTargetAssignment;
+import com.linkedin.datastream.server.InstanceThroughputSnapshot;
+import com.linkedin.datastream.server.PartitionThroughputInfo;
 import com.linkedin.datastream.testutil.DatastreamTestUtils;
 import com.linkedin.datastream.testutil.EmbeddedZookeeper;
 
@@ -134,6 +138,59 @@ public class TestZkAdapter {
     client.close();
   }
 
+  @Test
+  public void testSavePartitionThroughput() {
+    String testCluster = "testSavePartitionThroughput";
+    ZkAdapter adapter = createZkAdapter(testCluster);
+    adapter.connect();
+
+    Map<String, PartitionThroughputInfo> partitions =
+        Collections.singletonMap("topic-0", new PartitionThroughputInfo(100, 1000, "topic-0"));
+    adapter.savePartitionThroughput(new InstanceThroughputSnapshot(1L, Collections.singletonMap("group1", partitions)));
+    adapter.savePartitionThroughput(new InstanceThroughputSnapshot(2L, Collections.singletonMap("group1", partitions)));
+
+    ZkClient client = new ZkClient(_zkConnectionString);
+    InstanceThroughputSnapshot snapshot = InstanceThroughputSnapshot.fromJson(
+        client.readData(KeyBuilder.instanceThroughput(testCluster, adapter.getInstanceName())));
+    Assert.assertEquals(snapshot.getTimestamp(), 2L);
+    PartitionThroughputInfo partitionInfo = snapshot.getPartitionThroughputInfo("group1").get("topic-0");
+    Assert.assertEquals(partitionInfo.getBytesInKBRate(), 100);
+    Assert.assertEquals(partitionInfo.getMessagesInRate(), 1000);
+
+    adapter.disconnect();
+    client.close();
+  }
+
+  @Test
+  public void testSavePartitionThroughputTooLarge() {
+    String testCluster = "testSavePartitionThroughputTooLarge";
+    ZkAdapter adapter = createZkAdapter(testCluster);
+    adapter.connect();
+
+    // The snapshot of that many partitions doesn't fit in a znode
+    int numPartitions = 50000;
+    Map<String, PartitionThroughputInfo> partitions = new HashMap<>();
+    for (int i = 0; i < numPartitions; i++) {
+      partitions.put("topic-" + i, new PartitionThroughputInfo(i, i, "topic-" + i));
+    }
+    adapter.savePartitionThroughput(new InstanceThroughputSnapshot(1L, Collections.singletonMap("group1", partitions)));
+
+    // Only the partitions with the highest throughput are saved
+    ZkClient client = new ZkClient(_zkConnectionString);
+    String json = client.readData(KeyBuilder.instanceThroughput(testCluster, adapter.getInstanceName()));
+    Assert.assertTrue(json.getBytes(StandardCharsets.UTF_8).length <= ZkAdapter.MAX_THROUGHPUT_SNAPSHOT_BYTES);
+    Map<String, PartitionThroughputInfo> savedPartitions =
+        InstanceThroughputSnapshot.fromJson(json).getPartitionThroughputInfo("group1");
+    Assert.assertTrue(savedPartitions.size() > 0 && savedPartitions.size() < numPartitions);
+    int lowestSaved = numPartitions - savedPartitions.size();
+    for (int i = lowestSaved; i < numPartitions; i++) {
+      Assert.assertEquals(savedPartitions.get("topic-" + i).getBytesInKBRate(), i);
+    }
+
+    adapter.disconnect();
+    client.close();
+  }
+
   @Test
   public void testLeaderElection() {
     String testCluster = "test_adapter_leader";
@@ -1292,6 +1349,94 @@ public class TestZkAdapter {
     validateConnectorTask(testCluster, connectorType, task4.getDatastreamTaskName(), adapter1.getInstanceName(), zkClient);
   }
 
+  @Test
+  public void testInstanceAssignmentCache() {
+    String testCluster = "testInstanceAssignmentCache";
+    String connectorType = "connectorType";
+    ZkClient zkClient = new ZkClient(_zkConnectionString);
+    ZkAdapter adapter1 = createZkAdapter(testCluster);
+    ZkAdapter adapter2 = createZkAdapter(testCluster);
+    adapter1.connect();
+    adapter2.connect();
+    String instance1 = adapter1.getInstanceName();
+    String instance2 = adapter2.getInstanceName();
+
+    DatastreamTaskImpl task1 = new DatastreamTaskImpl();
+    task1.setTaskPrefix("task1");
+    task1.setConnectorType(connectorType);
+
+    DatastreamTaskImpl task2 = new DatastreamTaskImpl();
+    task2.setTaskPrefix("task2");
+    task2.setConnectorType(connectorType);
+
+    DatastreamTaskImpl task3 = new DatastreamTaskImpl();
+    task3.setTaskPrefix("task3");
+    task3.setConnectorType(connectorType);
+
+    // The assignment of each instance is read from ZooKeeper the first time only
+    Map<String, List<DatastreamTask>> assignmentsByInstance = new HashMap<>();
+    assignmentsByInstance.put(instance1, Collections.singletonList(task1));
+    assignmentsByInstance.put(instance2, Collections.singletonList(task2));
+    adapter1.updateAllAssignments(assignmentsByInstance);
+    Assert.assertEquals(adapter1.getNumInstanceAssignmentCacheMisses(), 2);
+
+    assignmentsByInstance.put(instance1, Arrays.asList(task1, task3));
+    adapter1.updateAllAssignments(assignmentsByInstance);
+    Assert.assertEquals(adapter1.getNumInstanceAssignmentCacheMisses(), 2);
+    Assert.assertEquals(new HashSet<>(zkClient.getChildren(KeyBuilder.instanceAssignments(testCluster, instance1))),
+        ImmutableSet.of(task1.getDatastreamTaskName(), task3.getDatastreamTaskName()));
+
+    // The assignment of an instance changed by another writer is read again, and fixed by the next update
+    String task2Path = KeyBuilder.instanceAssignment(testCluster, instance2, task2.getDatastreamTaskName());
+    zkClient.delete(task2Path);
+    Assert.assertTrue(PollUtils.poll(() -> {
+      adapter1.updateAllAssignments(assignmentsByInstance);
+      return zkClient.exists(task2Path);
+    }, 100, 5000));
+    Assert.assertEquals(adapter1.getNumInstanceAssignmentCacheMisses(), 3);
+
+    adapter1.disconnect();
+    adapter2.disconnect();
+    zkClient.close();
+  }
+
+  @Test
+  public void testGetAssignedDatastreamTasks() {
+    String testCluster = "testGetAssignedDatastreamTasks";
+    String connectorType = "connectorType";
+    ZkAdapter adapter = createZkAdapter(testCluster);
+    adapter.connect();
+    String instance = adapter.getInstanceName();
+
+    List<DatastreamTask> tasks = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      DatastreamTaskImpl task = new DatastreamTaskImpl();
+      task.setTaskPrefix("task" + i);
+      task.setConnectorType(connectorType);
+      tasks.add(task);
+    }
+    updateInstanceAssignment(adapter, instance, tasks);
+
+    List<String> taskNames = tasks.stream().map(DatastreamTask::getDatastreamTaskName).collect(Collectors.toList());
+    // The tasks which are not assigned anymore are ignored
+    taskNames.add("task10_unassigned");
+    Map<String, DatastreamTaskImpl> assignedTasks = adapter.getAssignedDatastreamTasks(instance, taskNames);
+    Assert.assertEquals(assignedTasks.size(), tasks.size());
+    for (DatastreamTask task : tasks) {
+      DatastreamTaskImpl assignedTask = assignedTasks.get(task.getDatastreamTaskName());
+      Assert.assertEquals(assignedTask, adapter.getAssignedDatastreamTask(instance, task.getDatastreamTaskName()));
+      Assert.assertEquals(assignedTask.getTaskPrefix(), task.getTaskPrefix());
+      Assert.assertEquals(assignedTask.getTransportProviderName(), defaultTransportProviderName);
+    }
+
+    // The parser threads are shut down on disconnect, and created again on connect
+    adapter.disconnect();
+    adapter.connect();
+    Assert.assertEquals(adapter.getAssignedDatastreamTasks(instance, taskNames).keySet(), assignedTasks.keySet());
+
+    adapter.disconnect();
+  }
+
   /**
    * Update all datastream task assignments of a particular Brooklin instance
    * @param adapter ZooKeeper adapter to use
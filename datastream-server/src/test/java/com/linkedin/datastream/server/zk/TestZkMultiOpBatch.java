@@ -0,0 +1,135 @@
+/**
+ *  Copyright 2019 LinkedIn Corporation. All rights reserved.
+ *  Licensed under the BSD 2-Clause License. See the LICENSE file in the project root for license information.
+ *  See the NOTICE file in the project root for additional information regarding copyright ownership.
+ */
+package com.linkedin.datastream.server.zk;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.ZooDefs;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.linkedin.datastream.common.zk.ZkClient;
+import com.linkedin.datastream.testutil.EmbeddedZookeeper;
+
+
+/**
+ * Tests for {@link ZkMultiOpBatch}
+ */
+public class TestZkMultiOpBatch {
+  private EmbeddedZookeeper _embeddedZookeeper;
+  private ZkClient _zkClient;
+  private AtomicInteger _numFallbacks;
+
+  @BeforeMethod
+  public void setup() throws IOException {
+    _embeddedZookeeper = new EmbeddedZookeeper();
+    _embeddedZookeeper.startup();
+    _zkClient = new ZkClient(_embeddedZookeeper.getConnection());
+    _numFallbacks = new AtomicInteger();
+  }
+
+  @AfterMethod
+  public void teardown() {
+    _zkClient.close();
+    _embeddedZookeeper.shutdown();
+  }
+
+  private static Op create(String path) {
+    return Op.create(path, null, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+  }
+
+  private IntSupplier ensurePath(String... paths) {
+    return () -> {
+      _numFallbacks.incrementAndGet();
+      Arrays.stream(paths).forEach(_zkClient::ensurePath);
+      return paths.length;
+    };
+  }
+
+  private IntSupplier fallback(int numWrites) {
+    return () -> {
+      _numFallbacks.incrementAndGet();
+      return numWrites;
+    };
+  }
+
+  @Test
+  public void testOpsSentInSingleTransaction() {
+    ZkMultiOpBatch batch = new ZkMultiOpBatch(_zkClient, "test");
+    batch.add(Arrays.asList(create("/a"), create("/a/b")), 0, ensurePath("/a/b"));
+    batch.add(create("/c"), 0, ensurePath("/c"));
+    batch.flush();
+
+    Assert.assertTrue(_zkClient.exists("/a/b"));
+    Assert.assertTrue(_zkClient.exists("/c"));
+    Assert.assertEquals(_numFallbacks.get(), 0);
+    Assert.assertEquals(batch.getNumOps(), 3);
+    Assert.assertEquals(batch.getNumRoundTripsSaved(), 2);
+    Assert.assertEquals(batch.getNumFailedTransactions(), 0);
+  }
+
+  @Test
+  public void testSingleGroupWrittenWithFallback() {
+    ZkMultiOpBatch batch = new ZkMultiOpBatch(_zkClient, "test");
+    batch.add(Arrays.asList(create("/a"), create("/a/b")), 0, fallback(2));
+    batch.flush();
+
+    // Only the fallback was run
+    Assert.assertFalse(_zkClient.exists("/a"));
+    Assert.assertEquals(_numFallbacks.get(), 1);
+    Assert.assertEquals(batch.getNumRoundTripsSaved(), 0);
+
+    // A fallback which makes more writes than the operations costs the extra round trips
+    batch.add(create("/c"), 0, fallback(3));
+    batch.flush();
+    Assert.assertEquals(batch.getNumRoundTripsSaved(), -2);
+  }
+
+  @Test
+  public void testFailedTransactionFallsBack() {
+    _zkClient.ensurePath("/b");
+    ZkMultiOpBatch batch = new ZkMultiOpBatch(_zkClient, "test");
+    batch.add(create("/a"), 0, ensurePath("/a"));
+    batch.add(create("/b"), 0, ensurePath("/b"));
+    batch.add(create("/c"), 0, ensurePath("/c", "/c/d"));
+    batch.flush();
+
+    Assert.assertTrue(_zkClient.exists("/a"));
+    Assert.assertTrue(_zkClient.exists("/c/d"));
+    Assert.assertEquals(_numFallbacks.get(), 3);
+    Assert.assertEquals(batch.getNumFailedTransactions(), 1);
+    // The failed transaction and the four writes of the fallbacks, instead of three operations
+    Assert.assertEquals(batch.getNumRoundTripsSaved(), -2);
+  }
+
+  @Test
+  public void testTransactionsSplitBySize() {
+    ZkMultiOpBatch batch = new ZkMultiOpBatch(_zkClient, "test");
+    int numBytes = ZkMultiOpBatch.MAX_TRANSACTION_BYTES / 2;
+    for (int i = 0; i < 4; i++) {
+      batch.add(Op.check("/", -1), numBytes, fallback(1));
+    }
+    batch.flush();
+    // Two transactions of two operations each
+    Assert.assertEquals(batch.getNumRoundTripsSaved(), 2);
+
+    for (int i = 0; i <= ZkMultiOpBatch.MAX_TRANSACTION_OPS; i++) {
+      batch.add(Op.check("/", -1), 0, fallback(1));
+    }
+    batch.flush();
+    // The last operation didn't fit in the transaction and was written on its own
+    Assert.assertEquals(batch.getNumRoundTripsSaved(), 2 + ZkMultiOpBatch.MAX_TRANSACTION_OPS - 1);
+    Assert.assertEquals(_numFallbacks.get(), 1);
+    Assert.assertEquals(batch.getNumOps(), 4 + ZkMultiOpBatch.MAX_TRANSACTION_OPS + 1);
+  }
+}